@@ -19,16 +19,17 @@ package org.xipki.audit.syslog;
 
 import java.io.CharArrayWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.audit.AsyncAuditService;
 import org.xipki.audit.AuditEvent;
 import org.xipki.audit.AuditEventData;
 import org.xipki.audit.AuditLevel;
-import org.xipki.audit.AuditService;
 import org.xipki.audit.AuditStatus;
 import org.xipki.audit.PciAuditEvent;
 
@@ -46,7 +47,7 @@ import com.cloudbees.syslog.sender.UdpSyslogMessageSender;
  * @since 2.0.0
  */
 
-public class SyslogAuditService extends AuditService {
+public class SyslogAuditService extends AsyncAuditService<SyslogMessage> {
 
   /**
    * The default port is 514.
@@ -80,6 +81,13 @@ public class SyslogAuditService extends AuditService {
    */
   protected AbstractSyslogMessageSender syslog;
 
+  /**
+   * Sender of the batches in the asynchronous TCP mode.
+   */
+  private SyslogTcpBatchSender batchSender;
+
+  private MessageFormat msgFormat;
+
   private String host = DFLT_SYSLOG_HOST;
 
   private int port = DFLT_SYSLOG_PORT;
@@ -106,10 +114,10 @@ public class SyslogAuditService extends AuditService {
   }
 
   @Override
-  protected void logEvent0(AuditEvent event) {
+  protected SyslogMessage toMessage(AuditEvent event) {
     if (!initialized) {
       LOG.error("syslog audit not initialized");
-      return;
+      return null;
     }
 
     CharArrayWriter sb = new CharArrayWriter(150);
@@ -141,7 +149,7 @@ public class SyslogAuditService extends AuditService {
     if (n > maxMessageLength) {
       LOG.warn("syslog message exceeds the maximal allowed length: {} > {}, ignore it", n,
           maxMessageLength);
-      return;
+      return null;
     }
 
     SyslogMessage sm = new SyslogMessage();
@@ -159,20 +167,14 @@ public class SyslogAuditService extends AuditService {
 
     sm.setMsgId(event.getName());
     sm.setMsg(sb);
-
-    try {
-      syslog.sendMessage(sm);
-    } catch (IOException ex) {
-      LOG.error("could not send syslog message: {}", ex.getMessage());
-      LOG.debug("could not send syslog message", ex);
-    }
-  } // method logEvent(AuditEvent)
+    return sm;
+  } // method toMessage(AuditEvent)
 
   @Override
-  protected void logEvent0(PciAuditEvent event) {
+  protected SyslogMessage toMessage(PciAuditEvent event) {
     if (!initialized) {
       LOG.error("syslog audit not initialiazed");
-      return;
+      return null;
     }
 
     CharArrayWriter msg = event.toCharArrayWriter(prefix);
@@ -180,7 +182,7 @@ public class SyslogAuditService extends AuditService {
     if (n > maxMessageLength) {
       LOG.warn("syslog message exceeds the maximal allowed length: {} > {}, ignore it", n,
           maxMessageLength);
-      return;
+      return null;
     }
 
     SyslogMessage sm = new SyslogMessage();
@@ -191,14 +193,32 @@ public class SyslogAuditService extends AuditService {
 
     sm.setSeverity(getSeverity(event.getLevel()));
     sm.setMsg(msg);
+    return sm;
+  } // method toMessage(PCIAuditEvent)
 
-    try {
+  @Override
+  protected void writeMessages(List<SyslogMessage> messages) throws IOException {
+    if (batchSender != null) {
+      batchSender.send(messages);
+      return;
+    }
+
+    for (SyslogMessage sm : messages) {
       syslog.sendMessage(sm);
+    }
+  }
+
+  @Override
+  protected String toSpillText(SyslogMessage message) {
+    StringWriter writer = new StringWriter(200);
+    try {
+      message.toSyslogMessage(msgFormat, writer);
     } catch (IOException ex) {
-      LOG.error("could not send syslog message: {}", ex.getMessage());
-      LOG.debug("could not send syslog message", ex);
+      // StringWriter does not throw IOException
+      throw new IllegalStateException(ex);
     }
-  } // method logEvent(PCIAuditEvent)
+    return writer.toString();
+  }
 
   public void init() {
     if (initialized) {
@@ -207,7 +227,6 @@ public class SyslogAuditService extends AuditService {
 
     LOG.info("initializing: {}", SyslogAuditService.class);
 
-    MessageFormat msgFormat;
     if ("rfc3164".equalsIgnoreCase(messageFormat) || "rfc_3164".equalsIgnoreCase(messageFormat)) {
       msgFormat = MessageFormat.RFC_3164;
     } else if ("rfc5424".equalsIgnoreCase(messageFormat)
@@ -222,19 +241,26 @@ public class SyslogAuditService extends AuditService {
     if ("udp".equalsIgnoreCase(protocol)) {
       UdpSyslogMessageSender lcSyslog = new UdpSyslogMessageSender();
       syslog = lcSyslog;
+      lcSyslog.setSyslogServerHostname(host);
       lcSyslog.setSyslogServerPort(port);
     } else if ("tcp".equalsIgnoreCase(protocol)) {
       TcpSyslogMessageSender lcSyslog = new TcpSyslogMessageSender();
       syslog = lcSyslog;
+      lcSyslog.setSyslogServerHostname(host);
       lcSyslog.setSyslogServerPort(port);
       lcSyslog.setSsl(ssl);
       if (writeRetries > 0) {
         lcSyslog.setMaxRetryCount(writeRetries);
       }
+
+      if (isAsync()) {
+        batchSender = new SyslogTcpBatchSender(host, port, ssl, writeRetries, msgFormat);
+      }
     } else {
       LOG.warn("unknown protocol '{}', use the default one 'udp'", this.protocol);
       UdpSyslogMessageSender lcSyslog = new UdpSyslogMessageSender();
       syslog = lcSyslog;
+      lcSyslog.setSyslogServerHostname(host);
       lcSyslog.setSyslogServerPort(port);
     }
 
@@ -259,11 +285,18 @@ public class SyslogAuditService extends AuditService {
 
     // after we're finished set initialized to true
     this.initialized = true;
+    start();
     LOG.info("initialized: {}", SyslogAuditService.class);
   } // method init
 
   public void destroy() {
     LOG.info("destroying: {}", SyslogAuditService.class);
+    // writes the buffered messages
+    stop();
+    if (batchSender != null) {
+      batchSender.close();
+      batchSender = null;
+    }
     LOG.info("destroyed: {}", SyslogAuditService.class);
   }
 
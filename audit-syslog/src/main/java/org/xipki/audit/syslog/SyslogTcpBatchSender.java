@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit.syslog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudbees.syslog.MessageFormat;
+import com.cloudbees.syslog.SyslogMessage;
+
+/**
+ * Sends syslog messages via a kept-alive TCP connection. All messages of a batch are
+ * written with one flush.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class SyslogTcpBatchSender {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SyslogTcpBatchSender.class);
+
+  private static final int CONNECT_TIMEOUT_MS = 5000;
+
+  private final String host;
+
+  private final int port;
+
+  private final boolean ssl;
+
+  private final int maxRetryCount;
+
+  private final MessageFormat messageFormat;
+
+  private Socket socket;
+
+  private Writer writer;
+
+  SyslogTcpBatchSender(String host, int port, boolean ssl, int maxRetryCount,
+      MessageFormat messageFormat) {
+    this.host = host;
+    this.port = port;
+    this.ssl = ssl;
+    this.maxRetryCount = Math.max(0, maxRetryCount);
+    this.messageFormat = messageFormat;
+  }
+
+  synchronized void send(List<SyslogMessage> messages) throws IOException {
+    IOException lastException = null;
+    for (int i = 0; i <= maxRetryCount; i++) {
+      try {
+        ensureConnection();
+        for (SyslogMessage m : messages) {
+          m.toSyslogMessage(messageFormat, writer);
+          // non-transparent framing as described in RFC 6587, section 3.4.2
+          writer.write("\r\n");
+        }
+        writer.flush();
+        return;
+      } catch (IOException ex) {
+        lastException = ex;
+        LOG.debug("could not send syslog messages, retry {}: {}", i, ex.getMessage());
+        close();
+      }
+    }
+    throw lastException;
+  }
+
+  synchronized void close() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        LOG.debug("could not close socket: {}", ex.getMessage());
+      }
+    }
+    socket = null;
+    writer = null;
+  }
+
+  private void ensureConnection() throws IOException {
+    if (socket != null && socket.isConnected() && !socket.isClosed()) {
+      return;
+    }
+
+    Socket tmpSocket = ssl ? SSLSocketFactory.getDefault().createSocket() : new Socket();
+    try {
+      tmpSocket.setKeepAlive(true);
+      tmpSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+    } catch (IOException ex) {
+      tmpSocket.close();
+      throw ex;
+    }
+
+    socket = tmpSocket;
+    writer = new BufferedWriter(
+        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,402 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Audit service which converts the events to messages on the caller's thread, and optionally
+ * delivers them asynchronously. In the asynchronous mode the messages are put into a bounded
+ * ring buffer, and written in batches by a dedicated writer thread. If the buffer is full,
+ * the configured {@link OverflowPolicy} applies.
+ *
+ * <p>The asynchronous mode is activated by {@link #setAsync(boolean)} before {@link #start()}.
+ * {@link #stop()} closes the buffer, waits for the producers which are putting messages into
+ * it, and writes the remaining messages. Afterwards the messages are written synchronously.
+ *
+ * @param <M> type of the messages.
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public abstract class AsyncAuditService<M> extends AuditService {
+
+  public enum OverflowPolicy {
+
+    /**
+     * The caller waits until the message can be put into the buffer.
+     */
+    BLOCK,
+
+    /**
+     * The message is dropped and counted.
+     */
+    DROP,
+
+    /**
+     * The message is appended to the spill file.
+     */
+    SPILL
+
+  } // enum OverflowPolicy
+
+  private class AuditWriter implements Runnable {
+
+    private final AuditRingBuffer<M> buffer;
+
+    AuditWriter(AuditRingBuffer<M> buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void run() {
+      List<M> batch = new ArrayList<>(batchSize);
+      while (true) {
+        buffer.drainTo(batch, batchSize);
+        if (!batch.isEmpty()) {
+          write(batch);
+          batch.clear();
+          continue;
+        }
+
+        if (stopped) {
+          break;
+        }
+
+        writerWaiting = true;
+        if (buffer.isEmpty() && !stopped) {
+          LockSupport.parkNanos(this, MAX_WRITER_IDLE_NANOS);
+        }
+        writerWaiting = false;
+      }
+    }
+
+  } // class AuditWriter
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncAuditService.class);
+
+  private static final long MAX_WRITER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final long BLOCK_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final long STOP_TIMEOUT_MS = 10000;
+
+  /**
+   * Flag in {@link #state}: the buffer does not accept messages.
+   */
+  private static final int CLOSED = 1 << 30;
+
+  private boolean async;
+
+  private int queueSize = 8192;
+
+  private int batchSize = 100;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+  private String spillFile;
+
+  private volatile AuditRingBuffer<M> buffer;
+
+  private volatile Thread writerThread;
+
+  private volatile boolean writerWaiting;
+
+  private volatile boolean stopped;
+
+  /**
+   * {@link #CLOSED} flag and the number of producers putting a message into the buffer.
+   */
+  private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+  private final Object spillLock = new Object();
+
+  private Writer spillWriter;
+
+  private final AtomicLong numDropped = new AtomicLong(0);
+
+  private final AtomicLong numSpilled = new AtomicLong(0);
+
+  /**
+   * Converts the event to a message.
+   * @return the message, or {@code null} if the event shall not be logged.
+   */
+  protected abstract M toMessage(AuditEvent event);
+
+  /**
+   * Converts the event to a message.
+   * @return the message, or {@code null} if the event shall not be logged.
+   */
+  protected abstract M toMessage(PciAuditEvent event);
+
+  /**
+   * Writes the messages. In the asynchronous mode this method is called only by the writer
+   * thread, and after {@link #stop()} by the thread which stopped the writer.
+   */
+  protected abstract void writeMessages(List<M> messages) throws IOException;
+
+  /**
+   * Returns the line of the message in the spill file.
+   */
+  protected String toSpillText(M message) {
+    return String.valueOf(message);
+  }
+
+  @Override
+  protected final void logEvent0(AuditEvent event) {
+    enqueue(toMessage(event));
+  }
+
+  @Override
+  protected final void logEvent0(PciAuditEvent event) {
+    enqueue(toMessage(event));
+  }
+
+  public synchronized void start() {
+    if (!async || buffer != null) {
+      return;
+    }
+
+    if (overflowPolicy == OverflowPolicy.SPILL && spillFile == null) {
+      LOG.warn("no spillFile is configured, use the overflowPolicy DROP");
+      overflowPolicy = OverflowPolicy.DROP;
+    }
+
+    stopped = false;
+    buffer = new AuditRingBuffer<>(queueSize);
+    writerThread = new Thread(new AuditWriter(buffer),
+        "audit-writer-" + getClass().getSimpleName());
+    writerThread.setDaemon(true);
+    writerThread.start();
+    state.set(0);
+    LOG.info("started asynchronous audit with queueSize={}, batchSize={}, overflowPolicy={}",
+        buffer.capacity(), batchSize, overflowPolicy);
+  }
+
+  public synchronized void stop() {
+    if (buffer == null) {
+      return;
+    }
+
+    // close the buffer, and wait for the producers which are putting messages into it
+    int st;
+    do {
+      st = state.get();
+    } while (!state.compareAndSet(st, st | CLOSED));
+
+    while (state.get() != CLOSED) {
+      LockSupport.unpark(writerThread);
+      LockSupport.parkNanos(this, BLOCK_WAIT_NANOS);
+    }
+
+    stopped = true;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join(STOP_TIMEOUT_MS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (writerThread.isAlive()) {
+      LOG.warn("audit writer has not finished in {} ms", STOP_TIMEOUT_MS);
+    } else {
+      // messages added while the writer was checking the stopped flag
+      List<M> batch = new ArrayList<>();
+      buffer.drainTo(batch, Integer.MAX_VALUE);
+      if (!batch.isEmpty()) {
+        write(batch);
+      }
+    }
+
+    buffer = null;
+    writerThread = null;
+
+    synchronized (spillLock) {
+      if (spillWriter != null) {
+        try {
+          spillWriter.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close spill file {}: {}", spillFile, ex.getMessage());
+        }
+        spillWriter = null;
+      }
+    }
+
+    LOG.info("stopped asynchronous audit, dropped {} and spilled {} messages",
+        numDropped.get(), numSpilled.get());
+  }
+
+  public boolean isAsync() {
+    return async;
+  }
+
+  public void setAsync(boolean async) {
+    this.async = async;
+  }
+
+  public void setQueueSize(int queueSize) {
+    this.queueSize = Math.max(1, queueSize);
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  public void setOverflowPolicy(String overflowPolicy) {
+    this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase());
+  }
+
+  public void setSpillFile(String spillFile) {
+    this.spillFile = (spillFile == null || spillFile.trim().isEmpty()) ? null : spillFile.trim();
+  }
+
+  public long getNumDropped() {
+    return numDropped.get();
+  }
+
+  public long getNumSpilled() {
+    return numSpilled.get();
+  }
+
+  private void enqueue(M message) {
+    if (message == null) {
+      return;
+    }
+
+    while (true) {
+      int st = state.get();
+      if ((st & CLOSED) != 0) {
+        if (buffer == null) {
+          // synchronous mode, or stopped
+          write(Collections.singletonList(message));
+          return;
+        }
+
+        // start() or stop() is running
+        awaitStartOrStop();
+      } else if (state.compareAndSet(st, st + 1)) {
+        break;
+      }
+    }
+
+    try {
+      offer(buffer, writerThread, message);
+    } finally {
+      state.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns after the running {@link #start()} or {@link #stop()} has finished.
+   */
+  private synchronized void awaitStartOrStop() {
+    // nothing to do, start() and stop() hold the lock
+  }
+
+  private void offer(AuditRingBuffer<M> tmpBuffer, Thread tmpWriterThread, M message) {
+    if (!tmpBuffer.offer(message)) {
+      switch (overflowPolicy) {
+        case BLOCK:
+          while (!tmpBuffer.offer(message)) {
+            if (!tmpWriterThread.isAlive()) {
+              LOG.error("audit writer is not alive");
+              drop(1);
+              return;
+            }
+            LockSupport.unpark(tmpWriterThread);
+            LockSupport.parkNanos(this, BLOCK_WAIT_NANOS);
+          }
+          break;
+        case SPILL:
+          spill(Collections.singletonList(message));
+          return;
+        default:
+          drop(1);
+          return;
+      }
+    }
+
+    if (writerWaiting) {
+      LockSupport.unpark(tmpWriterThread);
+    }
+  }
+
+  private void write(List<M> messages) {
+    try {
+      writeMessages(messages);
+    } catch (Exception ex) {
+      LOG.error("could not write {} audit messages: {}", messages.size(), ex.getMessage());
+      LOG.debug("could not write audit messages", ex);
+      if (spillFile != null) {
+        spill(messages);
+      } else {
+        drop(messages.size());
+      }
+    }
+  }
+
+  private void spill(List<M> messages) {
+    synchronized (spillLock) {
+      try {
+        if (spillWriter == null) {
+          File file = new File(spillFile);
+          File parent = file.getParentFile();
+          if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+          }
+          spillWriter = new BufferedWriter(new OutputStreamWriter(
+              new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        }
+
+        for (M message : messages) {
+          spillWriter.write(toSpillText(message));
+          spillWriter.write('\n');
+        }
+        spillWriter.flush();
+        numSpilled.addAndGet(messages.size());
+      } catch (IOException ex) {
+        LOG.error("could not write to spill file {}: {}", spillFile, ex.getMessage());
+        drop(messages.size());
+      }
+    }
+  }
+
+  private void drop(int num) {
+    long total = numDropped.addAndGet(num);
+    if (total == num || total / 1000 != (total - num) / 1000) {
+      LOG.warn("dropped {} audit messages in total", total);
+    }
+  }
+
+}
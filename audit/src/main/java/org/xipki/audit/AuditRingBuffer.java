@@ -0,0 +1,123 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.audit;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with multiple producers and one consumer.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class AuditRingBuffer<E> {
+
+  private final AtomicReferenceArray<E> slots;
+
+  private final int capacity;
+
+  private final int mask;
+
+  /**
+   * Sequence of the next slot to be claimed by a producer.
+   */
+  private final AtomicLong tail = new AtomicLong(0);
+
+  /**
+   * Sequence of the next slot to be consumed, updated only by the consumer.
+   */
+  private final AtomicLong head = new AtomicLong(0);
+
+  /**
+   * Creates a new ring buffer.
+   * @param minCapacity minimal capacity, will be rounded up to a power of 2.
+   */
+  AuditRingBuffer(int minCapacity) {
+    if (minCapacity < 1) {
+      throw new IllegalArgumentException("minCapacity must not be less than 1: " + minCapacity);
+    }
+
+    int cap = Integer.highestOneBit(minCapacity);
+    if (cap < minCapacity) {
+      cap <<= 1;
+    }
+    this.capacity = cap;
+    this.mask = cap - 1;
+    this.slots = new AtomicReferenceArray<>(cap);
+  }
+
+  /**
+   * Adds the element if the buffer is not full.
+   * @return whether the element has been added.
+   */
+  boolean offer(E element) {
+    if (element == null) {
+      throw new NullPointerException("element must not be null");
+    }
+
+    while (true) {
+      long seq = tail.get();
+      if (seq - head.get() >= capacity) {
+        return false;
+      }
+
+      if (tail.compareAndSet(seq, seq + 1)) {
+        slots.lazySet((int) seq & mask, element);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Moves up to {@code maxElements} elements to the given collection. Must be called only by
+   * the consumer.
+   * @return number of moved elements.
+   */
+  int drainTo(Collection<? super E> collection, int maxElements) {
+    long seq = head.get();
+    int num = 0;
+    while (num < maxElements) {
+      int idx = (int) seq & mask;
+      E element = slots.get(idx);
+      if (element == null) {
+        // empty, or the producer has not yet stored the element of the claimed slot
+        break;
+      }
+
+      slots.lazySet(idx, null);
+      collection.add(element);
+      seq++;
+      num++;
+    }
+
+    head.lazySet(seq);
+    return num;
+  }
+
+  boolean isEmpty() {
+    return head.get() == tail.get();
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+}
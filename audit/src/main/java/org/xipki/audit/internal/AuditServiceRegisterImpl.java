@@ -44,6 +44,16 @@ public class AuditServiceRegisterImpl implements AuditServiceRegister {
     return services.isEmpty() ? defaultAuditService : services.getLast();
   }
 
+  /**
+   * Sets the audit service used if no other one is bound.
+   */
+  public void setDefaultAuditService(Slf4jAuditServiceImpl defaultAuditService) {
+    if (defaultAuditService == null) {
+      throw new NullPointerException("defaultAuditService must not be null");
+    }
+    this.defaultAuditService = defaultAuditService;
+  }
+
   public void bindService(AuditService service) {
     //might be null if dependency is optional
     if (service == null) {
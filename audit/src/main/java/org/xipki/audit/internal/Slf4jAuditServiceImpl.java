@@ -18,12 +18,13 @@
 package org.xipki.audit.internal;
 
 import java.io.CharArrayWriter;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.audit.AsyncAuditService;
 import org.xipki.audit.AuditEvent;
 import org.xipki.audit.AuditLevel;
-import org.xipki.audit.AuditService;
 import org.xipki.audit.PciAuditEvent;
 
 /**
@@ -32,7 +33,25 @@ import org.xipki.audit.PciAuditEvent;
  * @since 2.0.0
  */
 
-public class Slf4jAuditServiceImpl extends AuditService {
+public class Slf4jAuditServiceImpl extends AsyncAuditService<Slf4jAuditServiceImpl.Message> {
+
+  static final class Message {
+
+    private final boolean debug;
+
+    private final String text;
+
+    Message(boolean debug, String text) {
+      this.debug = debug;
+      this.text = text;
+    }
+
+    @Override
+    public String toString() {
+      return text;
+    }
+
+  } // class Message
 
   private static final Logger LOG = LoggerFactory.getLogger("xipki.audit.slf4j");
 
@@ -40,37 +59,44 @@ public class Slf4jAuditServiceImpl extends AuditService {
   }
 
   @Override
-  protected void logEvent0(AuditEvent event) {
+  protected Message toMessage(AuditEvent event) {
     switch (event.getLevel()) {
       case DEBUG:
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("{}", createMessage(event));
-        }
-        break;
+        return LOG.isDebugEnabled() ? new Message(true, createMessage(event)) : null;
       default:
-        if (LOG.isInfoEnabled()) {
-          LOG.info("{}", createMessage(event));
-        }
-        break;
+        return LOG.isInfoEnabled() ? new Message(false, createMessage(event)) : null;
     } // end switch
   }
 
   @Override
-  protected void logEvent0(PciAuditEvent event) {
-    CharArrayWriter msg = event.toCharArrayWriter("");
+  protected Message toMessage(PciAuditEvent event) {
     AuditLevel al = event.getLevel();
     switch (al) {
       case DEBUG:
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("{} | {}", al.getAlignedText(), msg);
+        if (!LOG.isDebugEnabled()) {
+          return null;
         }
         break;
       default:
-        if (LOG.isInfoEnabled()) {
-          LOG.info("{} | {}", al.getAlignedText(), msg);
+        if (!LOG.isInfoEnabled()) {
+          return null;
         }
         break;
     } // end switch
+
+    CharArrayWriter msg = event.toCharArrayWriter("");
+    return new Message(al == AuditLevel.DEBUG, al.getAlignedText() + " | " + msg);
+  }
+
+  @Override
+  protected void writeMessages(List<Message> messages) {
+    for (Message m : messages) {
+      if (m.debug) {
+        LOG.debug("{}", m.text);
+      } else {
+        LOG.info("{}", m.text);
+      }
+    }
   }
 
 }
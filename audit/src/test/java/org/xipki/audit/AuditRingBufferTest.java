@@ -0,0 +1,145 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests of {@link AuditRingBuffer}, in its package since the buffer is package-private.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class AuditRingBufferTest {
+
+  @Test
+  public void roundUpCapacity() {
+    Assert.assertEquals(1, new AuditRingBuffer<String>(1).capacity());
+    Assert.assertEquals(8, new AuditRingBuffer<String>(5).capacity());
+    Assert.assertEquals(8, new AuditRingBuffer<String>(8).capacity());
+    Assert.assertEquals(16, new AuditRingBuffer<String>(9).capacity());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectInvalidCapacity() {
+    new AuditRingBuffer<String>(0);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void rejectNull() {
+    new AuditRingBuffer<String>(4).offer(null);
+  }
+
+  @Test
+  public void offerUntilFull() {
+    AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(4);
+    Assert.assertTrue(buffer.isEmpty());
+    for (int i = 0; i < 4; i++) {
+      Assert.assertTrue(buffer.offer(i));
+    }
+    Assert.assertFalse(buffer.offer(4));
+    Assert.assertFalse(buffer.isEmpty());
+
+    List<Integer> list = new ArrayList<>();
+    Assert.assertEquals(1, buffer.drainTo(list, 1));
+    Assert.assertTrue(buffer.offer(4));
+    Assert.assertFalse(buffer.offer(5));
+
+    Assert.assertEquals(4, buffer.drainTo(list, Integer.MAX_VALUE));
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), list);
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertEquals(0, buffer.drainTo(list, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void wrapAround() {
+    AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(8);
+    List<Integer> list = new ArrayList<>();
+    int next = 0;
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 5; i++) {
+        Assert.assertTrue(buffer.offer(next + i));
+      }
+
+      list.clear();
+      Assert.assertEquals(3, buffer.drainTo(list, 3));
+      Assert.assertEquals(2, buffer.drainTo(list, 10));
+      for (int i = 0; i < 5; i++) {
+        Assert.assertEquals(Integer.valueOf(next + i), list.get(i));
+      }
+      next += 5;
+    }
+  }
+
+  @Test
+  public void multipleProducers() throws Exception {
+    final int numProducers = 4;
+    final int numPerProducer = 100000;
+    final AuditRingBuffer<long[]> buffer = new AuditRingBuffer<>(64);
+
+    Thread[] producers = new Thread[numProducers];
+    for (int p = 0; p < numProducers; p++) {
+      final int producerId = p;
+      producers[p] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < numPerProducer; i++) {
+            long[] element = new long[]{producerId, i};
+            while (!buffer.offer(element)) {
+              Thread.yield();
+            }
+          }
+        }
+      };
+      producers[p].start();
+    }
+
+    long[] nextExpected = new long[numProducers];
+    List<long[]> batch = new ArrayList<>();
+    int received = 0;
+    final long deadline = System.currentTimeMillis() + 60000;
+    while (received < numProducers * numPerProducer) {
+      Assert.assertTrue("timeout", System.currentTimeMillis() < deadline);
+      batch.clear();
+      if (buffer.drainTo(batch, 100) == 0) {
+        Thread.yield();
+        continue;
+      }
+
+      for (long[] element : batch) {
+        int producerId = (int) element[0];
+        // each element exactly once, and in the order of its producer
+        Assert.assertEquals(nextExpected[producerId]++, element[1]);
+      }
+      received += batch.size();
+    }
+
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    Assert.assertTrue(buffer.isEmpty());
+  }
+
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.audit.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xipki.audit.AsyncAuditService;
+import org.xipki.audit.AuditEvent;
+import org.xipki.audit.PciAuditEvent;
+
+/**
+ * Tests of {@link AsyncAuditService}.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class AsyncAuditServiceTest {
+
+  private static class TestAuditService extends AsyncAuditService<String> {
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<Thread> writers = Collections.synchronizedList(new ArrayList<Thread>());
+
+    /**
+     * Number of writes by the writer thread or the thread calling stop().
+     */
+    private final AtomicInteger writerWrites = new AtomicInteger();
+
+    /**
+     * Number of writes by the other threads.
+     */
+    private final AtomicInteger callerWrites = new AtomicInteger();
+
+    private volatile Thread stoppingThread;
+
+    private volatile boolean overlapped;
+
+    private volatile CountDownLatch writeBlocker;
+
+    @Override
+    protected String toMessage(AuditEvent event) {
+      return event.getName();
+    }
+
+    @Override
+    protected String toMessage(PciAuditEvent event) {
+      return null;
+    }
+
+    @Override
+    protected void writeMessages(List<String> msgs) throws IOException {
+      Thread thread = Thread.currentThread();
+      boolean byWriter = thread.getName().startsWith("audit-writer-")
+          || thread == stoppingThread;
+      AtomicInteger own = byWriter ? writerWrites : callerWrites;
+      AtomicInteger other = byWriter ? callerWrites : writerWrites;
+      own.incrementAndGet();
+      if (other.get() > 0) {
+        overlapped = true;
+      }
+
+      try {
+        CountDownLatch blocker = writeBlocker;
+        if (blocker != null) {
+          try {
+            blocker.await();
+          } catch (InterruptedException ex) {
+            throw new IOException("interrupted");
+          }
+        }
+        writers.add(Thread.currentThread());
+        messages.addAll(msgs);
+      } finally {
+        own.decrementAndGet();
+      }
+    }
+
+    void log(String name) {
+      AuditEvent event = new AuditEvent(new Date());
+      event.setName(name);
+      logEvent(event);
+    }
+
+  } // class TestAuditService
+
+  @Test
+  public void synchronousMode() {
+    TestAuditService service = new TestAuditService();
+    service.start();
+    service.log("msg-1");
+    Assert.assertEquals(Collections.singletonList("msg-1"), service.messages);
+    Assert.assertEquals(Thread.currentThread(), service.writers.get(0));
+    service.stop();
+  }
+
+  @Test
+  public void asynchronousMode() {
+    TestAuditService service = new TestAuditService();
+    service.setAsync(true);
+    service.setQueueSize(16);
+    service.setBatchSize(4);
+    service.start();
+
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      String name = "msg-" + i;
+      expected.add(name);
+      service.log(name);
+    }
+    service.stop();
+
+    Assert.assertEquals(expected, service.messages);
+    for (Thread writer : service.writers) {
+      Assert.assertNotEquals(Thread.currentThread(), writer);
+    }
+
+    // written synchronously after stop()
+    service.log("after-stop");
+    Assert.assertEquals("after-stop", service.messages.get(service.messages.size() - 1));
+  }
+
+  @Test
+  public void stopWhileLogging() throws Exception {
+    final TestAuditService service = new TestAuditService();
+    service.setAsync(true);
+    service.setQueueSize(64);
+    service.start();
+
+    final int numProducers = 8;
+    final int numPerProducer = 20000;
+    final CountDownLatch started = new CountDownLatch(numProducers);
+    Thread[] producers = new Thread[numProducers];
+    for (int p = 0; p < numProducers; p++) {
+      final int producerId = p;
+      producers[p] = new Thread() {
+        @Override
+        public void run() {
+          started.countDown();
+          for (int i = 0; i < numPerProducer; i++) {
+            service.log(producerId + "-" + i);
+          }
+        }
+      };
+      producers[p].start();
+    }
+
+    started.await();
+    Thread.sleep(5);
+    service.stoppingThread = Thread.currentThread();
+    service.stop();
+
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    // no message is lost, and the callers do not write while the writer is writing
+    Assert.assertEquals(numProducers * numPerProducer, service.messages.size());
+    Assert.assertFalse("overlapped", service.overlapped);
+    Assert.assertEquals(0, service.getNumDropped());
+  }
+
+  @Test
+  public void dropIfFull() throws Exception {
+    TestAuditService service = new TestAuditService();
+    service.setAsync(true);
+    service.setQueueSize(8);
+    service.setOverflowPolicy("drop");
+    service.writeBlocker = new CountDownLatch(1);
+    service.start();
+
+    for (int i = 0; i < 100; i++) {
+      service.log("msg-" + i);
+    }
+
+    service.writeBlocker.countDown();
+    service.stop();
+
+    Assert.assertTrue(service.getNumDropped() > 0);
+    Assert.assertEquals(100, service.messages.size() + service.getNumDropped());
+  }
+
+  @Test
+  public void spillIfFull() throws Exception {
+    File spillFile = File.createTempFile("audit-spill-", ".log");
+    spillFile.deleteOnExit();
+
+    TestAuditService service = new TestAuditService();
+    service.setAsync(true);
+    service.setQueueSize(8);
+    service.setOverflowPolicy("SPILL");
+    service.setSpillFile(spillFile.getPath());
+    service.writeBlocker = new CountDownLatch(1);
+    service.start();
+
+    for (int i = 0; i < 100; i++) {
+      service.log("msg-" + i);
+    }
+
+    service.writeBlocker.countDown();
+    service.stop();
+
+    List<String> spilled = Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals(service.getNumSpilled(), spilled.size());
+    Assert.assertTrue(spilled.size() > 0);
+    Assert.assertEquals(100, service.messages.size() + spilled.size());
+    Assert.assertEquals(0, service.getNumDropped());
+  }
+
+}
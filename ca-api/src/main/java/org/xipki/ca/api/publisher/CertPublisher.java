@@ -121,6 +121,16 @@ public abstract class CertPublisher {
    */
   public abstract boolean certificateRemoved(X509Cert caCert, CertWithDbId cert);
 
+  /**
+   * Whether the CRLs are published by {@link #crlAdded(X509Cert, X509CRL)}. If not, the CA
+   * does not need to parse the generated CRL for this publisher.
+   *
+   * @return whether the CRLs are published.
+   */
+  public boolean publishesCrl() {
+    return true;
+  }
+
   /**
    * Publishes a CRL.
    *
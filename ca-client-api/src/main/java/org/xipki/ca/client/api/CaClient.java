@@ -24,6 +24,7 @@ import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.bouncycastle.asn1.crmf.CertRequest;
 import org.bouncycastle.asn1.crmf.ProofOfPossession;
@@ -316,6 +317,220 @@ public interface CaClient {
   Map<String, CertIdOrError> unrevokeCerts(UnrevokeOrRemoveCertRequest request,
       RequestResponseDebug debug) throws CaClientException, PkiErrorException;
 
+  /**
+   * Asynchronous variant of
+   * {@link #requestCert(String, CertificationRequest, String, Date, Date, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param caName
+   *          CA name. Could be {@code null}.
+   * @param csr
+   *          CSR. Must not be{@code null}.
+   * @param profile
+   *          Certificate profile name. Must not be{@code null}.
+   * @param notBefore
+   *          NotBefore. Could be {@code null}.
+   * @param notAfter
+   *          NotAfter. Could be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the enrolling result.
+   */
+  default CompletableFuture<EnrollCertResult> requestCertAsync(String caName,
+      CertificationRequest csr, String profile, Date notBefore, Date notAfter,
+      RequestResponseDebug debug) {
+    final CompletableFuture<EnrollCertResult> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(requestCert(caName, csr, profile, notBefore, notAfter, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Asynchronous variant of
+   * {@link #requestCerts(String, EnrollCertRequest, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param caName
+   *          CA name. Could be {@code null}.
+   * @param request
+   *          Request. Must not be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the enrolling result.
+   */
+  default CompletableFuture<EnrollCertResult> requestCertsAsync(String caName,
+      EnrollCertRequest request, RequestResponseDebug debug) {
+    final CompletableFuture<EnrollCertResult> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(requestCerts(caName, request, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Asynchronous variant of
+   * {@link #revokeCert(String, BigInteger, int, Date, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param caName
+   *          CA name. Could be {@code null}.
+   * @param serial
+   *          Serial number of the target certificate. Must not be {@code null}.
+   * @param reason
+   *          Revocation reason.
+   * @param invalidityTime
+   *          Invalidity time. Could be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the revocation result.
+   */
+  default CompletableFuture<CertIdOrError> revokeCertAsync(String caName, BigInteger serial,
+      int reason, Date invalidityTime, RequestResponseDebug debug) {
+    final CompletableFuture<CertIdOrError> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(revokeCert(caName, serial, reason, invalidityTime, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Asynchronous variant of {@link #revokeCerts(RevokeCertRequest, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param request
+   *          Request. Must not be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the revocation result.
+   */
+  default CompletableFuture<Map<String, CertIdOrError>> revokeCertsAsync(RevokeCertRequest request,
+      RequestResponseDebug debug) {
+    final CompletableFuture<Map<String, CertIdOrError>> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(revokeCerts(request, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Asynchronous variant of {@link #unrevokeCert(String, BigInteger, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param caName
+   *          CA name. Could be {@code null}.
+   * @param serial
+   *          Serial number of the certificate. Must not be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the unrevocation result.
+   */
+  default CompletableFuture<CertIdOrError> unrevokeCertAsync(String caName, BigInteger serial,
+      RequestResponseDebug debug) {
+    final CompletableFuture<CertIdOrError> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(unrevokeCert(caName, serial, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Asynchronous variant of
+   * {@link #unrevokeCerts(UnrevokeOrRemoveCertRequest, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param request
+   *          Request. Must not be {@code null}.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the unrevocation result.
+   */
+  default CompletableFuture<Map<String, CertIdOrError>> unrevokeCertsAsync(
+      UnrevokeOrRemoveCertRequest request, RequestResponseDebug debug) {
+    final CompletableFuture<Map<String, CertIdOrError>> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(unrevokeCerts(request, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Asynchronous variant of {@link #downloadCrl(String, BigInteger, RequestResponseDebug)}.
+   * The returned future fails with {@link CaClientException} or {@link PkiErrorException}.
+   * The default implementation calls the blocking variant in the common pool.
+   *
+   * @param caName
+   *          CA name. Must not be {@code null}.
+   * @param crlNumber
+   *          CRL number. {@code null} to download the current CRL.
+   * @param debug
+   *          Request/response debug control. Could be {@code null}.
+   * @return the future of the X509 CRL.
+   */
+  default CompletableFuture<X509CRL> downloadCrlAsync(String caName, BigInteger crlNumber,
+      RequestResponseDebug debug) {
+    final CompletableFuture<X509CRL> future = new CompletableFuture<>();
+    CompletableFuture.runAsync(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          future.complete(downloadCrl(caName, crlNumber, debug));
+        } catch (Throwable th) {
+          future.completeExceptionally(th);
+        }
+      }
+    });
+    return future;
+  }
+
   /**
    * Removes a certificate.
    *
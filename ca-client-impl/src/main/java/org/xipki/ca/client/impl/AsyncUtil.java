@@ -0,0 +1,83 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.client.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Helpers for the asynchronous processing of the CMP messages.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+final class AsyncUtil {
+
+  /**
+   * Function which may throw checked exceptions.
+   */
+  interface CheckedFunction<T, R> {
+
+    R apply(T input) throws Exception;
+
+  }
+
+  private AsyncUtil() {
+  }
+
+  /**
+   * Converts the function to a {@link Function}, the checked exceptions will be wrapped
+   * in {@link CompletionException}.
+   */
+  static <T, R> Function<T, R> unchecked(final CheckedFunction<T, R> function) {
+    return new Function<T, R>() {
+      @Override
+      public R apply(T input) {
+        try {
+          return function.apply(input);
+        } catch (RuntimeException ex) {
+          throw ex;
+        } catch (Exception ex) {
+          throw new CompletionException(ex);
+        }
+      }
+    };
+  }
+
+  static <T> CompletableFuture<T> failedFuture(Throwable cause) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(cause);
+    return future;
+  }
+
+  /**
+   * Returns the cause of the {@link CompletionException} and {@link ExecutionException}.
+   */
+  static Throwable unwrap(Throwable th) {
+    Throwable cause = th;
+    while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+        && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+
+}
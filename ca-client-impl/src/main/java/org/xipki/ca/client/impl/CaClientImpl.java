@@ -44,9 +44,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -78,6 +82,7 @@ import org.xipki.ca.client.api.dto.EnrollCertRequestEntry;
 import org.xipki.ca.client.api.dto.EnrollCertResultEntry;
 import org.xipki.ca.client.api.dto.EnrollCertResultResp;
 import org.xipki.ca.client.api.dto.ErrorResultEntry;
+import org.xipki.ca.client.api.dto.IssuerSerialEntry;
 import org.xipki.ca.client.api.dto.ResultEntry;
 import org.xipki.ca.client.api.dto.RevokeCertRequest;
 import org.xipki.ca.client.api.dto.RevokeCertRequestEntry;
@@ -85,6 +90,7 @@ import org.xipki.ca.client.api.dto.RevokeCertResultEntry;
 import org.xipki.ca.client.api.dto.RevokeCertResultType;
 import org.xipki.ca.client.api.dto.UnrevokeOrRemoveCertEntry;
 import org.xipki.ca.client.api.dto.UnrevokeOrRemoveCertRequest;
+import org.xipki.ca.client.impl.AsyncUtil.CheckedFunction;
 import org.xipki.ca.client.impl.jaxb.CAClientType;
 import org.xipki.ca.client.impl.jaxb.CAType;
 import org.xipki.ca.client.impl.jaxb.CertprofileType;
@@ -103,6 +109,9 @@ import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.XmlUtil;
+import org.xipki.http.client.HttpTransport;
+import org.xipki.http.client.HttpTransportResponse;
+import org.xipki.http.client.NettyHttpTransport;
 import org.xipki.security.AlgorithmValidator;
 import org.xipki.security.CollectionAlgorithmValidator;
 import org.xipki.security.ConcurrentContentSigner;
@@ -175,6 +184,12 @@ public final class CaClientImpl implements CaClient {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private HttpTransport httpTransport;
+
+  private boolean ownHttpTransport;
+
+  private Executor asyncExecutor;
+
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
   public CaClientImpl() {
@@ -184,6 +199,22 @@ public final class CaClientImpl implements CaClient {
     this.securityFactory = securityFactory;
   }
 
+  /**
+   * Sets the transport to communicate with the CAs. If not set, a {@link NettyHttpTransport}
+   * with the default configuration will be used.
+   */
+  public void setHttpTransport(HttpTransport httpTransport) {
+    this.httpTransport = httpTransport;
+  }
+
+  /**
+   * Sets the executor to process the responses of the asynchronous requests. If not set,
+   * the {@link java.util.concurrent.ForkJoinPool#commonPool()} will be used.
+   */
+  public void setAsyncExecutor(Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
   /**
    * TODO.
    * @return names of CAs which must not been configured.
@@ -247,6 +278,11 @@ public final class CaClientImpl implements CaClient {
     }
     this.initialized.set(false);
 
+    if (httpTransport == null) {
+      httpTransport = new NettyHttpTransport();
+      ownHttpTransport = true;
+    }
+
     LOG.info("initializing ...");
     File configFile = new File(IoUtil.expandFilepath(confFile));
     if (!configFile.exists()) {
@@ -417,16 +453,20 @@ public final class CaClientImpl implements CaClient {
       X509CmpRequestor cmpRequestor;
       if (requestorSigners.containsKey(requestorName)) {
         cmpRequestor = new DfltHttpX509CmpRequestor(requestorSigners.get(requestorName),
-            ca.getResponder(), ca.getUrl(), securityFactory);
+            ca.getResponder(), ca.getUrl(), httpTransport, securityFactory);
         cmpRequestor.setSignRequest(requestorSignRequests.get(requestorName));
       } else if (requestorCerts.containsKey(requestorName)) {
         cmpRequestor = new DfltHttpX509CmpRequestor(requestorCerts.get(requestorName),
-            ca.getResponder(), ca.getUrl(), securityFactory);
+            ca.getResponder(), ca.getUrl(), httpTransport, securityFactory);
       } else {
         throw new CaClientException("could not find requestor named " + requestorName
                 + " for CA " + ca.getName());
       }
 
+      if (asyncExecutor != null) {
+        cmpRequestor.setAsyncExecutor(asyncExecutor);
+      }
+
       ca.setRequestor(cmpRequestor);
       this.casMap.put(ca.getName(), ca);
     }
@@ -489,6 +529,12 @@ public final class CaClientImpl implements CaClient {
       }
       scheduledThreadPoolExecutor = null;
     }
+
+    if (ownHttpTransport && httpTransport != null) {
+      httpTransport.close();
+      httpTransport = null;
+      ownHttpTransport = false;
+    }
   }
 
   @Override
@@ -496,7 +542,39 @@ public final class CaClientImpl implements CaClient {
       Date notBefore, Date notAfter, RequestResponseDebug debug)
       throws CaClientException, PkiErrorException {
     ParamUtil.requireNonNull("csr", csr);
+    CaConf ca = getCaForProfile(caName, profile);
+
+    final String id = "cert-1";
+    CsrEnrollCertRequest request = new CsrEnrollCertRequest(id, profile, csr);
+    EnrollCertResultResp result;
+    try {
+      result = ca.getRequestor().requestCertificate(request, notBefore, notAfter, debug);
+    } catch (CmpRequestorException ex) {
+      throw new CaClientException(ex.getMessage(), ex);
+    }
+
+    return parseEnrollCertResult(result);
+  } // method requestCert
+
+  @Override
+  public CompletableFuture<EnrollCertResult> requestCertAsync(String caName,
+      CertificationRequest csr, String profile, Date notBefore, Date notAfter,
+      RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("csr", csr);
+    CaConf ca;
+    try {
+      ca = getCaForProfile(caName, profile);
+    } catch (CaClientException ex) {
+      return AsyncUtil.failedFuture(ex);
+    }
 
+    final String id = "cert-1";
+    CsrEnrollCertRequest request = new CsrEnrollCertRequest(id, profile, csr);
+    return convert(ca.getRequestor().requestCertificateAsync(request, notBefore, notAfter, debug),
+        newEnrollCertResultParser());
+  } // method requestCertAsync
+
+  private CaConf getCaForProfile(String caName, String profile) throws CaClientException {
     if (caName == null) {
       caName = getCaNameForProfile(profile);
     } else {
@@ -511,29 +589,53 @@ public final class CaClientImpl implements CaClient {
     if (ca == null) {
       throw new CaClientException("could not find CA named " + caName);
     }
+    return ca;
+  }
 
-    final String id = "cert-1";
-    CsrEnrollCertRequest request = new CsrEnrollCertRequest(id, profile, csr);
+  @Override
+  public EnrollCertResult requestCerts(String caName, EnrollCertRequest request,
+      RequestResponseDebug debug) throws CaClientException, PkiErrorException {
+    ParamUtil.requireNonNull("request", request);
+
+    List<EnrollCertRequestEntry> requestEntries = request.getRequestEntries();
+    if (CollectionUtil.isEmpty(requestEntries)) {
+      return null;
+    }
+
+    CaConf ca = getCaForRequest(caName, request);
     EnrollCertResultResp result;
     try {
-      result = ca.getRequestor().requestCertificate(request, notBefore, notAfter, debug);
+      result = ca.getRequestor().requestCertificate(request, debug);
     } catch (CmpRequestorException ex) {
       throw new CaClientException(ex.getMessage(), ex);
     }
 
     return parseEnrollCertResult(result);
-  } // method requestCert
+  } // method requestCerts
 
   @Override
-  public EnrollCertResult requestCerts(String caName, EnrollCertRequest request,
-      RequestResponseDebug debug) throws CaClientException, PkiErrorException {
+  public CompletableFuture<EnrollCertResult> requestCertsAsync(String caName,
+      EnrollCertRequest request, RequestResponseDebug debug) {
     ParamUtil.requireNonNull("request", request);
 
-    List<EnrollCertRequestEntry> requestEntries = request.getRequestEntries();
-    if (CollectionUtil.isEmpty(requestEntries)) {
-      return null;
+    if (CollectionUtil.isEmpty(request.getRequestEntries())) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    CaConf ca;
+    try {
+      ca = getCaForRequest(caName, request);
+    } catch (CaClientException ex) {
+      return AsyncUtil.failedFuture(ex);
     }
 
+    return convert(ca.getRequestor().requestCertificateAsync(request, debug),
+        newEnrollCertResultParser());
+  } // method requestCertsAsync
+
+  private CaConf getCaForRequest(String caName, EnrollCertRequest request)
+      throws CaClientException {
+    List<EnrollCertRequestEntry> requestEntries = request.getRequestEntries();
     boolean bo = (caName != null);
     if (caName == null) {
       // detect the CA name
@@ -558,16 +660,8 @@ public final class CaClientImpl implements CaClient {
     if (ca == null) {
       throw new CaClientException("could not find CA named " + caName);
     }
-
-    EnrollCertResultResp result;
-    try {
-      result = ca.getRequestor().requestCertificate(request, debug);
-    } catch (CmpRequestorException ex) {
-      throw new CaClientException(ex.getMessage(), ex);
-    }
-
-    return parseEnrollCertResult(result);
-  } // method requestCerts
+    return ca;
+  } // method getCaForRequest
 
   private void checkCertprofileSupportInCa(String certprofile, String caName)
       throws CaClientException {
@@ -628,6 +722,29 @@ public final class CaClientImpl implements CaClient {
     ParamUtil.requireNonNull("serial", serial);
 
     final String id = "cert-1";
+    RevokeCertRequest request = buildRevokeCertRequest(ca, id, serial, reason, invalidityDate);
+    Map<String, CertIdOrError> result = revokeCerts(request, debug);
+    return (result == null) ? null : result.get(id);
+  }
+
+  @Override
+  public CompletableFuture<CertIdOrError> revokeCertAsync(String caName, BigInteger serial,
+      int reason, Date invalidityTime, RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("serial", serial);
+    CaConf ca;
+    try {
+      ca = getCa(caName);
+    } catch (CaClientException ex) {
+      return AsyncUtil.failedFuture(ex);
+    }
+
+    final String id = "cert-1";
+    RevokeCertRequest request = buildRevokeCertRequest(ca, id, serial, reason, invalidityTime);
+    return revokeCertsAsync(request, debug).thenApply(newResultEntryGetter(id));
+  }
+
+  private static RevokeCertRequest buildRevokeCertRequest(CaConf ca, String id, BigInteger serial,
+      int reason, Date invalidityDate) {
     RevokeCertRequestEntry entry = new RevokeCertRequestEntry(id, ca.getSubject(), serial, reason,
         invalidityDate);
     if (ca.getCmpControl().isRrAkiRequired()) {
@@ -636,8 +753,7 @@ public final class CaClientImpl implements CaClient {
 
     RevokeCertRequest request = new RevokeCertRequest();
     request.addRequestEntry(entry);
-    Map<String, CertIdOrError> result = revokeCerts(request, debug);
-    return (result == null) ? null : result.get(id);
+    return request;
   }
 
   @Override
@@ -650,16 +766,39 @@ public final class CaClientImpl implements CaClient {
       return Collections.emptyMap();
     }
 
-    X500Name issuer = requestEntries.get(0).getIssuer();
-    for (int i = 1; i < requestEntries.size(); i++) {
-      if (!issuer.equals(requestEntries.get(i).getIssuer())) {
-        throw new PkiErrorException(PKIStatus.REJECTION, PKIFailureInfo.badRequest,
-            "revoking certificates issued by more than one CA is not allowed");
-      }
+    X509CmpRequestor cmpRequestor = getCaForRevocation(request).getRequestor();
+    RevokeCertResultType result;
+    try {
+      result = cmpRequestor.revokeCertificate(request, debug);
+    } catch (CmpRequestorException ex) {
+      throw new CaClientException(ex.getMessage(), ex);
+    }
+
+    return parseRevokeCertResult(result);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, CertIdOrError>> revokeCertsAsync(
+      RevokeCertRequest request, RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("request", request);
+
+    if (CollectionUtil.isEmpty(request.getRequestEntries())) {
+      return CompletableFuture.completedFuture(Collections.<String, CertIdOrError>emptyMap());
+    }
+
+    CompletableFuture<RevokeCertResultType> future;
+    try {
+      future = getCaForRevocation(request).getRequestor().revokeCertificateAsync(request, debug);
+    } catch (CaClientException | PkiErrorException | CmpRequestorException ex) {
+      return AsyncUtil.failedFuture(ex);
     }
 
-    final String caName = getCaNameByIssuer(issuer);
-    CaConf caConf = casMap.get(caName);
+    return convert(future, newRevokeCertResultParser());
+  }
+
+  private CaConf getCaForRevocation(RevokeCertRequest request)
+      throws CaClientException, PkiErrorException {
+    CaConf caConf = getCaForIssuer(request.getRequestEntries(), "revoking");
     if (caConf.getCmpControl().isRrAkiRequired()) {
       byte[] aki = caConf.getSubjectKeyIdentifier();
       List<RevokeCertRequestEntry> entries = request.getRequestEntries();
@@ -669,16 +808,75 @@ public final class CaClientImpl implements CaClient {
         }
       }
     }
+    return caConf;
+  }
 
-    X509CmpRequestor cmpRequestor = caConf.getRequestor();
-    RevokeCertResultType result;
-    try {
-      result = cmpRequestor.revokeCertificate(request, debug);
-    } catch (CmpRequestorException ex) {
-      throw new CaClientException(ex.getMessage(), ex);
+  /**
+   * Returns the CA which has issued the certificates of all entries.
+   * @param action action used in the error message, e.g. revoking.
+   */
+  private CaConf getCaForIssuer(List<? extends IssuerSerialEntry> requestEntries, String action)
+      throws CaClientException, PkiErrorException {
+    X500Name issuer = requestEntries.get(0).getIssuer();
+    for (int i = 1; i < requestEntries.size(); i++) {
+      if (!issuer.equals(requestEntries.get(i).getIssuer())) {
+        throw new PkiErrorException(PKIStatus.REJECTION, PKIFailureInfo.badRequest,
+            action + " certificates issued by more than one CA is not allowed");
+      }
     }
 
-    return parseRevokeCertResult(result);
+    return casMap.get(getCaNameByIssuer(issuer));
+  }
+
+  private CheckedFunction<RevokeCertResultType, Map<String, CertIdOrError>>
+      newRevokeCertResultParser() {
+    return new CheckedFunction<RevokeCertResultType, Map<String, CertIdOrError>>() {
+      @Override
+      public Map<String, CertIdOrError> apply(RevokeCertResultType result)
+          throws CaClientException {
+        return parseRevokeCertResult(result);
+      }
+    };
+  }
+
+  private static Function<Map<String, CertIdOrError>, CertIdOrError>
+      newResultEntryGetter(final String id) {
+    return new Function<Map<String, CertIdOrError>, CertIdOrError>() {
+      @Override
+      public CertIdOrError apply(Map<String, CertIdOrError> result) {
+        return (result == null) ? null : result.get(id);
+      }
+    };
+  }
+
+  /**
+   * Converts the result of the requestor. The {@link CmpRequestorException} is translated
+   * to {@link CaClientException}, and the {@link PkiErrorException} is passed through.
+   */
+  private static <T, R> CompletableFuture<R> convert(CompletableFuture<T> future,
+      final CheckedFunction<T, R> converter) {
+    final CompletableFuture<R> ret = new CompletableFuture<>();
+    future.whenComplete(new BiConsumer<T, Throwable>() {
+      @Override
+      public void accept(T result, Throwable th) {
+        if (th != null) {
+          ret.completeExceptionally(toCaClientException(AsyncUtil.unwrap(th)));
+          return;
+        }
+
+        try {
+          ret.complete(converter.apply(result));
+        } catch (Exception ex) {
+          ret.completeExceptionally(toCaClientException(ex));
+        }
+      }
+    });
+    return ret;
+  }
+
+  private static Throwable toCaClientException(Throwable th) {
+    return (th instanceof CmpRequestorException)
+        ? new CaClientException(th.getMessage(), th) : th;
   }
 
   private Map<String, CertIdOrError> parseRevokeCertResult(RevokeCertResultType result)
@@ -733,6 +931,33 @@ public final class CaClientImpl implements CaClient {
     return result;
   }
 
+  @Override
+  public CompletableFuture<X509CRL> downloadCrlAsync(String caName, BigInteger crlNumber,
+      RequestResponseDebug debug) {
+    caName = ParamUtil.requireNonNull("caName", caName).toLowerCase();
+
+    CompletableFuture<X509CRL> future;
+    try {
+      init0(false);
+
+      CaConf ca = casMap.get(caName);
+      if (ca == null) {
+        throw new IllegalArgumentException("unknown CA " + caName);
+      }
+
+      future = ca.getRequestor().downloadCrlAsync(crlNumber, debug);
+    } catch (CaClientException | CmpRequestorException ex) {
+      return AsyncUtil.failedFuture(ex);
+    }
+
+    return convert(future, new CheckedFunction<X509CRL, X509CRL>() {
+      @Override
+      public X509CRL apply(X509CRL crl) {
+        return crl;
+      }
+    });
+  }
+
   @Override
   public X509CRL generateCrl(String caName, RequestResponseDebug debug)
       throws CaClientException, PkiErrorException {
@@ -931,6 +1156,29 @@ public final class CaClientImpl implements CaClient {
     ParamUtil.requireNonNull("ca", ca);
     ParamUtil.requireNonNull("serial", serial);
     final String id = "cert-1";
+    UnrevokeOrRemoveCertRequest request = buildUnrevokeOrRemoveCertRequest(ca, id, serial);
+    Map<String, CertIdOrError> result = unrevokeCerts(request, debug);
+    return (result == null) ? null : result.get(id);
+  }
+
+  @Override
+  public CompletableFuture<CertIdOrError> unrevokeCertAsync(String caName, BigInteger serial,
+      RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("serial", serial);
+    CaConf ca;
+    try {
+      ca = getCa(caName);
+    } catch (CaClientException ex) {
+      return AsyncUtil.failedFuture(ex);
+    }
+
+    final String id = "cert-1";
+    UnrevokeOrRemoveCertRequest request = buildUnrevokeOrRemoveCertRequest(ca, id, serial);
+    return unrevokeCertsAsync(request, debug).thenApply(newResultEntryGetter(id));
+  }
+
+  private static UnrevokeOrRemoveCertRequest buildUnrevokeOrRemoveCertRequest(CaConf ca,
+      String id, BigInteger serial) {
     UnrevokeOrRemoveCertEntry entry = new UnrevokeOrRemoveCertEntry(id, ca.getSubject(), serial);
     if (ca.getCmpControl().isRrAkiRequired()) {
       entry.setAuthorityKeyIdentifier(ca.getSubjectKeyIdentifier());
@@ -938,8 +1186,7 @@ public final class CaClientImpl implements CaClient {
 
     UnrevokeOrRemoveCertRequest request = new UnrevokeOrRemoveCertRequest();
     request.addRequestEntry(entry);
-    Map<String, CertIdOrError> result = unrevokeCerts(request, debug);
-    return (result == null) ? null : result.get(id);
+    return request;
   }
 
   @Override
@@ -953,16 +1200,7 @@ public final class CaClientImpl implements CaClient {
       return Collections.emptyMap();
     }
 
-    X500Name issuer = requestEntries.get(0).getIssuer();
-    for (int i = 1; i < requestEntries.size(); i++) {
-      if (!issuer.equals(requestEntries.get(i).getIssuer())) {
-        throw new PkiErrorException(PKIStatus.REJECTION, PKIFailureInfo.badRequest,
-            "unrevoking certificates issued by more than one CA is not allowed");
-      }
-    }
-
-    final String caName = getCaNameByIssuer(issuer);
-    X509CmpRequestor cmpRequestor = casMap.get(caName).getRequestor();
+    X509CmpRequestor cmpRequestor = getCaForIssuer(requestEntries, "unrevoking").getRequestor();
     RevokeCertResultType result;
     try {
       result = cmpRequestor.unrevokeCertificate(request, debug);
@@ -973,6 +1211,28 @@ public final class CaClientImpl implements CaClient {
     return parseRevokeCertResult(result);
   } // method unrevokeCerts
 
+  @Override
+  public CompletableFuture<Map<String, CertIdOrError>> unrevokeCertsAsync(
+      UnrevokeOrRemoveCertRequest request, RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("request", request);
+
+    CompletableFuture<RevokeCertResultType> future;
+    try {
+      init0(false);
+      List<UnrevokeOrRemoveCertEntry> requestEntries = request.getRequestEntries();
+      if (CollectionUtil.isEmpty(requestEntries)) {
+        return CompletableFuture.completedFuture(Collections.<String, CertIdOrError>emptyMap());
+      }
+
+      X509CmpRequestor cmpRequestor = getCaForIssuer(requestEntries, "unrevoking").getRequestor();
+      future = cmpRequestor.unrevokeCertificateAsync(request, debug);
+    } catch (CaClientException | PkiErrorException | CmpRequestorException ex) {
+      return AsyncUtil.failedFuture(ex);
+    }
+
+    return convert(future, newRevokeCertResultParser());
+  } // method unrevokeCertsAsync
+
   @Override
   public CertIdOrError removeCert(String caName, X509Certificate cert, RequestResponseDebug debug)
       throws CaClientException, PkiErrorException {
@@ -994,13 +1254,7 @@ public final class CaClientImpl implements CaClient {
     ParamUtil.requireNonNull("ca", ca);
     ParamUtil.requireNonNull("serial", serial);
     final String id = "cert-1";
-    UnrevokeOrRemoveCertEntry entry = new UnrevokeOrRemoveCertEntry(id, ca.getSubject(), serial);
-    if (ca.getCmpControl().isRrAkiRequired()) {
-      entry.setAuthorityKeyIdentifier(ca.getSubjectKeyIdentifier());
-    }
-
-    UnrevokeOrRemoveCertRequest request = new UnrevokeOrRemoveCertRequest();
-    request.addRequestEntry(entry);
+    UnrevokeOrRemoveCertRequest request = buildUnrevokeOrRemoveCertRequest(ca, id, serial);
     Map<String, CertIdOrError> result = removeCerts(request, debug);
     return (result == null) ? null : result.get(id);
   }
@@ -1016,16 +1270,7 @@ public final class CaClientImpl implements CaClient {
       return Collections.emptyMap();
     }
 
-    X500Name issuer = requestEntries.get(0).getIssuer();
-    for (int i = 1; i < requestEntries.size(); i++) {
-      if (!issuer.equals(requestEntries.get(i).getIssuer())) {
-        throw new PkiErrorException(PKIStatus.REJECTION, PKIFailureInfo.badRequest,
-            "removing certificates issued by more than one CA is not allowed");
-      }
-    }
-
-    final String caName = getCaNameByIssuer(issuer);
-    X509CmpRequestor cmpRequestor = casMap.get(caName).getRequestor();
+    X509CmpRequestor cmpRequestor = getCaForIssuer(requestEntries, "removing").getRequestor();
     RevokeCertResultType result;
     try {
       result = cmpRequestor.removeCertificate(request, debug);
@@ -1088,30 +1333,20 @@ public final class CaClientImpl implements CaClient {
     }
 
     try {
-      HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
-      InputStream inputStream = httpUrlConnection.getInputStream();
-      int responseCode = httpUrlConnection.getResponseCode();
+      HttpTransportResponse httpResponse = httpTransport.send("GET", serverUrl, null, null);
+      int responseCode = httpResponse.getStatusCode();
       if (responseCode != HttpURLConnection.HTTP_OK
           && responseCode != HttpURLConnection.HTTP_INTERNAL_ERROR) {
-        inputStream.close();
         throw new IOException(String.format("bad response: code='%s', message='%s'",
-            httpUrlConnection.getResponseCode(), httpUrlConnection.getResponseMessage()));
+            responseCode, httpResponse.getReasonPhrase()));
       }
 
-      String responseContentType = httpUrlConnection.getContentType();
-      boolean isValidContentType = false;
-      if (responseContentType != null) {
-        if ("application/json".equalsIgnoreCase(responseContentType)) {
-          isValidContentType = true;
-        }
-      }
-
-      if (!isValidContentType) {
-        inputStream.close();
-        throw new IOException("bad response: mime type " + responseContentType + " not supported!");
+      if (!httpResponse.hasContentType("application/json")) {
+        throw new IOException("bad response: mime type " + httpResponse.getContentType()
+            + " not supported!");
       }
 
-      byte[] responseBytes = IoUtil.read(inputStream);
+      byte[] responseBytes = httpResponse.getContent();
       if (responseBytes.length == 0) {
         healthCheckResult.setHealthy(responseCode == HttpURLConnection.HTTP_OK);
       } else {
@@ -1134,6 +1369,15 @@ public final class CaClientImpl implements CaClient {
     return healthCheckResult;
   } // method getHealthCheckResult
 
+  private CheckedFunction<EnrollCertResultResp, EnrollCertResult> newEnrollCertResultParser() {
+    return new CheckedFunction<EnrollCertResultResp, EnrollCertResult>() {
+      @Override
+      public EnrollCertResult apply(EnrollCertResultResp result) throws CaClientException {
+        return parseEnrollCertResult(result);
+      }
+    };
+  }
+
   private EnrollCertResult parseEnrollCertResult(EnrollCertResultResp result)
       throws CaClientException {
     Map<String, CertOrError> certOrErrors = new HashMap<>();
@@ -25,6 +25,11 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
@@ -101,6 +106,8 @@ abstract class CmpRequestor {
 
   private boolean sendRequestorCert;
 
+  private Executor asyncExecutor = ForkJoinPool.commonPool();
+
   public CmpRequestor(X509Certificate requestorCert, CmpResponder responder,
       SecurityFactory securityFactory) {
     ParamUtil.requireNonNull("requestorCert", requestorCert);
@@ -138,6 +145,20 @@ abstract class CmpRequestor {
 
   protected abstract byte[] send(byte[] request) throws IOException;
 
+  /**
+   * Sends the request asynchronously. This implementation sends the request in the calling
+   * thread, the subclasses should override it if the transport is non-blocking.
+   */
+  protected CompletableFuture<byte[]> sendAsync(byte[] request) {
+    CompletableFuture<byte[]> future = new CompletableFuture<>();
+    try {
+      future.complete(send(request));
+    } catch (IOException ex) {
+      future.completeExceptionally(ex);
+    }
+    return future;
+  }
+
   protected PKIMessage sign(PKIMessage request) throws CmpRequestorException {
     ParamUtil.requireNonNull("request", request);
     if (requestor == null) {
@@ -156,32 +177,81 @@ abstract class CmpRequestor {
     ParamUtil.requireNonNull("request", request);
 
     PKIMessage tmpRequest = (signRequest) ? sign(request) : request;
+    byte[] encodedRequest = encode(tmpRequest);
+    RequestResponsePair reqResp = newRequestResponsePair(encodedRequest, debug);
 
-    byte[] encodedRequest;
+    byte[] encodedResponse;
     try {
-      encodedRequest = tmpRequest.getEncoded();
+      encodedResponse = send(encodedRequest);
     } catch (IOException ex) {
-      LOG.error("could not encode the PKI request {}", tmpRequest);
-      throw new CmpRequestorException(ex.getMessage(), ex);
+      LOG.error("could not send the PKI request {} to server", tmpRequest);
+      throw new CmpRequestorException("TRANSPORT_ERROR", ex);
     }
 
-    RequestResponsePair reqResp = null;
-    if (debug != null) {
-      reqResp = new RequestResponsePair();
-      debug.add(reqResp);
-      if (debug.saveRequest()) {
-        reqResp.setRequest(encodedRequest);
+    return processResponse(request, encodedResponse, reqResp, debug);
+  } // method signAndSend
+
+  /**
+   * Asynchronous variant of {@link #signAndSend(PKIMessage, RequestResponseDebug)}. The
+   * response is processed by the {@code asyncExecutor}, the returned future fails with
+   * {@link CmpRequestorException}.
+   */
+  protected CompletableFuture<PkiResponse> signAndSendAsync(final PKIMessage request,
+      final RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("request", request);
+
+    final PKIMessage tmpRequest;
+    final byte[] encodedRequest;
+    try {
+      tmpRequest = (signRequest) ? sign(request) : request;
+      encodedRequest = encode(tmpRequest);
+    } catch (CmpRequestorException ex) {
+      return AsyncUtil.failedFuture(ex);
+    }
+
+    final RequestResponsePair reqResp = newRequestResponsePair(encodedRequest, debug);
+
+    return sendAsync(encodedRequest).handleAsync(new BiFunction<byte[], Throwable, PkiResponse>() {
+      @Override
+      public PkiResponse apply(byte[] encodedResponse, Throwable th) {
+        try {
+          if (th != null) {
+            LOG.error("could not send the PKI request {} to server", tmpRequest);
+            throw new CmpRequestorException("TRANSPORT_ERROR", AsyncUtil.unwrap(th));
+          }
+          return processResponse(request, encodedResponse, reqResp, debug);
+        } catch (CmpRequestorException ex) {
+          throw new CompletionException(ex);
+        }
       }
-    }
+    }, asyncExecutor);
+  } // method signAndSendAsync
 
-    byte[] encodedResponse;
+  private static byte[] encode(PKIMessage request) throws CmpRequestorException {
     try {
-      encodedResponse = send(encodedRequest);
+      return request.getEncoded();
     } catch (IOException ex) {
-      LOG.error("could not send the PKI request {} to server", tmpRequest);
-      throw new CmpRequestorException("TRANSPORT_ERROR", ex);
+      LOG.error("could not encode the PKI request {}", request);
+      throw new CmpRequestorException(ex.getMessage(), ex);
+    }
+  }
+
+  private static RequestResponsePair newRequestResponsePair(byte[] encodedRequest,
+      RequestResponseDebug debug) {
+    if (debug == null) {
+      return null;
+    }
+
+    RequestResponsePair reqResp = new RequestResponsePair();
+    debug.add(reqResp);
+    if (debug.saveRequest()) {
+      reqResp.setRequest(encodedRequest);
     }
+    return reqResp;
+  }
 
+  private PkiResponse processResponse(PKIMessage request, byte[] encodedResponse,
+      RequestResponsePair reqResp, RequestResponseDebug debug) throws CmpRequestorException {
     if (reqResp != null && debug.saveResponse()) {
       reqResp.setResponse(encodedResponse);
     }
@@ -235,7 +305,7 @@ abstract class CmpRequestor {
     }
 
     return ret;
-  } // method signAndSend
+  } // method processResponse
 
   protected ASN1Encodable extractGeneralRepContent(PkiResponse response, String expectedType)
       throws CmpRequestorException, PkiErrorException {
@@ -507,6 +577,10 @@ abstract class CmpRequestor {
     this.sendRequestorCert = sendRequestorCert;
   }
 
+  public void setAsyncExecutor(Executor asyncExecutor) {
+    this.asyncExecutor = ParamUtil.requireNonNull("asyncExecutor", asyncExecutor);
+  }
+
   public boolean isSignRequest() {
     return signRequest;
   }
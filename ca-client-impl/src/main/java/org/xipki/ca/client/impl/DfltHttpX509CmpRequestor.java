@@ -18,15 +18,16 @@
 package org.xipki.ca.client.impl;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.CompletableFuture;
 
-import org.xipki.common.util.IoUtil;
+import org.xipki.ca.client.impl.AsyncUtil.CheckedFunction;
 import org.xipki.common.util.ParamUtil;
+import org.xipki.http.client.HttpTransport;
+import org.xipki.http.client.HttpTransportResponse;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.SecurityFactory;
 
@@ -44,10 +45,13 @@ class DfltHttpX509CmpRequestor extends X509CmpRequestor {
 
   private final URL serverUrl;
 
+  private final HttpTransport transport;
+
   DfltHttpX509CmpRequestor(X509Certificate requestorCert, CmpResponder responder,
-      String serverUrl, SecurityFactory securityFactory) {
+      String serverUrl, HttpTransport transport, SecurityFactory securityFactory) {
     super(requestorCert, responder, securityFactory);
     ParamUtil.requireNonBlank("serverUrl", serverUrl);
+    this.transport = ParamUtil.requireNonNull("transport", transport);
 
     try {
       this.serverUrl = new URL(serverUrl);
@@ -57,9 +61,10 @@ class DfltHttpX509CmpRequestor extends X509CmpRequestor {
   }
 
   DfltHttpX509CmpRequestor(ConcurrentContentSigner requestor, CmpResponder responder,
-      String serverUrl, SecurityFactory securityFactory) {
+      String serverUrl, HttpTransport transport, SecurityFactory securityFactory) {
     super(requestor, responder, securityFactory);
     ParamUtil.requireNonBlank("serverUrl", serverUrl);
+    this.transport = ParamUtil.requireNonNull("transport", transport);
 
     try {
       this.serverUrl = new URL(serverUrl);
@@ -71,40 +76,33 @@ class DfltHttpX509CmpRequestor extends X509CmpRequestor {
   @Override
   public byte[] send(byte[] request) throws IOException {
     ParamUtil.requireNonNull("request", request);
-    HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
-    httpUrlConnection.setDoOutput(true);
-    httpUrlConnection.setUseCaches(false);
-
-    int size = request.length;
-
-    httpUrlConnection.setRequestMethod("POST");
-    httpUrlConnection.setRequestProperty("Content-Type", CMP_REQUEST_MIMETYPE);
-    httpUrlConnection.setRequestProperty("Content-Length", java.lang.Integer.toString(size));
-    OutputStream outputstream = httpUrlConnection.getOutputStream();
-    outputstream.write(request);
-    outputstream.flush();
-
-    InputStream inputStream = httpUrlConnection.getInputStream();
-    if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-      inputStream.close();
-      throw new IOException("bad response: " + httpUrlConnection.getResponseCode() + "    "
-              + httpUrlConnection.getResponseMessage());
-    }
+    return getContent(transport.send("POST", serverUrl, CMP_REQUEST_MIMETYPE, request));
+  } // method send
 
-    String responseContentType = httpUrlConnection.getContentType();
-    boolean isValidContentType = false;
-    if (responseContentType != null) {
-      if (responseContentType.equalsIgnoreCase(CMP_RESPONSE_MIMETYPE)) {
-        isValidContentType = true;
-      }
+  @Override
+  protected CompletableFuture<byte[]> sendAsync(byte[] request) {
+    ParamUtil.requireNonNull("request", request);
+    return transport.sendAsync("POST", serverUrl, CMP_REQUEST_MIMETYPE, request).thenApply(
+        AsyncUtil.unchecked(new CheckedFunction<HttpTransportResponse, byte[]>() {
+          @Override
+          public byte[] apply(HttpTransportResponse response) throws IOException {
+            return getContent(response);
+          }
+        }));
+  } // method sendAsync
+
+  private static byte[] getContent(HttpTransportResponse response) throws IOException {
+    if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+      throw new IOException("bad response: " + response.getStatusCode() + "    "
+              + response.getReasonPhrase());
     }
 
-    if (!isValidContentType) {
-      inputStream.close();
-      throw new IOException("bad response: mime type " + responseContentType + " not supported!");
+    if (!response.hasContentType(CMP_RESPONSE_MIMETYPE)) {
+      throw new IOException("bad response: mime type " + response.getContentType()
+          + " not supported!");
     }
 
-    return IoUtil.read(inputStream);
-  } // method send
+    return response.getContent();
+  }
 
 }
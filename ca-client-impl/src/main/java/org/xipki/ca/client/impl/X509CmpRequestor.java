@@ -31,6 +31,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -103,6 +105,7 @@ import org.xipki.ca.client.api.dto.RevokeCertResultEntry;
 import org.xipki.ca.client.api.dto.RevokeCertResultType;
 import org.xipki.ca.client.api.dto.UnrevokeOrRemoveCertEntry;
 import org.xipki.ca.client.api.dto.UnrevokeOrRemoveCertRequest;
+import org.xipki.ca.client.impl.AsyncUtil.CheckedFunction;
 import org.xipki.cmp.CmpUtf8Pairs;
 import org.xipki.cmp.CmpUtil;
 import org.xipki.cmp.PkiResponse;
@@ -132,6 +135,22 @@ abstract class X509CmpRequestor extends CmpRequestor {
   private static final DigestCalculatorProvider DIGEST_CALCULATOR_PROVIDER =
       new BcDigestCalculatorProvider();
 
+  /**
+   * Result of the enrollment and the confirmation to be sent.
+   */
+  private static final class EnrollCertEvaluation {
+
+    private final EnrollCertResultResp result;
+
+    private final PKIMessage confirmRequest;
+
+    EnrollCertEvaluation(EnrollCertResultResp result, PKIMessage confirmRequest) {
+      this.result = result;
+      this.confirmRequest = confirmRequest;
+    }
+
+  } // class EnrollCertEvaluation
+
   private static final BigInteger MINUS_ONE = BigInteger.valueOf(-1);
 
   private static final Logger LOG = LoggerFactory.getLogger(X509CmpRequestor.class);
@@ -160,6 +179,13 @@ abstract class X509CmpRequestor extends CmpRequestor {
     return evaluateCrlResponse(response, action);
   }
 
+  public CompletableFuture<X509CRL> generateCrlAsync(RequestResponseDebug debug)
+      throws CmpRequestorException {
+    int action = XiSecurityConstants.CMP_ACTION_GEN_CRL;
+    PKIMessage request = buildMessageWithXipkAction(action, null);
+    return signAndSendAsync(request, debug).thenApply(newCrlResponseEvaluator(action));
+  }
+
   public X509CRL downloadCurrentCrl(RequestResponseDebug debug)
       throws CmpRequestorException, PkiErrorException {
     return downloadCrl((BigInteger) null, debug);
@@ -181,6 +207,34 @@ abstract class X509CmpRequestor extends CmpRequestor {
     return evaluateCrlResponse(response, action);
   }
 
+  /**
+   * Asynchronous variant of {@link #downloadCrl(BigInteger, RequestResponseDebug)}.
+   */
+  public CompletableFuture<X509CRL> downloadCrlAsync(BigInteger crlNumber,
+      RequestResponseDebug debug) throws CmpRequestorException {
+    Integer action = null;
+    PKIMessage request;
+    if (crlNumber == null) {
+      ASN1ObjectIdentifier type = CMPObjectIdentifiers.it_currentCRL;
+      request = buildMessageWithGeneralMsgContent(type, null);
+    } else {
+      action = XiSecurityConstants.CMP_ACTION_GET_CRL_WITH_SN;
+      request = buildMessageWithXipkAction(action, new ASN1Integer(crlNumber));
+    }
+
+    return signAndSendAsync(request, debug).thenApply(newCrlResponseEvaluator(action));
+  }
+
+  private Function<PkiResponse, X509CRL> newCrlResponseEvaluator(final Integer xipkiAction) {
+    return AsyncUtil.unchecked(new CheckedFunction<PkiResponse, X509CRL>() {
+      @Override
+      public X509CRL apply(PkiResponse response) throws CmpRequestorException,
+          PkiErrorException {
+        return evaluateCrlResponse(response, xipkiAction);
+      }
+    });
+  }
+
   private X509CRL evaluateCrlResponse(PkiResponse response, Integer xipkiAction)
       throws CmpRequestorException, PkiErrorException {
     ParamUtil.requireNonNull("response", response);
@@ -244,6 +298,15 @@ abstract class X509CmpRequestor extends CmpRequestor {
     return parse(response, request.getRequestEntries());
   }
 
+  public CompletableFuture<RevokeCertResultType> revokeCertificateAsync(
+      RevokeCertRequest request, RequestResponseDebug debug) throws CmpRequestorException {
+    ParamUtil.requireNonNull("request", request);
+
+    PKIMessage reqMessage = buildRevokeCertRequest(request);
+    return signAndSendAsync(reqMessage, debug).thenApply(
+        newRevokeResponseParser(request.getRequestEntries()));
+  }
+
   public RevokeCertResultType unrevokeCertificate(UnrevokeOrRemoveCertRequest request,
       RequestResponseDebug debug) throws CmpRequestorException, PkiErrorException {
     ParamUtil.requireNonNull("request", request);
@@ -254,6 +317,17 @@ abstract class X509CmpRequestor extends CmpRequestor {
     return parse(response, request.getRequestEntries());
   }
 
+  public CompletableFuture<RevokeCertResultType> unrevokeCertificateAsync(
+      UnrevokeOrRemoveCertRequest request, RequestResponseDebug debug)
+      throws CmpRequestorException {
+    ParamUtil.requireNonNull("request", request);
+
+    PKIMessage reqMessage = buildUnrevokeOrRemoveCertRequest(request,
+        CrlReason.REMOVE_FROM_CRL.getCode());
+    return signAndSendAsync(reqMessage, debug).thenApply(
+        newRevokeResponseParser(request.getRequestEntries()));
+  }
+
   public RevokeCertResultType removeCertificate(UnrevokeOrRemoveCertRequest request,
       RequestResponseDebug debug) throws CmpRequestorException, PkiErrorException {
     ParamUtil.requireNonNull("request", request);
@@ -264,6 +338,17 @@ abstract class X509CmpRequestor extends CmpRequestor {
     return parse(response, request.getRequestEntries());
   }
 
+  private Function<PkiResponse, RevokeCertResultType> newRevokeResponseParser(
+      final List<? extends IssuerSerialEntry> reqEntries) {
+    return AsyncUtil.unchecked(new CheckedFunction<PkiResponse, RevokeCertResultType>() {
+      @Override
+      public RevokeCertResultType apply(PkiResponse response) throws CmpRequestorException,
+          PkiErrorException {
+        return parse(response, reqEntries);
+      }
+    });
+  }
+
   private RevokeCertResultType parse(PkiResponse response,
       List<? extends IssuerSerialEntry> reqEntries)
       throws CmpRequestorException, PkiErrorException {
@@ -349,37 +434,97 @@ abstract class X509CmpRequestor extends CmpRequestor {
     return requestCertificate0(request, reqIdIdMap, PKIBody.TYPE_CERT_REP, debug);
   }
 
+  public CompletableFuture<EnrollCertResultResp> requestCertificateAsync(
+      CsrEnrollCertRequest csr, Date notBefore, Date notAfter, RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("csr", csr);
+
+    PKIMessage request = buildPkiMessage(csr, notBefore, notAfter);
+    Map<BigInteger, String> reqIdIdMap = new HashMap<>();
+    reqIdIdMap.put(MINUS_ONE, csr.getId());
+    return requestCertificate0Async(request, reqIdIdMap, PKIBody.TYPE_CERT_REP, debug);
+  }
+
   public EnrollCertResultResp requestCertificate(EnrollCertRequest req, RequestResponseDebug debug)
       throws CmpRequestorException, PkiErrorException {
     ParamUtil.requireNonNull("req", req);
 
     PKIMessage request = buildPkiMessage(req);
+    return requestCertificate0(request, getReqIdIdMap(req), getExpectedBodyType(req), debug);
+  }
+
+  public CompletableFuture<EnrollCertResultResp> requestCertificateAsync(EnrollCertRequest req,
+      RequestResponseDebug debug) {
+    ParamUtil.requireNonNull("req", req);
+
+    PKIMessage request = buildPkiMessage(req);
+    return requestCertificate0Async(request, getReqIdIdMap(req), getExpectedBodyType(req),
+        debug);
+  }
+
+  private static Map<BigInteger, String> getReqIdIdMap(EnrollCertRequest req) {
     Map<BigInteger, String> reqIdIdMap = new HashMap<>();
     List<EnrollCertRequestEntry> reqEntries = req.getRequestEntries();
 
     for (EnrollCertRequestEntry reqEntry : reqEntries) {
       reqIdIdMap.put(reqEntry.getCertReq().getCertReqId().getValue(), reqEntry.getId());
     }
+    return reqIdIdMap;
+  }
 
-    int exptectedBodyType;
+  private static int getExpectedBodyType(EnrollCertRequest req) {
     switch (req.getType()) {
       case CERT_REQ:
-        exptectedBodyType = PKIBody.TYPE_CERT_REP;
-        break;
+        return PKIBody.TYPE_CERT_REP;
       case KEY_UPDATE:
-        exptectedBodyType = PKIBody.TYPE_KEY_UPDATE_REP;
-        break;
+        return PKIBody.TYPE_KEY_UPDATE_REP;
       default:
-        exptectedBodyType = PKIBody.TYPE_CROSS_CERT_REP;
+        return PKIBody.TYPE_CROSS_CERT_REP;
     }
-
-    return requestCertificate0(request, reqIdIdMap, exptectedBodyType, debug);
   }
 
   private EnrollCertResultResp requestCertificate0(PKIMessage reqMessage,
       Map<BigInteger, String> reqIdIdMap, int expectedBodyType, RequestResponseDebug debug)
       throws CmpRequestorException, PkiErrorException {
     PkiResponse response = signAndSend(reqMessage, debug);
+    EnrollCertEvaluation evaluation = evaluateEnrollResponse(response, reqIdIdMap,
+        expectedBodyType);
+    if (evaluation.confirmRequest != null) {
+      response = signAndSend(evaluation.confirmRequest, debug);
+      checkProtection(response);
+    }
+    return evaluation.result;
+  } // method requestCertificate0
+
+  private CompletableFuture<EnrollCertResultResp> requestCertificate0Async(
+      PKIMessage reqMessage, final Map<BigInteger, String> reqIdIdMap,
+      final int expectedBodyType, final RequestResponseDebug debug) {
+    return signAndSendAsync(reqMessage, debug).thenCompose(AsyncUtil.unchecked(
+        new CheckedFunction<PkiResponse, CompletableFuture<EnrollCertResultResp>>() {
+          @Override
+          public CompletableFuture<EnrollCertResultResp> apply(PkiResponse response)
+              throws CmpRequestorException, PkiErrorException {
+            final EnrollCertEvaluation evaluation = evaluateEnrollResponse(response,
+                reqIdIdMap, expectedBodyType);
+            if (evaluation.confirmRequest == null) {
+              return CompletableFuture.completedFuture(evaluation.result);
+            }
+
+            return signAndSendAsync(evaluation.confirmRequest, debug).thenApply(
+                AsyncUtil.unchecked(new CheckedFunction<PkiResponse, EnrollCertResultResp>() {
+                  @Override
+                  public EnrollCertResultResp apply(PkiResponse confirmResponse)
+                      throws CmpRequestorException, PkiErrorException {
+                    checkProtection(confirmResponse);
+                    return evaluation.result;
+                  }
+                }));
+          }
+        }));
+  } // method requestCertificate0Async
+
+  private EnrollCertEvaluation evaluateEnrollResponse(PkiResponse response,
+      Map<BigInteger, String> reqIdIdMap, int expectedBodyType)
+      throws CmpRequestorException, PkiErrorException {
     checkProtection(response);
 
     PKIBody respBody = response.getPkiMessage().getBody();
@@ -436,12 +581,12 @@ abstract class X509CmpRequestor extends CmpRequestor {
       if (status == PKIStatus.GRANTED || status == PKIStatus.GRANTED_WITH_MODS) {
         CertifiedKeyPair cvk = certResp.getCertifiedKeyPair();
         if (cvk == null) {
-          return null;
+          return new EnrollCertEvaluation(null, null);
         }
 
         CMPCertificate cmpCert = cvk.getCertOrEncCert().getCertificate();
         if (cmpCert == null) {
-          return null;
+          return new EnrollCertEvaluation(null, null);
         }
 
         resultEntry = new EnrollCertResultEntry(thisId, cmpCert, status);
@@ -480,17 +625,13 @@ abstract class X509CmpRequestor extends CmpRequestor {
     }
 
     if (!requireConfirm) {
-      return result;
+      return new EnrollCertEvaluation(result, null);
     }
 
     PKIMessage confirmRequest = buildCertConfirmRequest(
         response.getPkiMessage().getHeader().getTransactionID(), certConfirmBuilder);
-
-    response = signAndSend(confirmRequest, debug);
-    checkProtection(response);
-
-    return result;
-  } // method requestCertificate0
+    return new EnrollCertEvaluation(result, confirmRequest);
+  } // method evaluateEnrollResponse
 
   private PKIMessage buildCertConfirmRequest(ASN1OctetString tid,
       CertificateConfirmationContentBuilder certConfirmBuilder) throws CmpRequestorException {
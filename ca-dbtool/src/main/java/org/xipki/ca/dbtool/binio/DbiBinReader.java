@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.dbtool.binio;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Reader of the binary dump format written by {@link DbiBinWriter}.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class DbiBinReader implements Closeable {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final String rootElementName;
+
+  private final Inflater inflater;
+
+  private final DataInputStream in;
+
+  private boolean closed;
+
+  public DbiBinReader(InputStream stream, String rootElementName)
+      throws IOException, InvalidDataObjectException {
+    ParamUtil.requireNonNull("stream", stream);
+    this.rootElementName = ParamUtil.requireNonBlank("rootElementName", rootElementName);
+
+    DataInputStream header = new DataInputStream(stream);
+    byte[] magic = new byte[DbiBinWriter.MAGIC.length];
+    header.readFully(magic);
+    if (!Arrays.equals(DbiBinWriter.MAGIC, magic)) {
+      throw new InvalidDataObjectException("the given stream is not in the binary dump format");
+    }
+
+    int version = header.readInt();
+    if (version > DbiBinWriter.VERSION) {
+      throw new InvalidDataObjectException("unsupported version " + version);
+    }
+
+    String thisRootElement = header.readUTF();
+    if (!rootElementName.equals(thisRootElement)) {
+      throw new InvalidDataObjectException("the given stream does not have root element '"
+          + rootElementName + "', but '" + thisRootElement + "'");
+    }
+
+    this.inflater = new Inflater();
+    this.in = new DataInputStream(new InflaterInputStream(stream, inflater, BUFFER_SIZE));
+  }
+
+  public String getRootElementName() {
+    return rootElementName;
+  }
+
+  /**
+   * Starts reading the next record.
+   * @return whether there is a further record.
+   */
+  protected boolean nextRecord() throws IOException, InvalidDataObjectException {
+    int marker = in.readByte();
+    if (marker == DbiBinWriter.RECORD) {
+      return true;
+    } else if (marker == DbiBinWriter.END) {
+      return false;
+    } else {
+      throw new InvalidDataObjectException("invalid record marker " + marker);
+    }
+  }
+
+  protected int readInt() throws IOException {
+    return in.readInt();
+  }
+
+  protected long readLong() throws IOException {
+    return in.readLong();
+  }
+
+  protected boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  protected Integer readNullableInt() throws IOException {
+    return in.readBoolean() ? in.readInt() : null;
+  }
+
+  protected Long readNullableLong() throws IOException {
+    return in.readBoolean() ? in.readLong() : null;
+  }
+
+  protected String readString() throws IOException, InvalidDataObjectException {
+    byte[] bytes = readBinary();
+    return (bytes == null) ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  protected byte[] readBinary() throws IOException, InvalidDataObjectException {
+    int len = in.readInt();
+    if (len == -1) {
+      return null;
+    } else if (len < 0) {
+      throw new InvalidDataObjectException("invalid length " + len);
+    }
+
+    byte[] bytes = new byte[len];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    try {
+      in.close();
+    } finally {
+      inflater.end();
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.dbtool.binio;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Writer of the binary dump format. The file starts with the uncompressed header (magic,
+ * version and the name of the root element as in the XML format), followed by the
+ * deflate-compressed records. Each record is prefixed by the byte 1, and the stream is
+ * terminated by the byte 0. Values are written with fixed length, strings and binaries
+ * are prefixed by their length, -1 for {@code null}.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class DbiBinWriter implements Closeable {
+
+  public static final String FILE_SUFFIX = ".bin";
+
+  static final byte[] MAGIC = "XIPKIDBI".getBytes(StandardCharsets.US_ASCII);
+
+  static final int VERSION = 1;
+
+  static final int RECORD = 1;
+
+  static final int END = 0;
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final String rootElementName;
+
+  private final Deflater deflater;
+
+  private final DataOutputStream out;
+
+  private boolean closed;
+
+  public DbiBinWriter(OutputStream stream, String rootElementName) throws IOException {
+    ParamUtil.requireNonNull("stream", stream);
+    this.rootElementName = ParamUtil.requireNonBlank("rootElementName", rootElementName);
+
+    DataOutputStream header = new DataOutputStream(stream);
+    header.write(MAGIC);
+    header.writeInt(VERSION);
+    header.writeUTF(rootElementName);
+    header.flush();
+
+    // deflate with the same level as the ZIP files of the XML format
+    this.deflater = new Deflater(Deflater.BEST_SPEED);
+    this.out = new DataOutputStream(new DeflaterOutputStream(stream, deflater, BUFFER_SIZE));
+  }
+
+  public String rootElementName() {
+    return rootElementName;
+  }
+
+  protected void startRecord() throws IOException {
+    out.writeByte(RECORD);
+  }
+
+  protected void writeInt(int value) throws IOException {
+    out.writeInt(value);
+  }
+
+  protected void writeLong(long value) throws IOException {
+    out.writeLong(value);
+  }
+
+  protected void writeBoolean(boolean value) throws IOException {
+    out.writeBoolean(value);
+  }
+
+  protected void writeNullableInt(Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeInt(value);
+    }
+  }
+
+  protected void writeNullableLong(Long value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value);
+    }
+  }
+
+  protected void writeString(String value) throws IOException {
+    writeBinary((value == null) ? null : value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  protected void writeBinary(byte[] value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+  }
+
+  /**
+   * Terminates the records and closes the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    try {
+      out.writeByte(END);
+      out.close();
+    } finally {
+      deflater.end();
+    }
+  }
+
+}
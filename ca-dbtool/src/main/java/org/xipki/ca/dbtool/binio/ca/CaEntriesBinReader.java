@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.dbtool.binio.ca;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xipki.ca.dbtool.binio.DbiBinReader;
+import org.xipki.ca.dbtool.xmlio.IdentifidDbObjectType;
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.ca.dbtool.xmlio.ca.CertType;
+import org.xipki.ca.dbtool.xmlio.ca.CrlType;
+import org.xipki.ca.dbtool.xmlio.ca.RequestCertType;
+import org.xipki.ca.dbtool.xmlio.ca.RequestType;
+
+/**
+ * Reads the entries of the CA certstore written by {@link CaEntriesBinWriter}.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class CaEntriesBinReader extends DbiBinReader {
+
+  private IdentifidDbObjectType next;
+
+  private byte[] nextData;
+
+  private byte[] data;
+
+  /**
+   * Creates a reader.
+   * @param stream
+   *          Input stream. Must not be {@code null}.
+   * @param rootElementName
+   *          Name of the root element in the XML format, e.g. {@link CertType#TAG_PARENT}.
+   */
+  public CaEntriesBinReader(InputStream stream, String rootElementName)
+      throws IOException, InvalidDataObjectException {
+    super(stream, rootElementName);
+
+    switch (rootElementName) {
+      case CertType.TAG_PARENT:
+      case CrlType.TAG_PARENT:
+      case RequestType.TAG_PARENT:
+      case RequestCertType.TAG_PARENT:
+        break;
+      default:
+        throw new InvalidDataObjectException("unknown root element " + rootElementName);
+    }
+
+    retrieveNext();
+  }
+
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  public IdentifidDbObjectType next() throws IOException, InvalidDataObjectException {
+    if (next == null) {
+      throw new IllegalStateException("no more next element exists");
+    }
+
+    IdentifidDbObjectType ret = next;
+    data = nextData;
+    retrieveNext();
+    return ret;
+  }
+
+  /**
+   * Returns the encoded certificate, CRL or request of the entry returned by the last
+   * {@link #next()}.
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  private void retrieveNext() throws IOException, InvalidDataObjectException {
+    next = null;
+    nextData = null;
+
+    if (!nextRecord()) {
+      return;
+    }
+
+    long id = readLong();
+    IdentifidDbObjectType entry;
+
+    switch (getRootElementName()) {
+      case CertType.TAG_PARENT:
+        CertType cert = new CertType();
+        cert.setCaId(readInt());
+        cert.setSn(readString());
+        cert.setPid(readInt());
+        cert.setRid(readInt());
+        cert.setEe(readBoolean());
+        cert.setUpdate(readLong());
+        cert.setRev(readBoolean());
+        cert.setRr(readNullableInt());
+        cert.setRt(readNullableLong());
+        cert.setRit(readNullableLong());
+        cert.setUid(readNullableInt());
+        cert.setTid(readString());
+        cert.setReqType(readInt());
+        cert.setFpRs(readNullableLong());
+        cert.setRs(readString());
+        cert.setFile(readString());
+        entry = cert;
+        break;
+      case CrlType.TAG_PARENT:
+        CrlType crl = new CrlType();
+        crl.setCaId(readInt());
+        crl.setCrlNo(readString());
+        crl.setFile(readString());
+        entry = crl;
+        break;
+      case RequestType.TAG_PARENT:
+        RequestType request = new RequestType();
+        request.setUpdate(readLong());
+        request.setFile(readString());
+        entry = request;
+        break;
+      default:
+        RequestCertType reqCert = new RequestCertType();
+        reqCert.setRid(readLong());
+        reqCert.setCid(readLong());
+        entry = reqCert;
+        break;
+    }
+
+    entry.setId(id);
+    entry.validate();
+
+    next = entry;
+    nextData = readBinary();
+  } // method retrieveNext
+
+}
@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.dbtool.binio.ca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.xipki.ca.dbtool.binio.DbiBinWriter;
+import org.xipki.ca.dbtool.xmlio.IdentifidDbObjectType;
+import org.xipki.ca.dbtool.xmlio.InvalidDataObjectException;
+import org.xipki.ca.dbtool.xmlio.ca.CertType;
+import org.xipki.ca.dbtool.xmlio.ca.CrlType;
+import org.xipki.ca.dbtool.xmlio.ca.RequestCertType;
+import org.xipki.ca.dbtool.xmlio.ca.RequestType;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Writes the entries of the CA certstore in the binary dump format. The encoded certificate,
+ * CRL or request is written in the record of its entry instead of a separate ZIP entry.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class CaEntriesBinWriter extends DbiBinWriter {
+
+  /**
+   * Creates a writer.
+   * @param stream
+   *          Output stream. Must not be {@code null}.
+   * @param rootElementName
+   *          Name of the root element in the XML format, e.g. {@link CertType#TAG_PARENT}.
+   */
+  public CaEntriesBinWriter(OutputStream stream, String rootElementName) throws IOException {
+    super(stream, rootElementName);
+  }
+
+  /**
+   * Adds the entry.
+   * @param entry
+   *          Entry. Must not be {@code null}.
+   * @param data
+   *          Encoded certificate, CRL or request. {@code null} for the REQCERT entries.
+   */
+  public void add(IdentifidDbObjectType entry, byte[] data)
+      throws IOException, InvalidDataObjectException {
+    ParamUtil.requireNonNull("entry", entry);
+    entry.validate();
+
+    startRecord();
+    writeLong(entry.getId());
+
+    if (entry instanceof CertType) {
+      assertRootElement(CertType.TAG_PARENT);
+      CertType cert = (CertType) entry;
+      writeInt(cert.getCaId());
+      writeString(cert.getSn());
+      writeInt(cert.getPid());
+      writeInt(cert.getRid());
+      writeBoolean(cert.isEe());
+      writeLong(cert.getUpdate());
+      writeBoolean(cert.getRev());
+      writeNullableInt(cert.getRr());
+      writeNullableLong(cert.getRt());
+      writeNullableLong(cert.getRit());
+      writeNullableInt(cert.getUid());
+      writeString(cert.getTid());
+      writeInt(cert.getReqType());
+      writeNullableLong(cert.getFpRs());
+      writeString(cert.getRs());
+      writeString(cert.getFile());
+    } else if (entry instanceof CrlType) {
+      assertRootElement(CrlType.TAG_PARENT);
+      CrlType crl = (CrlType) entry;
+      writeInt(crl.getCaId());
+      writeString(crl.getCrlNo());
+      writeString(crl.getFile());
+    } else if (entry instanceof RequestType) {
+      assertRootElement(RequestType.TAG_PARENT);
+      RequestType request = (RequestType) entry;
+      writeLong(request.getUpdate());
+      writeString(request.getFile());
+    } else if (entry instanceof RequestCertType) {
+      assertRootElement(RequestCertType.TAG_PARENT);
+      RequestCertType reqCert = (RequestCertType) entry;
+      writeLong(reqCert.getRid());
+      writeLong(reqCert.getCid());
+    } else {
+      throw new InvalidDataObjectException("unknown entry type " + entry.getClass().getName());
+    }
+
+    writeBinary(data);
+  }
+
+  private void assertRootElement(String expected) throws InvalidDataObjectException {
+    if (!expected.equals(rootElementName())) {
+      throw new InvalidDataObjectException("could not add entry of '" + expected
+          + "' to '" + rootElementName() + "'");
+    }
+  }
+
+}
@@ -68,6 +68,8 @@ class DigestDiff {
 
   private Set<byte[]> includeCaCerts;
 
+  private boolean merge;
+
   private final String reportDirName;
 
   private final AtomicBoolean stopMe;
@@ -130,6 +132,18 @@ class DigestDiff {
     this.includeCaCerts = includeCaCerts;
   }
 
+  public boolean isMerge() {
+    return merge;
+  }
+
+  /**
+   * Sets whether the certificates are compared via {@link MergeDigestDiff} instead of
+   * looking up each reference certificate in the target database.
+   */
+  public void setMerge(boolean merge) {
+    this.merge = merge;
+  }
+
   public void diff() throws Exception {
     Map<Integer, byte[]> caIdCertMap = getCas(targetDatasource, targetDbControl);
 
@@ -163,6 +177,13 @@ class DigestDiff {
       refDatasource.releaseResources(refStmt, null);
     }
 
+    if (merge) {
+      for (Integer refCaId : refCaIds) {
+        diffSingleCaViaMerge(refCaId, caIdCertMap);
+      }
+      return;
+    }
+
     final int numBlocksToRead = numTargetThreads * 3 / 2;
     for (Integer refCaId : refCaIds) {
       RefDigestReader refReader = RefDigestReader.getInstance(refDatasource, refDbControl,
@@ -176,35 +197,14 @@ class DigestDiff {
     X509Certificate caCert = refReader.getCaCert();
     byte[] caCertBytes = caCert.getEncoded();
 
-    if (includeCaCerts != null && !includeCaCerts.isEmpty()) {
-      boolean include = false;
-      for (byte[] m : includeCaCerts) {
-        if (Arrays.equals(m, caCertBytes)) {
-          include = true;
-          break;
-        }
-      }
-      if (!include) {
-        System.out.println("skipped CA " + refReader.getCaSubjectName());
-      }
-    }
-
-    String commonName = X509Util.getCommonName(caCert.getSubjectX500Principal());
-    File caReportDir = new File(reportDirName, "ca-" + commonName);
-
-    int idx = 2;
-    while (caReportDir.exists()) {
-      caReportDir = new File(reportDirName, "ca-" + commonName + "-" + (idx++));
+    if (!isIncluded(caCertBytes)) {
+      System.out.println("skipped CA " + refReader.getCaSubjectName());
+      refReader.close();
+      return;
     }
 
-    DigestDiffReporter reporter = new DigestDiffReporter(caReportDir.getPath(), caCertBytes);
-
-    Integer caId = null;
-    for (Integer i : caIdCertBytesMap.keySet()) {
-      if (Arrays.equals(caCertBytes, caIdCertBytesMap.get(i))) {
-        caId = i;
-      }
-    }
+    DigestDiffReporter reporter = newReporter(caCert);
+    Integer caId = getCaId(caCertBytes, caIdCertBytesMap);
 
     if (caId == null) {
       reporter.addNoCaMatch();
@@ -242,6 +242,114 @@ class DigestDiff {
     }
   } // method diffSingleCa
 
+  private void diffSingleCaViaMerge(int refCaId, Map<Integer, byte[]> caIdCertBytesMap)
+      throws DataAccessException, CertificateException, IOException, InterruptedException {
+    String tblCa;
+    String colCaId;
+    if (refDbControl == DbControl.XIPKI_OCSP_v3) {
+      tblCa = "ISSUER";
+      colCaId = "IID";
+    } else {
+      tblCa = "CA";
+      colCaId = "CA_ID";
+    }
+
+    String b64CaCert = refDatasource.getFirstValue(null, tblCa, "CERT", "ID=" + refCaId,
+        String.class);
+    if (b64CaCert == null) {
+      throw new IllegalArgumentException("no CA with id '" + refCaId + "' is available");
+    }
+
+    X509Certificate caCert = X509Util.parseBase64EncodedCert(b64CaCert);
+    byte[] caCertBytes = caCert.getEncoded();
+    String caSubjectName = X509Util.getRfc4519Name(caCert.getSubjectX500Principal());
+
+    if (!isIncluded(caCertBytes)) {
+      System.out.println("skipped CA " + caSubjectName);
+      return;
+    }
+
+    DigestDiffReporter reporter = newReporter(caCert);
+    Integer caId = getCaId(caCertBytes, caIdCertBytesMap);
+    if (caId == null) {
+      reporter.addNoCaMatch();
+      reporter.close();
+      return;
+    }
+
+    try {
+      reporter.start();
+      long total = getNumCerts(refDatasource, colCaId, refCaId);
+      ProcessLog processLog = new ProcessLog(total);
+      System.out.println("Processing certificates of CA \n\t'" + caSubjectName + "'");
+      processLog.printHeader();
+
+      MergeDigestDiff mergeDiff = new MergeDigestDiff(refDatasource, refDbControl, refCaId,
+          targetDatasource, targetDbControl, caId, certhashAlgo, revokedOnly, reporter,
+          processLog, numPerSelect, numTargetThreads, stopMe);
+      mergeDiff.diff();
+      processLog.printTrailer();
+    } catch (InterruptedException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      reporter.addError("Exception thrown: " + ex.getClass().getName() + ": " + ex.getMessage());
+      LOG.error("exception in diffSingleCaViaMerge", ex);
+    } finally {
+      reporter.close();
+    }
+  } // method diffSingleCaViaMerge
+
+  private boolean isIncluded(byte[] caCertBytes) {
+    if (includeCaCerts == null || includeCaCerts.isEmpty()) {
+      return true;
+    }
+
+    for (byte[] m : includeCaCerts) {
+      if (Arrays.equals(m, caCertBytes)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private DigestDiffReporter newReporter(X509Certificate caCert)
+      throws CertificateException, IOException {
+    String commonName = X509Util.getCommonName(caCert.getSubjectX500Principal());
+    File caReportDir = new File(reportDirName, "ca-" + commonName);
+
+    int idx = 2;
+    while (caReportDir.exists()) {
+      caReportDir = new File(reportDirName, "ca-" + commonName + "-" + (idx++));
+    }
+
+    return new DigestDiffReporter(caReportDir.getPath(), caCert.getEncoded());
+  }
+
+  private static Integer getCaId(byte[] caCertBytes, Map<Integer, byte[]> caIdCertBytesMap) {
+    Integer caId = null;
+    for (Integer i : caIdCertBytesMap.keySet()) {
+      if (Arrays.equals(caCertBytes, caIdCertBytesMap.get(i))) {
+        caId = i;
+      }
+    }
+    return caId;
+  }
+
+  private static long getNumCerts(DataSourceWrapper datasource, String colCaId, int caId)
+      throws DataAccessException {
+    String sql = "SELECT COUNT(*) FROM CERT WHERE " + colCaId + "=" + caId;
+    Statement stmt = datasource.createStatement(datasource.getConnection());
+    ResultSet rs = null;
+    try {
+      rs = stmt.executeQuery(sql);
+      return rs.next() ? rs.getLong(1) : 0;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(stmt, rs);
+    }
+  }
+
   private static Map<Integer, byte[]> getCas(DataSourceWrapper datasource,
       DbControl dbControl) throws DataAccessException {
     // get a list of available CAs in the target database
@@ -114,7 +114,7 @@ class DigestDiffReporter {
     ParamUtil.requireNonNull("refCert", refCert);
     ParamUtil.requireNonNull("targetCert", targetCert);
 
-    if (refCert.getSerialNumber().equals(targetCert.getSerialNumber())) {
+    if (!refCert.getSerialNumber().equals(targetCert.getSerialNumber())) {
       throw new IllegalArgumentException(
           "refCert and targetCert do not have the same serialNumber");
     }
@@ -60,15 +60,18 @@ public class DigestDiffWorker extends DbPortWorker {
 
   private final int numThreads;
 
+  private final boolean merge;
+
   public DigestDiffWorker(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
       boolean revokedOnly, String refDbConfFile, String targetDbConfFile, String reportDirName,
-      int numCertsPerSelect, int numThreads, Set<byte[]> includeCaCerts)
+      int numCertsPerSelect, int numThreads, Set<byte[]> includeCaCerts, boolean merge)
       throws DataAccessException, PasswordResolverException, IOException {
     this.reportDir = reportDirName;
     this.numThreads = ParamUtil.requireMin("numThreads", numThreads, 1);
     this.numCertsPerSelect = numCertsPerSelect;
     this.includeCaCerts = includeCaCerts;
     this.revokedOnly = revokedOnly;
+    this.merge = merge;
 
     File file = new File(reportDirName);
     if (!file.exists()) {
@@ -107,6 +110,7 @@ public class DigestDiffWorker extends DbPortWorker {
       DigestDiff diff = new DigestDiff(refDatasource, targetDatasource, reportDir, revokedOnly,
           stopMe, numCertsPerSelect, numThreads);
       diff.setIncludeCaCerts(includeCaCerts);
+      diff.setMerge(merge);
       diff.diff();
     } finally {
       try {
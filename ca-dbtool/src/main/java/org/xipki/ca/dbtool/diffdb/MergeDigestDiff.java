@@ -0,0 +1,408 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.dbtool.diffdb;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.DbToolBase;
+import org.xipki.common.ProcessLog;
+import org.xipki.common.util.Base64;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.common.util.StringUtil;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Compares the certificates of a CA by merging the (serial number, digest) entries of both
+ * databases, each sorted by the column SN. The serial numbers are split into ranges by their
+ * first two hexadecimal digits, and the ranges are compared in parallel.
+ *
+ * <p>Both databases must sort the lower-case hexadecimal serial numbers in the same way as
+ * {@link String#compareTo(String)}. This is verified while reading.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class MergeDigestDiff {
+
+  private class RangeComparator implements Callable<Void> {
+
+    private final String from;
+
+    private final String to;
+
+    RangeComparator(String from, String to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      compareRange(from, to);
+      return null;
+    }
+
+  } // class RangeComparator
+
+  /**
+   * Reads the entries of one database within a range of serial numbers, page by page.
+   */
+  private static class SortedDigestReader {
+
+    private final DataSourceWrapper datasource;
+
+    private final DbControl dbControl;
+
+    private final HashAlgo certhashAlgo;
+
+    private final String from;
+
+    private final String to;
+
+    private final int numPerSelect;
+
+    private final String firstSql;
+
+    private final String nextSql;
+
+    private final Connection conn;
+
+    private final List<String> serials = new ArrayList<>();
+
+    private final List<DigestEntry> entries = new ArrayList<>();
+
+    private int idx;
+
+    private boolean lastPage;
+
+    private String lastSerial;
+
+    private long numRead;
+
+    SortedDigestReader(DataSourceWrapper datasource, DbControl dbControl, HashAlgo certhashAlgo,
+        int caId, String from, String to, int numPerSelect) throws DataAccessException {
+      this.datasource = datasource;
+      this.dbControl = dbControl;
+      this.certhashAlgo = certhashAlgo;
+      this.from = from;
+      this.to = to;
+      this.numPerSelect = numPerSelect;
+
+      String coreSql;
+      if (dbControl == DbControl.XIPKI_OCSP_v3) {
+        coreSql = StringUtil.concat("SN,REV,RR,RT,RIT,HASH FROM CERT WHERE IID=",
+            Integer.toString(caId), " AND SN{}? AND SN<?");
+      } else if (dbControl == DbControl.XIPKI_CA_v3) {
+        coreSql = StringUtil.concat("SN,REV,RR,RT,RIT,",
+            (certhashAlgo == HashAlgo.SHA1 ? "SHA1" : "CERT"),
+            " FROM CERT INNER JOIN CRAW ON CERT.CA_ID=", Integer.toString(caId),
+            " AND CERT.SN{}? AND CERT.SN<? AND CERT.ID=CRAW.CID");
+      } else {
+        throw new IllegalArgumentException("unknown dbControl " + dbControl);
+      }
+
+      this.firstSql = datasource.buildSelectFirstSql(numPerSelect, "SN ASC",
+          coreSql.replace("{}", ">="));
+      this.nextSql = datasource.buildSelectFirstSql(numPerSelect, "SN ASC",
+          coreSql.replace("{}", ">"));
+      this.conn = datasource.getConnection();
+    }
+
+    /**
+     * Returns the serial number of the current entry, or {@code null} if the end of the
+     * range is reached.
+     */
+    String currentSerial() throws DataAccessException {
+      if (idx == serials.size()) {
+        if (lastPage) {
+          return null;
+        }
+
+        readPage();
+        if (serials.isEmpty()) {
+          return null;
+        }
+      }
+      return serials.get(idx);
+    }
+
+    DigestEntry current() {
+      return entries.get(idx);
+    }
+
+    void next() {
+      idx++;
+    }
+
+    long numRead() {
+      return numRead;
+    }
+
+    void close() {
+      datasource.returnConnection(conn);
+    }
+
+    private void readPage() throws DataAccessException {
+      serials.clear();
+      entries.clear();
+      idx = 0;
+
+      String sql = (lastSerial == null) ? firstSql : nextSql;
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+      try {
+        ps = datasource.prepareStatement(conn, sql);
+        ps.setString(1, (lastSerial == null) ? from : lastSerial);
+        ps.setString(2, to);
+        rs = ps.executeQuery();
+
+        while (rs.next()) {
+          String serial = rs.getString("SN");
+          if (lastSerial != null && serial.compareTo(lastSerial) <= 0) {
+            throw new DataAccessException("database does not sort the serial numbers as "
+                + "expected: " + serial + " after " + lastSerial);
+          }
+          lastSerial = serial;
+
+          boolean revoked = rs.getBoolean("REV");
+          Integer revReason = null;
+          Long revTime = null;
+          Long revInvTime = null;
+          if (revoked) {
+            revReason = rs.getInt("RR");
+            revTime = rs.getLong("RT");
+            revInvTime = rs.getLong("RIT");
+            if (revInvTime == 0) {
+              revInvTime = null;
+            }
+          }
+
+          serials.add(serial);
+          entries.add(new DigestEntry(new BigInteger(serial, 16), revoked, revReason, revTime,
+              revInvTime, getBase64HashValue(rs)));
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        DbToolBase.releaseResources(datasource, ps, rs);
+      }
+
+      numRead += serials.size();
+      lastPage = serials.size() < numPerSelect;
+    } // method readPage
+
+    private String getBase64HashValue(ResultSet rs) throws SQLException {
+      if (dbControl == DbControl.XIPKI_OCSP_v3) {
+        return rs.getString("HASH");
+      } else if (certhashAlgo == HashAlgo.SHA1) {
+        return rs.getString("SHA1");
+      } else {
+        return certhashAlgo.base64Hash(Base64.decodeFast(rs.getString("CERT")));
+      }
+    }
+
+  } // class SortedDigestReader
+
+  private static final Logger LOG = LoggerFactory.getLogger(MergeDigestDiff.class);
+
+  /**
+   * Serial numbers are lower-case hexadecimal strings, all of them are less than this value.
+   */
+  private static final String MAX_SERIAL_BOUND = "g";
+
+  private final DataSourceWrapper refDatasource;
+
+  private final DbControl refDbControl;
+
+  private final int refCaId;
+
+  private final DataSourceWrapper targetDatasource;
+
+  private final DbControl targetDbControl;
+
+  private final int targetCaId;
+
+  private final HashAlgo certhashAlgo;
+
+  private final boolean revokedOnly;
+
+  private final DigestDiffReporter reporter;
+
+  private final ProcessLog processLog;
+
+  private final int numPerSelect;
+
+  private final int numThreads;
+
+  private final AtomicBoolean stopMe;
+
+  private final AtomicLong numRefRead = new AtomicLong(0);
+
+  private final AtomicLong numTargetRead = new AtomicLong(0);
+
+  MergeDigestDiff(DataSourceWrapper refDatasource, DbControl refDbControl, int refCaId,
+      DataSourceWrapper targetDatasource, DbControl targetDbControl, int targetCaId,
+      HashAlgo certhashAlgo, boolean revokedOnly, DigestDiffReporter reporter,
+      ProcessLog processLog, int numPerSelect, int numThreads, AtomicBoolean stopMe) {
+    this.refDatasource = ParamUtil.requireNonNull("refDatasource", refDatasource);
+    this.refDbControl = ParamUtil.requireNonNull("refDbControl", refDbControl);
+    this.refCaId = refCaId;
+    this.targetDatasource = ParamUtil.requireNonNull("targetDatasource", targetDatasource);
+    this.targetDbControl = ParamUtil.requireNonNull("targetDbControl", targetDbControl);
+    this.targetCaId = targetCaId;
+    this.certhashAlgo = ParamUtil.requireNonNull("certhashAlgo", certhashAlgo);
+    this.revokedOnly = revokedOnly;
+    this.reporter = ParamUtil.requireNonNull("reporter", reporter);
+    this.processLog = ParamUtil.requireNonNull("processLog", processLog);
+    this.numPerSelect = ParamUtil.requireMin("numPerSelect", numPerSelect, 1);
+    this.stopMe = ParamUtil.requireNonNull("stopMe", stopMe);
+
+    // each thread holds one connection of both databases
+    int maxThreads = Math.min(refDatasource.getMaximumPoolSize(),
+        targetDatasource.getMaximumPoolSize()) - 1;
+    this.numThreads = Math.max(1, Math.min(numThreads, maxThreads));
+    if (this.numThreads != numThreads) {
+      LOG.info("reduce the numThreads from {} to {}", numThreads, this.numThreads);
+    }
+  }
+
+  void diff() throws Exception {
+    // ranges ["", "01"), ["01", "02"), ..., ["ff", MAX_SERIAL_BOUND)
+    List<String> bounds = new ArrayList<>(257);
+    bounds.add("");
+    for (int i = 1; i < 256; i++) {
+      bounds.add((i < 16 ? "0" : "") + Integer.toHexString(i));
+    }
+    bounds.add(MAX_SERIAL_BOUND);
+
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>(bounds.size() - 1);
+      for (int i = 0; i < bounds.size() - 1; i++) {
+        futures.add(executor.submit(new RangeComparator(bounds.get(i), bounds.get(i + 1))));
+      }
+
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          throw (cause instanceof Exception) ? (Exception) cause : ex;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    long duration = Math.max(1, System.currentTimeMillis() - start);
+    long numRef = numRefRead.get();
+    long numTarget = numTargetRead.get();
+    System.out.println(StringUtil.concat("read ", Long.toString(numRef), " reference and ",
+        Long.toString(numTarget), " target entries in ",
+        StringUtil.formatTime(duration / 1000, false), ", ",
+        Long.toString((numRef + numTarget) * 1000 / duration), " entries/s"));
+  } // method diff
+
+  private void compareRange(String from, String to) throws Exception {
+    SortedDigestReader ref = new SortedDigestReader(refDatasource, refDbControl, certhashAlgo,
+        refCaId, from, to, numPerSelect);
+    SortedDigestReader target = null;
+
+    try {
+      target = new SortedDigestReader(targetDatasource, targetDbControl, certhashAlgo,
+          targetCaId, from, to, numPerSelect);
+
+      int num = 0;
+      String refSerial = ref.currentSerial();
+      String targetSerial = target.currentSerial();
+
+      while (refSerial != null || targetSerial != null) {
+        if (stopMe.get()) {
+          throw new InterruptedException("interrupted by the user");
+        }
+
+        int cmp = (refSerial == null) ? 1
+            : (targetSerial == null) ? -1 : refSerial.compareTo(targetSerial);
+
+        if (cmp > 0) {
+          reporter.addUnexpected(target.current().getSerialNumber());
+          target.next();
+          targetSerial = target.currentSerial();
+          continue;
+        }
+
+        DigestEntry refCert = ref.current();
+        DigestEntry targetCert = (cmp == 0) ? target.current() : null;
+
+        if (revokedOnly && !refCert.isRevoked() && targetCert != null) {
+          reporter.addUnexpected(refCert.getSerialNumber());
+        } else if (targetCert == null) {
+          reporter.addMissing(refCert.getSerialNumber());
+        } else if (refCert.contentEquals(targetCert)) {
+          reporter.addGood(refCert.getSerialNumber());
+        } else {
+          reporter.addDiff(refCert, targetCert);
+        }
+
+        ref.next();
+        refSerial = ref.currentSerial();
+        if (targetCert != null) {
+          target.next();
+          targetSerial = target.currentSerial();
+        }
+
+        if (++num == numPerSelect) {
+          processLog.addNumProcessed(num);
+          processLog.printStatus();
+          num = 0;
+        }
+      }
+
+      processLog.addNumProcessed(num);
+      processLog.printStatus();
+    } finally {
+      numRefRead.addAndGet(ref.numRead());
+      ref.close();
+      if (target != null) {
+        numTargetRead.addAndGet(target.numRead());
+        target.close();
+      }
+    }
+  } // method compareRange
+
+}
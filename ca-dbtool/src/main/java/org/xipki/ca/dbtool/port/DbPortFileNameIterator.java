@@ -24,6 +24,7 @@ import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.binio.DbiBinWriter;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.StringUtil;
 
@@ -83,7 +84,8 @@ public class DbPortFileNameIterator implements Iterator<String> {
     String line;
     while ((line = reader.readLine()) != null) {
       line = line.trim();
-      if (StringUtil.isBlank(line) || line.startsWith("#") || !line.endsWith(".zip")) {
+      if (StringUtil.isBlank(line) || line.startsWith("#")
+          || !(line.endsWith(".zip") || line.endsWith(DbiBinWriter.FILE_SUFFIX))) {
         continue;
       }
       return line;
@@ -17,16 +17,26 @@
 
 package org.xipki.ca.dbtool.port.ca;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -44,6 +54,9 @@ import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.x509.Extension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.IdRange;
+import org.xipki.ca.dbtool.binio.DbiBinWriter;
+import org.xipki.ca.dbtool.binio.ca.CaEntriesBinWriter;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.DeltaCRLCache;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.PublishQueue;
@@ -52,6 +65,7 @@ import org.xipki.ca.dbtool.jaxb.ca.ObjectFactory;
 import org.xipki.ca.dbtool.jaxb.ca.ToPublishType;
 import org.xipki.ca.dbtool.port.DbPorter;
 import org.xipki.ca.dbtool.xmlio.DbiXmlWriter;
+import org.xipki.ca.dbtool.xmlio.IdentifidDbObjectType;
 import org.xipki.ca.dbtool.xmlio.ca.CertType;
 import org.xipki.ca.dbtool.xmlio.ca.CertsWriter;
 import org.xipki.ca.dbtool.xmlio.ca.CrlType;
@@ -81,8 +95,56 @@ import org.xipki.security.util.X509Util;
 
 class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
+  private static class ExportedRange {
+
+    private final IdRange range;
+
+    /**
+     * Name of the ZIP file, or {@code null} if the range contains no entries.
+     */
+    private final String filename;
+
+    private final int numEntries;
+
+    ExportedRange(IdRange range, String filename, int numEntries) {
+      this.range = range;
+      this.filename = filename;
+      this.numEntries = numEntries;
+    }
+
+  } // class ExportedRange
+
+  private class RangeExporter implements Callable<ExportedRange> {
+
+    private final CaDbEntryType type;
+
+    private final String sql;
+
+    private final File entriesDir;
+
+    private final IdRange range;
+
+    private final long maxId;
+
+    RangeExporter(CaDbEntryType type, String sql, File entriesDir, IdRange range, long maxId) {
+      this.type = type;
+      this.sql = sql;
+      this.entriesDir = entriesDir;
+      this.range = range;
+      this.maxId = maxId;
+    }
+
+    @Override
+    public ExportedRange call() throws Exception {
+      return exportRange(type, sql, entriesDir, range, maxId);
+    }
+
+  } // class RangeExporter
+
   private static final Logger LOG = LoggerFactory.getLogger(CaCertStoreDbExporter.class);
 
+  private static final int STREAM_BUFFER_SIZE = 1048576; // 1M
+
   private final Marshaller marshaller;
 
   private final Unmarshaller unmarshaller;
@@ -93,13 +155,21 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
 
   private final boolean resume;
 
+  private final int numThreads;
+
+  private final boolean binaryFormat;
+
   CaCertStoreDbExporter(DataSourceWrapper datasource, String baseDir, int numCertsInBundle,
-      int numCertsPerSelect, boolean resume, AtomicBoolean stopMe, boolean evaluateOnly)
-          throws DataAccessException, JAXBException {
+      int numCertsPerSelect, int numThreads, boolean binaryFormat, boolean resume,
+      AtomicBoolean stopMe, boolean evaluateOnly) throws DataAccessException, JAXBException {
     super(datasource, baseDir, stopMe, evaluateOnly);
 
     this.numCertsInBundle = ParamUtil.requireMin("numCertsInBundle", numCertsInBundle, 1);
     this.numCertsPerSelect = ParamUtil.requireMin("numCertsPerSelect", numCertsPerSelect, 1);
+    ParamUtil.requireMin("numThreads", numThreads, 1);
+    // one connection is held by this porter
+    this.numThreads = Math.max(1, Math.min(numThreads, datasource.getMaximumPoolSize() - 1));
+    this.binaryFormat = binaryFormat;
     this.resume = resume;
 
     Schema schema = DbPorter.retrieveSchema("/xsd/dbi-ca.xsd");
@@ -238,19 +308,20 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
       case CERT:
         numProcessedBefore = certstore.getCountCerts();
         coreSql = "ID,SN,CA_ID,PID,RID,RTYPE,TID,UID,EE,LUPDATE,REV,RR,RT,RIT,FP_RS,"
-            + "REQ_SUBJECT,CERT FROM CERT INNER JOIN CRAW ON CERT.ID>=? AND CERT.ID=CRAW.CID";
+            + "REQ_SUBJECT,CERT FROM CERT INNER JOIN CRAW ON CERT.ID>=? AND CERT.ID<=?"
+            + " AND CERT.ID=CRAW.CID";
         break;
       case CRL:
         numProcessedBefore = certstore.getCountCrls();
-        coreSql = "ID,CA_ID,CRL FROM CRL WHERE ID>=?";
+        coreSql = "ID,CA_ID,CRL FROM CRL WHERE ID>=? AND ID<=?";
         break;
       case REQUEST:
         numProcessedBefore = certstore.getCountRequests();
-        coreSql = "ID,LUPDATE,DATA FROM REQUEST WHERE ID>=?";
+        coreSql = "ID,LUPDATE,DATA FROM REQUEST WHERE ID>=? AND ID<=?";
         break;
       case REQCERT:
         numProcessedBefore = certstore.getCountReqCerts();
-        coreSql = "ID,RID,CID FROM REQCERT WHERE ID>=?";
+        coreSql = "ID,RID,CID FROM REQCERT WHERE ID>=? AND ID<=?";
         break;
       default:
         throw new RuntimeException("unknown CaDbEntryType " + type);
@@ -270,259 +341,355 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
     }
 
     String sql = datasource.buildSelectFirstSql(numEntriesPerSelect, "ID ASC", coreSql);
-
-    DbiXmlWriter entriesInCurrentFile = createWriter(type);
-    PreparedStatement ps = prepareStatement(sql.toString());
-
-    int numEntriesInCurrentFile = 0;
-
-    int sum = 0;
-    File currentEntriesZipFile = new File(baseDir,
-        "tmp-" + type.getDirName() + "-" + System.currentTimeMillis() + ".zip");
-    ZipOutputStream currentEntriesZip = getZipOutputStream(currentEntriesZipFile);
-
-    long minIdOfCurrentFile = -1;
-    long maxIdOfCurrentFile = -1;
+    // the IDs are sparse, the ranges are bounded by every numEntriesPerZip-th existing ID
+    String rangeSql = datasource.buildSelectFirstSql(numEntriesPerZip, "ID ASC",
+        "ID FROM " + tableName + " WHERE ID>=?");
 
     ProcessLog processLog = new ProcessLog(total);
     processLog.printHeader();
 
-    try {
-      Long id = null;
-      boolean interrupted = false;
-      long lastMaxId = minId - 1;
+    // Each range contains at most numEntriesPerZip entries and is exported into one ZIP file.
+    // The results are consumed in the order of the ranges, so that the file list and the
+    // process log contain only ranges without gaps before them.
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    Deque<Future<ExportedRange>> futures = new ArrayDeque<>();
+    int sum = 0;
 
+    PreparedStatement rangePs = prepareStatement(rangeSql);
+    try {
+      long nextFrom = minId;
       while (true) {
-        if (stopMe.get()) {
-          interrupted = true;
+        while (!stopMe.get() && nextFrom <= maxId && futures.size() < 2 * numThreads) {
+          long to = nextRangeEnd(rangePs, rangeSql, nextFrom, numEntriesPerZip, maxId);
+          futures.add(executor.submit(
+              new RangeExporter(type, sql, entriesDir, new IdRange(nextFrom, to), maxId)));
+          nextFrom = to + 1;
+        }
+
+        Future<ExportedRange> future = futures.poll();
+        if (future == null) {
           break;
         }
 
-        ps.setLong(1, lastMaxId + 1);
+        ExportedRange result;
+        try {
+          result = future.get();
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          throw (cause instanceof Exception) ? (Exception) cause : ex;
+        }
+
+        if (result.filename != null) {
+          writeLine(filenameListOs, result.filename);
+          sum += result.numEntries;
+          setCount(type, certstore, numProcessedBefore + sum);
+          processLog.addNumProcessed(result.numEntries);
+          processLog.printStatus();
+        }
+        echoToFile(type.name() + ":" + result.range.getTo(), processLogFile);
+      }
+    } finally {
+      releaseResources(rangePs, null);
+      executor.shutdownNow();
+      // wait for the running ranges before the temporary files are deleted
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
 
-        ResultSet rs = ps.executeQuery();
+    if (stopMe.get()) {
+      throw new InterruptedException("interrupted by the user");
+    }
 
-        // no entries anymore
-        if (!rs.next()) {
-          break;
+    processLog.printTrailer();
+    // all successful, delete the processLogFile
+    processLogFile.delete();
+    System.out.println(exportedText() + sum + " entries from " + tablesText);
+  } // method exportEntries
+
+  /**
+   * Returns the ID of the {@code numEntries}-th entry with ID not less than {@code from}, or
+   * {@code maxId} if there are less entries.
+   */
+  private long nextRangeEnd(PreparedStatement ps, String sql, long from, int numEntries,
+      long maxId) throws DataAccessException {
+    ResultSet rs = null;
+    try {
+      ps.setLong(1, from);
+      rs = ps.executeQuery();
+
+      int num = 0;
+      long id = maxId;
+      while (rs.next()) {
+        num++;
+        id = rs.getLong("ID");
+      }
+      return (num < numEntries) ? maxId : Math.min(id, maxId);
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } finally {
+      releaseResources(null, rs);
+    }
+  } // method nextRangeEnd
+
+  private ExportedRange exportRange(CaDbEntryType type, String sql, File entriesDir,
+      IdRange range, long maxId) throws Exception {
+    final String suffix = binaryFormat ? DbiBinWriter.FILE_SUFFIX : ".zip";
+    final File tmpFile = new File(baseDir,
+        "tmp-" + type.getDirName() + "-" + range.getFrom() + suffix);
+
+    DbiXmlWriter xmlWriter = null;
+    ZipOutputStream zip = null;
+    CaEntriesBinWriter binWriter = null;
+    if (binaryFormat) {
+      binWriter = new CaEntriesBinWriter(new BufferedOutputStream(
+          new FileOutputStream(tmpFile), STREAM_BUFFER_SIZE), getRootElementName(type));
+    } else {
+      xmlWriter = createWriter(type);
+      zip = getZipOutputStream(tmpFile);
+    }
+    boolean fileClosed = false;
+
+    Connection conn = null;
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    int numEntries = 0;
+    long minIdOfFile = -1;
+    long maxIdOfFile = -1;
+
+    try {
+      conn = datasource.getConnection();
+      ps = datasource.prepareStatement(conn, sql);
+      long lastMaxId = range.getFrom() - 1;
+
+      while (lastMaxId < range.getTo()) {
+        // the executor is shut down if another range could not be exported
+        if (stopMe.get() || Thread.currentThread().isInterrupted()) {
+          throw new InterruptedException("interrupted by the user");
         }
 
-        do {
-          id = rs.getLong("ID");
-          if (lastMaxId < id) {
-            lastMaxId = id;
-          }
+        ps.setLong(1, lastMaxId + 1);
+        ps.setLong(2, range.getTo());
+        rs = ps.executeQuery();
 
-          if (minIdOfCurrentFile == -1) {
-            minIdOfCurrentFile = id;
-          } else if (minIdOfCurrentFile > id) {
-            minIdOfCurrentFile = id;
-          }
+        int numInSelect = 0;
+        while (rs.next()) {
+          numInSelect++;
+          long id = rs.getLong("ID");
+          lastMaxId = Math.max(lastMaxId, id);
 
-          if (maxIdOfCurrentFile == -1) {
-            maxIdOfCurrentFile = id;
-          } else if (maxIdOfCurrentFile < id) {
-            maxIdOfCurrentFile = id;
+          if (!addEntry(type, id, rs, zip, xmlWriter, binWriter)) {
+            continue;
           }
 
-          if (CaDbEntryType.CERT == type) {
-            String b64Cert = rs.getString("CERT");
-            byte[] certBytes = Base64.decodeFast(b64Cert);
-
-            String sha1 = HashAlgo.SHA1.hexHash(certBytes);
-            String certFileName = sha1 + ".der";
-            if (!evaulateOnly) {
-              ZipEntry certZipEntry = new ZipEntry(certFileName);
-              currentEntriesZip.putNextEntry(certZipEntry);
-              try {
-                currentEntriesZip.write(certBytes);
-              } finally {
-                currentEntriesZip.closeEntry();
-              }
-            }
-
-            CertType cert = new CertType();
-            cert.setId(id);
-            cert.setCaId(rs.getInt("CA_ID"));
-            cert.setEe(rs.getBoolean("EE"));
-            cert.setFile(certFileName);
-
-            long fpReqSubject = rs.getLong("FP_RS");
-            if (fpReqSubject != 0) {
-              cert.setFpRs(fpReqSubject);
-              cert.setRs(rs.getString("REQ_SUBJECT"));
-            }
-
-            cert.setPid(rs.getInt("PID"));
-            cert.setReqType(rs.getInt("RTYPE"));
-            cert.setRid(rs.getInt("RID"));
-            cert.setSn(rs.getString("SN"));
-
-            String str = rs.getString("TID");
-            if (StringUtil.isNotBlank(str)) {
-              cert.setTid(str);
-            }
-
-            int userId = rs.getInt("UID");
-            if (userId != 0) {
-              cert.setUid(userId);
-            }
-            cert.setUpdate(rs.getLong("LUPDATE"));
-
-            boolean revoked = rs.getBoolean("REV");
-            cert.setRev(revoked);
-
-            if (revoked) {
-              cert.setRr(rs.getInt("RR"));
-              cert.setRt(rs.getLong("RT"));
-              long revInvTime = rs.getLong("RIT");
-              if (revInvTime != 0) {
-                cert.setRit(revInvTime);
-              }
-            }
-
-            ((CertsWriter) entriesInCurrentFile).add(cert);
-          } else if (CaDbEntryType.CRL == type) {
-            String b64Crl = rs.getString("CRL");
-            byte[] crlBytes = Base64.decodeFast(b64Crl);
-
-            X509CRL x509Crl = null;
-            try {
-              x509Crl = X509Util.parseCrl(crlBytes);
-            } catch (CRLException ex) {
-              LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
-              throw ex;
-            } catch (Exception ex) {
-              LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
-              throw new CRLException(ex.getMessage(), ex);
-            }
-
-            byte[] octetString = x509Crl.getExtensionValue(Extension.cRLNumber.getId());
-            if (octetString == null) {
-              LOG.warn("CRL without CRL number, ignore it");
-              continue;
-            }
-            String sha1 = HashAlgo.SHA1.hexHash(crlBytes);
-
-            final String crlFilename = sha1 + ".crl";
-            if (!evaulateOnly) {
-              ZipEntry certZipEntry = new ZipEntry(crlFilename);
-              currentEntriesZip.putNextEntry(certZipEntry);
-              try {
-                currentEntriesZip.write(crlBytes);
-              } finally {
-                currentEntriesZip.closeEntry();
-              }
-            }
-
-            CrlType crl = new CrlType();
-            crl.setId(id);
-
-            crl.setCaId(rs.getInt("CA_ID"));
-
-            byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-            BigInteger crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
-            crl.setCrlNo(crlNumber.toString());
-            crl.setFile(crlFilename);
-
-            ((CrlsWriter) entriesInCurrentFile).add(crl);
-          } else if (CaDbEntryType.REQUEST == type) {
-            long update = rs.getLong("LUPDATE");
-            String b64Data = rs.getString("DATA");
-            byte[] dataBytes = Base64.decodeFast(b64Data);
-            String sha1 = HashAlgo.SHA1.hexHash(dataBytes);
-            final String dataFilename = sha1 + ".req";
-            if (!evaulateOnly) {
-              ZipEntry certZipEntry = new ZipEntry(dataFilename);
-              currentEntriesZip.putNextEntry(certZipEntry);
-              try {
-                currentEntriesZip.write(dataBytes);
-              } finally {
-                currentEntriesZip.closeEntry();
-              }
-            }
-            RequestType entry = new RequestType();
-            entry.setId(id);
-            entry.setUpdate(update);
-            entry.setFile(dataFilename);
-            ((RequestsWriter) entriesInCurrentFile).add(entry);
-          } else if (CaDbEntryType.REQCERT == type) {
-            long cid = rs.getLong("CID");
-            long rid = rs.getLong("RID");
-            RequestCertType entry = new RequestCertType();
-            entry.setId(id);
-            entry.setCid(cid);
-            entry.setRid(rid);
-            ((RequestCertsWriter) entriesInCurrentFile).add(entry);
-          } else {
-            throw new RuntimeException("unknown CaDbEntryType " + type);
+          numEntries++;
+          if (minIdOfFile == -1 || minIdOfFile > id) {
+            minIdOfFile = id;
           }
 
-          numEntriesInCurrentFile++;
-          sum++;
-
-          if (numEntriesInCurrentFile == numEntriesPerZip) {
-            String currentEntriesFilename = buildFilename(type.getDirName() + "_", ".zip",
-                minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
-            finalizeZip(currentEntriesZip, "overview.xml", entriesInCurrentFile);
-            currentEntriesZipFile.renameTo(new File(entriesDir, currentEntriesFilename));
-
-            writeLine(filenameListOs, currentEntriesFilename);
-            setCount(type, certstore, numProcessedBefore + sum);
-            echoToFile(tableName + ":" + Long.toString(id), processLogFile);
-
-            processLog.addNumProcessed(numEntriesInCurrentFile);
-            processLog.printStatus();
-
-            // reset
-            entriesInCurrentFile = createWriter(type);
-            numEntriesInCurrentFile = 0;
-            minIdOfCurrentFile = -1;
-            maxIdOfCurrentFile = -1;
-            currentEntriesZipFile = new File(baseDir, "tmp-" + type.getDirName() + "-"
-                + System.currentTimeMillis() + ".zip");
-            currentEntriesZip = getZipOutputStream(currentEntriesZipFile);
+          if (maxIdOfFile < id) {
+            maxIdOfFile = id;
           }
-        } while (rs.next());
+        }
 
         rs.close();
-      } // end for
+        rs = null;
 
-      if (interrupted) {
-        currentEntriesZip.close();
-        throw new InterruptedException("interrupted by the user");
+        // no entries anymore
+        if (numInSelect == 0) {
+          break;
+        }
       }
 
-      if (numEntriesInCurrentFile > 0) {
-        finalizeZip(currentEntriesZip, "overview.xml", entriesInCurrentFile);
-
-        String currentEntriesFilename = buildFilename(type.getDirName() + "_", ".zip",
-            minIdOfCurrentFile, maxIdOfCurrentFile, maxId);
-        currentEntriesZipFile.renameTo(new File(entriesDir, currentEntriesFilename));
+      if (binWriter != null) {
+        binWriter.close();
+      } else if (numEntries == 0) {
+        zip.close();
+      } else {
+        finalizeZip(zip, "overview.xml", xmlWriter);
+      }
+      fileClosed = true;
 
-        writeLine(filenameListOs, currentEntriesFilename);
-        setCount(type, certstore, numProcessedBefore + sum);
-        if (id != null) {
-          echoToFile(Long.toString(id), processLogFile);
-        }
+      if (numEntries == 0) {
+        tmpFile.delete();
+        return new ExportedRange(range, null, 0);
+      }
 
-        processLog.addNumProcessed(numEntriesInCurrentFile);
-      } else {
-        currentEntriesZip.close();
-        currentEntriesZipFile.delete();
+      String filename = buildFilename(type.getDirName() + "_", suffix,
+          minIdOfFile, maxIdOfFile, maxId);
+      // the range may have been exported by an interrupted process
+      File file = new File(entriesDir, filename);
+      if (file.exists()) {
+        file.delete();
       }
+      tmpFile.renameTo(file);
 
+      return new ExportedRange(range, filename, numEntries);
     } catch (SQLException ex) {
-      throw translate(null, ex);
+      throw translate(sql, ex);
     } finally {
-      releaseResources(ps, null);
-    } // end try
+      if (!fileClosed) {
+        if (binWriter != null) {
+          try {
+            binWriter.close();
+          } catch (IOException ex) {
+            LOG.warn("could not close file {}: {}", tmpFile.getPath(), ex.getMessage());
+          }
+        } else {
+          IoUtil.closeStream(zip);
+        }
+      }
+      datasource.releaseResources(ps, rs, false);
+      if (conn != null) {
+        datasource.returnConnection(conn);
+      }
+    }
+  } // method exportRange
+
+  /**
+   * Writes the entry of the current row, either in the binary format or as XML element and
+   * ZIP entry.
+   * @return whether the entry has been written.
+   */
+  private boolean addEntry(CaDbEntryType type, long id, ResultSet rs, ZipOutputStream zip,
+      DbiXmlWriter xmlWriter, CaEntriesBinWriter binWriter) throws Exception {
+    IdentifidDbObjectType entry;
+    String filename = null;
+    byte[] data = null;
+
+    if (CaDbEntryType.CERT == type) {
+      String b64Cert = rs.getString("CERT");
+      data = Base64.decodeFast(b64Cert);
+      filename = HashAlgo.SHA1.hexHash(data) + ".der";
+
+      CertType cert = new CertType();
+      cert.setId(id);
+      cert.setCaId(rs.getInt("CA_ID"));
+      cert.setEe(rs.getBoolean("EE"));
+      cert.setFile(filename);
+
+      long fpReqSubject = rs.getLong("FP_RS");
+      if (fpReqSubject != 0) {
+        cert.setFpRs(fpReqSubject);
+        cert.setRs(rs.getString("REQ_SUBJECT"));
+      }
 
-    processLog.printTrailer();
-    // all successful, delete the processLogFile
-    processLogFile.delete();
-    System.out.println(exportedText() + sum + " entries from " + tablesText);
-  } // method exportEntries
+      cert.setPid(rs.getInt("PID"));
+      cert.setReqType(rs.getInt("RTYPE"));
+      cert.setRid(rs.getInt("RID"));
+      cert.setSn(rs.getString("SN"));
+
+      String str = rs.getString("TID");
+      if (StringUtil.isNotBlank(str)) {
+        cert.setTid(str);
+      }
+
+      int userId = rs.getInt("UID");
+      if (userId != 0) {
+        cert.setUid(userId);
+      }
+      cert.setUpdate(rs.getLong("LUPDATE"));
+
+      boolean revoked = rs.getBoolean("REV");
+      cert.setRev(revoked);
+
+      if (revoked) {
+        cert.setRr(rs.getInt("RR"));
+        cert.setRt(rs.getLong("RT"));
+        long revInvTime = rs.getLong("RIT");
+        if (revInvTime != 0) {
+          cert.setRit(revInvTime);
+        }
+      }
+
+      entry = cert;
+    } else if (CaDbEntryType.CRL == type) {
+      String b64Crl = rs.getString("CRL");
+      data = Base64.decodeFast(b64Crl);
+
+      X509CRL x509Crl = null;
+      try {
+        x509Crl = X509Util.parseCrl(data);
+      } catch (CRLException ex) {
+        LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
+        throw ex;
+      } catch (Exception ex) {
+        LogUtil.error(LOG, ex, "could not parse CRL with id " + id);
+        throw new CRLException(ex.getMessage(), ex);
+      }
+
+      byte[] octetString = x509Crl.getExtensionValue(Extension.cRLNumber.getId());
+      if (octetString == null) {
+        LOG.warn("CRL without CRL number, ignore it");
+        return false;
+      }
+      filename = HashAlgo.SHA1.hexHash(data) + ".crl";
+
+      CrlType crl = new CrlType();
+      crl.setId(id);
+
+      crl.setCaId(rs.getInt("CA_ID"));
+
+      byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
+      BigInteger crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
+      crl.setCrlNo(crlNumber.toString());
+      crl.setFile(filename);
+
+      entry = crl;
+    } else if (CaDbEntryType.REQUEST == type) {
+      long update = rs.getLong("LUPDATE");
+      String b64Data = rs.getString("DATA");
+      data = Base64.decodeFast(b64Data);
+      filename = HashAlgo.SHA1.hexHash(data) + ".req";
+
+      RequestType request = new RequestType();
+      request.setId(id);
+      request.setUpdate(update);
+      request.setFile(filename);
+      entry = request;
+    } else if (CaDbEntryType.REQCERT == type) {
+      long cid = rs.getLong("CID");
+      long rid = rs.getLong("RID");
+      RequestCertType reqCert = new RequestCertType();
+      reqCert.setId(id);
+      reqCert.setCid(cid);
+      reqCert.setRid(rid);
+      entry = reqCert;
+    } else {
+      throw new RuntimeException("unknown CaDbEntryType " + type);
+    }
+
+    if (binWriter != null) {
+      binWriter.add(entry, evaulateOnly ? null : data);
+      return true;
+    }
+
+    if (data != null && !evaulateOnly) {
+      ZipEntry zipEntry = new ZipEntry(filename);
+      zip.putNextEntry(zipEntry);
+      try {
+        zip.write(data);
+      } finally {
+        zip.closeEntry();
+      }
+    }
+
+    switch (type) {
+      case CERT:
+        ((CertsWriter) xmlWriter).add((CertType) entry);
+        break;
+      case CRL:
+        ((CrlsWriter) xmlWriter).add((CrlType) entry);
+        break;
+      case REQUEST:
+        ((RequestsWriter) xmlWriter).add((RequestType) entry);
+        break;
+      default:
+        ((RequestCertsWriter) xmlWriter).add((RequestCertType) entry);
+        break;
+    }
+
+    return true;
+  } // method addEntry
 
   private void exportPublishQueue(CertStoreType certstore) throws DataAccessException {
     System.out.println("exporting table PUBLISHQUEUE");
@@ -614,6 +781,21 @@ class CaCertStoreDbExporter extends AbstractCaCertStoreDbPorter {
     zipOutStream.close();
   }
 
+  private static String getRootElementName(CaDbEntryType type) {
+    switch (type) {
+      case CERT:
+        return CertType.TAG_PARENT;
+      case CRL:
+        return CrlType.TAG_PARENT;
+      case REQUEST:
+        return RequestType.TAG_PARENT;
+      case REQCERT:
+        return RequestCertType.TAG_PARENT;
+      default:
+        throw new RuntimeException("unknown CaDbEntryType " + type);
+    }
+  }
+
   private static DbiXmlWriter createWriter(CaDbEntryType type)
       throws IOException, XMLStreamException {
     switch (type) {
@@ -17,16 +17,30 @@
 
 package org.xipki.ca.dbtool.port.ca;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -46,6 +60,8 @@ import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xipki.ca.dbtool.binio.DbiBinWriter;
+import org.xipki.ca.dbtool.binio.ca.CaEntriesBinReader;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.DeltaCRLCache;
 import org.xipki.ca.dbtool.jaxb.ca.CertStoreType.PublishQueue;
@@ -68,6 +84,7 @@ import org.xipki.ca.dbtool.xmlio.ca.RequestsReader;
 import org.xipki.common.ProcessLog;
 import org.xipki.common.util.Base64;
 import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.StringUtil;
 import org.xipki.common.util.XmlUtil;
@@ -85,8 +102,68 @@ import org.xipki.security.util.X509Util;
 
 class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
 
+  /**
+   * Entries of one exported file, either in the XML or in the binary format.
+   */
+  private interface EntriesSource extends Closeable {
+
+    boolean hasNext();
+
+    IdentifidDbObjectType next() throws Exception;
+
+    /**
+     * Returns the encoded certificate, CRL or request of the entry returned by the last
+     * {@link #next()}, or {@code null} if the entry has none.
+     */
+    byte[] getData(IdentifidDbObjectType entry) throws IOException;
+
+  } // interface EntriesSource
+
+  private static class ImportedFile {
+
+    private final int numEntries;
+
+    private final long lastId;
+
+    ImportedFile(int numEntries, long lastId) {
+      this.numEntries = numEntries;
+      this.lastId = lastId;
+    }
+
+  } // class ImportedFile
+
+  private class FileImporter implements Callable<ImportedFile> {
+
+    private final CaDbEntryType type;
+
+    private final String entriesFile;
+
+    private final long minId;
+
+    private final String[] sqls;
+
+    private final ProcessLog processLog;
+
+    FileImporter(CaDbEntryType type, String entriesFile, long minId, String[] sqls,
+        ProcessLog processLog) {
+      this.type = type;
+      this.entriesFile = entriesFile;
+      this.minId = minId;
+      this.sqls = sqls;
+      this.processLog = processLog;
+    }
+
+    @Override
+    public ImportedFile call() throws Exception {
+      return importFile(type, entriesFile, minId, sqls, processLog);
+    }
+
+  } // class FileImporter
+
   private static final Logger LOG = LoggerFactory.getLogger(CaConfigurationDbImporter.class);
 
+  private static final int STREAM_BUFFER_SIZE = 1048576; // 1M
+
   private static final String SQL_ADD_CERT =
       "INSERT INTO CERT (ID,LUPDATE,SN,SUBJECT,FP_S,FP_RS,NBEFORE,NAFTER,REV,RR,RT,RIT,"
       + "PID,CA_ID,RID,UID,FP_K,EE,RTYPE,TID) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
@@ -110,11 +187,17 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
 
   private final int numCertsPerCommit;
 
+  private final int numThreads;
+
   CaCertStoreDbImporter(DataSourceWrapper datasource, String srcDir, int numCertsPerCommit,
-      boolean resume, AtomicBoolean stopMe, boolean evaluateOnly) throws Exception {
+      int numThreads, boolean resume, AtomicBoolean stopMe, boolean evaluateOnly)
+      throws Exception {
     super(datasource, srcDir, stopMe, evaluateOnly);
 
     this.numCertsPerCommit = ParamUtil.requireMin("numCertsPerCommit", numCertsPerCommit, 1);
+    ParamUtil.requireMin("numThreads", numThreads, 1);
+    // one connection is held by this porter
+    this.numThreads = Math.max(1, Math.min(numThreads, datasource.getMaximumPoolSize() - 1));
     this.resume = resume;
 
     File processLogFile = new File(baseDir, DbPorter.IMPORT_PROCESS_LOG_FILENAME);
@@ -334,66 +417,81 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
       System.out.println(importingText() + "entries to " + tablesText + " from ID " + minId);
       processLog.printHeader();
 
+      // The files are imported in parallel. The results are consumed in the order of the
+      // files, so that the process log contains only files without gaps before them.
       DbPortFileNameIterator entriesFileIterator = null;
-      PreparedStatement[] statements = null;
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      Deque<Future<ImportedFile>> futures = new ArrayDeque<>();
+      long numImported = 0;
+      long lastImportedId = minId - 1;
+      Exception exception = null;
 
       try {
         entriesFileIterator = new DbPortFileNameIterator(
             baseDir + File.separator + type.getDirName() + ".mf");
 
-        statements = new PreparedStatement[sqls.length];
-        for (int i = 0; i < sqls.length; i++) {
-          statements[i] = prepareStatement(sqls[i]);
-        }
+        while (true) {
+          while (exception == null && !stopMe.get() && entriesFileIterator.hasNext()
+              && futures.size() < 2 * numThreads) {
+            String filename = entriesFileIterator.next();
+            if (getToId(filename) < minId) {
+              // try next file
+              continue;
+            }
 
-        while (entriesFileIterator.hasNext()) {
-          String entriesFile = baseDir + File.separator + type.getDirName()
-              + File.separator + entriesFileIterator.next();
+            String entriesFile = baseDir + File.separator + type.getDirName()
+                + File.separator + filename;
+            futures.add(executor.submit(
+                new FileImporter(type, entriesFile, minId, sqls, processLog)));
+          }
 
-          // extract the toId from the filename
-          int fromIdx = entriesFile.indexOf('-');
-          int toIdx = entriesFile.indexOf(".zip");
-          if (fromIdx != -1 && toIdx != -1) {
-            try {
-              long toId = Integer.parseInt(entriesFile.substring(fromIdx + 1, toIdx));
-              if (toId < minId) {
-                // try next file
-                continue;
-              }
-            } catch (Exception ex) {
-              LOG.warn("invalid file name '{}', but will still be processed", entriesFile);
-            }
-          } else {
-            LOG.warn("invalid file name '{}', but will still be processed", entriesFile);
+          Future<ImportedFile> future = futures.poll();
+          if (future == null) {
+            break;
           }
 
+          ImportedFile result;
           try {
-            long lastId = importEntries(type, entriesFile, minId, processLogFile,
-                processLog, numProcessedBefore, statements, sqls);
-            minId = lastId + 1;
-          } catch (Exception ex) {
-            System.err.println("\ncould not import entries from file "
-                + entriesFile + ".\nplease continue with the option '--resume'");
-            LOG.error("Exception", ex);
-            return ex;
-          }
-        } // end for
-      } finally {
-        if (statements != null) {
-          for (PreparedStatement stmt : statements) {
-            if (stmt != null) {
-              releaseResources(stmt, null);
+            result = future.get();
+          } catch (ExecutionException | CancellationException ex) {
+            if (exception == null) {
+              Throwable cause = ex.getCause();
+              exception = (cause instanceof Exception) ? (Exception) cause : ex;
+              // interrupt the other files
+              executor.shutdownNow();
             }
+            continue;
+          }
+
+          if (exception == null) {
+            numImported += result.numEntries;
+            lastImportedId = Math.max(lastImportedId, result.lastId);
+            echoToFile(type + ":" + (numProcessedBefore + numImported) + ":" + lastImportedId,
+                processLogFile);
           }
         }
+      } finally {
+        executor.shutdownNow();
+        // the remaining entries will be deleted while resuming
+        executor.awaitTermination(1, TimeUnit.MINUTES);
         if (entriesFileIterator != null) {
           entriesFileIterator.close();
         }
       }
 
+      if (exception == null && stopMe.get()) {
+        exception = new InterruptedException("interrupted by the user");
+      }
+
+      if (exception != null) {
+        System.err.println("\nimporting " + tablesText + " has been cancelled due to error,\n"
+            + "please continue with the option '--resume'");
+        LOG.error("Exception", exception);
+        return exception;
+      }
+
       processLog.printTrailer();
-      echoToFile(type + ":" + (numProcessedBefore + processLog.numProcessed()) + ":-1",
-          processLogFile);
+      echoToFile(type + ":" + (numProcessedBefore + numImported) + ":-1", processLogFile);
 
       System.out.println(importedText() + processLog.numProcessed() + " entries");
       return null;
@@ -405,296 +503,431 @@ class CaCertStoreDbImporter extends AbstractCaCertStoreDbPorter {
     }
   }
 
-  private long importEntries(CaDbEntryType type, String entriesZipFile, long minId,
-      File processLogFile, ProcessLog processLog, int numProcessedInLastProcess,
-      PreparedStatement[] statements, String[] sqls) throws Exception {
+  private ImportedFile importFile(CaDbEntryType type, String entriesFile, long minId,
+      String[] sqls, ProcessLog processLog) throws Exception {
     final int numEntriesPerCommit = Math.max(1,
         Math.round(type.getSqlBatchFactor() * numCertsPerCommit));
 
-    ZipFile zipFile = new ZipFile(new File(entriesZipFile));
-    ZipEntry entriesXmlEntry = zipFile.getEntry("overview.xml");
+    EntriesSource entries = entriesFile.endsWith(DbiBinWriter.FILE_SUFFIX)
+        ? openBinEntries(type, entriesFile) : openXmlEntries(type, entriesFile);
+
+    Connection conn = null;
+    Boolean autoCommit = null;
+    PreparedStatement[] statements = new PreparedStatement[sqls.length];
+    String sql = null;
 
-    DbiXmlReader entries;
     try {
-      entries = createReader(type, zipFile.getInputStream(entriesXmlEntry));
-    } catch (Exception ex) {
-      try {
-        zipFile.close();
-      } catch (Exception e2) {
-        LOG.error("could not close ZIP file {}: {}", entriesZipFile, e2.getMessage());
-        LOG.debug("could not close ZIP file " + entriesZipFile, e2);
-      }
-      throw ex;
-    }
+      conn = datasource.getConnection();
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
 
-    disableAutoCommit();
+      for (int i = 0; i < sqls.length; i++) {
+        statements[i] = datasource.prepareStatement(conn, sqls[i]);
+      }
 
-    try {
       int numEntriesInBatch = 0;
+      int numImported = 0;
       long lastSuccessfulEntryId = 0;
 
       while (entries.hasNext()) {
-        if (stopMe.get()) {
+        // the executor is shut down if another file could not be imported
+        if (stopMe.get() || Thread.currentThread().isInterrupted()) {
           throw new InterruptedException("interrupted by the user");
         }
 
-        IdentifidDbObjectType entry = (IdentifidDbObjectType) entries.next();
+        IdentifidDbObjectType entry = entries.next();
         long id = entry.getId();
         if (id < minId) {
           continue;
         }
 
-        numEntriesInBatch++;
+        if (addEntry(type, entry, entries.getData(entry), statements)) {
+          numEntriesInBatch++;
+        }
+
+        boolean isLastBlock = !entries.hasNext();
+        if (numEntriesInBatch > 0
+            && (numEntriesInBatch % numEntriesPerCommit == 0 || isLastBlock)) {
+          if (evaulateOnly) {
+            for (PreparedStatement m : statements) {
+              m.clearBatch();
+            }
+          } else {
+            try {
+              for (int i = 0; i < sqls.length; i++) {
+                sql = sqls[i];
+                statements[i].executeBatch();
+              }
 
-        if (CaDbEntryType.CERT == type) {
-          CertType cert = (CertType) entry;
+              sql = null;
+              conn.commit();
+            } catch (SQLException ex) {
+              conn.rollback();
+              throw ex;
+            }
+          }
 
-          String filename = cert.getFile();
-          // rawcert
-          ZipEntry certZipEnty = zipFile.getEntry(filename);
-          // rawcert
-          byte[] encodedCert = IoUtil.read(zipFile.getInputStream(certZipEnty));
+          lastSuccessfulEntryId = id;
+          numImported += numEntriesInBatch;
+          processLog.addNumProcessed(numEntriesInBatch);
+          numEntriesInBatch = 0;
+          processLog.printStatus();
+        }
+      } // end while
 
-          TBSCertificate tbsCert;
+      return new ImportedFile(numImported, lastSuccessfulEntryId);
+    } catch (SQLException ex) {
+      throw translate(sql, ex);
+    } catch (Exception ex) {
+      if (!(ex instanceof InterruptedException)) {
+        System.err.println("\ncould not import entries from file " + entriesFile);
+      }
+      throw ex;
+    } finally {
+      for (PreparedStatement stmt : statements) {
+        if (stmt != null) {
+          datasource.releaseResources(stmt, null, false);
+        }
+      }
+
+      if (conn != null) {
+        if (autoCommit != null) {
           try {
-            Certificate cc = Certificate.getInstance(encodedCert);
-            tbsCert = cc.getTBSCertificate();
-          } catch (RuntimeException ex) {
-            LOG.error("could not parse certificate in file {}", filename);
-            LOG.debug("could not parse certificate in file " + filename, ex);
-            throw new CertificateException(ex.getMessage(), ex);
+            conn.setAutoCommit(autoCommit);
+          } catch (SQLException ex) {
+            LogUtil.error(LOG, translate(null, ex), "could not recover AutoCommit");
           }
+        }
+        datasource.returnConnection(conn);
+      }
 
-          byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
+      entries.close();
+    }
+  } // method importFile
 
-          String b64Sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
+  private EntriesSource openXmlEntries(CaDbEntryType type, final String entriesZipFile)
+      throws Exception {
+    final ZipFile zipFile = new ZipFile(new File(entriesZipFile));
+    ZipEntry entriesXmlEntry = zipFile.getEntry("overview.xml");
 
-          // cert
-          String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
+    final DbiXmlReader reader;
+    try {
+      reader = createReader(type, zipFile.getInputStream(entriesXmlEntry));
+    } catch (Exception ex) {
+      try {
+        zipFile.close();
+      } catch (Exception e2) {
+        LOG.error("could not close ZIP file {}: {}", entriesZipFile, e2.getMessage());
+        LOG.debug("could not close ZIP file " + entriesZipFile, e2);
+      }
+      throw ex;
+    }
 
-          PreparedStatement psCert = statements[0];
-          PreparedStatement psRawcert = statements[1];
+    return new EntriesSource() {
 
-          try {
-            int idx = 1;
+      @Override
+      public boolean hasNext() {
+        return reader.hasNext();
+      }
 
-            psCert.setLong(idx++, id);
-            psCert.setLong(idx++, cert.getUpdate());
-            psCert.setString(idx++, tbsCert.getSerialNumber().getPositiveValue().toString(16));
+      @Override
+      public IdentifidDbObjectType next() throws Exception {
+        return (IdentifidDbObjectType) reader.next();
+      }
 
-            psCert.setString(idx++, subjectText);
-            long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
-            psCert.setLong(idx++, fpSubject);
+      @Override
+      public byte[] getData(IdentifidDbObjectType entry) throws IOException {
+        String filename = (entry instanceof CertType) ? ((CertType) entry).getFile()
+            : (entry instanceof CrlType) ? ((CrlType) entry).getFile()
+            : (entry instanceof RequestType) ? ((RequestType) entry).getFile() : null;
+        if (filename == null) {
+          return null;
+        }
 
-            if (cert.getFpRs() != null) {
-              psCert.setLong(idx++, cert.getFpRs());
-            } else {
-              psCert.setNull(idx++, Types.BIGINT);
-            }
+        ZipEntry zipEntry = zipFile.getEntry(filename);
+        if (zipEntry == null) {
+          throw new IOException("could not find " + filename + " in " + entriesZipFile);
+        }
+        return IoUtil.read(zipFile.getInputStream(zipEntry));
+      }
 
-            psCert.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
-            psCert.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
-            setBoolean(psCert, idx++, cert.getRev());
-            setInt(psCert, idx++, cert.getRr());
-            setLong(psCert, idx++, cert.getRt());
-            setLong(psCert, idx++, cert.getRit());
-            setInt(psCert, idx++, cert.getPid());
-            setInt(psCert, idx++, cert.getCaId());
-
-            setInt(psCert, idx++, cert.getRid());
-            setInt(psCert, idx++, cert.getUid());
-            psCert.setLong(idx++, FpIdCalculator.hash(encodedKey));
-            Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
-            boolean ee = true;
-            if (extension != null) {
-              ASN1Encodable asn1 = extension.getParsedValue();
-              ee = !BasicConstraints.getInstance(asn1).isCA();
-            }
+      @Override
+      public void close() throws IOException {
+        zipFile.close();
+      }
 
-            psCert.setInt(idx++, ee ? 1 : 0);
-            psCert.setInt(idx++, cert.getReqType());
-            String tidS = null;
-            if (cert.getTid() != null) {
-              tidS = cert.getTid();
-            }
-            psCert.setString(idx++, tidS);
-            psCert.addBatch();
-          } catch (SQLException ex) {
-            throw translate(SQL_ADD_CERT, ex);
-          }
+    };
+  } // method openXmlEntries
 
-          try {
-            int idx = 1;
-            psRawcert.setLong(idx++, cert.getId());
-            psRawcert.setString(idx++, b64Sha1FpCert);
-            psRawcert.setString(idx++, cert.getRs());
-            psRawcert.setString(idx++, Base64.encodeToString(encodedCert));
-            psRawcert.addBatch();
-          } catch (SQLException ex) {
-            throw translate(SQL_ADD_CRAW, ex);
-          }
-        } else if (CaDbEntryType.CRL == type) {
-          PreparedStatement psAddCrl = statements[0];
+  private EntriesSource openBinEntries(CaDbEntryType type, String entriesBinFile)
+      throws Exception {
+    InputStream stream = new BufferedInputStream(new FileInputStream(entriesBinFile),
+        STREAM_BUFFER_SIZE);
 
-          CrlType crl = (CrlType) entry;
+    final CaEntriesBinReader reader;
+    try {
+      reader = new CaEntriesBinReader(stream, getRootElementName(type));
+    } catch (Exception ex) {
+      stream.close();
+      throw ex;
+    }
 
-          String filename = crl.getFile();
+    return new EntriesSource() {
 
-          // CRL
-          ZipEntry zipEnty = zipFile.getEntry(filename);
+      @Override
+      public boolean hasNext() {
+        return reader.hasNext();
+      }
 
-          // rawcert
-          byte[] encodedCrl = IoUtil.read(zipFile.getInputStream(zipEnty));
+      @Override
+      public IdentifidDbObjectType next() throws Exception {
+        return reader.next();
+      }
 
-          X509CRL x509crl = null;
-          try {
-            x509crl = X509Util.parseCrl(encodedCrl);
-          } catch (Exception ex) {
-            LOG.error("could not parse CRL in file {}", filename);
-            LOG.debug("could not parse CRL in file " + filename, ex);
-            if (ex instanceof CRLException) {
-              throw (CRLException) ex;
-            } else {
-              throw new CRLException(ex.getMessage(), ex);
-            }
-          }
+      @Override
+      public byte[] getData(IdentifidDbObjectType entry) {
+        return reader.getData();
+      }
 
-          try {
-            byte[] octetString = x509crl.getExtensionValue(Extension.cRLNumber.getId());
-            if (octetString == null) {
-              LOG.warn("CRL without CRL number, ignore it");
-              continue;
-            }
-            byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-            // CHECKSTYLE:SKIP
-            BigInteger crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
-
-            BigInteger baseCrlNumber = null;
-            octetString = x509crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-            if (octetString != null) {
-              extnValue = DEROctetString.getInstance(octetString).getOctets();
-              baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
-            }
+      @Override
+      public void close() throws IOException {
+        reader.close();
+      }
 
-            int idx = 1;
-            psAddCrl.setLong(idx++, crl.getId());
-            psAddCrl.setInt(idx++, crl.getCaId());
-            psAddCrl.setLong(idx++, crlNumber.longValue());
-            psAddCrl.setLong(idx++, x509crl.getThisUpdate().getTime() / 1000);
-            if (x509crl.getNextUpdate() != null) {
-              psAddCrl.setLong(idx++, x509crl.getNextUpdate().getTime() / 1000);
-            } else {
-              psAddCrl.setNull(idx++, Types.INTEGER);
-            }
+    };
+  } // method openBinEntries
 
-            if (baseCrlNumber == null) {
-              setBoolean(psAddCrl, idx++, false);
-              psAddCrl.setNull(idx++, Types.BIGINT);
-            } else {
-              setBoolean(psAddCrl, idx++, true);
-              psAddCrl.setLong(idx++, baseCrlNumber.longValue());
-            }
+  /**
+   * Adds the entry to the batch of the statements.
+   * @return whether the entry has been added.
+   */
+  private boolean addEntry(CaDbEntryType type, IdentifidDbObjectType entry, byte[] data,
+      PreparedStatement[] statements) throws Exception {
+    final long id = entry.getId();
 
-            String str = Base64.encodeToString(encodedCrl);
-            psAddCrl.setString(idx++, str);
+    if (CaDbEntryType.CERT == type) {
+      CertType cert = (CertType) entry;
 
-            psAddCrl.addBatch();
-          } catch (SQLException ex) {
-            System.err.println("could not import CRL with ID=" + crl.getId()
-                + ", message: " + ex.getMessage());
-            throw ex;
-          }
-        } else if (CaDbEntryType.REQUEST == type) {
-          PreparedStatement psAddRequest = statements[0];
+      String filename = cert.getFile();
+      byte[] encodedCert = data;
 
-          RequestType request = (RequestType) entry;
+      TBSCertificate tbsCert;
+      try {
+        Certificate cc = Certificate.getInstance(encodedCert);
+        tbsCert = cc.getTBSCertificate();
+      } catch (RuntimeException ex) {
+        LOG.error("could not parse certificate in file {}", filename);
+        LOG.debug("could not parse certificate in file " + filename, ex);
+        throw new CertificateException(ex.getMessage(), ex);
+      }
 
-          String filename = request.getFile();
+      byte[] encodedKey = tbsCert.getSubjectPublicKeyInfo().getPublicKeyData().getBytes();
 
-          ZipEntry zipEnty = zipFile.getEntry(filename);
-          byte[] encodedRequest = IoUtil.read(zipFile.getInputStream(zipEnty));
+      String b64Sha1FpCert = HashAlgo.SHA1.base64Hash(encodedCert);
 
-          try {
-            int idx = 1;
-            psAddRequest.setLong(idx++, request.getId());
-            psAddRequest.setLong(idx++, request.getUpdate());
-            psAddRequest.setString(idx++, Base64.encodeToString(encodedRequest));
-            psAddRequest.addBatch();
-          } catch (SQLException ex) {
-            System.err.println("could not import REQUEST with ID=" + request.getId()
-                + ", message: " + ex.getMessage());
-            throw ex;
-          }
-        } else if (CaDbEntryType.REQCERT == type) {
-          PreparedStatement psAddReqCert = statements[0];
+      // cert
+      String subjectText = X509Util.cutX500Name(tbsCert.getSubject(), maxX500nameLen);
 
-          RequestCertType reqCert = (RequestCertType) entry;
+      PreparedStatement psCert = statements[0];
+      PreparedStatement psRawcert = statements[1];
 
-          try {
-            int idx = 1;
-            psAddReqCert.setLong(idx++, reqCert.getId());
-            psAddReqCert.setLong(idx++, reqCert.getRid());
-            psAddReqCert.setLong(idx++, reqCert.getCid());
-            psAddReqCert.addBatch();
-          } catch (SQLException ex) {
-            System.err.println("could not import REQUEST with ID=" + reqCert.getId()
-                + ", message: " + ex.getMessage());
-            throw ex;
-          }
+      try {
+        int idx = 1;
+
+        psCert.setLong(idx++, id);
+        psCert.setLong(idx++, cert.getUpdate());
+        psCert.setString(idx++, tbsCert.getSerialNumber().getPositiveValue().toString(16));
+
+        psCert.setString(idx++, subjectText);
+        long fpSubject = X509Util.fpCanonicalizedName(tbsCert.getSubject());
+        psCert.setLong(idx++, fpSubject);
+
+        if (cert.getFpRs() != null) {
+          psCert.setLong(idx++, cert.getFpRs());
         } else {
-          throw new RuntimeException("Unknown CaDbEntryType " + type);
+          psCert.setNull(idx++, Types.BIGINT);
         }
 
-        boolean isLastBlock = !entries.hasNext();
-        if (numEntriesInBatch > 0
-            && (numEntriesInBatch % numEntriesPerCommit == 0 || isLastBlock)) {
-          if (evaulateOnly) {
-            for (PreparedStatement m : statements) {
-              m.clearBatch();
-            }
-          } else {
-            String sql = null;
+        psCert.setLong(idx++, tbsCert.getStartDate().getDate().getTime() / 1000);
+        psCert.setLong(idx++, tbsCert.getEndDate().getDate().getTime() / 1000);
+        setBoolean(psCert, idx++, cert.getRev());
+        setInt(psCert, idx++, cert.getRr());
+        setLong(psCert, idx++, cert.getRt());
+        setLong(psCert, idx++, cert.getRit());
+        setInt(psCert, idx++, cert.getPid());
+        setInt(psCert, idx++, cert.getCaId());
+
+        setInt(psCert, idx++, cert.getRid());
+        setInt(psCert, idx++, cert.getUid());
+        psCert.setLong(idx++, FpIdCalculator.hash(encodedKey));
+        Extension extension = tbsCert.getExtensions().getExtension(Extension.basicConstraints);
+        boolean ee = true;
+        if (extension != null) {
+          ASN1Encodable asn1 = extension.getParsedValue();
+          ee = !BasicConstraints.getInstance(asn1).isCA();
+        }
 
-            try {
-              for (int i = 0; i < sqls.length; i++) {
-                sql = sqls[i];
-                statements[i].executeBatch();
-              }
+        psCert.setInt(idx++, ee ? 1 : 0);
+        psCert.setInt(idx++, cert.getReqType());
+        String tidS = null;
+        if (cert.getTid() != null) {
+          tidS = cert.getTid();
+        }
+        psCert.setString(idx++, tidS);
+        psCert.addBatch();
+      } catch (SQLException ex) {
+        throw translate(SQL_ADD_CERT, ex);
+      }
 
-              sql = null;
-              commit("(commit import to CA)");
-            } catch (Throwable th) {
-              rollback();
-              deleteFromTableWithLargerId(type.getTableName(), "ID", id, LOG);
-              if (CaDbEntryType.CERT == type) {
-                deleteFromTableWithLargerId("CRAW", "CID", id, LOG);
-              }
-              if (th instanceof SQLException) {
-                throw translate(sql, (SQLException) th);
-              } else if (th instanceof Exception) {
-                throw (Exception) th;
-              } else {
-                throw new Exception(th);
-              }
-            }
-          }
+      try {
+        int idx = 1;
+        psRawcert.setLong(idx++, cert.getId());
+        psRawcert.setString(idx++, b64Sha1FpCert);
+        psRawcert.setString(idx++, cert.getRs());
+        psRawcert.setString(idx++, Base64.encodeToString(encodedCert));
+        psRawcert.addBatch();
+      } catch (SQLException ex) {
+        throw translate(SQL_ADD_CRAW, ex);
+      }
+    } else if (CaDbEntryType.CRL == type) {
+      PreparedStatement psAddCrl = statements[0];
 
-          lastSuccessfulEntryId = id;
-          processLog.addNumProcessed(numEntriesInBatch);
-          numEntriesInBatch = 0;
-          echoToFile(type + ":" + (numProcessedInLastProcess + processLog.numProcessed()) + ":"
-              + lastSuccessfulEntryId, processLogFile);
-          processLog.printStatus();
+      CrlType crl = (CrlType) entry;
+
+      String filename = crl.getFile();
+      byte[] encodedCrl = data;
+
+      X509CRL x509crl = null;
+      try {
+        x509crl = X509Util.parseCrl(encodedCrl);
+      } catch (Exception ex) {
+        LOG.error("could not parse CRL in file {}", filename);
+        LOG.debug("could not parse CRL in file " + filename, ex);
+        if (ex instanceof CRLException) {
+          throw (CRLException) ex;
+        } else {
+          throw new CRLException(ex.getMessage(), ex);
         }
+      }
 
-      } // end while
+      try {
+        byte[] octetString = x509crl.getExtensionValue(Extension.cRLNumber.getId());
+        if (octetString == null) {
+          LOG.warn("CRL without CRL number, ignore it");
+          return false;
+        }
+        byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
+        // CHECKSTYLE:SKIP
+        BigInteger crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
+
+        BigInteger baseCrlNumber = null;
+        octetString = x509crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
+        if (octetString != null) {
+          extnValue = DEROctetString.getInstance(octetString).getOctets();
+          baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
+        }
 
-      return lastSuccessfulEntryId;
-    } finally {
-      recoverAutoCommit();
-      zipFile.close();
+        int idx = 1;
+        psAddCrl.setLong(idx++, crl.getId());
+        psAddCrl.setInt(idx++, crl.getCaId());
+        psAddCrl.setLong(idx++, crlNumber.longValue());
+        psAddCrl.setLong(idx++, x509crl.getThisUpdate().getTime() / 1000);
+        if (x509crl.getNextUpdate() != null) {
+          psAddCrl.setLong(idx++, x509crl.getNextUpdate().getTime() / 1000);
+        } else {
+          psAddCrl.setNull(idx++, Types.INTEGER);
+        }
+
+        if (baseCrlNumber == null) {
+          setBoolean(psAddCrl, idx++, false);
+          psAddCrl.setNull(idx++, Types.BIGINT);
+        } else {
+          setBoolean(psAddCrl, idx++, true);
+          psAddCrl.setLong(idx++, baseCrlNumber.longValue());
+        }
+
+        String str = Base64.encodeToString(encodedCrl);
+        psAddCrl.setString(idx++, str);
+
+        psAddCrl.addBatch();
+      } catch (SQLException ex) {
+        System.err.println("could not import CRL with ID=" + crl.getId()
+            + ", message: " + ex.getMessage());
+        throw ex;
+      }
+    } else if (CaDbEntryType.REQUEST == type) {
+      PreparedStatement psAddRequest = statements[0];
+
+      RequestType request = (RequestType) entry;
+
+      byte[] encodedRequest = data;
+
+      try {
+        int idx = 1;
+        psAddRequest.setLong(idx++, request.getId());
+        psAddRequest.setLong(idx++, request.getUpdate());
+        psAddRequest.setString(idx++, Base64.encodeToString(encodedRequest));
+        psAddRequest.addBatch();
+      } catch (SQLException ex) {
+        System.err.println("could not import REQUEST with ID=" + request.getId()
+            + ", message: " + ex.getMessage());
+        throw ex;
+      }
+    } else if (CaDbEntryType.REQCERT == type) {
+      PreparedStatement psAddReqCert = statements[0];
+
+      RequestCertType reqCert = (RequestCertType) entry;
+
+      try {
+        int idx = 1;
+        psAddReqCert.setLong(idx++, reqCert.getId());
+        psAddReqCert.setLong(idx++, reqCert.getRid());
+        psAddReqCert.setLong(idx++, reqCert.getCid());
+        psAddReqCert.addBatch();
+      } catch (SQLException ex) {
+        System.err.println("could not import REQUEST with ID=" + reqCert.getId()
+            + ", message: " + ex.getMessage());
+        throw ex;
+      }
+    } else {
+      throw new RuntimeException("Unknown CaDbEntryType " + type);
     }
-  } // method importEntries
+
+    return true;
+  } // method addEntry
+
+  /**
+   * Extracts the largest ID from the file name, e.g. 1000 from certs_0001-1000.zip.
+   */
+  private static long getToId(String filename) {
+    int fromIdx = filename.lastIndexOf('-');
+    int toIdx = filename.lastIndexOf('.');
+    if (fromIdx != -1 && toIdx > fromIdx) {
+      try {
+        return Long.parseLong(filename.substring(fromIdx + 1, toIdx));
+      } catch (NumberFormatException ex) {
+        LOG.debug("could not parse file name " + filename, ex);
+      }
+    }
+
+    LOG.warn("invalid file name '{}', but will still be processed", filename);
+    return Long.MAX_VALUE;
+  }
+
+  private static String getRootElementName(CaDbEntryType type) {
+    switch (type) {
+      case CERT:
+        return CertType.TAG_PARENT;
+      case CRL:
+        return CrlType.TAG_PARENT;
+      case REQUEST:
+        return RequestType.TAG_PARENT;
+      case REQCERT:
+        return RequestCertType.TAG_PARENT;
+      default:
+        throw new RuntimeException("unknown CaDbEntryType " + type);
+    }
+  }
 
   private static DbiXmlReader createReader(CaDbEntryType type, InputStream is)
       throws XMLStreamException, InvalidDataObjectException {
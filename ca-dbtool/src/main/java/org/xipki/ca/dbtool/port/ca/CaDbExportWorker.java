@@ -57,11 +57,15 @@ public class CaDbExportWorker extends DbPortWorker {
 
   private final int numCertsPerSelect;
 
+  private final int numThreads;
+
+  private final boolean binaryFormat;
+
   private final boolean evaluateOnly;
 
   public CaDbExportWorker(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
       String dbConfFile, String destFolder, boolean resume, int numCertsInBundle,
-      int numCertsPerSelect, boolean evaluateOnly)
+      int numCertsPerSelect, int numThreads, boolean binaryFormat, boolean evaluateOnly)
       throws DataAccessException, PasswordResolverException, IOException, JAXBException {
     ParamUtil.requireNonBlank("dbConfFile", dbConfFile);
     ParamUtil.requireNonBlank("destFolder", destFolder);
@@ -75,6 +79,8 @@ public class CaDbExportWorker extends DbPortWorker {
     this.resume = resume;
     this.numCertsInBundle = numCertsInBundle;
     this.numCertsPerSelect = numCertsPerSelect;
+    this.numThreads = numThreads;
+    this.binaryFormat = binaryFormat;
     this.evaluateOnly = evaluateOnly;
     checkDestFolder();
   }
@@ -120,7 +126,8 @@ public class CaDbExportWorker extends DbPortWorker {
 
       // CertStore
       CaCertStoreDbExporter certStoreExporter = new CaCertStoreDbExporter(datasource, destFolder,
-          numCertsInBundle, numCertsPerSelect, resume, stopMe, evaluateOnly);
+          numCertsInBundle, numCertsPerSelect, numThreads, binaryFormat, resume, stopMe,
+          evaluateOnly);
       certStoreExporter.export();
       certStoreExporter.shutdown();
     } finally {
@@ -55,11 +55,13 @@ public class CaDbImportWorker extends DbPortWorker {
 
   private final int batchEntriesPerCommit;
 
+  private final int numThreads;
+
   private final boolean evaluateOnly;
 
   public CaDbImportWorker(DataSourceFactory datasourceFactory, PasswordResolver passwordResolver,
       String dbConfFile, boolean resume, String srcFolder, int batchEntriesPerCommit,
-      boolean evaluateOnly)
+      int numThreads, boolean evaluateOnly)
       throws DataAccessException, PasswordResolverException, IOException, JAXBException {
     ParamUtil.requireNonNull("datasourceFactory", datasourceFactory);
 
@@ -70,6 +72,7 @@ public class CaDbImportWorker extends DbPortWorker {
     this.resume = resume;
     this.srcFolder = IoUtil.expandFilepath(srcFolder);
     this.batchEntriesPerCommit = batchEntriesPerCommit;
+    this.numThreads = numThreads;
     this.evaluateOnly = evaluateOnly;
   }
 
@@ -99,7 +102,7 @@ public class CaDbImportWorker extends DbPortWorker {
 
       // CertStore
       CaCertStoreDbImporter certStoreImporter = new CaCertStoreDbImporter(datasource,
-          srcFolder, batchEntriesPerCommit, resume, stopMe, evaluateOnly);
+          srcFolder, batchEntriesPerCommit, numThreads, resume, stopMe, evaluateOnly);
       certStoreImporter.importToDb();
       certStoreImporter.shutdown();
     } finally {
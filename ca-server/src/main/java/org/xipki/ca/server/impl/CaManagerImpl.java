@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.net.SocketException;
 import java.security.KeyStoreException;
+import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
@@ -37,11 +38,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -245,12 +248,12 @@ public class CaManagerImpl implements CaManager, ResponderManager {
         SystemEvent event = queryExecutor.getSystemEvent(EVENT_CACHAGNE);
         long caChangedTime = (event == null) ? 0 : event.getEventTime();
 
-        LOG.info("check the restart CA system event: changed at={}, lastStartTime={}",
-            new Date(caChangedTime * 1000L), lastStartTime);
+        LOG.info("check the CA change event: changed at={}, lastSyncTime={}",
+            new Date(caChangedTime * 1000L), new Date(lastConfSyncTime * 1000L));
 
-        if (caChangedTime > lastStartTime.getTime() / 1000L) {
-          LOG.info("received event to restart CA");
-          restartCaSystem();
+        if (caChangedTime > lastConfSyncTime) {
+          LOG.info("received event to change CA");
+          applyConfChanges(caChangedTime);
         } else {
           LOG.debug("received no event to restart CA");
         }
@@ -271,6 +274,11 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
   private static final String EVENT_CACHAGNE = "CA_CHANGE";
 
+  /**
+   * Seconds to keep the recorded configuration changes.
+   */
+  private static final long CONF_CHANGE_RETENTION = 7L * 24 * 60 * 60;
+
   private final String lockInstanceId;
 
   private final CaIdNameMap idNameMap = new CaIdNameMap();
@@ -331,6 +339,12 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
   private final Map<String, CaCmpResponderImpl> x509Responders = new ConcurrentHashMap<>();
 
+  /**
+   * Responders of the reloaded CAs, taken over by the next responder of the same CA.
+   */
+  private final Map<String, CaCmpResponderImpl> replacedX509Responders =
+      new ConcurrentHashMap<>();
+
   private final Map<String, X509Ca> x509cas = new ConcurrentHashMap<>();
 
   private final DataSourceFactory datasourceFactory;
@@ -363,6 +377,21 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
   private Date lastStartTime;
 
+  /**
+   * Configuration changes made by this master and not yet notified to the slaves.
+   */
+  private final Set<ConfChange> pendingConfChanges = new LinkedHashSet<>();
+
+  /**
+   * ID of the last configuration change applied by this slave.
+   */
+  private long lastConfChangeId;
+
+  /**
+   * Time of the last CA change event applied by this slave, in seconds.
+   */
+  private long lastConfSyncTime;
+
   private AuditServiceRegister auditServiceRegister;
 
   private CertprofileFactoryRegister x509CertProfileFactoryRegister;
@@ -373,6 +402,8 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
   private CertStore certstore;
 
+  private boolean pendingCertStoreInDatabase;
+
   private SecurityFactory securityFactory;
 
   private CaManagerQueryExecutor queryExecutor;
@@ -523,6 +554,17 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
     this.queryExecutor = new CaManagerQueryExecutor(this.datasource);
 
+    // the configuration read below contains all changes up to now
+    this.lastConfChangeId = queryExecutor.getMaxConfChangeId();
+    this.lastConfSyncTime = System.currentTimeMillis() / 1000L;
+    if (masterMode) {
+      synchronized (pendingConfChanges) {
+        // the configuration may have been changed while this master was not running
+        pendingConfChanges.clear();
+        pendingConfChanges.add(new ConfChange(ConfChange.TYPE_ALL, null));
+      }
+    }
+
     initEnvironmentParamters();
     String envEpoch = envParameterResolver.getParameter(ENV_EPOCH);
 
@@ -548,12 +590,35 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
     UniqueIdGenerator idGen = new UniqueIdGenerator(epoch, shardId);
 
+    if (this.certstore != null) {
+      this.certstore.shutdown();
+    }
+
     try {
       this.certstore = new CertStore(datasource, idGen);
     } catch (DataAccessException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
 
+    String str = caConfProperties.getProperty("ca.certstore.groupCommit.enabled");
+    if (Boolean.parseBoolean(str)) {
+      int maxBatchSize = getIntProperty("ca.certstore.groupCommit.maxBatchSize", 100);
+      int maxDelayMs = getIntProperty("ca.certstore.groupCommit.maxDelay", 2);
+      if (maxBatchSize < 1 || maxDelayMs < 0) {
+        throw new CaMgmtException("invalid ca.certstore.groupCommit.* configuration");
+      }
+      this.certstore.enableGroupCommit(maxBatchSize, maxDelayMs);
+    }
+
+    str = caConfProperties.getProperty("ca.cmp.pendingCertStore");
+    if (StringUtil.isBlank(str) || "memory".equalsIgnoreCase(str.trim())) {
+      this.pendingCertStoreInDatabase = false;
+    } else if ("database".equalsIgnoreCase(str.trim())) {
+      this.pendingCertStoreInDatabase = true;
+    } else {
+      throw new CaMgmtException(concat("invalid ca.cmp.pendingCertStore '", str, "'"));
+    }
+
     initCaAliases();
     initCertprofiles();
     initPublishers();
@@ -655,6 +720,20 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   @Override
   public void notifyCaChange() throws CaMgmtException {
     try {
+      List<ConfChange> changes;
+      synchronized (pendingConfChanges) {
+        changes = new ArrayList<>(pendingConfChanges);
+      }
+
+      // without recorded changes the slaves will restart the CA system
+      if (!changes.isEmpty()) {
+        long now = System.currentTimeMillis() / 1000L;
+        queryExecutor.addConfChanges(changes, now - CONF_CHANGE_RETENTION);
+        synchronized (pendingConfChanges) {
+          pendingConfChanges.removeAll(changes);
+        }
+      }
+
       SystemEvent systemEvent = new SystemEvent(EVENT_CACHAGNE, lockInstanceId,
           System.currentTimeMillis() / 1000L);
       queryExecutor.changeSystemEvent(systemEvent);
@@ -665,6 +744,143 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     }
   } // method notifyCaChange
 
+  private void confChanged(String type, String name) {
+    synchronized (pendingConfChanges) {
+      pendingConfChanges.add(new ConfChange(type, name));
+    }
+  }
+
+  /**
+   * Applies the configuration changes recorded by the master. Only the changed Certprofiles,
+   * publishers and CAs are reloaded, the CA system is restarted if other entities have been
+   * changed, or if the changes could not be applied.
+   */
+  private void applyConfChanges(long caChangedTime) throws CaMgmtException {
+    SortedMap<Long, ConfChange> changes = queryExecutor.getConfChanges(lastConfChangeId);
+    // IDs are assigned consecutively, a gap means that the changes have been removed
+    if (changes.isEmpty() || changes.firstKey() != lastConfChangeId + 1
+        || changes.containsValue(new ConfChange(ConfChange.TYPE_ALL, null))) {
+      LOG.info("restart CA system to apply the changes");
+      restartCaSystem();
+      return;
+    }
+
+    Set<ConfChange> uniqueChanges = new LinkedHashSet<>(changes.values());
+    LOG.info("apply the changes {}", uniqueChanges);
+    try {
+      // Certprofiles and publishers are referenced by the CAs
+      for (ConfChange change : uniqueChanges) {
+        if (ConfChange.TYPE_CERTPROFILE.equals(change.getType())) {
+          reloadCertprofile(change.getName());
+        } else if (ConfChange.TYPE_PUBLISHER.equals(change.getType())) {
+          reloadPublisher(change.getName());
+        }
+      }
+
+      for (ConfChange change : uniqueChanges) {
+        if (ConfChange.TYPE_CA.equals(change.getType())) {
+          reloadCa(change.getName());
+        }
+      }
+    } catch (CaMgmtException | RuntimeException ex) {
+      LogUtil.error(LOG, ex, "could not apply the changes, restart CA system");
+      restartCaSystem();
+      return;
+    }
+
+    lastConfChangeId = changes.lastKey();
+    lastConfSyncTime = caChangedTime;
+    auditLogPciEvent(true, "CA_CHANGE");
+  } // method applyConfChanges
+
+  private void reloadCertprofile(String name) throws CaMgmtException {
+    IdentifiedX509Certprofile oldProfile;
+    if (!queryExecutor.namesFromTable("PROFILE").contains(name)) {
+      idNameMap.removeCertprofile(name);
+      certprofileDbEntries.remove(name);
+      oldProfile = certprofiles.remove(name);
+      LOG.info("removed profile '{}'", name);
+    } else {
+      CertprofileEntry dbEntry = queryExecutor.createCertprofile(name);
+      idNameMap.addCertprofile(dbEntry.getIdent());
+      dbEntry.setFaulty(true);
+      IdentifiedX509Certprofile profile = null;
+      try {
+        profile = createCertprofile(dbEntry);
+        dbEntry.setFaulty(false);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not initialize Certprofile " + name);
+      }
+
+      certprofileDbEntries.put(name, dbEntry);
+      oldProfile = (profile == null) ? certprofiles.remove(name)
+          : certprofiles.put(name, profile);
+      LOG.info("reloaded profile '{}'", name);
+    }
+
+    shutdownCertprofile(oldProfile);
+  } // method reloadCertprofile
+
+  private void reloadPublisher(String name) throws CaMgmtException {
+    IdentifiedX509CertPublisher oldPublisher;
+    if (!queryExecutor.namesFromTable("PUBLISHER").contains(name)) {
+      idNameMap.removePublisher(name);
+      publisherDbEntries.remove(name);
+      oldPublisher = publishers.remove(name);
+      LOG.info("removed publisher '{}'", name);
+    } else {
+      PublisherEntry dbEntry = queryExecutor.createPublisher(name);
+      idNameMap.addPublisher(dbEntry.getIdent());
+      dbEntry.setFaulty(true);
+      IdentifiedX509CertPublisher publisher = null;
+      try {
+        publisher = createPublisher(dbEntry);
+        dbEntry.setFaulty(false);
+      } catch (CaMgmtException ex) {
+        LogUtil.error(LOG, ex, "could not initialize publisher " + name);
+      }
+
+      publisherDbEntries.put(name, dbEntry);
+      oldPublisher = (publisher == null) ? publishers.remove(name)
+          : publishers.put(name, publisher);
+      LOG.info("reloaded publisher '{}'", name);
+    }
+
+    shutdownPublisher(oldPublisher);
+  } // method reloadPublisher
+
+  /**
+   * Reloads the CA. The other CAs are not affected.
+   */
+  private void reloadCa(String name) throws CaMgmtException {
+    if (!queryExecutor.namesFromTable("CA").contains(name)) {
+      caInfos.remove(name);
+      idNameMap.removeCa(name);
+      caHasProfiles.remove(name);
+      caHasPublishers.remove(name);
+      caHasRequestors.remove(name);
+      X509Ca ca = x509cas.remove(name);
+      removeX509Responder(name, false);
+      if (ca != null) {
+        ca.shutdown();
+      }
+      LOG.info("removed CA '{}'", name);
+      return;
+    }
+
+    createCa(name);
+    if (CaStatus.ACTIVE != caInfos.get(name).getCaEntry().getStatus()) {
+      LOG.info("reloaded inactive CA '{}'", name);
+      return;
+    }
+
+    if (startCa(name)) {
+      LOG.info("reloaded CA '{}'", name);
+    } else {
+      throw new CaMgmtException("could not start CA " + name);
+    }
+  } // method reloadCa
+
   public void startCaSystem() {
     boolean caSystemStarted = false;
     try {
@@ -700,7 +916,9 @@ public class CaManagerImpl implements CaManager, ResponderManager {
       this.lastStartTime = new Date();
 
       x509cas.clear();
-      x509Responders.clear();
+      for (String caName : new ArrayList<>(x509Responders.keySet())) {
+        removeX509Responder(caName, true);
+      }
 
       scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(10);
       scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
@@ -839,12 +1057,33 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     }
 
     x509cas.put(caName, ca);
-    CaCmpResponderImpl caResponder = new CaCmpResponderImpl(this, caName);
+    CaCmpResponderImpl caResponder = new CaCmpResponderImpl(this, caName,
+        replacedX509Responders.remove(caName));
     x509Responders.put(caName, caResponder);
 
     return true;
   } // method startCa
 
+  /**
+   * Removes the CMP responder of the CA and stops its scheduled tasks.
+   * @param reload whether the CA will be started again. If {@code true}, the certificates
+   *        waiting for the confirmation are taken over by the next responder of the CA.
+   */
+  private void removeX509Responder(String caName, boolean reload) {
+    CaCmpResponderImpl responder = x509Responders.remove(caName);
+    if (responder != null) {
+      responder.shutdown();
+    }
+
+    if (reload) {
+      if (responder != null) {
+        replacedX509Responders.put(caName, responder);
+      }
+    } else {
+      replacedX509Responders.remove(caName);
+    }
+  } // method removeX509Responder
+
   public void shutdown() {
     LOG.info("stopping CA system");
     shutdownScheduledThreadPoolExecutor();
@@ -883,6 +1122,10 @@ public class CaManagerImpl implements CaManager, ResponderManager {
       caLockFile.delete();
     }
 
+    if (certstore != null) {
+      certstore.shutdown();
+    }
+
     for (String dsName :datasources.keySet()) {
       DataSourceWrapper ds = datasources.get(dsName);
       try {
@@ -1238,7 +1481,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     caHasPublishers.remove(name);
     caHasRequestors.remove(name);
     X509Ca oldCa = x509cas.remove(name);
-    x509Responders.remove(name);
+    removeX509Responder(name, true);
     if (oldCa != null) {
       oldCa.shutdown();
     }
@@ -1287,6 +1530,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addCa(CaEntry caEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("caEntry", caEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caEntry.getIdent().getName());
     NameId ident = caEntry.getIdent();
     String name = ident.getName();
 
@@ -1342,6 +1586,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void changeCa(ChangeCaEntry entry) throws CaMgmtException {
     ParamUtil.requireNonNull("entry", entry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, entry.getIdent().getName());
     String name = entry.getIdent().getName();
     NameId ident = idNameMap.getCa(name);
     if (ident == null) {
@@ -1373,6 +1618,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     profileName = ParamUtil.requireNonBlank("profileName", profileName).toLowerCase();
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     queryExecutor.removeCertprofileFromCa(profileName, caName);
 
@@ -1389,6 +1635,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     profileName = ParamUtil.requireNonBlank("profileName", profileName).toLowerCase();
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     NameId ident = idNameMap.getCertprofile(profileName);
     if (ident == null) {
@@ -1429,6 +1676,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     publisherName = ParamUtil.requireNonBlank("publisherName", publisherName).toLowerCase();
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     queryExecutor.removePublisherFromCa(publisherName, caName);
 
@@ -1443,6 +1691,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     publisherName = ParamUtil.requireNonBlank("publisherName", publisherName).toLowerCase();
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     NameId ident = idNameMap.getPublisher(publisherName);
     if (ident == null) {
@@ -1505,6 +1754,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addRequestor(RequestorEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     String name = dbEntry.getIdent().getName();
     if (requestorDbEntries.containsKey(name)) {
       throw new CaMgmtException(concat("Requestor named ", name, " exists"));
@@ -1523,6 +1773,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeRequestor(String requestorName) throws CaMgmtException {
     requestorName = ParamUtil.requireNonBlank("requestorName", requestorName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
 
     for (String caName : caHasRequestors.keySet()) {
       boolean removeMe = false;
@@ -1554,6 +1805,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     ParamUtil.requireNonNull("base64Cert", base64Cert);
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
 
     NameId ident = idNameMap.getRequestor(name);
     if (ident == null) {
@@ -1576,6 +1828,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     requestorName = ParamUtil.requireNonBlank("requestorName", requestorName).toLowerCase();
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     if (requestorName.equals(RequestorInfo.NAME_BY_CA)
         || requestorName.equals(RequestorInfo.NAME_BY_USER)) {
@@ -1601,6 +1854,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     ParamUtil.requireNonNull("requestor", requestor);
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     NameId requestorIdent = requestor.getRequestorIdent();
     NameId ident = idNameMap.getRequestor(requestorIdent.getName());
@@ -1680,6 +1934,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeCertprofile(String profileName) throws CaMgmtException {
     profileName = ParamUtil.requireNonBlank("profileName", profileName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CERTPROFILE, profileName);
 
     for (String caName : caHasProfiles.keySet()) {
       if (caHasProfiles.get(caName).contains(profileName)) {
@@ -1717,6 +1972,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     }
 
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CERTPROFILE, name);
 
     IdentifiedX509Certprofile profile = queryExecutor.changeCertprofile(ident, type, conf, this);
 
@@ -1734,6 +1990,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addCertprofile(CertprofileEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CERTPROFILE, dbEntry.getIdent().getName());
     String name = dbEntry.getIdent().getName();
     if (certprofileDbEntries.containsKey(name)) {
       throw new CaMgmtException(concat("CertProfile named ", name, " exists"));
@@ -1758,6 +2015,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addResponder(ResponderEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     String name = dbEntry.getName();
     if (responderDbEntries.containsKey(name)) {
       throw new CaMgmtException(concat("Responder named ", name, " exists"));
@@ -1781,6 +2039,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeResponder(String name) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     boolean bo = queryExecutor.deleteRowWithName(name, "RESPONDER");
     if (!bo) {
       throw new CaMgmtException("unknown Responder " + name);
@@ -1803,6 +2062,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
       throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     if (type == null && conf == null && base64Cert == null) {
       throw new IllegalArgumentException("nothing to change");
     }
@@ -1835,6 +2095,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addCrlSigner(CrlSignerEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     String name = dbEntry.getName();
     if (crlSigners.containsKey(name)) {
       throw new CaMgmtException(concat("CRL signer named ", name, " exists"));
@@ -1859,6 +2120,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeCrlSigner(String name) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     boolean bo = queryExecutor.deleteRowWithName(name, "CRLSIGNER");
     if (!bo) {
       throw new CaMgmtException("unknown CRL signer " + name);
@@ -1879,6 +2141,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void changeCrlSigner(ChangeCrlSignerEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
 
     String name = dbEntry.getName();
     String signerType = dbEntry.getSignerType();
@@ -1910,6 +2173,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addPublisher(PublisherEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_PUBLISHER, dbEntry.getIdent().getName());
     String name = dbEntry.getIdent().getName();
     if (publisherDbEntries.containsKey(name)) {
       throw new CaMgmtException(concat("Publisher named ", name, " exists"));
@@ -1952,6 +2216,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removePublisher(String name) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_PUBLISHER, name);
     for (String caName : caHasPublishers.keySet()) {
       if (caHasPublishers.get(caName).contains(name)) {
         removePublisherFromCa(name, caName);
@@ -1973,6 +2238,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void changePublisher(String name, String type, String conf) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_PUBLISHER, name);
     if (type == null && conf == null) {
       throw new IllegalArgumentException("nothing to change");
     }
@@ -2004,6 +2270,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addCmpControl(CmpControlEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     final String name = dbEntry.getName();
     if (cmpControlDbEntries.containsKey(name)) {
       throw new CaMgmtException(concat("CMP control named ", name, " exists"));
@@ -2027,6 +2294,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeCmpControl(String name) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     boolean bo = queryExecutor.deleteRowWithName(name, "CMPCONTROL");
     if (!bo) {
       throw new CaMgmtException("unknown CMP control " + name);
@@ -2049,6 +2317,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     ParamUtil.requireNonBlank("conf", conf);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     CmpControl newCmpControl = queryExecutor.changeCmpControl(name, conf);
 
     cmpControlDbEntries.put(name, newCmpControl.getDbEntry());
@@ -2075,6 +2344,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     ParamUtil.requireNonBlank("name", name);
     ParamUtil.requireNonBlank("value", value);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     if (envParameterResolver.getParameter(name) != null) {
       throw new CaMgmtException(concat("Environment named ", name, " exists"));
     }
@@ -2087,6 +2357,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeEnvParam(String name) throws CaMgmtException {
     ParamUtil.requireNonBlank("name", name);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     boolean bo = queryExecutor.deleteRowWithName(name, "ENVIRONMENT");
     if (!bo) {
       throw new CaMgmtException("unknown environment param " + name);
@@ -2101,6 +2372,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     ParamUtil.requireNonBlank("name", name);
     ParamUtil.requireNonNull("value", value);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     assertNotNull("value", value);
 
     if (envParameterResolver.getParameter(name) == null) {
@@ -2111,6 +2383,27 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     envParameterResolver.addParameter(name, value);
   } // method changeEnvParam
 
+  private int getIntProperty(String key, int defaultValue) throws CaMgmtException {
+    String str = caConfProperties.getProperty(key);
+    if (StringUtil.isBlank(str)) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new CaMgmtException(concat("invalid ", key, " '", str, "'"));
+    }
+  }
+
+  /**
+   * Returns the datasource to hold the certificates waiting for the confirmation.
+   * @return the datasource, or {@code null} if they are held in memory.
+   */
+  public DataSourceWrapper getPendingCertStoreDatasource() {
+    return pendingCertStoreInDatabase ? datasource : null;
+  }
+
   public Properties getCaConfProperties() {
     return caConfProperties;
   }
@@ -2136,6 +2429,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     aliasName = ParamUtil.requireNonBlank("aliasName", aliasName).toLowerCase();
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
 
     X509Ca ca = x509cas.get(caName);
     if (ca == null) {
@@ -2154,6 +2448,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeCaAlias(String name) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     queryExecutor.removeCaAlias(name);
     caAliases.remove(name);
   }
@@ -2201,6 +2496,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeCa(String caName) throws CaMgmtException {
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     queryExecutor.removeCa(caName);
 
@@ -2212,7 +2508,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     caHasPublishers.remove(caName);
     caHasRequestors.remove(caName);
     X509Ca ca = x509cas.remove(caName);
-    x509Responders.remove(caName);
+    removeX509Responder(caName, false);
     if (ca != null) {
       ca.shutdown();
     }
@@ -2240,6 +2536,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     ParamUtil.requireNonNull("revocationInfo", revocationInfo);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     if (!x509cas.containsKey(caName)) {
       throw new CaMgmtException(concat("unkown CA ", caName));
@@ -2272,6 +2569,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void unrevokeCa(String caName) throws CaMgmtException {
     caName = ParamUtil.requireNonBlank("caName", caName).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_CA, caName);
 
     if (!x509cas.containsKey(caName)) {
       throw new CaMgmtException(concat("could not find CA named ", caName));
@@ -2767,8 +3065,9 @@ public class CaManagerImpl implements CaManager, ResponderManager {
 
     X509Ca ca = getX509Ca(caName);
     try {
-      return ca.generateCrlOnDemand(CaAuditConstants.MSGID_ca_mgmt);
-    } catch (OperationException ex) {
+      EncodedCrl crl = ca.generateCrlOnDemand(CaAuditConstants.MSGID_ca_mgmt);
+      return (crl == null) ? null : crl.toX509Crl();
+    } catch (OperationException | CRLException | CertificateException ex) {
       throw new CaMgmtException(ex.getMessage(), ex);
     }
   } // method generateCrlOnDemand
@@ -2808,6 +3107,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void addScep(ScepEntry dbEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("dbEntry", dbEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
 
     final String name = dbEntry.getName();
     if (scepDbEntries.containsKey(name)) {
@@ -2833,6 +3133,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void removeScep(String name) throws CaMgmtException {
     name = ParamUtil.requireNonBlank("name", name).toLowerCase();
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
     boolean bo = queryExecutor.deleteRowWithName(name, "TUSER");
     if (!bo) {
       throw new CaMgmtException("unknown SCEP " + name);
@@ -2844,6 +3145,7 @@ public class CaManagerImpl implements CaManager, ResponderManager {
   public void changeScep(ChangeScepEntry scepEntry) throws CaMgmtException {
     ParamUtil.requireNonNull("scepEntry", scepEntry);
     asssertMasterMode();
+    confChanged(ConfChange.TYPE_ALL, null);
 
     String name = scepEntry.getName();
     NameId caId = scepEntry.getCaIdent();
@@ -35,6 +35,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -222,6 +224,84 @@ class CaManagerQueryExecutor {
     addSystemEvent(systemEvent);
   }
 
+  long getMaxConfChangeId() throws CaMgmtException {
+    try {
+      return datasource.getMax(null, "CONF_CHANGE", "ID");
+    } catch (DataAccessException ex) {
+      throw new CaMgmtException(ex);
+    }
+  }
+
+  /**
+   * Retrieves the changes of the CA configuration.
+   * @param fromId the changes with ID larger than it will be returned.
+   * @return the changes ordered by ID.
+   * @throws CaMgmtException
+   *            If error occurs.
+   */
+  SortedMap<Long, ConfChange> getConfChanges(long fromId) throws CaMgmtException {
+    final String sql = "SELECT ID,TYPE,NAME FROM CONF_CHANGE WHERE ID>?";
+    SortedMap<Long, ConfChange> changes = new TreeMap<>();
+    PreparedStatement ps = null;
+    ResultSet rs = null;
+
+    try {
+      ps = prepareStatement(sql);
+      ps.setLong(1, fromId);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        changes.put(rs.getLong("ID"), new ConfChange(rs.getString("TYPE"), rs.getString("NAME")));
+      }
+      return changes;
+    } catch (SQLException ex) {
+      throw new CaMgmtException(datasource, sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+  } // method getConfChanges
+
+  /**
+   * Records the changes of the CA configuration, and removes the ones recorded before
+   * {@code keepSince}. The latest recorded change is never removed, so that the IDs keep
+   * increasing and a slave never takes a new change for one it has already applied.
+   * @param changes the changes
+   * @param keepSince seconds since January 1, 1970, 00:00:00 GMT
+   * @throws CaMgmtException
+   *            If error occurs.
+   */
+  synchronized void addConfChanges(Collection<ConfChange> changes, long keepSince)
+      throws CaMgmtException {
+    final long now = System.currentTimeMillis() / 1000L;
+    long id = getMaxConfChangeId();
+
+    String sql = "DELETE FROM CONF_CHANGE WHERE CHANGE_TIME<? AND ID<?";
+    PreparedStatement ps = null;
+    try {
+      ps = prepareStatement(sql);
+      ps.setLong(1, keepSince);
+      ps.setLong(2, id);
+      ps.executeUpdate();
+      datasource.releaseResources(ps, null);
+      ps = null;
+
+      sql = "INSERT INTO CONF_CHANGE (ID,CHANGE_TIME,TYPE,NAME) VALUES (?,?,?,?)";
+      ps = prepareStatement(sql);
+      for (ConfChange change : changes) {
+        ps.setLong(1, ++id);
+        ps.setLong(2, now);
+        ps.setString(3, change.getType());
+        ps.setString(4, change.getName());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      LOG.info("added configuration changes {}", changes);
+    } catch (SQLException ex) {
+      throw new CaMgmtException(datasource, sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  } // method addConfChanges
+
   Map<String, String> createEnvParameters() throws CaMgmtException {
     Map<String, String> map = new HashMap<>();
     final String sql = "SELECT NAME,VALUE2 FROM ENVIRONMENT";
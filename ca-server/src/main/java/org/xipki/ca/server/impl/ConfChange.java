@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.impl;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Change of the CA configuration, recorded by the master and applied by the slaves.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class ConfChange {
+
+  /**
+   * Change which cannot be applied incrementally, the CA system must be restarted.
+   */
+  static final String TYPE_ALL = "ALL";
+
+  static final String TYPE_CA = "CA";
+
+  static final String TYPE_CERTPROFILE = "PROFILE";
+
+  static final String TYPE_PUBLISHER = "PUBLISHER";
+
+  private final String type;
+
+  private final String name;
+
+  ConfChange(String type, String name) {
+    this.type = ParamUtil.requireNonBlank("type", type);
+    this.name = name;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int hashCode() {
+    return type.hashCode() + 31 * ((name == null) ? 0 : name.hashCode());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    } else if (!(obj instanceof ConfChange)) {
+      return false;
+    }
+
+    ConfChange other = (ConfChange) obj;
+    return type.equals(other.type)
+        && ((name == null) ? other.name == null : name.equals(other.name));
+  }
+
+  @Override
+  public String toString() {
+    return (name == null) ? type : type + ":" + name;
+  }
+
+}
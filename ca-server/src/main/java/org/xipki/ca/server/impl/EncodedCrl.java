@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.impl;
+
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+import org.xipki.common.util.ParamUtil;
+import org.xipki.security.util.X509Util;
+
+/**
+ * DER encoded CRL together with the fields required to store and publish it, so that
+ * the revoked certificates need not be parsed.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class EncodedCrl {
+
+  private final byte[] encoded;
+
+  private final BigInteger crlNumber;
+
+  private final BigInteger baseCrlNumber;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private X509CRL crl;
+
+  EncodedCrl(byte[] encoded, BigInteger crlNumber, BigInteger baseCrlNumber, Date thisUpdate,
+      Date nextUpdate) {
+    this.encoded = ParamUtil.requireNonNull("encoded", encoded);
+    this.crlNumber = crlNumber;
+    this.baseCrlNumber = baseCrlNumber;
+    this.thisUpdate = ParamUtil.requireNonNull("thisUpdate", thisUpdate);
+    this.nextUpdate = nextUpdate;
+  }
+
+  public byte[] getEncoded() {
+    return encoded;
+  }
+
+  public BigInteger getCrlNumber() {
+    return crlNumber;
+  }
+
+  public BigInteger getBaseCrlNumber() {
+    return baseCrlNumber;
+  }
+
+  public Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  public Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  /**
+   * Parses the CRL. The parsed object is cached.
+   * @return the parsed CRL.
+   */
+  public synchronized X509CRL toX509Crl() throws CRLException, CertificateException {
+    if (crl == null) {
+      crl = X509Util.parseCrl(encoded);
+    }
+    return crl;
+  }
+
+}
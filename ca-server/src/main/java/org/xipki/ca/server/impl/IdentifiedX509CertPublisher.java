@@ -73,6 +73,10 @@ class IdentifiedX509CertPublisher {
     return certPublisher.certificateRevoked(caCert, cert, certprofile, revInfo);
   }
 
+  public boolean publishesCrl() {
+    return certPublisher.publishesCrl();
+  }
+
   public boolean crlAdded(X509Cert caCert, X509CRL crl) {
     return certPublisher.crlAdded(caCert, crl);
   }
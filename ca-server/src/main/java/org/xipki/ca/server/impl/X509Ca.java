@@ -32,21 +32,27 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -61,22 +67,17 @@ import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
-import org.bouncycastle.asn1.x509.CRLReason;
 import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.asn1.x509.CertificateList;
 import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.Extensions;
-import org.bouncycastle.asn1.x509.GeneralName;
-import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.asn1.x509.ReasonFlags;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.Time;
 import org.bouncycastle.cert.CertIOException;
-import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.X509v2CRLBuilder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -117,6 +118,7 @@ import org.xipki.ca.server.mgmt.api.RequestorInfo;
 import org.xipki.ca.server.mgmt.api.ValidityMode;
 import org.xipki.ca.server.mgmt.api.CrlControl.HourMinute;
 import org.xipki.ca.server.mgmt.api.CrlControl.UpdateMode;
+import org.xipki.common.ConfPairs;
 import org.xipki.common.HealthCheckResult;
 import org.xipki.common.util.CollectionUtil;
 import org.xipki.common.util.CompareUtil;
@@ -160,6 +162,9 @@ public class X509Ca {
     private X500Name grantedSubject;
     private String grantedSubjectText;
     private long fpSubject;
+    // whether fpPublicKey and fpSubject are registered as in process
+    private boolean publicKeyInProcess;
+    private boolean subjectInProcess;
 
     public GrantedCertTemplate(Extensions extensions, IdentifiedX509Certprofile certprofile,
         Date grantedNotBefore, Date grantedNotAfter, X500Name requestedSubject,
@@ -185,6 +190,25 @@ public class X509Ca {
 
   }
 
+  private class PublishQueueDrainer implements Runnable {
+
+    @Override
+    public void run() {
+      // entries added from now on will trigger another run
+      publishQueueDrainPending.set(false);
+      try {
+        if (!publishCertsInQueue()) {
+          LOG.warn("could not publish all certificates of CA {} in PUBLISHQUEUE, will retry"
+              + " later", caIdent);
+        }
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not publish certificates of CA " + caIdent
+            + " in PUBLISHQUEUE");
+      }
+    }
+
+  } // class PublishQueueDrainer
+
   private class ExpiredCertsRemover implements Runnable {
 
     private boolean inProcess;
@@ -402,6 +426,25 @@ public class X509Ca {
 
   private static final long MAX_CERT_TIME_MS = 253402300799982L; //9999-12-31-23-59-59
 
+  /**
+   * Key in the extraControl of CA. If true, the certificates will be published to all
+   * publishers via the PUBLISHQUEUE, out of the request processing.
+   */
+  static final String KEY_ASYNC_PUBLISH_ENABLED = "asyncPublish.enabled";
+
+  /**
+   * Key in the extraControl of CA. Number of threads to generate the certificates of one
+   * request concurrently, should not exceed the parallelism of the CA signer. If not set or
+   * not greater than 1, the certificates are generated one after another.
+   */
+  static final String KEY_ENROLL_THREADS = "enroll.threads";
+
+  /**
+   * Number of the queued tasks of the enroll executor per thread. If the queue is full, the
+   * task is processed by the thread of the request.
+   */
+  private static final int ENROLL_QUEUE_SIZE_PER_THREAD = 16;
+
   private static final Logger LOG = LoggerFactory.getLogger(X509Ca.class);
 
   private final CaInfo caInfo;
@@ -428,6 +471,20 @@ public class X509Ca {
 
   private AuditServiceRegister auditServiceRegister;
 
+  private final boolean asyncPublish;
+
+  private ExecutorService publishQueueExecutor;
+
+  private final int enrollThreads;
+
+  private final Object enrollExecutorLock = new Object();
+
+  private ExecutorService enrollExecutor;
+
+  private boolean enrollExecutorClosed;
+
+  private final AtomicBoolean publishQueueDrainPending = new AtomicBoolean(false);
+
   private final ConcurrentSkipListSet<Long> publicKeyCertsInProcess = new ConcurrentSkipListSet<>();
 
   private final ConcurrentSkipListSet<Long> subjectCertsInProcess = new ConcurrentSkipListSet<>();
@@ -442,6 +499,22 @@ public class X509Ca {
     this.caCert = caInfo.getCert();
     this.certstore = ParamUtil.requireNonNull("certstore", certstore);
 
+    ConfPairs extraControl = caInfo.getCaEntry().getExtraControl();
+    String str = (extraControl == null) ? null : extraControl.value(KEY_ASYNC_PUBLISH_ENABLED);
+    this.asyncPublish = (str != null) && Boolean.parseBoolean(str);
+
+    str = (extraControl == null) ? null : extraControl.value(KEY_ENROLL_THREADS);
+    if (str == null) {
+      this.enrollThreads = 1;
+    } else {
+      try {
+        this.enrollThreads = Integer.parseInt(str.trim());
+      } catch (NumberFormatException ex) {
+        throw new OperationException(ErrorCode.SYSTEM_FAILURE,
+            "invalid " + KEY_ENROLL_THREADS + " '" + str + "' of CA " + caIdent);
+      }
+    }
+
     if (caInfo.isSignerRequired()) {
       try {
         caInfo.initSigner(caManager.getSecurityFactory());
@@ -470,6 +543,10 @@ public class X509Ca {
       publisher.caAdded(caCert);
     }
 
+    if (asyncPublish) {
+      this.publishQueueExecutor = Executors.newSingleThreadExecutor();
+    }
+
     Random random = new Random();
     // CRL generation services
     this.crlGenerationService = caManager.scheduledThreadPoolExecutor().scheduleAtFixedRate(
@@ -488,6 +565,47 @@ public class X509Ca {
     return caInfo;
   }
 
+  /**
+   * Returns the executor to generate the certificates of one request concurrently. It is
+   * created at the first call, its threads terminate if idle, and its queue is bounded.
+   * @return the executor, or {@code null} if the certificates are generated one after another.
+   */
+  public ExecutorService getEnrollExecutor() {
+    if (enrollThreads < 2) {
+      return null;
+    }
+
+    synchronized (enrollExecutorLock) {
+      if (enrollExecutor == null && !enrollExecutorClosed) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(enrollThreads, enrollThreads,
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(ENROLL_QUEUE_SIZE_PER_THREAD * enrollThreads));
+        executor.allowCoreThreadTimeOut(true);
+        enrollExecutor = executor;
+      }
+      return enrollExecutor;
+    }
+  }
+
+  /**
+   * Submits the task to the enroll executor. If the queue of the executor is full, the task is
+   * processed by the calling thread.
+   * @return the future of the task, or {@code null} if the executor has been shut down.
+   */
+  public static <T> Future<T> submitEnrollTask(ExecutorService executor, Callable<T> task) {
+    try {
+      return executor.submit(task);
+    } catch (RejectedExecutionException ex) {
+      if (executor.isShutdown()) {
+        return null;
+      }
+
+      FutureTask<T> future = new FutureTask<>(task);
+      future.run();
+      return future;
+    }
+  }
+
   public CmpControl getCmpControl() {
     String name = caInfo.getCmpControlName();
     return (name == null) ? null : caManager.getCmpControlObject(name);
@@ -655,7 +773,7 @@ public class X509Ca {
     }
   } // method cleanupCrls
 
-  public X509CRL generateCrlOnDemand(String msgId) throws OperationException {
+  public EncodedCrl generateCrlOnDemand(String msgId) throws OperationException {
     CrlSignerEntryWrapper crlSigner = getCrlSigner();
     if (crlSigner == null) {
       throw new OperationException(ErrorCode.NOT_PERMITTED, "CA could not generate CRL");
@@ -674,7 +792,7 @@ public class X509Ca {
       }
 
       long maxIdOfDeltaCrlCache = certstore.getMaxIdOfDeltaCrlCache(caIdent);
-      X509CRL crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
+      EncodedCrl crl = generateCrl(false, thisUpdate, nextUpdate, msgId);
       if (crl == null) {
         return null;
       }
@@ -690,12 +808,12 @@ public class X509Ca {
     }
   } // method generateCrlOnDemand
 
-  private X509CRL generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate, String msgId)
-      throws OperationException {
+  private EncodedCrl generateCrl(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+      String msgId) throws OperationException {
     boolean successful = false;
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_crl, msgId);
     try {
-      X509CRL crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
+      EncodedCrl crl = generateCrl0(deltaCrl, thisUpdate, nextUpdate, event, msgId);
       successful = true;
       return crl;
     } finally {
@@ -703,7 +821,7 @@ public class X509Ca {
     }
   }
 
-  private X509CRL generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
+  private EncodedCrl generateCrl0(boolean deltaCrl, Date thisUpdate, Date nextUpdate,
       AuditEvent event, String msgId) throws OperationException {
     CrlSignerEntryWrapper crlSigner = getCrlSigner();
     if (crlSigner == null) {
@@ -728,6 +846,7 @@ public class X509Ca {
 
     CrlControl crlControl = crlSigner.getCrlControl();
     boolean successful = false;
+    X509CrlStreamBuilder crlBuilder = null;
 
     try {
       ConcurrentContentSigner tmpCrlSigner = crlSigner.getSigner();
@@ -743,10 +862,10 @@ public class X509Ca {
         crlIssuer = tmpCrlSigner.getBcCertificate().getSubject();
       }
 
-      X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(crlIssuer, thisUpdate);
-      if (nextUpdate != null) {
-        crlBuilder.setNextUpdate(nextUpdate);
-      }
+      // the certificate issuer is added to the first CRL entry of an indirect CRL
+      X500Name certificateIssuer = directCrl ? null : caInfo.getPublicCaInfo().getX500Subject();
+      crlBuilder = new X509CrlStreamBuilder(crlIssuer, thisUpdate, nextUpdate,
+          certificateIssuer);
 
       final int numEntries = 100;
 
@@ -760,9 +879,7 @@ public class X509Ca {
 
       long startId = 1;
 
-      // we have to cache the serial entries to sort them
-      List<CertRevInfoWithSerial> allRevInfos = new LinkedList<>();
-
+      // the entries are sorted by the crlBuilder
       List<CertRevInfoWithSerial> revInfos;
 
       do {
@@ -773,82 +890,48 @@ public class X509Ca {
           revInfos = certstore.getRevokedCerts(caIdent, notExpireAt, startId, numEntries,
               control.isOnlyContainsCaCerts(), control.isOnlyContainsUserCerts());
         }
-        allRevInfos.addAll(revInfos);
 
         long maxId = 1;
         for (CertRevInfoWithSerial revInfo : revInfos) {
           if (revInfo.getId() > maxId) {
             maxId = revInfo.getId();
           }
-        } // end for
-        startId = maxId + 1;
-      } while (revInfos.size() >= numEntries); // end do
-
-      if (revInfos != null) { // free the memory
-        revInfos.clear();
-      }
-
-      // sort the list by SerialNumber ASC
-      Collections.sort(allRevInfos);
-
-      boolean isFirstCrlEntry = true;
-
-      for (CertRevInfoWithSerial revInfo : allRevInfos) {
-        CrlReason reason = revInfo.getReason();
-        if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
-          reason = CrlReason.UNSPECIFIED;
-        }
-
-        Date revocationTime = revInfo.getRevocationTime();
-        Date invalidityTime = revInfo.getInvalidityTime();
-
-        switch (crlControl.getInvalidityDateMode()) {
-          case FORBIDDEN:
-            invalidityTime = null;
-            break;
-          case OPTIONAL:
-            break;
-          case REQUIRED:
-            if (invalidityTime == null) {
-              invalidityTime = revocationTime;
-            }
-            break;
-          default:
-            throw new RuntimeException("unknown TripleState " + crlControl.getInvalidityDateMode());
-        }
-
-        BigInteger serial = revInfo.getSerial();
-        LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
 
-        if (directCrl || !isFirstCrlEntry) {
-          if (invalidityTime != null) {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode(),
-                invalidityTime);
-          } else {
-            crlBuilder.addCRLEntry(serial, revocationTime, reason.getCode());
+          CrlReason reason = revInfo.getReason();
+          if (crlControl.isExcludeReason() && reason != CrlReason.REMOVE_FROM_CRL) {
+            reason = CrlReason.UNSPECIFIED;
           }
-          continue;
-        }
-
-        List<Extension> extensions = new ArrayList<>(3);
-        if (reason != CrlReason.UNSPECIFIED) {
-          Extension ext = createReasonExtension(reason.getCode());
-          extensions.add(ext);
-        }
-        if (invalidityTime != null) {
-          Extension ext = createInvalidityDateExtension(invalidityTime);
-          extensions.add(ext);
-        }
 
-        Extension ext = createCertificateIssuerExtension(caInfo.getPublicCaInfo().getX500Subject());
-        extensions.add(ext);
+          Date revocationTime = revInfo.getRevocationTime();
+          Date invalidityTime = revInfo.getInvalidityTime();
+
+          switch (crlControl.getInvalidityDateMode()) {
+            case FORBIDDEN:
+              invalidityTime = null;
+              break;
+            case OPTIONAL:
+              break;
+            case REQUIRED:
+              if (invalidityTime == null) {
+                invalidityTime = revocationTime;
+              }
+              break;
+            default:
+              throw new RuntimeException(
+                  "unknown TripleState " + crlControl.getInvalidityDateMode());
+          }
 
-        crlBuilder.addCRLEntry(serial, revocationTime,
-            new Extensions(extensions.toArray(new Extension[0])));
-        isFirstCrlEntry = false;
-      }
+          BigInteger serial = revInfo.getSerial();
+          LOG.debug("added cert ca={} serial={} to CRL", caIdent, serial);
 
-      allRevInfos.clear(); // free the memory
+          try {
+            crlBuilder.addCrlEntry(serial, revocationTime, reason.getCode(), invalidityTime);
+          } catch (IOException ex) {
+            throw new OperationException(ErrorCode.CRL_FAILURE, ex);
+          }
+        } // end for
+        startId = maxId + 1;
+      } while (revInfos.size() >= numEntries); // end do
 
       BigInteger crlNumber = caInfo.nextCrlNumber();
       event.addEventData(CaAuditConstants.NAME_crlNumber, crlNumber);
@@ -908,32 +991,33 @@ public class X509Ca {
             + ex.getMessage());
       }
 
-      X509CRLHolder crlHolder;
+      EncodedCrl crl;
       try {
-        crlHolder = crlBuilder.build(signer0.value());
+        crl = crlBuilder.build(signer0.value());
+      } catch (IOException ex) {
+        throw new OperationException(ErrorCode.CRL_FAILURE, ex);
       } finally {
         concurrentSigner.requiteSigner(signer0);
       }
 
-      try {
-        X509CRL crl = X509Util.toX509Crl(crlHolder.toASN1Structure());
-        caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
-        caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
-        publishCrl(crl);
+      caInfo.getCaEntry().setNextCrlNumber(crlNumber.longValue() + 1);
+      caManager.commitNextCrlNo(caIdent, caInfo.getCaEntry().getNextCrlNumber());
+      publishCrl(crl);
 
-        successful = true;
-        LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent,
-            crlNumber, crl.getThisUpdate());
+      successful = true;
+      LOG.info("SUCCESSFUL generateCrl: ca={}, crlNumber={}, thisUpdate={}", caIdent,
+          crlNumber, crl.getThisUpdate());
 
-        if (!deltaCrl) {
-          // clean up the CRL
-          cleanupCrlsWithoutException(msgId);
-        }
-        return crl;
-      } catch (CRLException | CertificateException ex) {
-        throw new OperationException(ErrorCode.CRL_FAILURE, ex);
+      if (!deltaCrl) {
+        // clean up the CRL
+        cleanupCrlsWithoutException(msgId);
       }
+      return crl;
     } finally {
+      if (crlBuilder != null) {
+        crlBuilder.close();
+      }
+
       if (!successful) {
         LOG.info("    FAILED generateCrl: ca={}", caIdent);
       }
@@ -953,8 +1037,8 @@ public class X509Ca {
    *         }
    * </pre>
    */
-  private void addXipkiCertset(X509v2CRLBuilder crlBuilder, boolean deltaCrl, CrlControl control,
-      Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts)
+  private void addXipkiCertset(X509CrlStreamBuilder crlBuilder, boolean deltaCrl,
+      CrlControl control, Date notExpireAt, boolean onlyCaCerts, boolean onlyUserCerts)
       throws OperationException {
     if (deltaCrl || !control.isXipkiCertsetIncluded()) {
       return;
@@ -1052,8 +1136,19 @@ public class X509Ca {
       return 1;
     }
 
+    int ret = publishCertificateToPublishers(certInfo);
+    triggerPublishQueue();
+    return ret;
+  } // method publishCertificate0
+
+  /**
+   * Publishes the certificate, which has been saved in the CA certstore, to the publishers.
+   * The caller is responsible to call {@link #triggerPublishQueue()}.
+   * @return 0 for published successfully, 2 if could not be published to all publishers.
+   */
+  private int publishCertificateToPublishers(CertificateInfo certInfo) {
     for (IdentifiedX509CertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (!isAsynPublish(publisher)) {
         boolean successful;
         try {
           successful = publisher.certificateAdded(certInfo);
@@ -1078,7 +1173,7 @@ public class X509Ca {
     } // end for
 
     return 0;
-  } // method publishCertificate0
+  } // method publishCertificateToPublishers
 
   public boolean republishCertificates(List<String> publisherNames, int numThreads) {
     List<IdentifiedX509CertPublisher> publishers;
@@ -1178,7 +1273,11 @@ public class X509Ca {
     }
   } // method clearPublishQueue
 
-  public boolean publishCertsInQueue() {
+  /**
+   * Publishes the certificates in the PUBLISHQUEUE. Called by the scheduled service of the
+   * CA manager and, in case of asynchronous publishing, directly after the queue is filled.
+   */
+  public synchronized boolean publishCertsInQueue() {
     boolean allSuccessful = true;
     for (IdentifiedX509CertPublisher publisher : publishers()) {
       if (!publishCertsInQueue(publisher)) {
@@ -1235,9 +1334,32 @@ public class X509Ca {
     return true;
   } // method publishCertsInQueue
 
-  private boolean publishCrl(X509CRL crl) {
+  private boolean isAsynPublish(IdentifiedX509CertPublisher publisher) {
+    return asyncPublish || publisher.isAsyn();
+  }
+
+  /**
+   * Schedules the publishing of the certificates in PUBLISHQUEUE. Triggers will be
+   * coalesced while a run is pending.
+   */
+  private void triggerPublishQueue() {
+    ExecutorService executor = publishQueueExecutor;
+    if (executor == null || !publishQueueDrainPending.compareAndSet(false, true)) {
+      return;
+    }
+
     try {
-      certstore.addCrl(caIdent, crl);
+      executor.execute(new PublishQueueDrainer());
+    } catch (RejectedExecutionException ex) {
+      // the entries remain in PUBLISHQUEUE and will be published by the scheduled service
+      publishQueueDrainPending.set(false);
+    }
+  }
+
+  private boolean publishCrl(EncodedCrl crl) {
+    try {
+      certstore.addCrl(caIdent, crl.getEncoded(), crl.getCrlNumber(), crl.getBaseCrlNumber(),
+          crl.getThisUpdate(), crl.getNextUpdate());
     } catch (Exception ex) {
       LOG.error("could not add CRL ca={}, thisUpdate={}: {}, ",
           caIdent.getName(), crl.getThisUpdate(), ex.getMessage());
@@ -1246,8 +1368,16 @@ public class X509Ca {
     }
 
     for (IdentifiedX509CertPublisher publisher : publishers()) {
+      if (!publisher.publishesCrl()) {
+        continue;
+      }
+
       try {
-        publisher.crlAdded(caCert, crl);
+        // parsed only once, and only if a publisher needs the CRL object
+        publisher.crlAdded(caCert, crl.toX509Crl());
+      } catch (CRLException | CertificateException ex) {
+        LogUtil.error(LOG, ex, "could not parse the generated CRL");
+        break;
       } catch (RuntimeException ex) {
         LogUtil.error(LOG, ex, "could not publish CRL to the publisher " + publisher.getIdent());
       }
@@ -1399,7 +1529,7 @@ public class X509Ca {
     }
 
     for (IdentifiedX509CertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (!isAsynPublish(publisher)) {
         boolean successful;
         try {
           successful = publisher.certificateRevoked(caCert, revokedCert.getCert(),
@@ -1423,6 +1553,8 @@ public class X509Ca {
       }
     } // end for
 
+    triggerPublishQueue();
+
     if (LOG.isInfoEnabled()) {
       LOG.info("SUCCESSFUL revokeCertificate: ca={}, serialNumber={}, reason={}, invalidityTime={},"
           + " revocationResult=REVOKED", caIdent, hexSerial, reason.getDescription(),
@@ -1465,7 +1597,7 @@ public class X509Ca {
     }
 
     for (IdentifiedX509CertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (!isAsynPublish(publisher)) {
         boolean successful;
         try {
           successful = publisher.certificateRevoked(caCert, revokedCert.getCert(),
@@ -1489,6 +1621,8 @@ public class X509Ca {
       }
     } // end for
 
+    triggerPublishQueue();
+
     if (LOG.isInfoEnabled()) {
       LOG.info("SUCCESSFUL revokeSuspendedCert: ca={}, serialNumber={}, reason={}",
           caIdent, hexSerial, reason.getDescription());
@@ -1511,7 +1645,7 @@ public class X509Ca {
     }
 
     for (IdentifiedX509CertPublisher publisher : publishers()) {
-      if (!publisher.isAsyn()) {
+      if (!isAsynPublish(publisher)) {
         boolean successful;
         try {
           successful = publisher.certificateUnrevoked(caCert, unrevokedCert);
@@ -1534,6 +1668,8 @@ public class X509Ca {
       }
     } // end for
 
+    triggerPublishQueue();
+
     LOG.info("SUCCESSFUL unrevokeCertificate: ca={}, serialNumber={}, revocationResult=UNREVOKED",
         caIdent, hexSerial);
 
@@ -1659,42 +1795,37 @@ public class X509Ca {
       }
     }
 
-    List<CertificateInfo> certInfos = new ArrayList<>(n);
+    CertificateInfo[] certInfos = new CertificateInfo[n];
     OperationExceptionWithIndex exception = null;
 
-    for (int i = 0; i < n; i++) {
-      if (exception != null) {
-        break;
-      }
-      GrantedCertTemplate gct = gcts.get(i);
-      final NameId certprofilIdent = gct.certprofile.getIdent();
-      final String subjectText = gct.grantedSubjectText;
-      LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'", caIdent,
-          certprofilIdent, subjectText);
-
-      boolean successful = false;
-      try {
-        CertificateInfo certInfo = generateCertificate(gct, requestor, false, reqType,
-            transactionId, msgId);
-        successful = true;
-        certInfos.add(certInfo);
+    // multiple certificates are saved in the CA certstore in one transaction
+    final boolean deferStore = n > 1;
 
-        if (LOG.isInfoEnabled()) {
-          String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
-          CertWithDbId cert = certInfo.getCert();
-          LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
-              prefix, caIdent, certprofilIdent, cert.getSubject(),
-              LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+    try {
+      ExecutorService executor = deferStore ? getEnrollExecutor() : null;
+      if (deferStore && executor != null) {
+        exception = generateCertificatesConcurrently(executor, gcts, requestor, reqType,
+            transactionId, msgId, certInfos);
+      } else {
+        for (int i = 0; i < n; i++) {
+          if (exception != null) {
+            break;
+          }
+          exception = generateOneCertificate(gcts.get(i), i, requestor, reqType, transactionId,
+              msgId, deferStore, certInfos);
         }
-      } catch (OperationException ex) {
-        exception = new OperationExceptionWithIndex(i, ex);
-      } catch (Throwable th) {
-        exception = new OperationExceptionWithIndex(i,
-            new OperationException(ErrorCode.SYSTEM_FAILURE, th));
-      } finally {
-        if (!successful) {
-          LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
-              caIdent, certprofilIdent, subjectText);
+      }
+
+      if (exception == null && deferStore) {
+        exception = storeCertificates(Arrays.asList(certInfos));
+      }
+    } finally {
+      if (deferStore) {
+        // the generated certificates are not in process any more
+        for (int i = 0; i < n; i++) {
+          if (certInfos[i] != null) {
+            removeCertInProcess(gcts.get(i));
+          }
         }
       }
     }
@@ -1702,9 +1833,13 @@ public class X509Ca {
     if (exception != null) {
       LOG.error("could not generate certificate for request[{}], reverted all generated"
           + " certificates", exception.getIndex());
-      // delete generated certificates
-      for (CertificateInfo m : certInfos) {
-        BigInteger serial = m.getCert().getCert().getSerialNumber();
+      // delete generated certificates, the deferred ones have not been saved at all
+      for (int i = 0; !deferStore && i < n; i++) {
+        if (certInfos[i] == null) {
+          continue;
+        }
+
+        BigInteger serial = certInfos[i].getCert().getCert().getSerialNumber();
         try {
           removeCertificate(serial, msgId);
         } catch (Throwable thr) {
@@ -1716,7 +1851,132 @@ public class X509Ca {
       throw exception;
     }
 
-    return certInfos;
+    return Arrays.asList(certInfos);
+  }
+
+  /**
+   * Generates the certificates in the given executor. The certificates stay in process, and
+   * are not saved in the CA certstore.
+   * @return the exception of the failed template with the lowest index, or {@code null}.
+   */
+  private OperationExceptionWithIndex generateCertificatesConcurrently(ExecutorService executor,
+      final List<GrantedCertTemplate> gcts, final RequestorInfo requestor,
+      final RequestType reqType, final byte[] transactionId, final String msgId,
+      final CertificateInfo[] certInfos) {
+    final int n = gcts.size();
+    List<Future<OperationExceptionWithIndex>> futures = new ArrayList<>(n);
+    OperationExceptionWithIndex exception = null;
+    // all-or-nothing, the not yet started templates will not be processed after a failure.
+    // The tasks are not cancelled, since a cancelled task may still be running.
+    final AtomicBoolean aborted = new AtomicBoolean(false);
+
+    for (int i = 0; i < n; i++) {
+      final int index = i;
+      Future<OperationExceptionWithIndex> future = submitEnrollTask(executor,
+          new Callable<OperationExceptionWithIndex>() {
+            @Override
+            public OperationExceptionWithIndex call() throws Exception {
+              if (aborted.get()) {
+                return null;
+              }
+
+              OperationExceptionWithIndex ex = generateOneCertificate(gcts.get(index), index,
+                  requestor, reqType, transactionId, msgId, true, certInfos);
+              if (ex != null) {
+                aborted.set(true);
+              }
+              return ex;
+            }
+          });
+
+      if (future == null) {
+        aborted.set(true);
+        exception = new OperationExceptionWithIndex(i,
+            new OperationException(ErrorCode.SYSTEM_FAILURE, "CA is shutting down"));
+        break;
+      }
+      futures.add(future);
+    }
+
+    // wait for all started tasks, their certificates are still in process
+    boolean interrupted = false;
+    for (int i = 0; i < futures.size(); i++) {
+      OperationExceptionWithIndex ex;
+      try {
+        ex = futures.get(i).get();
+      } catch (InterruptedException iex) {
+        interrupted = true;
+        i--;
+        continue;
+      } catch (ExecutionException eex) {
+        aborted.set(true);
+        ex = new OperationExceptionWithIndex(i,
+            new OperationException(ErrorCode.SYSTEM_FAILURE, eex.getCause()));
+      }
+
+      if (ex != null && (exception == null || ex.getIndex() < exception.getIndex())) {
+        exception = ex;
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return exception;
+  }
+
+  private OperationExceptionWithIndex generateOneCertificate(GrantedCertTemplate gct, int index,
+      RequestorInfo requestor, RequestType reqType, byte[] transactionId, String msgId,
+      boolean deferStore, CertificateInfo[] certInfos) {
+    final NameId certprofilIdent = gct.certprofile.getIdent();
+    final String subjectText = gct.grantedSubjectText;
+    LOG.info("     START generateCertificate: CA={}, profile={}, subject='{}'", caIdent,
+        certprofilIdent, subjectText);
+
+    OperationExceptionWithIndex exception = null;
+    boolean successful = false;
+    try {
+      CertificateInfo certInfo = generateCertificate(gct, requestor, false, reqType,
+          transactionId, msgId, deferStore);
+      successful = true;
+      certInfos[index] = certInfo;
+
+      if (LOG.isInfoEnabled()) {
+        String prefix = certInfo.isAlreadyIssued() ? "RETURN_OLD_CERT" : "SUCCESSFUL";
+        CertWithDbId cert = certInfo.getCert();
+        LOG.info("{} generateCertificate: CA={}, profile={}, subject='{}', serialNumber={}",
+            prefix, caIdent, certprofilIdent, cert.getSubject(),
+            LogUtil.formatCsn(cert.getCert().getSerialNumber()));
+      }
+    } catch (OperationException ex) {
+      exception = new OperationExceptionWithIndex(index, ex);
+    } catch (Throwable th) {
+      exception = new OperationExceptionWithIndex(index,
+          new OperationException(ErrorCode.SYSTEM_FAILURE, th));
+    } finally {
+      if (!successful) {
+        LOG.warn("    FAILED generateCertificate: CA={}, profile={}, subject='{}'",
+            caIdent, certprofilIdent, subjectText);
+      }
+    }
+    return exception;
+  }
+
+  /**
+   * Saves the generated certificates in the CA certstore in one transaction, and publishes
+   * them to the publishers afterwards.
+   */
+  private OperationExceptionWithIndex storeCertificates(List<CertificateInfo> certInfos) {
+    if (!certstore.addCerts(certInfos)) {
+      return new OperationExceptionWithIndex(0,
+          new OperationException(ErrorCode.SYSTEM_FAILURE, "could not save certificates"));
+    }
+
+    for (CertificateInfo certInfo : certInfos) {
+      publishCertificateToPublishers(certInfo);
+    }
+    triggerPublishQueue();
+    return null;
   }
 
   public CertificateInfo generateCertificate(CertTemplateData certTemplate,
@@ -1729,13 +1989,13 @@ public class X509Ca {
 
   private CertificateInfo generateCertificate(GrantedCertTemplate gct,
       RequestorInfo requestor, boolean keyUpdate, RequestType reqType, byte[] transactionId,
-      String msgId) throws OperationException {
+      String msgId, boolean deferStore) throws OperationException {
     AuditEvent event = newPerfAuditEvent(CaAuditConstants.TYPE_gen_cert, msgId);
 
     boolean successful = false;
     try {
       CertificateInfo ret = generateCertificate0(gct, requestor,
-          keyUpdate, reqType, transactionId, event);
+          keyUpdate, reqType, transactionId, event, deferStore);
       successful = (ret != null);
       return ret;
     } finally {
@@ -1743,9 +2003,15 @@ public class X509Ca {
     }
   }
 
+  /**
+   * Generates and signs the certificate for the granted template. The subject and public key
+   * are registered as in process, so that concurrent requests cannot get a duplicate.
+   * @param deferStore whether the certificate is saved by the caller. If {@code true}, the
+   *     generated certificate stays in process until {@link #removeCertInProcess} is called.
+   */
   private CertificateInfo generateCertificate0(GrantedCertTemplate gct,
       RequestorInfo requestor, boolean keyUpdate, RequestType reqType, byte[] transactionId,
-      AuditEvent event) throws OperationException {
+      AuditEvent event, boolean deferStore) throws OperationException {
     ParamUtil.requireNonNull("gct", gct);
 
     event.addEventData(CaAuditConstants.NAME_reqSubject,
@@ -1756,31 +2022,22 @@ public class X509Ca {
     event.addEventData(CaAuditConstants.NAME_notAfter,
         DateUtil.toUtcTimeyyyyMMddhhmmss(gct.grantedNotAfter));
 
+    // registers the subject as in process if duplicate subjects are not permitted
     adaptGrantedSubejct(gct);
 
     IdentifiedX509Certprofile certprofile = gct.certprofile;
 
-    boolean duplicatedKeyNotAllowed = !caInfo.isDuplicateKeyPermitted();
-    boolean duplicatedSubjectNotAllowed = !caInfo.isDuplicateSubjectPermitted();
-    if (duplicatedKeyNotAllowed) {
+    if (!caInfo.isDuplicateKeyPermitted()) {
       if (!publicKeyCertsInProcess.add(gct.fpPublicKey)) {
         // in process already exists a request with given public key.
+        removeCertInProcess(gct);
         throw new OperationException(ErrorCode.ALREADY_ISSUED,
             "certificate with the given public key already in process");
       }
+      gct.publicKeyInProcess = true;
     }
 
-    if (duplicatedSubjectNotAllowed) {
-      if (!subjectCertsInProcess.add(gct.fpSubject)) {
-        // in process already exists a request with given subject.
-        if (duplicatedKeyNotAllowed) { // remove the added entry from publicKeyCertsInProcess
-          publicKeyCertsInProcess.remove(gct.fpPublicKey);
-        }
-        throw new OperationException(ErrorCode.ALREADY_ISSUED,
-            "certificate with the given subject " + gct.grantedSubjectText + " already in process");
-      }
-    }
-
+    boolean keepInProcess = false;
     try {
       X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
           caInfo.getPublicCaInfo().getX500Subject(), caInfo.nextSerial(), gct.grantedNotBefore,
@@ -1852,7 +2109,7 @@ public class X509Ca {
         ret.setTransactionId(transactionId);
         ret.setRequestedSubject(gct.requestedSubject);
 
-        if (publishCertificate0(ret) == 1) {
+        if (!deferStore && publishCertificate0(ret) == 1) {
           throw new OperationException(ErrorCode.SYSTEM_FAILURE, "could not save certificate");
         }
       } catch (BadCertTemplateException ex) {
@@ -1868,17 +2125,31 @@ public class X509Ca {
         ret.setWarningMessage(gct.warning);
       }
 
+      keepInProcess = deferStore;
       return ret;
     } finally {
-      if (duplicatedKeyNotAllowed) {
-        publicKeyCertsInProcess.remove(gct.fpPublicKey);
-      }
-      if (duplicatedSubjectNotAllowed) {
-        subjectCertsInProcess.remove(gct.fpSubject);
+      if (!keepInProcess) {
+        removeCertInProcess(gct);
       }
     }
   } // method generateCertificate0
 
+  private void removeCertInProcess(GrantedCertTemplate gct) {
+    // the CA configuration may have been changed meanwhile, use the registered state
+    if (gct.publicKeyInProcess) {
+      publicKeyCertsInProcess.remove(gct.fpPublicKey);
+      gct.publicKeyInProcess = false;
+    }
+    if (gct.subjectInProcess) {
+      subjectCertsInProcess.remove(gct.fpSubject);
+      gct.subjectInProcess = false;
+    }
+  }
+
+  /**
+   * Registers the subject as in process. If a certificate with the same subject has been
+   * issued or is in process, the serialNumber RDN is incremented if the profile allows it.
+   */
   private void adaptGrantedSubejct(GrantedCertTemplate gct) throws OperationException {
     if (caInfo.isDuplicateSubjectPermitted()) {
       return;
@@ -1889,13 +2160,15 @@ public class X509Ca {
 
     final boolean incSerial = gct.certprofile.incSerialNumberIfSubjectExists();
     final boolean certIssued = certstore.isCertForSubjectIssued(caIdent, fpSubject);
-    if (certIssued && !incSerial) {
-      throw new OperationException(ErrorCode.ALREADY_ISSUED,
-          "certificate for the given subject " + grantedSubjectText + " already issued");
+    if (!certIssued && subjectCertsInProcess.add(fpSubject)) {
+      gct.subjectInProcess = true;
+      return;
     }
 
-    if (!certIssued) {
-      return;
+    if (!incSerial) {
+      throw new OperationException(ErrorCode.ALREADY_ISSUED,
+          "certificate for the given subject " + grantedSubjectText
+          + (certIssued ? " already issued" : " already in process"));
     }
 
     X500Name subject = gct.grantedSubject;
@@ -1922,8 +2195,9 @@ public class X509Ca {
         throw new OperationException(ErrorCode.SYSTEM_FAILURE, ex);
       }
 
-      foundUniqueSubject = !certstore.isCertForSubjectIssued(caIdent,
-          X509Util.fpCanonicalizedName(subject));
+      long fp = X509Util.fpCanonicalizedName(subject);
+      foundUniqueSubject = !subjectCertsInProcess.contains(fp)
+          && !certstore.isCertForSubjectIssued(caIdent, fp) && subjectCertsInProcess.add(fp);
       if (foundUniqueSubject) {
         break;
       }
@@ -1937,6 +2211,7 @@ public class X509Ca {
     }
 
     gct.setGrantedSubject(subject);
+    gct.subjectInProcess = true;
   }
 
   private GrantedCertTemplate createGrantedCertTemplate(CertTemplateData certTemplate,
@@ -2501,36 +2776,23 @@ public class X509Ca {
       suspendedCertsRevoker = null;
     }
 
-    ScheduledThreadPoolExecutor executor = caManager.scheduledThreadPoolExecutor();
-    if (executor != null) {
-      executor.purge();
-    }
-  }
-
-  private static Extension createReasonExtension(int reasonCode) {
-    CRLReason crlReason = CRLReason.lookup(reasonCode);
-    try {
-      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    if (publishQueueExecutor != null) {
+      // the remaining entries in PUBLISHQUEUE will be published after the restart
+      publishQueueExecutor.shutdown();
+      publishQueueExecutor = null;
     }
-  }
 
-  private static Extension createInvalidityDateExtension(Date invalidityDate) {
-    try {
-      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
-      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    synchronized (enrollExecutorLock) {
+      enrollExecutorClosed = true;
+      if (enrollExecutor != null) {
+        enrollExecutor.shutdown();
+        enrollExecutor = null;
+      }
     }
-  }
 
-  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
-    try {
-      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
-      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
-    } catch (IOException ex) {
-      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    ScheduledThreadPoolExecutor executor = caManager.scheduledThreadPoolExecutor();
+    if (executor != null) {
+      executor.purge();
     }
   }
 
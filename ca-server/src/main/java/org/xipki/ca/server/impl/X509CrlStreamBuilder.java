@@ -0,0 +1,463 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.cert.CertIOException;
+import org.bouncycastle.operator.ContentSigner;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.security.CrlReason;
+
+/**
+ * Builder of X.509 CRL which does not hold all revoked certificates in memory.
+ *
+ * <p>The revoked certificates are sorted by the serial number in runs of limited size,
+ * which are written to temporary files and merged afterwards. The encoded
+ * revokedCertificates are written to a temporary file, and streamed into the signer and
+ * the resulting CRL. The result is returned in encoded form and is not parsed again.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class X509CrlStreamBuilder implements Closeable {
+
+  private abstract static class EntryCursor implements Comparable<EntryCursor> {
+
+    protected CertRevInfoWithSerial current;
+
+    /**
+     * Moves to the next entry.
+     * @return whether there is a next entry.
+     */
+    abstract boolean next() throws IOException;
+
+    void close() throws IOException {
+    }
+
+    @Override
+    public int compareTo(EntryCursor other) {
+      return current.compareTo(other.current);
+    }
+
+  } // class EntryCursor
+
+  private static class ListEntryCursor extends EntryCursor {
+
+    private final List<CertRevInfoWithSerial> entries;
+
+    private int index;
+
+    ListEntryCursor(List<CertRevInfoWithSerial> entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    boolean next() {
+      if (index < entries.size()) {
+        current = entries.get(index++);
+        return true;
+      } else {
+        current = null;
+        return false;
+      }
+    }
+
+  } // class ListEntryCursor
+
+  private static class FileEntryCursor extends EntryCursor {
+
+    private final DataInputStream in;
+
+    FileEntryCursor(File file) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    @Override
+    boolean next() throws IOException {
+      int serialLen;
+      try {
+        serialLen = in.readUnsignedShort();
+      } catch (EOFException ex) {
+        current = null;
+        return false;
+      }
+
+      byte[] serial = new byte[serialLen];
+      in.readFully(serial);
+      int reason = in.readInt();
+      long revTime = in.readLong();
+      long invTime = in.readLong();
+      current = new CertRevInfoWithSerial(0, new BigInteger(serial), reason, new Date(revTime),
+          (invTime == -1) ? null : new Date(invTime));
+      return true;
+    }
+
+    @Override
+    void close() throws IOException {
+      in.close();
+    }
+
+  } // class FileEntryCursor
+
+  /**
+   * Maximal number of revoked certificates to be sorted in memory.
+   */
+  private static final int RUN_SIZE = 100000;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final X500Name issuer;
+
+  private final Time thisUpdate;
+
+  private final Time nextUpdate;
+
+  private final X500Name certificateIssuer;
+
+  private final ExtensionsGenerator extGen = new ExtensionsGenerator();
+
+  private final List<CertRevInfoWithSerial> run = new ArrayList<>();
+
+  private final List<File> tmpFiles = new LinkedList<>();
+
+  private final List<File> runFiles = new LinkedList<>();
+
+  private int numEntries;
+
+  private BigInteger crlNumber;
+
+  private BigInteger baseCrlNumber;
+
+  /**
+   * Constructor.
+   * @param issuer issuer of the CRL.
+   * @param thisUpdate thisUpdate of the CRL.
+   * @param nextUpdate nextUpdate of the CRL, may be {@code null}.
+   * @param certificateIssuer issuer of the revoked certificates, {@code null} for direct CRL.
+   */
+  X509CrlStreamBuilder(X500Name issuer, Date thisUpdate, Date nextUpdate,
+      X500Name certificateIssuer) {
+    this.issuer = ParamUtil.requireNonNull("issuer", issuer);
+    this.thisUpdate = new Time(ParamUtil.requireNonNull("thisUpdate", thisUpdate));
+    this.nextUpdate = (nextUpdate == null) ? null : new Time(nextUpdate);
+    this.certificateIssuer = certificateIssuer;
+  }
+
+  void addCrlEntry(BigInteger serial, Date revocationTime, int reason, Date invalidityTime)
+      throws IOException {
+    run.add(new CertRevInfoWithSerial(0, serial, reason, revocationTime, invalidityTime));
+    numEntries++;
+
+    if (run.size() >= RUN_SIZE) {
+      writeRun();
+    }
+  }
+
+  void addExtension(ASN1ObjectIdentifier oid, boolean critical, ASN1Encodable value)
+      throws CertIOException {
+    try {
+      extGen.addExtension(oid, critical, value);
+    } catch (IOException ex) {
+      throw new CertIOException("cannot encode extension: " + ex.getMessage(), ex);
+    }
+
+    if (Extension.cRLNumber.equals(oid)) {
+      crlNumber = ASN1Integer.getInstance(value).getPositiveValue();
+    } else if (Extension.deltaCRLIndicator.equals(oid)) {
+      baseCrlNumber = ASN1Integer.getInstance(value).getPositiveValue();
+    }
+  }
+
+  EncodedCrl build(ContentSigner signer) throws IOException {
+    // revokedCertificates
+    File entriesFile = null;
+    long entriesLen = 0;
+    if (numEntries > 0) {
+      entriesFile = newTmpFile();
+      entriesLen = writeEntries(entriesFile);
+    }
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    bout.write(new ASN1Integer(1).getEncoded(ASN1Encoding.DER));
+    bout.write(signer.getAlgorithmIdentifier().getEncoded(ASN1Encoding.DER));
+    bout.write(issuer.getEncoded(ASN1Encoding.DER));
+    bout.write(thisUpdate.getEncoded(ASN1Encoding.DER));
+    if (nextUpdate != null) {
+      bout.write(nextUpdate.getEncoded(ASN1Encoding.DER));
+    }
+    if (entriesFile != null) {
+      bout.write(encodeHeader(0x30, entriesLen));
+    }
+    byte[] tbsPrefix = bout.toByteArray();
+
+    byte[] encodedExtensions = extGen.isEmpty() ? new byte[0]
+        : new DERTaggedObject(true, 0, extGen.generate()).getEncoded(ASN1Encoding.DER);
+
+    long tbsContentLen = tbsPrefix.length + entriesLen + encodedExtensions.length;
+    byte[] tbsHeader = encodeHeader(0x30, tbsContentLen);
+
+    // sign the TBSCertList
+    OutputStream signerOut = signer.getOutputStream();
+    writeTbs(signerOut, tbsHeader, tbsPrefix, entriesFile, encodedExtensions);
+    signerOut.close();
+
+    byte[] encodedSigAlg = signer.getAlgorithmIdentifier().getEncoded(ASN1Encoding.DER);
+    byte[] encodedSignature = new DERBitString(signer.getSignature())
+        .getEncoded(ASN1Encoding.DER);
+
+    long crlContentLen = tbsHeader.length + tbsContentLen + encodedSigAlg.length
+        + encodedSignature.length;
+
+    // CertificateList
+    byte[] crlHeader = encodeHeader(0x30, crlContentLen);
+    long crlLen = crlHeader.length + crlContentLen;
+    if (crlLen > Integer.MAX_VALUE - 8) {
+      throw new IOException("CRL too large: " + crlLen + " bytes");
+    }
+
+    ByteArrayOutputStream crlOut = new ByteArrayOutputStream((int) crlLen);
+    crlOut.write(crlHeader);
+    writeTbs(crlOut, tbsHeader, tbsPrefix, entriesFile, encodedExtensions);
+    crlOut.write(encodedSigAlg);
+    crlOut.write(encodedSignature);
+
+    return new EncodedCrl(crlOut.toByteArray(), crlNumber, baseCrlNumber,
+        thisUpdate.getDate(), (nextUpdate == null) ? null : nextUpdate.getDate());
+  } // method build
+
+  @Override
+  public void close() {
+    for (File file : tmpFiles) {
+      file.delete();
+    }
+    tmpFiles.clear();
+    runFiles.clear();
+    run.clear();
+  }
+
+  private void writeRun() throws IOException {
+    Collections.sort(run);
+
+    File file = newTmpFile();
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    try {
+      for (CertRevInfoWithSerial entry : run) {
+        byte[] serial = entry.getSerial().toByteArray();
+        out.writeShort(serial.length);
+        out.write(serial);
+        out.writeInt(entry.getReason().getCode());
+        out.writeLong(entry.getRevocationTime().getTime());
+        out.writeLong((entry.getInvalidityTime() == null)
+            ? -1 : entry.getInvalidityTime().getTime());
+      }
+    } finally {
+      out.close();
+    }
+
+    runFiles.add(file);
+    run.clear();
+  }
+
+  /**
+   * Merges the sorted runs and writes the encoded CRL entries to the given file.
+   * @return number of written bytes.
+   */
+  private long writeEntries(File file) throws IOException {
+    Collections.sort(run);
+
+    List<EntryCursor> cursors = new ArrayList<>(runFiles.size() + 1);
+    PriorityQueue<EntryCursor> queue = new PriorityQueue<>();
+    long len = 0;
+
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+    try {
+      cursors.add(new ListEntryCursor(run));
+      for (File runFile : runFiles) {
+        cursors.add(new FileEntryCursor(runFile));
+      }
+
+      for (EntryCursor cursor : cursors) {
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+
+      boolean firstEntry = true;
+      while (!queue.isEmpty()) {
+        EntryCursor cursor = queue.poll();
+        byte[] encoded = encodeEntry(cursor.current, firstEntry);
+        out.write(encoded);
+        len += encoded.length;
+        firstEntry = false;
+
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+    } finally {
+      out.close();
+      for (EntryCursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+
+    run.clear();
+    return len;
+  } // method writeEntries
+
+  private byte[] encodeEntry(CertRevInfoWithSerial entry, boolean firstEntry)
+      throws IOException {
+    ASN1EncodableVector vec = new ASN1EncodableVector();
+    vec.add(new ASN1Integer(entry.getSerial()));
+    vec.add(new Time(entry.getRevocationTime()));
+
+    ExtensionsGenerator entryExtGen = new ExtensionsGenerator();
+    CrlReason reason = entry.getReason();
+    if (reason != CrlReason.UNSPECIFIED) {
+      entryExtGen.addExtension(createReasonExtension(reason.getCode()));
+    }
+
+    if (entry.getInvalidityTime() != null) {
+      entryExtGen.addExtension(createInvalidityDateExtension(entry.getInvalidityTime()));
+    }
+
+    // indirect CRL: the certificate issuer applies to all following entries
+    if (firstEntry && certificateIssuer != null) {
+      entryExtGen.addExtension(createCertificateIssuerExtension(certificateIssuer));
+    }
+
+    if (!entryExtGen.isEmpty()) {
+      vec.add(entryExtGen.generate());
+    }
+
+    return new DERSequence(vec).getEncoded(ASN1Encoding.DER);
+  }
+
+  private File newTmpFile() throws IOException {
+    File file = File.createTempFile("xipki-crl-", ".tmp");
+    tmpFiles.add(file);
+    return file;
+  }
+
+  private static void writeTbs(OutputStream out, byte[] tbsHeader, byte[] tbsPrefix,
+      File entriesFile, byte[] encodedExtensions) throws IOException {
+    out.write(tbsHeader);
+    out.write(tbsPrefix);
+    if (entriesFile != null) {
+      InputStream in = new FileInputStream(entriesFile);
+      try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    out.write(encodedExtensions);
+  }
+
+  /**
+   * Encodes the tag and length octets in DER.
+   */
+  private static byte[] encodeHeader(int tag, long len) {
+    if (len < 128) {
+      return new byte[]{(byte) tag, (byte) len};
+    }
+
+    int numLenBytes = 0;
+    for (long tmp = len; tmp > 0; tmp >>>= 8) {
+      numLenBytes++;
+    }
+
+    byte[] header = new byte[2 + numLenBytes];
+    header[0] = (byte) tag;
+    header[1] = (byte) (0x80 | numLenBytes);
+    for (int i = 0; i < numLenBytes; i++) {
+      header[header.length - 1 - i] = (byte) (len >>> (8 * i));
+    }
+    return header;
+  }
+
+  private static Extension createReasonExtension(int reasonCode) {
+    CRLReason crlReason = CRLReason.lookup(reasonCode);
+    try {
+      return new Extension(Extension.reasonCode, false, crlReason.getEncoded());
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    }
+  }
+
+  private static Extension createInvalidityDateExtension(Date invalidityDate) {
+    try {
+      ASN1GeneralizedTime asnTime = new ASN1GeneralizedTime(invalidityDate);
+      return new Extension(Extension.invalidityDate, false, asnTime.getEncoded());
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    }
+  }
+
+  private static Extension createCertificateIssuerExtension(X500Name certificateIssuer) {
+    try {
+      GeneralNames generalNames = new GeneralNames(new GeneralName(certificateIssuer));
+      return new Extension(Extension.certificateIssuer, true, generalNames.getEncoded());
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("error encoding reason: " + ex.getMessage(), ex);
+    }
+  }
+
+}
@@ -23,6 +23,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
@@ -34,6 +35,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.bouncycastle.asn1.ASN1Encodable;
@@ -97,6 +105,7 @@ import org.slf4j.LoggerFactory;
 import org.xipki.audit.AuditEvent;
 import org.xipki.audit.AuditStatus;
 import org.xipki.ca.api.InsuffientPermissionException;
+import org.xipki.ca.api.NameId;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.OperationException.ErrorCode;
 import org.xipki.ca.api.publisher.CertificateInfo;
@@ -106,6 +115,7 @@ import org.xipki.ca.server.api.CaAuditConstants;
 import org.xipki.ca.server.api.CaCmpResponder;
 import org.xipki.ca.server.impl.CaManagerImpl;
 import org.xipki.ca.server.impl.CertTemplateData;
+import org.xipki.ca.server.impl.EncodedCrl;
 import org.xipki.ca.server.impl.X509Ca;
 import org.xipki.ca.server.impl.store.CertWithRevocationInfo;
 import org.xipki.ca.server.impl.util.CaUtil;
@@ -125,6 +135,8 @@ import org.xipki.common.util.Hex;
 import org.xipki.common.util.LogUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.StringUtil;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.security.AlgorithmValidator;
 import org.xipki.security.ConcurrentContentSigner;
 import org.xipki.security.CrlReason;
@@ -144,8 +156,14 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
 
     @Override
     public void run() {
-      Set<CertificateInfo> remainingCerts =
-          pendingCertPool.removeConfirmTimeoutedCertificates();
+      Set<BigInteger> remainingCerts;
+      try {
+        remainingCerts = pendingCertPool.removeConfirmTimeoutedCertificates();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not remove the timeouted pending certificates of CA "
+            + caName);
+        return;
+      }
 
       if (CollectionUtil.isEmpty(remainingCerts)) {
         return;
@@ -153,10 +171,8 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
 
       Date invalidityDate = new Date();
       X509Ca ca = getCa();
-      for (CertificateInfo remainingCert : remainingCerts) {
-        BigInteger serialNumber = null;
+      for (BigInteger serialNumber : remainingCerts) {
         try {
-          serialNumber = remainingCert.getCert().getCert().getSerialNumber();
           ca.revokeCertificate(serialNumber, CrlReason.CESSATION_OF_OPERATION,
               invalidityDate, CaAuditConstants.MSGID_ca_routine);
         } catch (Throwable th) {
@@ -172,10 +188,14 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
 
   private static final Logger LOG = LoggerFactory.getLogger(CaCmpResponderImpl.class);
 
-  private final PendingCertificatePool pendingCertPool;
+  private final PendingCertificateStore pendingCertPool;
+
+  private final ScheduledFuture<?> pendingPoolCleaner;
 
   private final String caName;
 
+  private final NameId caIdent;
+
   private final CaManagerImpl caManager;
 
   static {
@@ -185,15 +205,41 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
   }
 
   public CaCmpResponderImpl(CaManagerImpl caManager, String caName) {
+    this(caManager, caName, null);
+  }
+
+  /**
+   * Constructor.
+   * @param previous the replaced responder of the same CA. The certificates waiting for the
+   *        confirmation in its in-memory pool are taken over. Could be {@code null}.
+   */
+  public CaCmpResponderImpl(CaManagerImpl caManager, String caName,
+      CaCmpResponderImpl previous) {
     super(caManager.getSecurityFactory());
 
     this.caManager = caManager;
-    this.pendingCertPool = new PendingCertificatePool();
     this.caName = caName;
+    this.caIdent = getCa().getCaInfo().getIdent();
+
+    DataSourceWrapper pendingCertDatasource = caManager.getPendingCertStoreDatasource();
+    if (pendingCertDatasource != null) {
+      this.pendingCertPool = new DbPendingCertificateStore(pendingCertDatasource, caIdent);
+    } else if (previous != null && previous.caIdent.equals(caIdent)
+        && previous.pendingCertPool instanceof PendingCertificatePool) {
+      this.pendingCertPool = previous.pendingCertPool;
+    } else {
+      this.pendingCertPool = new PendingCertificatePool();
+    }
 
-    PendingPoolCleaner pendingPoolCleaner = new PendingPoolCleaner();
-    caManager.scheduledThreadPoolExecutor().scheduleAtFixedRate(pendingPoolCleaner, 10, 10,
-        TimeUnit.MINUTES);
+    this.pendingPoolCleaner = caManager.scheduledThreadPoolExecutor().scheduleAtFixedRate(
+        new PendingPoolCleaner(), 10, 10, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Stops the scheduled removal of the timeouted pending certificates.
+   */
+  public void shutdown() {
+    pendingPoolCleaner.cancel(false);
   }
 
   public X509Ca getCa() {
@@ -619,7 +665,7 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
       List<ASN1Integer> certReqIds, CmpRequestorInfo requestor, ASN1OctetString tid,
       boolean keyUpdate, PKIMessage request, CmpControl cmpControl,
       String msgId, AuditEvent event) {
-    X509Ca ca = getCa();
+    final X509Ca ca = getCa();
 
     final int n = certTemplates.size();
     List<CertResponse> ret = new ArrayList<>(n);
@@ -663,13 +709,25 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
       Long reqDbId = null;
       boolean savingRequestFailed = false;
 
+      List<Future<CertificateInfo>> futures = null;
+      ExecutorService executor = (n > 1) ? ca.getEnrollExecutor() : null;
+      if (executor != null) {
+        futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          futures.add(submitGenerateCertificate(executor, ca, certTemplates.get(i), requestor,
+              tid.getOctets(), keyUpdate, msgId));
+        }
+      }
+
       for (int i = 0; i < n; i++) {
         CertTemplateData certTemplate = certTemplates.get(i);
         ASN1Integer certReqId = certReqIds.get(i);
 
         CertificateInfo certInfo;
         try {
-          if (keyUpdate) {
+          if (futures != null) {
+            certInfo = getCertificateInfo(futures.get(i));
+          } else if (keyUpdate) {
             certInfo = ca.regenerateCertificate(certTemplate,
                 requestor, RequestType.CMP, tid.getOctets(), msgId);
           } else {
@@ -704,11 +762,77 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
     return ret;
   } // method generateCertificates
 
+  private static Future<CertificateInfo> submitGenerateCertificate(ExecutorService executor,
+      final X509Ca ca, final CertTemplateData certTemplate, final CmpRequestorInfo requestor,
+      final byte[] transactionId, final boolean keyUpdate, final String msgId) {
+    Callable<CertificateInfo> task = new Callable<CertificateInfo>() {
+      @Override
+      public CertificateInfo call() throws Exception {
+        return keyUpdate
+          ? ca.regenerateCertificate(certTemplate, requestor, RequestType.CMP, transactionId,
+              msgId)
+          : ca.generateCertificate(certTemplate, requestor, RequestType.CMP, transactionId,
+              msgId);
+      }
+    };
+
+    Future<CertificateInfo> future = X509Ca.submitEnrollTask(executor, task);
+    if (future == null) {
+      // CA is shutting down, the result will be reported by getCertificateInfo().
+      future = new FutureTask<>(task);
+      future.cancel(false);
+    }
+    return future;
+  }
+
+  /**
+   * Waits for the result of the task. If interrupted, it waits further since the certificate
+   * is generated and stored anyway, and restores the interrupt status afterwards.
+   */
+  private static CertificateInfo getCertificateInfo(Future<CertificateInfo> future)
+      throws OperationException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        } catch (CancellationException ex) {
+          throw new OperationException(ErrorCode.SYSTEM_FAILURE, "CA is shutting down");
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          throw (cause instanceof OperationException) ? (OperationException) cause
+              : new OperationException(ErrorCode.SYSTEM_FAILURE, cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   private CertResponse postProcessCertInfo(ASN1Integer certReqId, CertificateInfo certInfo,
       ASN1OctetString tid, CmpControl cmpControl) {
     if (cmpControl.isConfirmCert()) {
-      pendingCertPool.addCertificate(tid.getOctets(), certReqId.getPositiveValue(), certInfo,
-          System.currentTimeMillis() + cmpControl.getConfirmWaitTimeMs());
+      try {
+        pendingCertPool.addCertificate(tid.getOctets(), certReqId.getPositiveValue(), certInfo,
+            System.currentTimeMillis() + cmpControl.getConfirmWaitTimeMs());
+      } catch (DataAccessException ex) {
+        LogUtil.error(LOG, ex, "could not add the pending certificate");
+        // the certificate could not be confirmed
+        BigInteger serialNumber = certInfo.getCert().getCert().getSerialNumber();
+        try {
+          getCa().revokeCertificate(serialNumber, CrlReason.CESSATION_OF_OPERATION, new Date(),
+              CaAuditConstants.MSGID_ca_routine);
+        } catch (OperationException ex2) {
+          LogUtil.warn(LOG, ex2, "could not revoke certificate ca=" + caName
+              + " serialNumber=" + LogUtil.formatCsn(serialNumber));
+        }
+        return buildErrorCertResponse(certReqId, PKIFailureInfo.systemFailure,
+            "could not save the pending certificate");
+      }
     }
 
     String warningMsg = certInfo.getWarningMessage();
@@ -1034,9 +1158,17 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
     for (CertStatus certStatus : certStatuses) {
       ASN1Integer certReqId = certStatus.getCertReqId();
       byte[] certHash = certStatus.getCertHash().getOctets();
-      CertificateInfo certInfo = pendingCertPool.removeCertificate(
-          transactionId.getOctets(), certReqId.getPositiveValue(), certHash);
-      if (certInfo == null) {
+      BigInteger serialNumber;
+      try {
+        serialNumber = pendingCertPool.removeCertificate(
+            transactionId.getOctets(), certReqId.getPositiveValue(), certHash);
+      } catch (DataAccessException ex) {
+        LogUtil.error(LOG, ex, "could not remove the pending certificate");
+        successful = false;
+        continue;
+      }
+
+      if (serialNumber == null) {
         if (LOG.isWarnEnabled()) {
           LOG.warn("no cert under transactionId={}, certReqId={} and certHash=0X{}",
               transactionId, certReqId.getPositiveValue(), Hex.encode(certHash));
@@ -1057,7 +1189,6 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
         continue;
       }
 
-      BigInteger serialNumber = certInfo.getCert().getCert().getSerialNumber();
       X509Ca ca = getCa();
       try {
         ca.revokeCertificate(serialNumber, CrlReason.CESSATION_OF_OPERATION, new Date(), msgId);
@@ -1086,8 +1217,13 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
   } // method confirmCertificates
 
   private boolean revokePendingCertificates(ASN1OctetString transactionId, String msgId) {
-    Set<CertificateInfo> remainingCerts = pendingCertPool.removeCertificates(
-        transactionId.getOctets());
+    Set<BigInteger> remainingCerts;
+    try {
+      remainingCerts = pendingCertPool.removeCertificates(transactionId.getOctets());
+    } catch (DataAccessException ex) {
+      LogUtil.error(LOG, ex, "could not remove the pending certificates");
+      return false;
+    }
 
     if (CollectionUtil.isEmpty(remainingCerts)) {
       return true;
@@ -1096,10 +1232,10 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
     boolean successful = true;
     Date invalidityDate = new Date();
     X509Ca ca = getCa();
-    for (CertificateInfo remainingCert : remainingCerts) {
+    for (BigInteger serialNumber : remainingCerts) {
       try {
-        ca.revokeCertificate(remainingCert.getCert().getCert().getSerialNumber(),
-            CrlReason.CESSATION_OF_OPERATION, invalidityDate, msgId);
+        ca.revokeCertificate(serialNumber, CrlReason.CESSATION_OF_OPERATION, invalidityDate,
+            msgId);
       } catch (OperationException ex) {
         successful = false;
       }
@@ -1325,7 +1461,11 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
 
     InfoTypeAndValue tv = null;
     if (!cmpControl.isConfirmCert() && CmpUtil.isImplictConfirm(reqHeader)) {
-      pendingCertPool.removeCertificates(tid.getOctets());
+      try {
+        pendingCertPool.removeCertificates(tid.getOctets());
+      } catch (DataAccessException ex) {
+        LogUtil.error(LOG, ex, "could not remove the pending certificates");
+      }
       tv = CmpUtil.getImplictConfirmGeneralInfo();
     } else {
       Date now = new Date();
@@ -1478,7 +1618,7 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
           case XiSecurityConstants.CMP_ACTION_GEN_CRL:
             event.addEventType(CaAuditConstants.TYPE_CMP_genm_genCrl);
             checkPermission(requestor, PermissionConstants.GEN_CRL);
-            X509CRL tmpCrl = ca.generateCrlOnDemand(msgId);
+            EncodedCrl tmpCrl = ca.generateCrlOnDemand(msgId);
             if (tmpCrl == null) {
               String statusMessage = "CRL generation is not activated";
               return buildErrorMsgPkiBody(PKIStatus.rejection,
@@ -1580,7 +1720,16 @@ public class CaCmpResponderImpl extends CmpResponder implements CaCmpResponder {
       throw new OperationException(ErrorCode.NOT_PERMITTED, ex.getMessage());
     }
 
-    return getCa().generateCrlOnDemand(msgId);
+    EncodedCrl crl = getCa().generateCrlOnDemand(msgId);
+    if (crl == null) {
+      return null;
+    }
+
+    try {
+      return crl.toX509Crl();
+    } catch (CRLException | CertificateException ex) {
+      throw new OperationException(ErrorCode.CRL_FAILURE, ex);
+    }
   }
 
   public void revokeCert(CmpRequestorInfo requestor, BigInteger serialNumber, CrlReason reason,
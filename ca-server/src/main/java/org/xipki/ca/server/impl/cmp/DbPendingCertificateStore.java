@@ -0,0 +1,249 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.impl.cmp;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.publisher.CertificateInfo;
+import org.xipki.common.util.Base64;
+import org.xipki.common.util.Hex;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Store of the certificates waiting for the confirmation in the table PENDING_CERT, shared by
+ * all CA instances using the same database. The certConf may be processed by another instance
+ * than the one which issued the certificate.
+ *
+ * <p>The entries are removed with a DELETE statement before they are returned, so that each
+ * entry is returned by only one instance.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class DbPendingCertificateStore implements PendingCertificateStore {
+
+  /**
+   * Transaction IDs longer than this number of bytes are stored as hash.
+   */
+  private static final int MAX_TID_LEN = 64;
+
+  private static final String SQL_ADD =
+      "INSERT INTO PENDING_CERT (CA_ID,TID,RID,SN,SHA1,WAIT_TILL) VALUES (?,?,?,?,?,?)";
+
+  private static final String SQL_GET =
+      "SELECT SN,SHA1 FROM PENDING_CERT WHERE CA_ID=? AND TID=? AND RID=?";
+
+  private static final String SQL_REMOVE =
+      "DELETE FROM PENDING_CERT WHERE CA_ID=? AND TID=? AND RID=?";
+
+  private static final String SQL_GET_TID =
+      "SELECT RID,SN FROM PENDING_CERT WHERE CA_ID=? AND TID=?";
+
+  private static final String SQL_GET_TIMEOUTED =
+      "SELECT TID,RID,SN FROM PENDING_CERT WHERE CA_ID=? AND WAIT_TILL<?";
+
+  private final DataSourceWrapper datasource;
+
+  private final NameId caIdent;
+
+  DbPendingCertificateStore(DataSourceWrapper datasource, NameId caIdent) {
+    this.datasource = ParamUtil.requireNonNull("datasource", datasource);
+    this.caIdent = ParamUtil.requireNonNull("caIdent", caIdent);
+  }
+
+  @Override
+  public void addCertificate(byte[] transactionId, BigInteger certReqId,
+      CertificateInfo certInfo, long waitForConfirmTill) throws DataAccessException {
+    ParamUtil.requireNonNull("transactionId", transactionId);
+    ParamUtil.requireNonNull("certReqId", certReqId);
+    ParamUtil.requireNonNull("certInfo", certInfo);
+    if (certInfo.isAlreadyIssued()) {
+      return;
+    }
+
+    BigInteger serialNumber = certInfo.getCert().getCert().getSerialNumber();
+    String sha1 = HashAlgo.SHA1.base64Hash(certInfo.getCert().getEncodedCert());
+
+    PreparedStatement ps = prepareStatement(SQL_ADD);
+    try {
+      int idx = 1;
+      ps.setInt(idx++, caIdent.getId());
+      ps.setString(idx++, encodeTid(transactionId));
+      ps.setString(idx++, certReqId.toString(16));
+      ps.setString(idx++, serialNumber.toString(16));
+      ps.setString(idx++, sha1);
+      ps.setLong(idx++, waitForConfirmTill);
+      ps.executeUpdate();
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_ADD, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  }
+
+  @Override
+  public BigInteger removeCertificate(byte[] transactionId, BigInteger certReqId,
+      byte[] certHash) throws DataAccessException {
+    ParamUtil.requireNonNull("transactionId", transactionId);
+    ParamUtil.requireNonNull("certReqId", certReqId);
+    ParamUtil.requireNonNull("certHash", certHash);
+
+    String tid = encodeTid(transactionId);
+    String hexCertReqId = certReqId.toString(16);
+
+    BigInteger serialNumber;
+    String sha1;
+
+    ResultSet rs = null;
+    PreparedStatement ps = prepareStatement(SQL_GET);
+    try {
+      ps.setInt(1, caIdent.getId());
+      ps.setString(2, tid);
+      ps.setString(3, hexCertReqId);
+      rs = ps.executeQuery();
+      if (!rs.next()) {
+        return null;
+      }
+
+      serialNumber = new BigInteger(rs.getString("SN"), 16);
+      sha1 = rs.getString("SHA1");
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_GET, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    if (!sha1.equals(Base64.encodeToString(certHash))) {
+      return serialNumber;
+    }
+
+    // the entry may be removed concurrently by another instance
+    return remove(tid, hexCertReqId, null) ? serialNumber : null;
+  }
+
+  @Override
+  public Set<BigInteger> removeCertificates(byte[] transactionId) throws DataAccessException {
+    ParamUtil.requireNonNull("transactionId", transactionId);
+
+    String tid = encodeTid(transactionId);
+    Map<String, BigInteger> entries = new HashMap<>();
+
+    ResultSet rs = null;
+    PreparedStatement ps = prepareStatement(SQL_GET_TID);
+    try {
+      ps.setInt(1, caIdent.getId());
+      ps.setString(2, tid);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        entries.put(rs.getString("RID"), new BigInteger(rs.getString("SN"), 16));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_GET_TID, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    Set<BigInteger> ret = new HashSet<>();
+    for (Entry<String, BigInteger> entry : entries.entrySet()) {
+      // the entry may be removed concurrently by another instance
+      if (remove(tid, entry.getKey(), null)) {
+        ret.add(entry.getValue());
+      }
+    }
+    return ret.isEmpty() ? null : ret;
+  }
+
+  @Override
+  public Set<BigInteger> removeConfirmTimeoutedCertificates() throws DataAccessException {
+    final long now = System.currentTimeMillis();
+    List<String[]> entries = new LinkedList<>();
+
+    ResultSet rs = null;
+    PreparedStatement ps = prepareStatement(SQL_GET_TIMEOUTED);
+    try {
+      ps.setInt(1, caIdent.getId());
+      ps.setLong(2, now);
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        entries.add(new String[]{rs.getString("TID"), rs.getString("RID"), rs.getString("SN")});
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_GET_TIMEOUTED, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+
+    Set<BigInteger> ret = new HashSet<>();
+    for (String[] entry : entries) {
+      // the entry may be removed concurrently by another instance
+      if (remove(entry[0], entry[1], now)) {
+        ret.add(new BigInteger(entry[2], 16));
+      }
+    }
+    return ret.isEmpty() ? null : ret;
+  }
+
+  /**
+   * Removes the entry.
+   * @param waitTill if not {@code null}, only the entry which expires before it is removed.
+   * @return whether the entry has been removed by this call.
+   */
+  private boolean remove(String tid, String hexCertReqId, Long waitTill)
+      throws DataAccessException {
+    final String sql = (waitTill == null) ? SQL_REMOVE : SQL_REMOVE + " AND WAIT_TILL<?";
+    PreparedStatement ps = prepareStatement(sql);
+    try {
+      ps.setInt(1, caIdent.getId());
+      ps.setString(2, tid);
+      ps.setString(3, hexCertReqId);
+      if (waitTill != null) {
+        ps.setLong(4, waitTill);
+      }
+      return ps.executeUpdate() > 0;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, null);
+    }
+  }
+
+  private PreparedStatement prepareStatement(String sql) throws DataAccessException {
+    return datasource.prepareStatement(datasource.getConnection(), sql);
+  }
+
+  private static String encodeTid(byte[] transactionId) {
+    return (transactionId.length > MAX_TID_LEN) ? HashAlgo.SHA256.hexHash(transactionId)
+        : Hex.encode(transactionId);
+  }
+
+}
@@ -21,156 +21,265 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.xipki.ca.api.publisher.CertificateInfo;
-import org.xipki.common.util.CollectionUtil;
-import org.xipki.common.util.Hex;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.security.HashAlgo;
 
 /**
- * TODO.
+ * In-memory store of the certificates waiting for the confirmation.
+ *
+ * <p>The entries are distributed over stripes by their transaction ID, each stripe has its own
+ * lock. The expiration is indexed by a timing wheel, so that only the entries due in the elapsed
+ * ticks are visited.
+ *
  * @author Lijun Liao
  * @since 2.0.0
  */
 
-class PendingCertificatePool {
+class PendingCertificatePool implements PendingCertificateStore {
 
-  private static class MyEntry {
+  private static class TransactionId {
 
-    private final BigInteger certReqId;
+    private final byte[] id;
 
-    private final long waitForConfirmTill;
+    private final int hashCode;
 
-    private final CertificateInfo certInfo;
-
-    private final byte[] certHash;
-
-    MyEntry(BigInteger certReqId, long waitForConfirmTill, CertificateInfo certInfo) {
-      this.certReqId = ParamUtil.requireNonNull("certReqId", certReqId);
-      this.certInfo = ParamUtil.requireNonNull("certInfo", certInfo);
-      this.waitForConfirmTill = waitForConfirmTill;
-      this.certHash = HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
+    TransactionId(byte[] id) {
+      this.id = id;
+      this.hashCode = Arrays.hashCode(id);
     }
 
     @Override
     public int hashCode() {
-      return certReqId.hashCode() + 961 * (int) waitForConfirmTill + 31 * certInfo.hashCode();
+      return hashCode;
     }
 
     @Override
     public boolean equals(Object obj) {
-      if (!(obj instanceof MyEntry)) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof TransactionId)) {
         return false;
       }
 
-      MyEntry another = (MyEntry) obj;
-      return certReqId.equals(another.certReqId) && certInfo.equals(another.certInfo);
+      return Arrays.equals(id, ((TransactionId) obj).id);
+    }
+
+  } // class TransactionId
+
+  private static class MyEntry {
+
+    private final TransactionId transactionId;
+
+    private final BigInteger certReqId;
+
+    private final long waitForConfirmTill;
+
+    private final BigInteger serialNumber;
+
+    private final byte[] certHash;
+
+    /**
+     * Whether the entry has been removed from the pool. Written under the lock of its stripe,
+     * the timing wheel reads it without lock to drop the removed entries.
+     */
+    private volatile boolean removed;
+
+    MyEntry(TransactionId transactionId, BigInteger certReqId, long waitForConfirmTill,
+        CertificateInfo certInfo) {
+      this.transactionId = transactionId;
+      this.certReqId = ParamUtil.requireNonNull("certReqId", certReqId);
+      ParamUtil.requireNonNull("certInfo", certInfo);
+      this.serialNumber = certInfo.getCert().getCert().getSerialNumber();
+      this.waitForConfirmTill = waitForConfirmTill;
+      this.certHash = HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
     }
 
   } // class MyEntry
 
-  private final Map<String, Set<MyEntry>> map = new HashMap<>();
+  private static class Stripe {
+
+    private final Map<TransactionId, Map<BigInteger, MyEntry>> map = new HashMap<>();
+
+  } // class Stripe
+
+  private static final int NUM_STRIPES = 64;
+
+  private static final long TICK_MS = 1000;
+
+  /**
+   * Number of slots of the timing wheel, must be a power of 2. With one tick per second, one
+   * round of the wheel takes about 17 minutes.
+   */
+  private static final int NUM_SLOTS = 1024;
+
+  private final Stripe[] stripes;
 
+  private final Queue<MyEntry>[] slots;
+
+  /**
+   * The last tick whose slot has been expired.
+   */
+  private volatile long expiredTick;
+
+  @SuppressWarnings("unchecked")
   PendingCertificatePool() {
+    stripes = new Stripe[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+
+    slots = new Queue[NUM_SLOTS];
+    for (int i = 0; i < NUM_SLOTS; i++) {
+      slots[i] = new ConcurrentLinkedQueue<>();
+    }
+
+    expiredTick = System.currentTimeMillis() / TICK_MS;
   }
 
-  void addCertificate(byte[] transactionId, BigInteger certReqId, CertificateInfo certInfo,
-      long waitForConfirmTill) {
+  @Override
+  public void addCertificate(byte[] transactionId, BigInteger certReqId,
+      CertificateInfo certInfo, long waitForConfirmTill) {
     ParamUtil.requireNonNull("transactionId", transactionId);
     ParamUtil.requireNonNull("certInfo", certInfo);
     if (certInfo.isAlreadyIssued()) {
       return;
     }
 
-    String hexTid = Hex.encode(transactionId);
-    MyEntry myEntry = new MyEntry(certReqId, waitForConfirmTill, certInfo);
-    synchronized (map) {
-      Set<MyEntry> entries = map.get(hexTid);
+    TransactionId tid = new TransactionId(transactionId.clone());
+    MyEntry myEntry = new MyEntry(tid, certReqId, waitForConfirmTill, certInfo);
+    Stripe stripe = getStripe(tid);
+    synchronized (stripe) {
+      Map<BigInteger, MyEntry> entries = stripe.map.get(tid);
       if (entries == null) {
-        entries = new HashSet<>();
-        map.put(hexTid, entries);
+        entries = new HashMap<>(2);
+        stripe.map.put(tid, entries);
+      }
+
+      MyEntry prevEntry = entries.put(certReqId, myEntry);
+      if (prevEntry != null) {
+        prevEntry.removed = true;
       }
-      entries.add(myEntry);
     }
+
+    // entries due in an already expired tick will be expired with the next tick
+    long tick = Math.max(waitForConfirmTill / TICK_MS + 1, expiredTick + 1);
+    slots[(int) (tick & (NUM_SLOTS - 1))].add(myEntry);
   }
 
-  CertificateInfo removeCertificate(byte[] transactionId, BigInteger certReqId, byte[] certHash) {
+  @Override
+  public BigInteger removeCertificate(byte[] transactionId, BigInteger certReqId,
+      byte[] certHash) {
     ParamUtil.requireNonNull("transactionId", transactionId);
     ParamUtil.requireNonNull("certReqId", certReqId);
     ParamUtil.requireNonNull("certHash", certHash);
 
-    String hexTid = Hex.encode(transactionId);
-    MyEntry retEntry = null;
-
-    synchronized (map) {
-      Set<MyEntry> entries = map.get(hexTid);
+    TransactionId tid = new TransactionId(transactionId);
+    Stripe stripe = getStripe(tid);
+    synchronized (stripe) {
+      Map<BigInteger, MyEntry> entries = stripe.map.get(tid);
       if (entries == null) {
         return null;
       }
 
-      for (MyEntry entry : entries) {
-        if (certReqId.equals(entry.certReqId)) {
-          retEntry = entry;
-          break;
-        }
+      MyEntry retEntry = entries.get(certReqId);
+      if (retEntry == null) {
+        return null;
       }
 
-      if (retEntry != null) {
-        if (Arrays.equals(certHash, retEntry.certHash)) {
-          entries.remove(retEntry);
-
-          if (CollectionUtil.isEmpty(entries)) {
-            map.remove(hexTid);
-          }
-        }
+      if (Arrays.equals(certHash, retEntry.certHash)) {
+        removeEntry(stripe, retEntry);
       }
+      return retEntry.serialNumber;
     }
-
-    return (retEntry == null) ? null : retEntry.certInfo;
   }
 
-  Set<CertificateInfo> removeCertificates(byte[] transactionId) {
+  @Override
+  public Set<BigInteger> removeCertificates(byte[] transactionId) {
     ParamUtil.requireNonNull("transactionId", transactionId);
 
-    String hexId = Hex.encode(transactionId);
-    Set<MyEntry> entries;
-    synchronized  (map) {
-      entries = map.remove(hexId);
-    }
+    TransactionId tid = new TransactionId(transactionId);
+    Stripe stripe = getStripe(tid);
+    Map<BigInteger, MyEntry> entries;
+    synchronized (stripe) {
+      entries = stripe.map.remove(tid);
+      if (entries == null) {
+        return null;
+      }
 
-    if (entries == null) {
-      return null;
+      for (MyEntry myEntry : entries.values()) {
+        myEntry.removed = true;
+      }
     }
 
-    Set<CertificateInfo> ret = new HashSet<>();
-    for (MyEntry myEntry :entries) {
-      ret.add(myEntry.certInfo);
+    Set<BigInteger> ret = new HashSet<>();
+    for (MyEntry myEntry : entries.values()) {
+      ret.add(myEntry.serialNumber);
     }
     return ret;
   }
 
-  Set<CertificateInfo> removeConfirmTimeoutedCertificates() {
-    synchronized (map) {
-      if (CollectionUtil.isEmpty(map)) {
-        return null;
-      }
-
-      long now = System.currentTimeMillis();
+  /**
+   * Removes the entries whose confirmation time is over, by visiting the slots of the timing
+   * wheel for the ticks elapsed since the last call.
+   */
+  @Override
+  public synchronized Set<BigInteger> removeConfirmTimeoutedCertificates() {
+    final long now = System.currentTimeMillis();
+    final long nowTick = now / TICK_MS;
+    final long fromTick = expiredTick + 1;
+    // one round of the wheel visits all slots
+    final long toTick = Math.min(nowTick, fromTick + NUM_SLOTS - 1);
+
+    Set<BigInteger> ret = new HashSet<>();
+    for (long tick = fromTick; tick <= toTick; tick++) {
+      Iterator<MyEntry> it = slots[(int) (tick & (NUM_SLOTS - 1))].iterator();
+      while (it.hasNext()) {
+        MyEntry entry = it.next();
+        if (entry.removed) {
+          it.remove();
+          continue;
+        }
 
-      Set<CertificateInfo> ret = new HashSet<>();
+        if (entry.waitForConfirmTill >= now) {
+          // due in a later round of the wheel
+          continue;
+        }
 
-      for (String tid : map.keySet()) {
-        Set<MyEntry> entries = map.get(tid);
-        for (MyEntry entry : entries) {
-          if (entry.waitForConfirmTill < now) {
-            ret.add(entry.certInfo);
+        it.remove();
+        Stripe stripe = getStripe(entry.transactionId);
+        synchronized (stripe) {
+          if (!entry.removed) {
+            removeEntry(stripe, entry);
+            ret.add(entry.serialNumber);
           }
         }
       }
-      return ret;
+    }
+
+    expiredTick = nowTick;
+    return ret.isEmpty() ? null : ret;
+  }
+
+  private Stripe getStripe(TransactionId tid) {
+    int hash = tid.hashCode;
+    return stripes[(hash ^ (hash >>> 16)) & (NUM_STRIPES - 1)];
+  }
+
+  private static void removeEntry(Stripe stripe, MyEntry entry) {
+    entry.removed = true;
+    Map<BigInteger, MyEntry> entries = stripe.map.get(entry.transactionId);
+    if (entries != null && entries.get(entry.certReqId) == entry) {
+      entries.remove(entry.certReqId);
+      if (entries.isEmpty()) {
+        stripe.map.remove(entry.transactionId);
+      }
     }
   }
 
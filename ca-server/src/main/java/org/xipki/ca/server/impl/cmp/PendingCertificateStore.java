@@ -0,0 +1,51 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.impl.cmp;
+
+import java.math.BigInteger;
+import java.util.Set;
+
+import org.xipki.ca.api.publisher.CertificateInfo;
+import org.xipki.datasource.DataAccessException;
+
+/**
+ * Store of the certificates waiting for the confirmation. The certificates are identified by
+ * their serial numbers.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+interface PendingCertificateStore {
+
+  void addCertificate(byte[] transactionId, BigInteger certReqId, CertificateInfo certInfo,
+      long waitForConfirmTill) throws DataAccessException;
+
+  /**
+   * Removes the certificate if the hash matches.
+   * @return the serial number of the certificate, or {@code null} if there is no certificate
+   *     for the given transactionId and certReqId.
+   */
+  BigInteger removeCertificate(byte[] transactionId, BigInteger certReqId, byte[] certHash)
+      throws DataAccessException;
+
+  Set<BigInteger> removeCertificates(byte[] transactionId) throws DataAccessException;
+
+  Set<BigInteger> removeConfirmTimeoutedCertificates() throws DataAccessException;
+
+}
@@ -49,6 +49,7 @@ import org.xipki.ca.server.api.Rest;
 import org.xipki.ca.server.api.RestResponse;
 import org.xipki.ca.server.impl.CaManagerImpl;
 import org.xipki.ca.server.impl.CertTemplateData;
+import org.xipki.ca.server.impl.EncodedCrl;
 import org.xipki.ca.server.impl.X509Ca;
 import org.xipki.ca.server.impl.cmp.CaCmpResponderImpl;
 import org.xipki.ca.server.impl.util.CaUtil;
@@ -357,7 +358,7 @@ public class RestImpl implements Rest {
           throw new OperationException(ErrorCode.NOT_PERMITTED, ex.getMessage());
         }
 
-        X509CRL crl = ca.generateCrlOnDemand(msgId);
+        EncodedCrl crl = ca.generateCrlOnDemand(msgId);
         if (crl == null) {
           String message = "could not generate CRL";
           LOG.warn(message);
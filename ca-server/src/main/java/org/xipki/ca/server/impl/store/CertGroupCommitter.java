@@ -0,0 +1,253 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ca.server.impl.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.ca.api.publisher.CertificateInfo;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Merges the certificates added concurrently into one transaction. The callers of
+ * {@link #addCert(CertificateInfo)} are blocked until their certificates are committed.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class CertGroupCommitter {
+
+  private static class PendingCert {
+
+    private final CertificateInfo certInfo;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private volatile boolean successful;
+
+    PendingCert(CertificateInfo certInfo) {
+      this.certInfo = certInfo;
+    }
+
+    void done(boolean successful) {
+      // only the first result counts, called by the writer thread only
+      if (latch.getCount() == 0) {
+        return;
+      }
+      this.successful = successful;
+      latch.countDown();
+    }
+
+    boolean await() {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          latch.await();
+          break;
+        } catch (InterruptedException ex) {
+          // the certificate may be committed anyway, wait for the result
+          interrupted = true;
+        }
+      }
+
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return successful;
+    }
+
+  } // class PendingCert
+
+  private class Writer implements Runnable {
+
+    @Override
+    public void run() {
+      while (true) {
+        PendingCert first;
+        try {
+          first = queue.poll(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+          first = null;
+        }
+
+        if (first == null) {
+          if (!running && queue.isEmpty()) {
+            break;
+          }
+          continue;
+        }
+
+        List<PendingCert> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        try {
+          collectAndCommit(batch);
+        } catch (Throwable th) {
+          // the writer thread must survive, otherwise the callers are blocked forever
+          LOG.error("could not commit {} certificates: {}", batch.size(), th.getMessage());
+          LOG.debug("could not commit certificates", th);
+          for (PendingCert pending : batch) {
+            pending.done(false);
+          }
+        }
+      }
+    } // method run
+
+    private void collectAndCommit(List<PendingCert> batch) {
+      queue.drainTo(batch, maxBatchSize - 1);
+
+      long deadline = System.nanoTime() + maxDelayNanos;
+      while (running && batch.size() < maxBatchSize) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          break;
+        }
+
+        PendingCert next;
+        try {
+          next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+          break;
+        }
+
+        if (next == null) {
+          break;
+        }
+        batch.add(next);
+        queue.drainTo(batch, maxBatchSize - batch.size());
+      }
+
+      commit(batch);
+    } // method collectAndCommit
+
+  } // class Writer
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertGroupCommitter.class);
+
+  private final CertStore certstore;
+
+  private final int maxBatchSize;
+
+  private final long maxDelayNanos;
+
+  private final BlockingQueue<PendingCert> queue = new LinkedBlockingQueue<>();
+
+  private Thread writerThread;
+
+  private volatile boolean running;
+
+  CertGroupCommitter(CertStore certstore, int maxBatchSize, int maxDelayMs) {
+    this.certstore = ParamUtil.requireNonNull("certstore", certstore);
+    this.maxBatchSize = ParamUtil.requireMin("maxBatchSize", maxBatchSize, 1);
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(
+        ParamUtil.requireMin("maxDelayMs", maxDelayMs, 0));
+  }
+
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    writerThread = new Thread(new Writer(), "certstore-group-commit");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    LOG.info("started group commit of certificates (maxBatchSize={}, maxDelay={} ms)",
+        maxBatchSize, TimeUnit.NANOSECONDS.toMillis(maxDelayNanos));
+  }
+
+  /**
+   * Stops accepting new certificates and waits until the queued ones are committed.
+   */
+  synchronized void shutdown() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    try {
+      writerThread.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    writerThread = null;
+  }
+
+  boolean addCert(CertificateInfo certInfo) {
+    if (!running) {
+      return certstore.addCerts(Collections.singletonList(certInfo));
+    }
+
+    PendingCert pending = new PendingCert(certInfo);
+    queue.add(pending);
+    if (!running && queue.remove(pending)) {
+      // the writer may have been stopped meanwhile
+      return certstore.addCerts(Collections.singletonList(certInfo));
+    }
+    return pending.await();
+  }
+
+  private void commit(List<PendingCert> batch) {
+    List<CertificateInfo> certInfos = new ArrayList<>(batch.size());
+    for (PendingCert pending : batch) {
+      certInfos.add(pending.certInfo);
+    }
+
+    boolean successful = false;
+    try {
+      successful = certstore.addCerts(certInfos);
+    } catch (RuntimeException ex) {
+      LOG.error("could not commit {} certificates: {}", batch.size(), ex.getMessage());
+      LOG.debug("could not commit certificates", ex);
+    }
+
+    if (successful) {
+      LOG.debug("committed {} certificates in one transaction", batch.size());
+      for (PendingCert pending : batch) {
+        pending.done(true);
+      }
+      return;
+    }
+
+    if (batch.size() == 1) {
+      batch.get(0).done(false);
+      return;
+    }
+
+    // one failed certificate shall not affect the others
+    for (PendingCert pending : batch) {
+      successful = false;
+      try {
+        successful = certstore.addCerts(Collections.singletonList(pending.certInfo));
+      } catch (RuntimeException ex) {
+        LOG.error("could not commit certificate: {}", ex.getMessage());
+        LOG.debug("could not commit certificate", ex);
+      } finally {
+        pending.done(successful);
+      }
+    }
+  } // method commit
+
+}
@@ -19,9 +19,7 @@ package org.xipki.ca.server.impl.store;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -37,8 +35,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERPrintableString;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
@@ -50,7 +46,6 @@ import org.xipki.ca.api.NameId;
 import org.xipki.ca.api.OperationException;
 import org.xipki.ca.api.OperationException.ErrorCode;
 import org.xipki.ca.api.publisher.CertificateInfo;
-import org.xipki.ca.api.RequestType;
 import org.xipki.ca.api.CertWithDbId;
 import org.xipki.ca.server.impl.CaIdNameMap;
 import org.xipki.ca.server.impl.CertRevInfoWithSerial;
@@ -102,6 +97,8 @@ public class CertStore {
 
   private final SQLs sqls;
 
+  private volatile CertGroupCommitter groupCommitter;
+
   public CertStore(DataSourceWrapper datasource, UniqueIdGenerator idGenerator)
       throws DataAccessException {
     this.datasource = ParamUtil.requireNonNull("datasource", datasource);
@@ -115,16 +112,53 @@ public class CertStore {
     this.sqls = new SQLs(datasource);
   } // constructor
 
+  /**
+   * Enables the group commit: the certificates added concurrently by {@link #addCert} are
+   * written in one transaction by a single writer.
+   * @param maxBatchSize maximal number of certificates in one transaction.
+   * @param maxDelayMs maximal time in milliseconds to wait for further certificates.
+   */
+  public synchronized void enableGroupCommit(int maxBatchSize, int maxDelayMs) {
+    if (groupCommitter != null) {
+      groupCommitter.shutdown();
+    }
+    groupCommitter = new CertGroupCommitter(this, maxBatchSize, maxDelayMs);
+    groupCommitter.start();
+  }
+
+  public synchronized void shutdown() {
+    if (groupCommitter != null) {
+      groupCommitter.shutdown();
+      groupCommitter = null;
+    }
+  }
+
   public boolean addCert(CertificateInfo certInfo) {
     ParamUtil.requireNonNull("certInfo", certInfo);
+    CertGroupCommitter committer = groupCommitter;
+    if (committer != null) {
+      return committer.addCert(certInfo);
+    }
+
+    return addCerts(Collections.singletonList(certInfo));
+  }
+
+  /**
+   * Adds the certificates in one transaction.
+   * @param certInfos certificates to be added.
+   * @return whether the certificates have been added. If {@code false}, none has been added.
+   */
+  public boolean addCerts(List<CertificateInfo> certInfos) {
+    ParamUtil.requireNonEmpty("certInfos", certInfos);
     try {
-      addCert(certInfo.getIssuer(), certInfo.getCert(), certInfo.getSubjectPublicKey(),
-          certInfo.getProfile(), certInfo.getRequestor(), certInfo.getUser(), certInfo.getReqType(),
-          certInfo.getTransactionId(), certInfo.getRequestedSubject());
+      addCerts0(certInfos);
     } catch (Exception ex) {
-      LOG.error("could not save certificate {}: {}. Message: {}",
-          new Object[]{certInfo.getCert().getSubject(),
-              Base64.encodeToString(certInfo.getCert().getEncodedCert(), true), ex.getMessage()});
+      for (CertificateInfo certInfo : certInfos) {
+        LOG.error("could not save certificate {}: {}. Message: {}",
+            new Object[]{certInfo.getCert().getSubject(),
+                Base64.encodeToString(certInfo.getCert().getEncodedCert(), true),
+                ex.getMessage()});
+      }
       LOG.debug("error", ex);
       return false;
     }
@@ -132,76 +166,27 @@ public class CertStore {
     return true;
   }
 
-  private void addCert(NameId ca, CertWithDbId certificate, byte[] encodedSubjectPublicKey,
-      NameId certProfile, NameId requestor, Integer userId, RequestType reqType,
-      byte[] transactionId, X500Name reqSubject) throws DataAccessException, OperationException {
-    ParamUtil.requireNonNull("ca", ca);
-    ParamUtil.requireNonNull("certificate", certificate);
-    ParamUtil.requireNonNull("certProfile", certProfile);
-    ParamUtil.requireNonNull("requestor", requestor);
-
-    long certId = idGenerator.nextId();
-    X509Certificate cert = certificate.getCert();
-
-    long fpPk = FpIdCalculator.hash(encodedSubjectPublicKey);
-    String subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
-    long fpSubject = X509Util.fpCanonicalizedName(cert.getSubjectX500Principal());
-
-    String reqSubjectText = null;
-    Long fpReqSubject = null;
-    if (reqSubject != null) {
-      fpReqSubject = X509Util.fpCanonicalizedName(reqSubject);
-      if (fpSubject == fpReqSubject) {
-        fpReqSubject = null;
-      } else {
-        reqSubjectText = X509Util.cutX500Name(CaUtil.sortX509Name(reqSubject), maxX500nameLen);
-      }
-    }
-
-    String b64FpCert = base64Fp(certificate.getEncodedCert());
-    String b64Cert = Base64.encodeToString(certificate.getEncodedCert());
-    String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
+  private void addCerts0(List<CertificateInfo> certInfos)
+      throws DataAccessException, OperationException {
+    final int n = certInfos.size();
+    long[] certIds = new long[n];
 
     Connection conn = null;
     PreparedStatement[] pss = borrowPreparedStatements(SQLs.SQL_ADD_CERT, SQLs.SQL_ADD_CRAW);
 
     try {
       PreparedStatement psAddcert = pss[0];
+      PreparedStatement psAddRawcert = pss[1];
       // all statements have the same connection
       conn = psAddcert.getConnection();
 
-      // cert
-      int idx = 2;
-      psAddcert.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
-      psAddcert.setString(idx++, cert.getSerialNumber().toString(16));
-      psAddcert.setString(idx++, subjectText);
-      psAddcert.setLong(idx++, fpSubject);
-      setLong(psAddcert, idx++, fpReqSubject);
-      psAddcert.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
-      psAddcert.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
-      setBoolean(psAddcert, idx++, false);
-      psAddcert.setInt(idx++, certProfile.getId());
-      psAddcert.setInt(idx++, ca.getId());
-      setInt(psAddcert, idx++, requestor.getId());
-      setInt(psAddcert, idx++, userId);
-      psAddcert.setLong(idx++, fpPk);
-      boolean isEeCert = cert.getBasicConstraints() == -1;
-      psAddcert.setInt(idx++, isEeCert ? 1 : 0);
-      psAddcert.setInt(idx++, reqType.getCode());
-      psAddcert.setString(idx++, tid);
-
-      // rawcert
-      PreparedStatement psAddRawcert = pss[1];
-
-      idx = 2;
-      psAddRawcert.setString(idx++, b64FpCert);
-      psAddRawcert.setString(idx++, reqSubjectText);
-      psAddRawcert.setString(idx++, b64Cert);
-
-      certificate.setCertId(certId);
-
-      psAddcert.setLong(1, certId);
-      psAddRawcert.setLong(1, certId);
+      for (int i = 0; i < n; i++) {
+        certIds[i] = setAddCertParams(psAddcert, psAddRawcert, certInfos.get(i));
+        if (n > 1) {
+          psAddcert.addBatch();
+          psAddRawcert.addBatch();
+        }
+      }
 
       final boolean origAutoCommit = conn.getAutoCommit();
       conn.setAutoCommit(false);
@@ -209,22 +194,32 @@ public class CertStore {
       String sql = null;
       try {
         sql = SQLs.SQL_ADD_CERT;
-        psAddcert.executeUpdate();
+        if (n > 1) {
+          psAddcert.executeBatch();
+        } else {
+          psAddcert.executeUpdate();
+        }
 
         sql = SQLs.SQL_ADD_CRAW;
-        psAddRawcert.executeUpdate();
+        if (n > 1) {
+          psAddRawcert.executeBatch();
+        } else {
+          psAddRawcert.executeUpdate();
+        }
 
         sql = "(commit add cert to CA certstore)";
         conn.commit();
       } catch (Throwable th) {
         conn.rollback();
         // more secure
-        datasource.deleteFromTable(null, "CRAW", "CID", certId);
-        datasource.deleteFromTable(null, "CERT", "ID", certId);
+        for (long certId : certIds) {
+          datasource.deleteFromTable(null, "CRAW", "CID", certId);
+          datasource.deleteFromTable(null, "CERT", "ID", certId);
+        }
 
         if (th instanceof SQLException) {
-          LOG.error("datasource {} could not add certificate with id {}: {}",
-              datasource.getName(), certId, th.getMessage());
+          LOG.error("datasource {} could not add {} certificate(s) with first id {}: {}",
+              datasource.getName(), n, certIds[0], th.getMessage());
           throw datasource.translate(sql, (SQLException) th);
         } else {
           throw new OperationException(ErrorCode.SYSTEM_FAILURE, th);
@@ -245,7 +240,74 @@ public class CertStore {
         }
       }
     }
-  } // method addCert
+  } // method addCerts0
+
+  /**
+   * Sets the parameters of the SQL statements to add the certificate.
+   * @return the assigned ID of the certificate.
+   */
+  private long setAddCertParams(PreparedStatement psAddcert, PreparedStatement psAddRawcert,
+      CertificateInfo certInfo) throws SQLException {
+    NameId ca = ParamUtil.requireNonNull("ca", certInfo.getIssuer());
+    CertWithDbId certificate = ParamUtil.requireNonNull("certificate", certInfo.getCert());
+    NameId certProfile = ParamUtil.requireNonNull("certProfile", certInfo.getProfile());
+    NameId requestor = ParamUtil.requireNonNull("requestor", certInfo.getRequestor());
+    X500Name reqSubject = certInfo.getRequestedSubject();
+    byte[] transactionId = certInfo.getTransactionId();
+
+    long certId = idGenerator.nextId();
+    X509Certificate cert = certificate.getCert();
+
+    long fpPk = FpIdCalculator.hash(certInfo.getSubjectPublicKey());
+    String subjectText = X509Util.cutText(certificate.getSubject(), maxX500nameLen);
+    long fpSubject = X509Util.fpCanonicalizedName(cert.getSubjectX500Principal());
+
+    String reqSubjectText = null;
+    Long fpReqSubject = null;
+    if (reqSubject != null) {
+      fpReqSubject = X509Util.fpCanonicalizedName(reqSubject);
+      if (fpSubject == fpReqSubject) {
+        fpReqSubject = null;
+      } else {
+        reqSubjectText = X509Util.cutX500Name(CaUtil.sortX509Name(reqSubject), maxX500nameLen);
+      }
+    }
+
+    String b64FpCert = base64Fp(certificate.getEncodedCert());
+    String b64Cert = Base64.encodeToString(certificate.getEncodedCert());
+    String tid = (transactionId == null) ? null : Base64.encodeToString(transactionId);
+
+    // cert
+    int idx = 1;
+    psAddcert.setLong(idx++, certId);
+    psAddcert.setLong(idx++, System.currentTimeMillis() / 1000); // currentTimeSeconds
+    psAddcert.setString(idx++, cert.getSerialNumber().toString(16));
+    psAddcert.setString(idx++, subjectText);
+    psAddcert.setLong(idx++, fpSubject);
+    setLong(psAddcert, idx++, fpReqSubject);
+    psAddcert.setLong(idx++, cert.getNotBefore().getTime() / 1000); // notBeforeSeconds
+    psAddcert.setLong(idx++, cert.getNotAfter().getTime() / 1000); // notAfterSeconds
+    setBoolean(psAddcert, idx++, false);
+    psAddcert.setInt(idx++, certProfile.getId());
+    psAddcert.setInt(idx++, ca.getId());
+    setInt(psAddcert, idx++, requestor.getId());
+    setInt(psAddcert, idx++, certInfo.getUser());
+    psAddcert.setLong(idx++, fpPk);
+    boolean isEeCert = cert.getBasicConstraints() == -1;
+    psAddcert.setInt(idx++, isEeCert ? 1 : 0);
+    psAddcert.setInt(idx++, certInfo.getReqType().getCode());
+    psAddcert.setString(idx++, tid);
+
+    // rawcert
+    idx = 1;
+    psAddRawcert.setLong(idx++, certId);
+    psAddRawcert.setString(idx++, b64FpCert);
+    psAddRawcert.setString(idx++, reqSubjectText);
+    psAddRawcert.setString(idx++, b64Cert);
+
+    certificate.setCertId(certId);
+    return certId;
+  } // method setAddCertParams
 
   public void addToPublishQueue(NameId publisher, long certId, NameId ca)
       throws OperationException {
@@ -406,23 +468,11 @@ public class CertStore {
     }
   }
 
-  public void addCrl(NameId ca, X509CRL crl) throws OperationException, CRLException {
+  public void addCrl(NameId ca, byte[] encodedCrl, BigInteger crlNumber, BigInteger baseCrlNumber,
+      Date thisUpdate, Date nextUpdate) throws OperationException {
     ParamUtil.requireNonNull("ca", ca);
-    ParamUtil.requireNonNull("crl", crl);
-
-    byte[] encodedExtnValue = crl.getExtensionValue(Extension.cRLNumber.getId());
-    Long crlNumber = null;
-    if (encodedExtnValue != null) {
-      byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      crlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
-
-    encodedExtnValue = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    Long baseCrlNumber = null;
-    if (encodedExtnValue != null) {
-      byte[] extnValue = DEROctetString.getInstance(encodedExtnValue).getOctets();
-      baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue().longValue();
-    }
+    ParamUtil.requireNonNull("encodedCrl", encodedCrl);
+    ParamUtil.requireNonNull("thisUpdate", thisUpdate);
 
     final String sql = SQLs.SQL_ADD_CRL;
     long currentMaxCrlId;
@@ -433,7 +483,7 @@ public class CertStore {
     }
     long crlId = currentMaxCrlId + 1;
 
-    String b64Crl = Base64.encodeToString(crl.getEncoded());
+    String b64Crl = Base64.encodeToString(encodedCrl);
 
     PreparedStatement ps = null;
 
@@ -443,12 +493,11 @@ public class CertStore {
       int idx = 1;
       ps.setLong(idx++, crlId);
       ps.setInt(idx++, ca.getId());
-      setLong(ps, idx++, crlNumber);
-      Date date = crl.getThisUpdate();
-      ps.setLong(idx++, date.getTime() / 1000);
-      setDateSeconds(ps, idx++, crl.getNextUpdate());
+      setLong(ps, idx++, (crlNumber == null) ? null : crlNumber.longValue());
+      ps.setLong(idx++, thisUpdate.getTime() / 1000);
+      setDateSeconds(ps, idx++, nextUpdate);
       setBoolean(ps, idx++, (baseCrlNumber != null));
-      setLong(ps, idx++, baseCrlNumber);
+      setLong(ps, idx++, (baseCrlNumber == null) ? null : baseCrlNumber.longValue());
       ps.setString(idx++, b64Crl);
 
       ps.executeUpdate();
@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.impl;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.security.CrlReason;
+import org.xipki.security.util.X509Util;
+
+/**
+ * Compares the CRLs generated by {@link X509CrlStreamBuilder} with those generated by
+ * BouncyCastle's {@link X509v2CRLBuilder}. The builder is package-private, hence this test
+ * is not in the package {@code org.xipki.ca.server.impl.test}.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class X509CrlStreamBuilderTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Test CA,O=xipki,C=DE");
+
+  private static final X500Name CERT_ISSUER = new X500Name("CN=Cert Test CA,O=xipki,C=DE");
+
+  private static final int[] REASONS = {CrlReason.UNSPECIFIED.getCode(),
+    CrlReason.KEY_COMPROMISE.getCode(), CrlReason.CA_COMPROMISE.getCode(),
+    CrlReason.SUPERSEDED.getCode(), CrlReason.CERTIFICATE_HOLD.getCode()};
+
+  private static KeyPair keypair;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    if (Security.getProvider("BC") == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(2048, new SecureRandom());
+    keypair = kpGen.generateKeyPair();
+  }
+
+  @Test
+  public void testEmptyCrl() throws Exception {
+    compare(0, null, null);
+  }
+
+  @Test
+  public void testDirectCrl() throws Exception {
+    compare(200, new Date(System.currentTimeMillis() + 24L * 3600 * 1000), null);
+  }
+
+  @Test
+  public void testIndirectCrl() throws Exception {
+    compare(50, null, CERT_ISSUER);
+  }
+
+  @Test
+  public void testSortedRuns() throws Exception {
+    // more entries than sorted in memory, and with more than 65535 bytes of entries
+    compare(250000, new Date(System.currentTimeMillis() + 24L * 3600 * 1000), null);
+  }
+
+  private static void compare(int numEntries, Date nextUpdate, X500Name certIssuer)
+      throws Exception {
+    // UTCTime has the precision of seconds
+    Date thisUpdate = new Date(System.currentTimeMillis() / 1000 * 1000);
+    BigInteger crlNumber = BigInteger.valueOf(12345);
+
+    Random random = new Random(numEntries);
+    List<CertRevInfoWithSerial> entries = new ArrayList<>(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      BigInteger serial = new BigInteger(64, random).add(BigInteger.valueOf(i * 2L + 1));
+      Date revTime = new Date(thisUpdate.getTime() - 1000L * random.nextInt(1000000));
+      int reason = REASONS[random.nextInt(REASONS.length)];
+      Date invTime = random.nextBoolean() ? null : new Date(revTime.getTime() - 3600000);
+      entries.add(new CertRevInfoWithSerial(0, serial, reason, revTime, invTime));
+    }
+
+    // X509CrlStreamBuilder, entries not sorted
+    EncodedCrl streamCrl;
+    X509CrlStreamBuilder streamBuilder = new X509CrlStreamBuilder(ISSUER, thisUpdate,
+        nextUpdate, certIssuer);
+    try {
+      for (CertRevInfoWithSerial entry : entries) {
+        streamBuilder.addCrlEntry(entry.getSerial(), entry.getRevocationTime(),
+            entry.getReason().getCode(), entry.getInvalidityTime());
+      }
+      streamBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+      streamCrl = streamBuilder.build(newSigner());
+    } finally {
+      streamBuilder.close();
+    }
+
+    // X509v2CRLBuilder, entries sorted by serial number
+    Collections.sort(entries);
+    X509v2CRLBuilder bcBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+    if (nextUpdate != null) {
+      bcBuilder.setNextUpdate(nextUpdate);
+    }
+
+    boolean firstEntry = true;
+    for (CertRevInfoWithSerial entry : entries) {
+      ExtensionsGenerator extGen = new ExtensionsGenerator();
+      CrlReason reason = entry.getReason();
+      if (reason != CrlReason.UNSPECIFIED) {
+        extGen.addExtension(Extension.reasonCode, false, CRLReason.lookup(reason.getCode()));
+      }
+      if (entry.getInvalidityTime() != null) {
+        extGen.addExtension(Extension.invalidityDate, false,
+            new ASN1GeneralizedTime(entry.getInvalidityTime()));
+      }
+      if (firstEntry && certIssuer != null) {
+        extGen.addExtension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(certIssuer)));
+      }
+      firstEntry = false;
+
+      if (extGen.isEmpty()) {
+        bcBuilder.addCRLEntry(entry.getSerial(), entry.getRevocationTime(), 0);
+      } else {
+        bcBuilder.addCRLEntry(entry.getSerial(), entry.getRevocationTime(), extGen.generate());
+      }
+    }
+    bcBuilder.addExtension(Extension.cRLNumber, false, new ASN1Integer(crlNumber));
+    byte[] bcCrl = bcBuilder.build(newSigner()).getEncoded();
+
+    // RSA PKCS#1 v1.5 signatures are deterministic
+    Assert.assertArrayEquals("encoded CRL", bcCrl, streamCrl.getEncoded());
+
+    Assert.assertEquals("crlNumber", crlNumber, streamCrl.getCrlNumber());
+    Assert.assertNull("baseCrlNumber", streamCrl.getBaseCrlNumber());
+    Assert.assertEquals("thisUpdate", thisUpdate, streamCrl.getThisUpdate());
+    Assert.assertEquals("nextUpdate", (nextUpdate == null) ? null
+        : new Date(nextUpdate.getTime() / 1000 * 1000), streamCrl.getNextUpdate());
+
+    X509CRL crl = X509Util.parseCrl(streamCrl.getEncoded());
+    crl.verify(keypair.getPublic());
+    int size = (crl.getRevokedCertificates() == null) ? 0 : crl.getRevokedCertificates().size();
+    Assert.assertEquals("number of revoked certificates", numEntries, size);
+  }
+
+  private static ContentSigner newSigner() throws Exception {
+    return new JcaContentSignerBuilder("SHA256withRSA").setProvider("BC")
+        .build(keypair.getPrivate());
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ca.server.impl.cmp;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ca.api.CertWithDbId;
+import org.xipki.ca.api.NameId;
+import org.xipki.ca.api.publisher.CertificateInfo;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceFactory;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.security.HashAlgo;
+import org.xipki.security.X509Cert;
+
+/**
+ * Round trip tests of {@link DbPendingCertificateStore} against an in-memory H2 database.
+ * It resides in the package of the package-private store.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class DbPendingCertificateStoreTest {
+
+  private static final NameId CA1 = new NameId(1, "ca1");
+
+  private static final NameId CA2 = new NameId(2, "ca2");
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private static DataSourceWrapper datasource;
+
+  private static KeyPair keypair;
+
+  private static X509Cert issuerCert;
+
+  private static long nextSerial = 1;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("jdbcUrl", "jdbc:h2:mem:pendingcert;DB_CLOSE_DELAY=-1");
+    props.setProperty("username", "sa");
+    datasource = new DataSourceFactory().createDataSource("pendingcert", props, null);
+
+    // same as the table PENDING_CERT in ca-init.xml
+    Connection conn = datasource.getConnection();
+    Statement stmt = conn.createStatement();
+    try {
+      stmt.execute("CREATE TABLE PENDING_CERT (CA_ID SMALLINT NOT NULL,"
+          + " TID VARCHAR(128) NOT NULL, RID VARCHAR(40) NOT NULL, SN VARCHAR(40) NOT NULL,"
+          + " SHA1 CHAR(28) NOT NULL, WAIT_TILL BIGINT NOT NULL)");
+      stmt.execute("ALTER TABLE PENDING_CERT ADD CONSTRAINT CONST_PENDING_CERT"
+          + " UNIQUE (CA_ID, TID, RID)");
+    } finally {
+      datasource.releaseResources(stmt, null);
+    }
+
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("EC");
+    kpGen.initialize(256);
+    keypair = kpGen.generateKeyPair();
+    issuerCert = new X509Cert(generateCert());
+  }
+
+  @AfterClass
+  public static void shutdown() throws Exception {
+    if (datasource != null) {
+      datasource.close();
+    }
+  }
+
+  @Test
+  public void confirmCertificate() throws Exception {
+    DbPendingCertificateStore store = new DbPendingCertificateStore(datasource, CA1);
+    DbPendingCertificateStore otherInstance = new DbPendingCertificateStore(datasource, CA1);
+
+    byte[] tid = randomTid(16);
+    CertificateInfo certInfo = newCertInfo();
+    BigInteger serial = certInfo.getCert().getCert().getSerialNumber();
+    byte[] certHash = HashAlgo.SHA1.hash(certInfo.getCert().getEncodedCert());
+
+    store.addCertificate(tid, BigInteger.ONE, certInfo, farFuture());
+
+    // unknown certReqId
+    Assert.assertNull(otherInstance.removeCertificate(tid, BigInteger.TEN, certHash));
+
+    // wrong hash: the serial number is returned, the entry is kept
+    byte[] wrongHash = Arrays.copyOf(certHash, certHash.length);
+    wrongHash[0]++;
+    Assert.assertEquals(serial, otherInstance.removeCertificate(tid, BigInteger.ONE, wrongHash));
+
+    // confirmed by another instance
+    Assert.assertEquals(serial, otherInstance.removeCertificate(tid, BigInteger.ONE, certHash));
+    // already removed
+    Assert.assertNull(store.removeCertificate(tid, BigInteger.ONE, certHash));
+  }
+
+  @Test
+  public void removeCertificatesOfTransaction() throws Exception {
+    DbPendingCertificateStore store = new DbPendingCertificateStore(datasource, CA1);
+    DbPendingCertificateStore ca2Store = new DbPendingCertificateStore(datasource, CA2);
+
+    byte[] tid = randomTid(16);
+    CertificateInfo certInfo1 = newCertInfo();
+    CertificateInfo certInfo2 = newCertInfo();
+    CertificateInfo ca2CertInfo = newCertInfo();
+
+    store.addCertificate(tid, BigInteger.ONE, certInfo1, farFuture());
+    store.addCertificate(tid, BigInteger.valueOf(2), certInfo2, farFuture());
+    ca2Store.addCertificate(tid, BigInteger.ONE, ca2CertInfo, farFuture());
+
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(serialOf(certInfo1), serialOf(certInfo2))),
+        store.removeCertificates(tid));
+    Assert.assertNull(store.removeCertificates(tid));
+
+    // entries of another CA are not affected
+    Assert.assertEquals(Collections.singleton(serialOf(ca2CertInfo)),
+        ca2Store.removeCertificates(tid));
+  }
+
+  @Test
+  public void longTransactionId() throws Exception {
+    DbPendingCertificateStore store = new DbPendingCertificateStore(datasource, CA1);
+
+    // stored as SHA256 hash
+    byte[] tid = randomTid(100);
+    CertificateInfo certInfo = newCertInfo();
+    store.addCertificate(tid, BigInteger.ONE, certInfo, farFuture());
+    Assert.assertEquals(Collections.singleton(serialOf(certInfo)),
+        store.removeCertificates(tid));
+  }
+
+  @Test
+  public void removeConfirmTimeoutedCertificates() throws Exception {
+    NameId ca = new NameId(3, "ca3");
+    DbPendingCertificateStore store = new DbPendingCertificateStore(datasource, ca);
+
+    byte[] tid = randomTid(16);
+    CertificateInfo expired = newCertInfo();
+    CertificateInfo pending = newCertInfo();
+    store.addCertificate(tid, BigInteger.ONE, expired, System.currentTimeMillis() - 1000);
+    store.addCertificate(tid, BigInteger.valueOf(2), pending, farFuture());
+
+    Assert.assertEquals(Collections.singleton(serialOf(expired)),
+        store.removeConfirmTimeoutedCertificates());
+    Assert.assertNull(store.removeConfirmTimeoutedCertificates());
+    Assert.assertEquals(Collections.singleton(serialOf(pending)),
+        store.removeCertificates(tid));
+  }
+
+  @Test
+  public void rejectDuplicateCertReqId() throws Exception {
+    DbPendingCertificateStore store = new DbPendingCertificateStore(datasource, CA1);
+
+    byte[] tid = randomTid(16);
+    store.addCertificate(tid, BigInteger.ONE, newCertInfo(), farFuture());
+    try {
+      store.addCertificate(tid, BigInteger.ONE, newCertInfo(), farFuture());
+      Assert.fail("DataAccessException expected");
+    } catch (DataAccessException ex) {
+      // expected
+    } finally {
+      store.removeCertificates(tid);
+    }
+  }
+
+  @Test
+  public void ignoreAlreadyIssued() throws Exception {
+    DbPendingCertificateStore store = new DbPendingCertificateStore(datasource, CA1);
+
+    byte[] tid = randomTid(16);
+    CertificateInfo certInfo = newCertInfo();
+    certInfo.setAlreadyIssued(true);
+    store.addCertificate(tid, BigInteger.ONE, certInfo, farFuture());
+    Assert.assertNull(store.removeCertificates(tid));
+  }
+
+  private static BigInteger serialOf(CertificateInfo certInfo) {
+    return certInfo.getCert().getCert().getSerialNumber();
+  }
+
+  private static long farFuture() {
+    return System.currentTimeMillis() + 3600L * 1000;
+  }
+
+  private static byte[] randomTid(int len) {
+    byte[] tid = new byte[len];
+    RANDOM.nextBytes(tid);
+    return tid;
+  }
+
+  private static CertificateInfo newCertInfo() throws Exception {
+    X509Certificate cert = generateCert();
+    return new CertificateInfo(new CertWithDbId(cert), CA1, issuerCert,
+        cert.getPublicKey().getEncoded(), new NameId(1, "profile1"),
+        new NameId(1, "requestor1"));
+  }
+
+  private static synchronized X509Certificate generateCert() throws Exception {
+    X500Name name = new X500Name("CN=pending-" + nextSerial);
+    Date notBefore = new Date();
+    X509v3CertificateBuilder builder = new X509v3CertificateBuilder(name,
+        BigInteger.valueOf(nextSerial++), notBefore,
+        new Date(notBefore.getTime() + 24L * 3600 * 1000), name,
+        SubjectPublicKeyInfo.getInstance(keypair.getPublic().getEncoded()));
+    return new JcaX509CertificateConverter().getCertificate(builder.build(
+        new JcaContentSignerBuilder("SHA256withECDSA").build(keypair.getPrivate())));
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.http.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * TODO.
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public abstract class AbstractHttpTransport implements HttpTransport {
+
+  private int connectTimeout = 60000;
+
+  private int requestTimeout = 60000;
+
+  protected AbstractHttpTransport() {
+  }
+
+  @Override
+  public HttpTransportResponse send(String method, URL url, String contentType, byte[] content)
+      throws IOException {
+    CompletableFuture<HttpTransportResponse> future = sendAsync(method, url, contentType, content);
+    try {
+      // the request timeout is applied by the transport itself, this is only the guard
+      return future.get(requestTimeout + 1000L, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the response from " + url);
+    } catch (TimeoutException ex) {
+      future.cancel(true);
+      throw new IOException("timed out while waiting for the response from " + url);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof TimeoutException) {
+        throw new IOException("timed out while waiting for the response from " + url);
+      } else {
+        throw new IOException("could not send request to " + url + ": " + cause.getMessage(),
+            cause);
+      }
+    }
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Sets the timeout to establish the connection.
+   * @param connectTimeout
+   *          Timeout in milliseconds. Must be greater than 0.
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = ParamUtil.requireMin("connectTimeout", connectTimeout, 1);
+  }
+
+  public int getRequestTimeout() {
+    return requestTimeout;
+  }
+
+  /**
+   * Sets the timeout to receive the response, counted from the submission of the request.
+   * @param requestTimeout
+   *          Timeout in milliseconds. Must be greater than 0.
+   */
+  public void setRequestTimeout(int requestTimeout) {
+    this.requestTimeout = ParamUtil.requireMin("requestTimeout", requestTimeout, 1);
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.http.client;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport used by the clients to exchange HTTP messages with the servers.
+ *
+ * <p>Implementations must be thread-safe.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public interface HttpTransport {
+
+  /**
+   * Sends the request asynchronously.
+   * @param method
+   *          HTTP method, e.g. GET or POST. Must not be {@code null}.
+   * @param url
+   *          URL of the server. Must not be {@code null}.
+   * @param contentType
+   *          Content type of the request. Could be {@code null} if content is {@code null}.
+   * @param content
+   *          Content of the request. Could be {@code null}.
+   * @return the future of the response. It fails with {@link IOException} if the transmission
+   *     failed, and with {@link java.util.concurrent.TimeoutException} if no response has
+   *     been received within the request timeout. The dependent actions may be executed by
+   *     the I/O threads of the transport, and must not block.
+   */
+  CompletableFuture<HttpTransportResponse> sendAsync(String method, URL url, String contentType,
+      byte[] content);
+
+  /**
+   * Sends the request and waits for the response.
+   * @param method
+   *          HTTP method, e.g. GET or POST. Must not be {@code null}.
+   * @param url
+   *          URL of the server. Must not be {@code null}.
+   * @param contentType
+   *          Content type of the request. Could be {@code null} if content is {@code null}.
+   * @param content
+   *          Content of the request. Could be {@code null}.
+   * @return the response.
+   * @throws IOException
+   *           if the transmission failed or timed out.
+   */
+  HttpTransportResponse send(String method, URL url, String contentType, byte[] content)
+      throws IOException;
+
+  /**
+   * Closes all connections and releases the resources.
+   */
+  void close();
+
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.http.client;
+
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Response received by the {@link HttpTransport}.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class HttpTransportResponse {
+
+  private final int statusCode;
+
+  private final String reasonPhrase;
+
+  private final String contentType;
+
+  private final byte[] content;
+
+  public HttpTransportResponse(int statusCode, String reasonPhrase, String contentType,
+      byte[] content) {
+    this.statusCode = statusCode;
+    this.reasonPhrase = reasonPhrase;
+    this.contentType = contentType;
+    this.content = ParamUtil.requireNonNull("content", content);
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public String getReasonPhrase() {
+    return reasonPhrase;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public byte[] getContent() {
+    return content;
+  }
+
+  /**
+   * Checks whether the content type equals the given one, the parameters are ignored.
+   */
+  public boolean hasContentType(String expectedContentType) {
+    if (contentType == null) {
+      return false;
+    }
+
+    int idx = contentType.indexOf(';');
+    String mediaType = (idx == -1) ? contentType : contentType.substring(0, idx);
+    return mediaType.trim().equalsIgnoreCase(expectedContentType);
+  }
+
+}
@@ -0,0 +1,558 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.http.client;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.ParamUtil;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * {@link HttpTransport} based on netty. The connections are kept alive and reused, at most
+ * {@code maxConnectionsPerHost} connections are opened to the same host.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class NettyHttpTransport extends AbstractHttpTransport {
+
+  private static final class HostKey {
+
+    private final boolean ssl;
+
+    private final String host;
+
+    private final int port;
+
+    HostKey(boolean ssl, String host, int port) {
+      this.ssl = ssl;
+      this.host = host;
+      this.port = port;
+    }
+
+    @Override
+    public int hashCode() {
+      return host.hashCode() * 31 + port + (ssl ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof HostKey)) {
+        return false;
+      }
+
+      HostKey other = (HostKey) obj;
+      return ssl == other.ssl && port == other.port && host.equals(other.host);
+    }
+
+    @Override
+    public String toString() {
+      return (ssl ? "https://" : "http://") + host + ":" + port;
+    }
+
+  } // class HostKey
+
+  private class PoolMap extends AbstractChannelPoolMap<HostKey, FixedChannelPool> {
+
+    private final EventLoopGroup group;
+
+    private final Bootstrap bootstrap;
+
+    PoolMap(EventLoopGroup group) {
+      this.group = group;
+      this.bootstrap = new Bootstrap().group(group)
+          .channel(NioSocketChannel.class)
+          .option(ChannelOption.SO_KEEPALIVE, true)
+          .option(ChannelOption.TCP_NODELAY, true)
+          .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getConnectTimeout());
+    }
+
+    @Override
+    protected FixedChannelPool newPool(HostKey key) {
+      return new FixedChannelPool(bootstrap.clone().remoteAddress(key.host, key.port),
+          new PoolHandler(key), maxConnectionsPerHost, maxPendingRequestsPerHost);
+    }
+
+  } // class PoolMap
+
+  private class PoolHandler extends AbstractChannelPoolHandler {
+
+    private final HostKey key;
+
+    PoolHandler(HostKey key) {
+      this.key = key;
+    }
+
+    @Override
+    public void channelCreated(Channel ch) throws Exception {
+      ChannelPipeline pipeline = ch.pipeline();
+      if (key.ssl) {
+        SslHandler sslHandler = getSslContext().newHandler(ch.alloc(), key.host, key.port);
+        // verify that the server certificate matches the host
+        SSLEngine engine = sslHandler.engine();
+        SSLParameters params = engine.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(params);
+        pipeline.addLast(sslHandler);
+      }
+
+      pipeline.addLast(new IdleStateHandler(0, 0, idleTimeout, TimeUnit.SECONDS))
+        .addLast(new HttpClientCodec())
+        .addLast(new HttpObjectAggregator(maxResponseSize))
+        .addLast(responseHandler);
+    }
+
+  } // class PoolHandler
+
+  @Sharable
+  private static class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse resp) {
+      CompletableFuture<HttpTransportResponse> future =
+          ctx.channel().attr(FUTURE_KEY).getAndSet(null);
+      if (future == null) {
+        LOG.warn("received unexpected response from {}", ctx.channel().remoteAddress());
+        ctx.close();
+        return;
+      }
+
+      if (!HttpUtil.isKeepAlive(resp)) {
+        ctx.close();
+      }
+
+      HttpTransportResponse response = new HttpTransportResponse(resp.status().code(),
+          resp.status().reasonPhrase(), resp.headers().get(HttpHeaderNames.CONTENT_TYPE),
+          ByteBufUtil.getBytes(resp.content()));
+      future.complete(response);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      failRequest(ctx, new IOException("connection to " + ctx.channel().remoteAddress()
+          + " has been closed"));
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      failRequest(ctx, (cause instanceof IOException) ? cause : new IOException(cause));
+      ctx.close();
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+      if (evt instanceof IdleStateEvent) {
+        // only idle connections in the pool are closed, the pending requests are
+        // limited by the request timeout.
+        if (ctx.channel().attr(FUTURE_KEY).get() == null) {
+          ctx.close();
+        }
+      } else {
+        super.userEventTriggered(ctx, evt);
+      }
+    }
+
+    private static void failRequest(ChannelHandlerContext ctx, Throwable cause) {
+      CompletableFuture<HttpTransportResponse> future =
+          ctx.channel().attr(FUTURE_KEY).getAndSet(null);
+      if (future != null) {
+        future.completeExceptionally(cause);
+      }
+    }
+
+  } // class ResponseHandler
+
+  private static class ChannelReleaser implements BiConsumer<HttpTransportResponse, Throwable> {
+
+    private final FixedChannelPool pool;
+
+    private final Channel channel;
+
+    ChannelReleaser(FixedChannelPool pool, Channel channel) {
+      this.pool = pool;
+      this.channel = channel;
+    }
+
+    @Override
+    public void accept(HttpTransportResponse response, Throwable cause) {
+      if (cause != null) {
+        // the response may arrive later, the connection cannot be reused.
+        channel.attr(FUTURE_KEY).set(null);
+        channel.close();
+      }
+      pool.release(channel);
+    }
+
+  } // class ChannelReleaser
+
+  private static final Logger LOG = LoggerFactory.getLogger(NettyHttpTransport.class);
+
+  private static final AttributeKey<CompletableFuture<HttpTransportResponse>> FUTURE_KEY =
+      AttributeKey.valueOf("org.xipki.http.client.future");
+
+  private final ResponseHandler responseHandler = new ResponseHandler();
+
+  private int numThreads = 2;
+
+  private int maxConnectionsPerHost = 10;
+
+  private int maxPendingRequestsPerHost = 1000;
+
+  private int idleTimeout = 15;
+
+  private int maxResponseSize = 16 * 1024 * 1024;
+
+  private PoolMap pools;
+
+  private String keystoreType;
+
+  private String keystoreFile;
+
+  private String keystorePassword;
+
+  private String truststoreType;
+
+  private String truststoreFile;
+
+  private String truststorePassword;
+
+  private SslContext sslContext;
+
+  private boolean closed;
+
+  public NettyHttpTransport() {
+  }
+
+  @Override
+  public CompletableFuture<HttpTransportResponse> sendAsync(String method, URL url,
+      String contentType, byte[] content) {
+    ParamUtil.requireNonBlank("method", method);
+    ParamUtil.requireNonNull("url", url);
+
+    final HostKey key;
+    final FullHttpRequest request;
+    final PoolMap poolMap;
+    try {
+      String protocol = url.getProtocol();
+      boolean ssl;
+      if ("https".equalsIgnoreCase(protocol)) {
+        ssl = true;
+      } else if ("http".equalsIgnoreCase(protocol)) {
+        ssl = false;
+      } else {
+        throw new IOException(url.toString() + " is not of protocol HTTP: " + protocol);
+      }
+
+      int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+      key = new HostKey(ssl, url.getHost(), port);
+      poolMap = getPools();
+      request = buildRequest(method, url, contentType, content);
+    } catch (IOException ex) {
+      CompletableFuture<HttpTransportResponse> future = new CompletableFuture<>();
+      future.completeExceptionally(ex);
+      return future;
+    }
+
+    final FixedChannelPool pool = poolMap.get(key);
+    final CompletableFuture<HttpTransportResponse> future = new CompletableFuture<>();
+
+    final ScheduledFuture<?> timeoutTask = poolMap.group.schedule(new Runnable() {
+      @Override
+      public void run() {
+        future.completeExceptionally(new TimeoutException("received no response from "
+            + key + " within " + getRequestTimeout() + " ms"));
+      }
+    }, getRequestTimeout(), TimeUnit.MILLISECONDS);
+
+    future.whenComplete(new BiConsumer<HttpTransportResponse, Throwable>() {
+      @Override
+      public void accept(HttpTransportResponse response, Throwable cause) {
+        timeoutTask.cancel(false);
+      }
+    });
+
+    pool.acquire().addListener(new GenericFutureListener<Future<Channel>>() {
+      @Override
+      public void operationComplete(Future<Channel> acquireFuture) {
+        if (!acquireFuture.isSuccess()) {
+          request.release();
+          Throwable cause = acquireFuture.cause();
+          future.completeExceptionally((cause instanceof IOException) ? cause
+              : new IOException("could not connect to " + key + ": " + cause.getMessage(),
+                  cause));
+          return;
+        }
+
+        Channel channel = acquireFuture.getNow();
+        if (future.isDone()) {
+          // timed out or cancelled while waiting for the connection
+          request.release();
+          pool.release(channel);
+          return;
+        }
+
+        channel.attr(FUTURE_KEY).set(future);
+        future.whenComplete(new ChannelReleaser(pool, channel));
+        channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+          @Override
+          public void operationComplete(ChannelFuture writeFuture) {
+            if (!writeFuture.isSuccess()) {
+              Throwable cause = writeFuture.cause();
+              future.completeExceptionally((cause instanceof IOException) ? cause
+                  : new IOException("could not send request to " + key + ": "
+                      + cause.getMessage(), cause));
+            }
+          }
+        });
+      }
+    });
+
+    return future;
+  } // method sendAsync
+
+  private static FullHttpRequest buildRequest(String method, URL url, String contentType,
+      byte[] content) {
+    String uri = url.getFile();
+    if (uri.isEmpty()) {
+      uri = "/";
+    }
+
+    ByteBuf buf = (content == null) ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(content);
+    FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+        HttpMethod.valueOf(method), uri, buf);
+    HttpHeaders headers = request.headers();
+    headers.set(HttpHeaderNames.HOST,
+        (url.getPort() == -1) ? url.getHost() : url.getHost() + ":" + url.getPort());
+    headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+    if (content != null) {
+      if (contentType != null) {
+        headers.set(HttpHeaderNames.CONTENT_TYPE, contentType);
+      }
+      HttpUtil.setContentLength(request, content.length);
+    }
+    return request;
+  }
+
+  private synchronized PoolMap getPools() throws IOException {
+    if (closed) {
+      throw new IOException("transport has been closed");
+    }
+
+    if (pools == null) {
+      pools = new PoolMap(new NioEventLoopGroup(numThreads,
+          new DefaultThreadFactory("xipki-http-client", true)));
+    }
+    return pools;
+  }
+
+  private synchronized SslContext getSslContext() throws SSLException {
+    if (sslContext != null) {
+      return sslContext;
+    }
+
+    SslContextBuilder builder = SslContextBuilder.forClient();
+    try {
+      // as the JVM default SSLContext if not configured
+      String type = keystoreType;
+      String file = keystoreFile;
+      String password = keystorePassword;
+      if (file == null) {
+        type = System.getProperty("javax.net.ssl.keyStoreType");
+        file = System.getProperty("javax.net.ssl.keyStore");
+        password = System.getProperty("javax.net.ssl.keyStorePassword");
+      }
+
+      if (file != null && !"NONE".equals(file)) {
+        char[] pwd = (password == null) ? null : password.toCharArray();
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+            KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(loadKeyStore(type, file, pwd), pwd);
+        builder.keyManager(kmf);
+      }
+
+      // null uses the truststore javax.net.ssl.trustStore or the JRE's cacerts
+      KeyStore truststore = null;
+      if (truststoreFile != null) {
+        truststore = loadKeyStore(truststoreType, truststoreFile,
+            (truststorePassword == null) ? null : truststorePassword.toCharArray());
+      }
+      TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+          TrustManagerFactory.getDefaultAlgorithm());
+      tmf.init(truststore);
+      builder.trustManager(tmf);
+    } catch (IOException | GeneralSecurityException ex) {
+      throw new SSLException("could not initialize TLS: " + ex.getMessage(), ex);
+    }
+
+    sslContext = builder.build();
+    return sslContext;
+  }
+
+  private static KeyStore loadKeyStore(String type, String file, char[] password)
+      throws IOException, GeneralSecurityException {
+    KeyStore keystore = KeyStore.getInstance((type == null) ? KeyStore.getDefaultType() : type);
+    InputStream in = new FileInputStream(IoUtil.expandFilepath(file));
+    try {
+      keystore.load(in, password);
+    } finally {
+      in.close();
+    }
+    return keystore;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (pools != null) {
+      pools.close();
+      pools.group.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+      pools = null;
+    }
+  }
+
+  public void setNumThreads(int numThreads) {
+    this.numThreads = ParamUtil.requireMin("numThreads", numThreads, 1);
+  }
+
+  /**
+   * Sets the maximal number of concurrent connections to the same host.
+   */
+  public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost =
+        ParamUtil.requireMin("maxConnectionsPerHost", maxConnectionsPerHost, 1);
+  }
+
+  /**
+   * Sets the maximal number of requests waiting for a connection to the same host.
+   */
+  public void setMaxPendingRequestsPerHost(int maxPendingRequestsPerHost) {
+    this.maxPendingRequestsPerHost =
+        ParamUtil.requireMin("maxPendingRequestsPerHost", maxPendingRequestsPerHost, 1);
+  }
+
+  /**
+   * Sets the time in seconds after which an unused connection will be closed.
+   */
+  public void setIdleTimeout(int idleTimeout) {
+    this.idleTimeout = ParamUtil.requireMin("idleTimeout", idleTimeout, 1);
+  }
+
+  /**
+   * Sets the maximal size of a response in bytes, larger responses are failed.
+   */
+  public void setMaxResponseSize(int maxResponseSize) {
+    this.maxResponseSize = ParamUtil.requireMin("maxResponseSize", maxResponseSize, 1);
+  }
+
+  public void setKeystoreType(String keystoreType) {
+    this.keystoreType = emptyAsNull(keystoreType);
+  }
+
+  /**
+   * Sets the keystore containing the TLS client key. If not set, the keystore specified by
+   * the system property javax.net.ssl.keyStore is used.
+   */
+  public void setKeystoreFile(String keystoreFile) {
+    this.keystoreFile = emptyAsNull(keystoreFile);
+  }
+
+  public void setKeystorePassword(String keystorePassword) {
+    this.keystorePassword = emptyAsNull(keystorePassword);
+  }
+
+  public void setTruststoreType(String truststoreType) {
+    this.truststoreType = emptyAsNull(truststoreType);
+  }
+
+  /**
+   * Sets the truststore containing the certificates to verify the TLS servers. If not set, the
+   * truststore specified by the system property javax.net.ssl.trustStore, or the JRE's cacerts
+   * is used.
+   */
+  public void setTruststoreFile(String truststoreFile) {
+    this.truststoreFile = emptyAsNull(truststoreFile);
+  }
+
+  public void setTruststorePassword(String truststorePassword) {
+    this.truststorePassword = emptyAsNull(truststorePassword);
+  }
+
+  private static String emptyAsNull(String str) {
+    return (str == null || str.trim().isEmpty()) ? null : str.trim();
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.http.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}. The request is sent in the
+ * calling thread, and the returned future is already completed.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class UrlConnectionHttpTransport extends AbstractHttpTransport {
+
+  public UrlConnectionHttpTransport() {
+  }
+
+  @Override
+  public CompletableFuture<HttpTransportResponse> sendAsync(String method, URL url,
+      String contentType, byte[] content) {
+    ParamUtil.requireNonBlank("method", method);
+    ParamUtil.requireNonNull("url", url);
+
+    CompletableFuture<HttpTransportResponse> future = new CompletableFuture<>();
+    try {
+      future.complete(send0(method, url, contentType, content));
+    } catch (IOException ex) {
+      future.completeExceptionally(ex);
+    }
+    return future;
+  }
+
+  private HttpTransportResponse send0(String method, URL url, String contentType,
+      byte[] content) throws IOException {
+    HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(url);
+    httpUrlConnection.setConnectTimeout(getConnectTimeout());
+    httpUrlConnection.setReadTimeout(getRequestTimeout());
+    httpUrlConnection.setUseCaches(false);
+    httpUrlConnection.setRequestMethod(method);
+
+    if (content != null) {
+      httpUrlConnection.setDoOutput(true);
+      if (contentType != null) {
+        httpUrlConnection.setRequestProperty("Content-Type", contentType);
+      }
+      httpUrlConnection.setRequestProperty("Content-Length", Integer.toString(content.length));
+      OutputStream outputstream = httpUrlConnection.getOutputStream();
+      outputstream.write(content);
+      outputstream.flush();
+    }
+
+    int statusCode = httpUrlConnection.getResponseCode();
+    InputStream inputStream = (statusCode < 400) ? httpUrlConnection.getInputStream()
+        : httpUrlConnection.getErrorStream();
+    byte[] responseContent = (inputStream == null) ? new byte[0] : IoUtil.read(inputStream);
+    return new HttpTransportResponse(statusCode, httpUrlConnection.getResponseMessage(),
+        httpUrlConnection.getContentType(), responseContent);
+  }
+
+  @Override
+  public void close() {
+  }
+
+}
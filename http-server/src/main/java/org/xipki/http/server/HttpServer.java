@@ -19,6 +19,15 @@ package org.xipki.http.server;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLSession;
 
@@ -56,6 +65,7 @@ import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * TODO.
@@ -83,8 +93,30 @@ public final class HttpServer {
     }
   }
 
+  private static class BusinessExecutorConf {
+
+    private final int threads;
+
+    private final int queueSize;
+
+    BusinessExecutorConf(int threads, int queueSize) {
+      this.threads = threads;
+      this.queueSize = queueSize;
+    }
+
+  }
+
   private class NettyHttpServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
+    /**
+     * Requests received while a request of this channel is processed in a business executor.
+     * They are processed one after another, so that the pipelined requests are answered in
+     * order. Accessed only in the event loop of the channel.
+     */
+    private final Queue<FullHttpRequest> pendingRequests = new ArrayDeque<>();
+
+    private boolean inProcess;
+
     private NettyHttpServerHandler() {
       super(true);
     }
@@ -92,6 +124,26 @@ public final class HttpServer {
     @Override
     public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request)
             throws Exception {
+      if (inProcess) {
+        // the request will be released by the SimpleChannelInboundHandler after this method
+        pendingRequests.add(request.retain());
+        ctx.channel().config().setAutoRead(false);
+        return;
+      }
+
+      process(ctx, request);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      FullHttpRequest request;
+      while ((request = pendingRequests.poll()) != null) {
+        request.release();
+      }
+      super.channelInactive(ctx);
+    }
+
+    private void process(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
       if (!request.decoderResult().isSuccess()) {
         sendError(ctx, HttpResponseStatus.BAD_REQUEST);
         return;
@@ -115,6 +167,27 @@ public final class HttpServer {
         }
       }
 
+      ExecutorService executor = businessExecutors.get((String) objs[2]);
+      if (executor == null) {
+        service(ctx, request, servletUri, servlet, sslSession);
+        return;
+      }
+
+      // the request will be released by the caller after this method returns
+      request.retain();
+      inProcess = true;
+      try {
+        executor.execute(new BusinessTask(ctx, request, servletUri, servlet, sslSession));
+      } catch (RejectedExecutionException ex) {
+        inProcess = false;
+        request.release();
+        LOG.warn("business executor for servlet alias {} is saturated, reject request", objs[2]);
+        sendError(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE);
+      }
+    }
+
+    private void service(ChannelHandlerContext ctx, FullHttpRequest request,
+        ServletURI servletUri, HttpServlet servlet, SSLSession sslSession) {
       FullHttpResponse response;
       try {
         response = servlet.service(request, servletUri, sslSession, sslReverseProxyMode);
@@ -124,6 +197,10 @@ public final class HttpServer {
         return;
       }
 
+      writeResponse(ctx, response);
+    }
+
+    private void writeResponse(ChannelHandlerContext ctx, FullHttpResponse response) {
       boolean keepAlive = true;
       int status = response.status().code();
       if (status < 200 | status > 299) {
@@ -136,6 +213,31 @@ public final class HttpServer {
       }
     }
 
+    /**
+     * Called in the event loop after the response of the business executor has been written.
+     * Processes the requests received in the meantime.
+     */
+    private void businessTaskDone(ChannelHandlerContext ctx) {
+      inProcess = false;
+
+      FullHttpRequest request;
+      while (!inProcess && (request = pendingRequests.poll()) != null) {
+        try {
+          if (ctx.channel().isActive()) {
+            process(ctx, request);
+          }
+        } catch (Exception ex) {
+          exceptionCaught(ctx, ex);
+        } finally {
+          request.release();
+        }
+      }
+
+      if (!inProcess) {
+        ctx.channel().config().setAutoRead(true);
+      }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
       if (ctx.channel().isActive()) {
@@ -159,6 +261,62 @@ public final class HttpServer {
       LOG.debug(msg, ex);
       return;
     }
+
+    /**
+     * Processes the request in the business executor, and writes the response back in the
+     * event loop of the channel.
+     */
+    private class BusinessTask implements Runnable {
+
+      private final ChannelHandlerContext ctx;
+
+      private final FullHttpRequest request;
+
+      private final ServletURI servletUri;
+
+      private final HttpServlet servlet;
+
+      private final SSLSession sslSession;
+
+      BusinessTask(ChannelHandlerContext ctx, FullHttpRequest request, ServletURI servletUri,
+          HttpServlet servlet, SSLSession sslSession) {
+        this.ctx = ctx;
+        this.request = request;
+        this.servletUri = servletUri;
+        this.servlet = servlet;
+        this.sslSession = sslSession;
+      }
+
+      @Override
+      public void run() {
+        final FullHttpResponse response;
+        try {
+          response = servlet.service(request, servletUri, sslSession, sslReverseProxyMode);
+        } catch (Exception ex) {
+          logException("exception raised while processing request", ex);
+          ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+              sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+              businessTaskDone(ctx);
+            }
+          });
+          return;
+        } finally {
+          request.release();
+        }
+
+        ctx.executor().execute(new Runnable() {
+          @Override
+          public void run() {
+            writeResponse(ctx, response);
+            businessTaskDone(ctx);
+          }
+        });
+      }
+
+    } // class BusinessTask
+
   }
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpServer.class);
@@ -181,6 +339,11 @@ public final class HttpServer {
 
   private SslReverseProxyMode sslReverseProxyMode = SslReverseProxyMode.NONE;
 
+  private final Map<String, BusinessExecutorConf> businessExecutorConfs =
+      new ConcurrentHashMap<>();
+
+  private final Map<String, ExecutorService> businessExecutors = new ConcurrentHashMap<>();
+
   public void setSslReverseProxyMode(SslReverseProxyMode mode) {
     this.sslReverseProxyMode = (mode == null) ? SslReverseProxyMode.NONE : mode;
   }
@@ -195,6 +358,37 @@ public final class HttpServer {
     this.servletListener = servletListener;
   }
 
+  /**
+   * Processes the requests to the servlet with given alias in a dedicated executor instead of
+   * the Netty event loop. Must be called before {@link #start()}.
+   *
+   * @param alias
+   *          The alias of the servlet.
+   * @param threads
+   *          Number of threads.
+   * @param queueSize
+   *          Maximal number of waiting requests. If the queue is full, the requests will be
+   *          rejected with status 503.
+   */
+  public void setBusinessExecutor(String alias, int threads, int queueSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must not be less than 1: " + threads);
+    }
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("queueSize must not be less than 1: " + queueSize);
+    }
+
+    if (alias.charAt(0) != '/') {
+      alias = "/" + alias;
+    }
+
+    if (alias.length() > 1 && alias.charAt(alias.length() - 1) == '/') {
+      alias = alias.substring(0, alias.length() - 1);
+    }
+
+    businessExecutorConfs.put(alias, new BusinessExecutorConf(threads, queueSize));
+  }
+
   static {
     String os = System.getProperty("os.name").toLowerCase();
     ClassLoader loader = HttpServer.class.getClassLoader();
@@ -288,6 +482,16 @@ public final class HttpServer {
       .handler(new LoggingHandler())
       .childHandler(new NettyHttpServerInitializer());
 
+    for (String alias : businessExecutorConfs.keySet()) {
+      BusinessExecutorConf conf = businessExecutorConfs.get(alias);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(conf.threads, conf.threads,
+          0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(conf.queueSize),
+          new DefaultThreadFactory("http-" + port + alias.replace('/', '-')));
+      businessExecutors.put(alias, executor);
+      LOG.info("use business executor for servlet alias {}: threads={}, queueSize={}",
+          alias, conf.threads, conf.queueSize);
+    }
+
     bootstrap.bind(port).syncUninterruptibly();
     LOG.info("HTTP server is listening on port {}", port);
   }
@@ -297,6 +501,11 @@ public final class HttpServer {
     bossGroup = null;
     workerGroup.shutdownGracefully();
     workerGroup = null;
+
+    for (ExecutorService executor : businessExecutors.values()) {
+      executor.shutdown();
+    }
+    businessExecutors.clear();
   }
 
   private static Class<?> clazz(String clazzName, boolean initialize, ClassLoader clazzLoader)
@@ -35,6 +35,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.StringTokenizer;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
@@ -42,6 +43,7 @@ import javax.net.ssl.SSLParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.http.servlet.SslReverseProxyMode;
+import org.xipki.httpserver.v1.jaxb.ExecutorType;
 import org.xipki.httpserver.v1.jaxb.FileOrValueType;
 import org.xipki.httpserver.v1.jaxb.HttpserverType;
 import org.xipki.httpserver.v1.jaxb.KeystoreType;
@@ -124,6 +126,19 @@ public final class HttpServers {
       HttpServer server = new HttpServer(buildSslContext(conf), port, numThreads);
       server.setServletListener(servletListener);
       server.setSslReverseProxyMode(mode);
+
+      if (conf.getExecutors() != null) {
+        for (ExecutorType executor : conf.getExecutors().getExecutor()) {
+          StringTokenizer tokenizer = new StringTokenizer(executor.getAliases(), ", ");
+          while (tokenizer.hasMoreTokens()) {
+            String alias = tokenizer.nextToken().trim();
+            if (!alias.isEmpty()) {
+              server.setBusinessExecutor(alias, executor.getThreads(), executor.getQueueSize());
+            }
+          }
+        }
+      }
+
       servers.add(server);
     }
 
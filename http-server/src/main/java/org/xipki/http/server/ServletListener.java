@@ -141,6 +141,15 @@ public class ServletListener {
     }
   }
 
+  /**
+   * Gets the servlet for the given path.
+   *
+   * @param rawPath
+   *          The raw path of the request.
+   * @return {servletURI, servlet, alias} if found, {@code null} otherwise.
+   * @throws URISyntaxException
+   *          if the URI of the servlet cannot be built.
+   */
   public Object[] getServlet(String rawPath) throws URISyntaxException {
     String alias = null;
     String uriText = null;
@@ -181,7 +190,7 @@ public class ServletListener {
 
     ServletURI servletUri = ServletURIPool.getServletURI(uriText);
     HttpServlet servlet = aliasServletMap.get(alias);
-    return new Object[]{servletUri, servlet};
+    return new Object[]{servletUri, servlet, alias};
   }
 
 }
@@ -18,47 +18,159 @@
 package org.xipki.ocsp.api;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.xipki.common.util.CompareUtil;
+import org.xipki.security.HashAlgo;
+
 /**
- * TODO.
+ * Store of the issuers. The lookups are backed by an immutable index (sorted IDs and per
+ * hash algorithm hash maps of issuerNameHash + issuerKeyHash), which will be replaced as a
+ * whole if an issuer is added.
  * @author Lijun Liao
  * @since 2.0.0
  */
 
 public class IssuerStore {
 
-  private final List<IssuerEntry> entries;
+  /**
+   * Encoded issuerNameHash and issuerKeyHash, may point to a region of a larger array.
+   */
+  private static final class HashKey {
 
-  private Set<Integer> ids;
+    private final byte[] data;
 
-  public IssuerStore(List<IssuerEntry> entries) {
-    this.entries = new ArrayList<>(entries.size());
-    Set<Integer> idSet = new HashSet<>(entries.size());
+    private final int from;
+
+    private final int length;
+
+    private final int hashCode;
+
+    HashKey(byte[] data, int from, int length) {
+      this.data = data;
+      this.from = from;
+      this.length = length;
+
+      int hc = 1;
+      for (int i = from; i < from + length; i++) {
+        hc = 31 * hc + data[i];
+      }
+      this.hashCode = hc;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof HashKey)) {
+        return false;
+      }
+
+      HashKey other = (HashKey) obj;
+      return hashCode == other.hashCode && length == other.length
+          && CompareUtil.areEqual(data, from, other.data, other.from, length);
+    }
+
+  } // class HashKey
+
+  private static final class Index {
+
+    // sorted ascending
+    private final int[] ids;
+
+    // entries[i] has the ID ids[i]
+    private final IssuerEntry[] entries;
+
+    private final Map<HashAlgo, Map<HashKey, IssuerEntry>> hashMaps;
+
+    private final Set<Integer> idSet;
+
+    Index(List<IssuerEntry> entryList) {
+      final int size = entryList.size();
+      IssuerEntry[] sortedEntries = entryList.toArray(new IssuerEntry[size]);
+      Arrays.sort(sortedEntries, (a, b) -> Integer.compare(a.getId(), b.getId()));
 
-    for (IssuerEntry entry : entries) {
-      for (IssuerEntry existingEntry : this.entries) {
-        if (existingEntry.getId() == entry.getId()) {
+      this.ids = new int[size];
+      this.entries = sortedEntries;
+      Set<Integer> idSet0 = new HashSet<>(size * 4 / 3 + 1);
+      for (int i = 0; i < size; i++) {
+        int id = sortedEntries[i].getId();
+        if (i > 0 && ids[i - 1] == id) {
           throw new IllegalArgumentException(
-              "issuer with the same id " + entry.getId() + " already available");
+              "issuer with the same id " + id + " already available");
         }
+        ids[i] = id;
+        idSet0.add(id);
       }
-      this.entries.add(entry);
-      idSet.add(entry.getId());
+      this.idSet = Collections.unmodifiableSet(idSet0);
+
+      this.hashMaps = new EnumMap<>(HashAlgo.class);
+      for (HashAlgo hashAlgo : HashAlgo.values()) {
+        Map<HashKey, IssuerEntry> map = new HashMap<>(size * 4 / 3 + 1);
+        // first entry wins if two issuers have the same name and key
+        for (IssuerEntry entry : entryList) {
+          byte[] hash = entry.getEncodedHash(hashAlgo);
+          HashKey key = new HashKey(hash, 0, hash.length);
+          if (!map.containsKey(key)) {
+            map.put(key, entry);
+          }
+        }
+        hashMaps.put(hashAlgo, map);
+      }
+    }
+
+    IssuerEntry getIssuerForId(int id) {
+      int idx = Arrays.binarySearch(ids, id);
+      return (idx < 0) ? null : entries[idx];
     }
 
-    this.ids = Collections.unmodifiableSet(idSet);
+    IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
+      HashAlgo hashAlgo = reqIssuer.hashAlgorithm();
+      if (hashAlgo == null) {
+        return null;
+      }
+
+      Map<HashKey, IssuerEntry> map = hashMaps.get(hashAlgo);
+      // OCTET STRING issuerNameHash and OCTET STRING issuerKeyHash
+      int len = (2 + hashAlgo.getLength()) << 1;
+      byte[] data = reqIssuer.getData();
+      int from = reqIssuer.getNameHashFrom();
+      if (from + len > data.length) {
+        return null;
+      }
+
+      return map.get(new HashKey(data, from, len));
+    }
+
+  } // class Index
+
+  private final List<IssuerEntry> entries;
+
+  private volatile Index index;
+
+  public IssuerStore(List<IssuerEntry> entries) {
+    this.entries = new ArrayList<>(entries);
+    this.index = new Index(this.entries);
   }
 
   public int size() {
-    return ids.size();
+    return index.ids.length;
   }
 
   public Set<Integer> getIds() {
-    return ids;
+    return index.idSet;
   }
 
   public Integer getIssuerIdForFp(RequestIssuer reqIssuer) {
@@ -67,30 +179,22 @@ public class IssuerStore {
   }
 
   public IssuerEntry getIssuerForId(int id) {
-    for (IssuerEntry entry : entries) {
-      if (entry.getId() == id) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.getIssuerForId(id);
   }
 
   public IssuerEntry getIssuerForFp(RequestIssuer reqIssuer) {
-    for (IssuerEntry entry : entries) {
-      if (entry.matchHash(reqIssuer)) {
-        return entry;
-      }
-    }
-
-    return null;
+    return index.getIssuerForFp(reqIssuer);
   }
 
-  public void addIssuer(IssuerEntry issuer) {
-    this.entries.add(issuer);
-    Set<Integer> newIds = new HashSet<>(this.ids);
-    newIds.add(issuer.getId());
-    this.ids = Collections.unmodifiableSet(newIds);
+  public synchronized void addIssuer(IssuerEntry issuer) {
+    List<IssuerEntry> newEntries = new ArrayList<>(entries.size() + 1);
+    newEntries.addAll(entries);
+    newEntries.add(issuer);
+    // throws IllegalArgumentException if the ID is already used
+    Index newIndex = new Index(newEntries);
+
+    entries.add(issuer);
+    this.index = newIndex;
   }
 
 }
@@ -19,7 +19,9 @@ package org.xipki.ocsp.api;
 
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.xipki.common.util.ParamUtil;
 import org.xipki.datasource.DataSourceWrapper;
@@ -87,6 +89,61 @@ public abstract class OcspStore {
       BigInteger serialNumber, boolean includeCertHash, boolean includeRit,
       boolean inheritCaRevocation) throws OcspStoreException;
 
+  /**
+   * Gets the status of several certificates issued by the same issuer. The default
+   * implementation calls {@link #getCertStatus(Date, RequestIssuer, BigInteger, boolean,
+   * boolean, boolean)} for each serial number, stores accessing remote resources should
+   * override it to retrieve the statuses in one round trip.
+   * @param time
+   *          Time of the certificate status. Must not be {@code null}.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param serialNumbers
+   *          Serial numbers of the target certificates. Must not be {@code null}.
+   * @param includeCertHash
+   *          Whether to include the hash of target certificate in the response.
+   * @param includeRit
+   *          Whether to include the revocation invalidity time in the response.
+   * @param inheritCaRevocation
+   *          Whether to inherit CA revocation
+   * @return the certificate statuses in the same order as serialNumbers, or {@code null} if
+   *     the issuer is unknown.
+   */
+  public List<CertStatusInfo> getCertStatuses(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    List<CertStatusInfo> ret = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      CertStatusInfo info = getCertStatus(time, reqIssuer, serialNumber, includeCertHash,
+          includeRit, inheritCaRevocation);
+      if (info == null) {
+        return null;
+      }
+      ret.add(info);
+    }
+    return ret;
+  }
+
+  /**
+   * Lists the serial numbers of the certificates issued by the given issuer. The order of the
+   * returned serial numbers is defined by the store and does not change between the calls.
+   * @param reqIssuer
+   *          Requested issuer
+   * @param fromSerialNumber
+   *          The last serial number returned by the previous call (exclusive). {@code null} to
+   *          start from the beginning.
+   * @param maxSize
+   *          Maximal number of serial numbers to return.
+   * @return the serial numbers, empty list if no more certificates are available, or
+   *     {@code null} if the issuer is unknown.
+   * @throws OcspStoreException
+   *          if error occurs or listing of serial numbers is not supported by this store.
+   */
+  public List<BigInteger> getSerialNumbers(RequestIssuer reqIssuer, BigInteger fromSerialNumber,
+      int maxSize) throws OcspStoreException {
+    throw new OcspStoreException("listing serial numbers is not supported by store " + name);
+  }
+
   /**
    * TODO.
    * @param conf
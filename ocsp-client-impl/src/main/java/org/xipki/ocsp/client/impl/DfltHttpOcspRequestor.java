@@ -18,16 +18,16 @@
 package org.xipki.ocsp.client.impl;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 
 import org.xipki.common.util.Base64;
-import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.common.util.StringUtil;
+import org.xipki.http.client.HttpTransport;
+import org.xipki.http.client.HttpTransportResponse;
+import org.xipki.http.client.NettyHttpTransport;
 import org.xipki.ocsp.client.api.RequestOptions;
 
 /**
@@ -45,9 +45,41 @@ public class DfltHttpOcspRequestor extends AbstractOcspRequestor {
 
   private static final String CT_RESPONSE = "application/ocsp-response";
 
+  private HttpTransport transport;
+
+  private boolean ownTransport;
+
   public DfltHttpOcspRequestor() {
   }
 
+  /**
+   * Sets the transport to communicate with the OCSP responders. If not set, a
+   * {@link NettyHttpTransport} with the default configuration will be used.
+   */
+  public synchronized void setHttpTransport(HttpTransport transport) {
+    this.transport = transport;
+    this.ownTransport = false;
+  }
+
+  private synchronized HttpTransport getHttpTransport() {
+    if (transport == null) {
+      transport = new NettyHttpTransport();
+      ownTransport = true;
+    }
+    return transport;
+  }
+
+  /**
+   * Closes the transport if it has been created by this requestor.
+   */
+  public synchronized void close() {
+    if (ownTransport && transport != null) {
+      transport.close();
+      transport = null;
+      ownTransport = false;
+    }
+  }
+
   @Override
   protected byte[] send(byte[] request, URL responderUrl, RequestOptions requestOptions)
       throws IOException {
@@ -55,49 +87,29 @@ public class DfltHttpOcspRequestor extends AbstractOcspRequestor {
     ParamUtil.requireNonNull("responderUrl", responderUrl);
     ParamUtil.requireNonNull("requestOptions", requestOptions);
 
-    int size = request.length;
-    HttpURLConnection httpUrlConnection;
-    if (size <= MAX_LEN_GET && requestOptions.isUseHttpGetForRequest()) {
+    HttpTransportResponse response;
+    if (request.length <= MAX_LEN_GET && requestOptions.isUseHttpGetForRequest()) {
       String b64Request = Base64.encodeToString(request);
       String urlEncodedReq = URLEncoder.encode(b64Request, "UTF-8");
       String baseUrl = responderUrl.toString();
       String url = StringUtil.concat(baseUrl, (baseUrl.endsWith("/") ? "" : "/"), urlEncodedReq);
 
-      URL newUrl = new URL(url);
-      httpUrlConnection = IoUtil.openHttpConn(newUrl);
-      httpUrlConnection.setRequestMethod("GET");
+      response = getHttpTransport().send("GET", new URL(url), null, null);
     } else {
-      httpUrlConnection = IoUtil.openHttpConn(responderUrl);
-      httpUrlConnection.setDoOutput(true);
-      httpUrlConnection.setUseCaches(false);
-
-      httpUrlConnection.setRequestMethod("POST");
-      httpUrlConnection.setRequestProperty("Content-Type", CT_REQUEST);
-      httpUrlConnection.setRequestProperty("Content-Length", Integer.toString(size));
-      OutputStream outputstream = httpUrlConnection.getOutputStream();
-      outputstream.write(request);
-      outputstream.flush();
+      response = getHttpTransport().send("POST", responderUrl, CT_REQUEST, request);
     }
 
-    InputStream inputstream = httpUrlConnection.getInputStream();
-    if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-      inputstream.close();
-      throw new IOException("bad response: " + httpUrlConnection.getResponseCode() + "    "
-          + httpUrlConnection.getResponseMessage());
-    }
-    String responseContentType = httpUrlConnection.getContentType();
-    boolean isValidContentType = false;
-    if (responseContentType != null) {
-      if (responseContentType.equalsIgnoreCase(CT_RESPONSE)) {
-        isValidContentType = true;
-      }
+    if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+      throw new IOException("bad response: " + response.getStatusCode() + "    "
+          + response.getReasonPhrase());
     }
-    if (!isValidContentType) {
-      inputstream.close();
-      throw new IOException("bad response: mime type " + responseContentType + " not supported!");
+
+    if (!response.hasContentType(CT_RESPONSE)) {
+      throw new IOException("bad response: mime type " + response.getContentType()
+          + " not supported!");
     }
 
-    return IoUtil.read(inputstream);
+    return response.getContent();
   } // method send
 
 }
@@ -40,6 +40,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.bind.JAXBContext;
@@ -81,6 +83,7 @@ import org.xipki.ocsp.api.OcspServer;
 import org.xipki.ocsp.api.OcspStore;
 import org.xipki.ocsp.api.OcspStoreException;
 import org.xipki.ocsp.api.OcspStoreFactoryRegister;
+import org.xipki.ocsp.api.RequestIssuer;
 import org.xipki.ocsp.api.Responder;
 import org.xipki.ocsp.api.ResponderAndPath;
 import org.xipki.ocsp.server.impl.jaxb.DatasourceType;
@@ -89,6 +92,7 @@ import org.xipki.ocsp.server.impl.jaxb.FileOrPlainValueType;
 import org.xipki.ocsp.server.impl.jaxb.FileOrValueType;
 import org.xipki.ocsp.server.impl.jaxb.OCSPServer;
 import org.xipki.ocsp.server.impl.jaxb.ObjectFactory;
+import org.xipki.ocsp.server.impl.jaxb.PreSignType;
 import org.xipki.ocsp.server.impl.jaxb.RequestOptionType;
 import org.xipki.ocsp.server.impl.jaxb.ResponderType;
 import org.xipki.ocsp.server.impl.jaxb.ResponseCacheType;
@@ -202,6 +206,8 @@ public class OcspServerImpl implements OcspServer {
 
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
+  private ScheduledThreadPoolExecutor preSignExecutor;
+
   static {
     unsuccesfulOCSPRespMap = new HashMap<>(10);
     for (OcspResponseStatus status : OcspResponseStatus.values()) {
@@ -393,7 +399,9 @@ public class OcspServerImpl implements OcspServer {
       } finally {
         close(dsStream);
       }
-      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity());
+      Integer memoryCacheSize = cacheType.getMemoryCacheSize();
+      responseCacher = new ResponseCacher(datasource, master, cacheType.getValidity(),
+          (memoryCacheSize == null) ? 0 : memoryCacheSize.intValue());
       responseCacher.init();
     }
 
@@ -522,10 +530,52 @@ public class OcspServerImpl implements OcspServer {
       list2.add(m.str);
     }
     this.servletPaths = list2;
+
+    // pre-signed responses
+    for (String name : responderOptions.keySet()) {
+      ResponderOption responderOption = responderOptions.get(name);
+      PreSignType preSign = responderOption.getPreSign();
+      if (preSign == null) {
+        continue;
+      }
+
+      if (responseCacher == null || !master) {
+        throw new InvalidConfException("preSign of responder " + name
+            + " requires responseCache and master mode");
+      }
+
+      List<X509Certificate> issuerCerts = new ArrayList<>();
+      for (FileOrValueType certConf : preSign.getIssuerCerts().getIssuerCert()) {
+        issuerCerts.add(parseCert(certConf));
+      }
+
+      ResponsePreSigner preSigner;
+      try {
+        preSigner = new ResponsePreSigner(this, name, responders.get(name), responseCacher,
+            issuerCerts, responderOption.getPreSignRefreshInterval());
+      } catch (CertificateException ex) {
+        throw new InvalidConfException(ex.getMessage(), ex);
+      }
+
+      if (preSignExecutor == null) {
+        preSignExecutor = new ScheduledThreadPoolExecutor(1);
+        preSignExecutor.setRemoveOnCancelPolicy(true);
+      }
+
+      // the responses will be refreshed if older than refreshInterval, check twice per interval
+      int delay = Math.max(60, responderOption.getPreSignRefreshInterval() / 2);
+      preSignExecutor.scheduleWithFixedDelay(preSigner, 10, delay, TimeUnit.SECONDS);
+      LOG.info("scheduled pre-signing of responses for responder {}", name);
+    }
   } // method init0
 
   public void shutdown() {
     LOG.info("stopped OCSP Responder");
+    if (preSignExecutor != null) {
+      preSignExecutor.shutdownNow();
+      preSignExecutor = null;
+    }
+
     if (responseCacher != null) {
       responseCacher.shutdown();
     }
@@ -709,8 +759,13 @@ public class OcspServerImpl implements OcspServer {
       ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
       OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
 
+      // retrieve the statuses of multiple CertIDs in batch
+      CertStatusInfo[] prefetchedStatuses = (requestsSize > 1)
+          ? prefetchCertStatuses(requestList, responder, reqOpt, repOpt) : null;
+
       for (int i = 0; i < requestsSize; i++) {
         OcspRespWithCacheInfo failureOcspResp = processCertReq(requestList.get(i),
+            (prefetchedStatuses == null) ? null : prefetchedStatuses[i],
             builder, responder, reqOpt, repOpt, repControl);
 
         if (failureOcspResp != null) {
@@ -727,16 +782,7 @@ public class OcspServerImpl implements OcspServer {
         builder.setResponseExtensions(extns);
       }
 
-      TaggedCertSequence certsInResp;
-      EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
-      if (certsMode == EmbedCertsMode.SIGNER) {
-        certsInResp = signer.getSequenceOfCert();
-      } else if (certsMode == EmbedCertsMode.NONE) {
-        certsInResp = null;
-      } else {
-        // certsMode == EmbedCertsMode.SIGNER_AND_CA
-        certsInResp = signer.getSequenceOfCertChain();
-      }
+      TaggedCertSequence certsInResp = getCertsInResp(signer, repOpt);
 
       byte[] encodeOcspResponse;
       try {
@@ -772,7 +818,128 @@ public class OcspServerImpl implements OcspServer {
     }
   } // method ask
 
-  private OcspRespWithCacheInfo processCertReq(CertID certId, OCSPRespBuilder builder,
+  /**
+   * Creates, signs and caches the response (without nonce) for the given CertID.
+   * @return whether the response has been stored in the response cache.
+   */
+  boolean preSignResponse(ResponderImpl responder, CertID certId, int cacheDbIssuerId) {
+    ResponderSigner signer = responder.getSigner();
+    ResponseOption repOpt = responder.getResponseOption();
+    ConcurrentContentSigner concurrentSigner = signer.getFirstSigner();
+
+    OcspRespControl repControl = new OcspRespControl();
+    repControl.canCacheInfo = true;
+
+    ResponderID responderId = signer.getResponderId(repOpt.isResponderIdByName());
+    OCSPRespBuilder builder = new OCSPRespBuilder(responderId);
+
+    try {
+      OcspRespWithCacheInfo failureOcspResp = processCertReq(certId, null, builder, responder,
+          responder.getRequestOption(), repOpt, repControl);
+      // Don't cache the response with status UNKNOWN, since this may result in DDoS
+      // of storage
+      if (failureOcspResp != null || !repControl.canCacheInfo) {
+        return false;
+      }
+
+      if (repControl.includeExtendedRevokeExtension) {
+        List<Extension> respExtensions = new ArrayList<>(1);
+        respExtensions.add(extension_pkix_ocsp_extendedRevoke);
+        builder.setResponseExtensions(new Extensions(respExtensions));
+      }
+
+      byte[] encodeOcspResponse = builder.buildOCSPResponse(concurrentSigner,
+          getCertsInResp(signer, repOpt), new Date());
+      responseCacher.storeOcspResponse(cacheDbIssuerId, certId.getSerialNumber(),
+          repControl.cacheThisUpdate, repControl.cacheNextUpdate,
+          concurrentSigner.getAlgorithmCode(), encodeOcspResponse);
+      return true;
+    } catch (NoIdleSignerException ex) {
+      LOG.warn("could not pre-sign response for serial number {}: no idle signer",
+          LogUtil.formatCsn(certId.getSerialNumber()));
+      return false;
+    } catch (Exception ex) {
+      LogUtil.error(LOG, ex, "could not pre-sign response for serial number "
+          + LogUtil.formatCsn(certId.getSerialNumber()));
+      return false;
+    }
+  } // method preSignResponse
+
+  private static TaggedCertSequence getCertsInResp(ResponderSigner signer,
+      ResponseOption repOpt) {
+    EmbedCertsMode certsMode = repOpt.getEmbedCertsMode();
+    if (certsMode == EmbedCertsMode.SIGNER) {
+      return signer.getSequenceOfCert();
+    } else if (certsMode == EmbedCertsMode.NONE) {
+      return null;
+    } else {
+      // certsMode == EmbedCertsMode.SIGNER_AND_CA
+      return signer.getSequenceOfCertChain();
+    }
+  }
+
+  /**
+   * Retrieves the statuses of the CertIDs grouped by issuer, with one call of
+   * {@link OcspStore#getCertStatuses(Date, RequestIssuer, List, boolean,
+   * boolean, boolean)} per issuer and store.
+   * @return the statuses in the same order as requestList. The element is {@code null} if
+   *     the status could not be retrieved in batch.
+   */
+  private CertStatusInfo[] prefetchCertStatuses(List<CertID> requestList,
+      ResponderImpl responder, RequestOption reqOpt, ResponseOption repOpt) {
+    final int n = requestList.size();
+    CertStatusInfo[] statuses = new CertStatusInfo[n];
+
+    Map<RequestIssuer, List<Integer>> issuerIndexes = new HashMap<>();
+    for (int i = 0; i < n; i++) {
+      RequestIssuer issuer = requestList.get(i).getIssuer();
+      if (!reqOpt.allows(issuer.hashAlgorithm())) {
+        // will be rejected in processCertReq()
+        continue;
+      }
+
+      List<Integer> indexes = issuerIndexes.get(issuer);
+      if (indexes == null) {
+        indexes = new ArrayList<>(n);
+        issuerIndexes.put(issuer, indexes);
+      }
+      indexes.add(i);
+    }
+
+    Date now = new Date();
+    for (RequestIssuer issuer : issuerIndexes.keySet()) {
+      List<Integer> indexes = issuerIndexes.get(issuer);
+      List<BigInteger> serials = new ArrayList<>(indexes.size());
+      for (Integer idx : indexes) {
+        serials.add(requestList.get(idx).getSerialNumber());
+      }
+
+      for (OcspStore store : responder.getStores()) {
+        List<CertStatusInfo> storeStatuses;
+        try {
+          storeStatuses = store.getCertStatuses(now, issuer, serials,
+              repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
+              responder.getResponderOption().isInheritCaRevocation());
+        } catch (OcspStoreException ex) {
+          // the statuses will be retrieved one by one in processCertReq()
+          LogUtil.warn(LOG, ex, "getCertStatuses() of CertStatusStore " + store.getName());
+          break;
+        }
+
+        if (storeStatuses != null) {
+          for (int i = 0; i < indexes.size(); i++) {
+            statuses[indexes.get(i)] = storeStatuses.get(i);
+          }
+          break;
+        }
+      }
+    }
+
+    return statuses;
+  } // method prefetchCertStatuses
+
+  private OcspRespWithCacheInfo processCertReq(CertID certId,
+      CertStatusInfo prefetchedStatus, OCSPRespBuilder builder,
       ResponderImpl responder, RequestOption reqOpt, ResponseOption repOpt,
       OcspRespControl repControl) throws IOException {
     HashAlgo reqHashAlgo = certId.getIssuer().hashAlgorithm();
@@ -781,13 +948,17 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
     }
 
-    CertStatusInfo certStatusInfo = null;
+    CertStatusInfo certStatusInfo = prefetchedStatus;
     boolean exceptionOccurs = false;
 
     BigInteger serial = certId.getSerialNumber();
 
     Date now = new Date();
     for (OcspStore store : responder.getStores()) {
+      if (certStatusInfo != null) {
+        break;
+      }
+
       try {
         certStatusInfo = store.getCertStatus(now, certId.getIssuer(), serial,
             repOpt.isIncludeCerthash(), repOpt.isIncludeInvalidityDate(),
@@ -1051,14 +1222,33 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    ContentVerifierProvider cvp;
+    String certFingerprint;
     try {
-      cvp = securityFactory.getContentVerifierProvider(certs[0]);
-    } catch (InvalidKeyException ex) {
-      String message = ex.getMessage();
-      LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
-          message);
-      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      certFingerprint = HashAlgo.SHA1.base64Hash(certs[0].getEncoded());
+    } catch (IOException ex) {
+      LOG.warn("could not encode the request's signer certificate: {}", ex.getMessage());
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    }
+
+    long now = System.currentTimeMillis();
+    VerifiedSigner verifiedSigner = requestOption.getVerifiedSigner(certFingerprint);
+    if (verifiedSigner != null && !verifiedSigner.isValid(now)) {
+      requestOption.removeVerifiedSigner(certFingerprint);
+      verifiedSigner = null;
+    }
+
+    ContentVerifierProvider cvp;
+    if (verifiedSigner != null) {
+      cvp = verifiedSigner.getVerifierProvider();
+    } else {
+      try {
+        cvp = securityFactory.getContentVerifierProvider(certs[0]);
+      } catch (InvalidKeyException ex) {
+        String message = ex.getMessage();
+        LOG.warn("securityFactory.getContentVerifierProvider, InvalidKeyException: {}",
+            message);
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
     }
 
     boolean sigValid = ocspReq.isSignatureValid(cvp);
@@ -1067,27 +1257,45 @@ public class OcspServerImpl implements OcspServer {
       return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
     }
 
-    // validate the certPath
-    Date referenceTime = new Date();
-    if (canBuildCertpath(certs, requestOption, referenceTime)) {
-      try {
-        return OcspRequest.getInstance(req);
-      } catch (EncodingException ex) {
-        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    if (verifiedSigner == null) {
+      // validate the certPath
+      X509Certificate[] certpath = buildCertpath(certs, requestOption, new Date(now));
+      if (certpath == null) {
+        LOG.warn("could not build certpath for the request's signer certificate");
+        return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+      }
+
+      long validFrom = Long.MIN_VALUE;
+      long validUntil = Long.MAX_VALUE;
+      CertpathValidationModel model = requestOption.getCertpathValidationModel();
+      if (model == null || model == CertpathValidationModel.PKIX) {
+        for (X509Certificate m : certpath) {
+          validFrom = Math.max(validFrom, m.getNotBefore().getTime());
+          validUntil = Math.min(validUntil, m.getNotAfter().getTime());
+        }
       }
+      requestOption.addVerifiedSigner(certFingerprint,
+          new VerifiedSigner(cvp, validFrom, validUntil));
     }
 
-    LOG.warn("could not build certpath for the request's signer certificate");
-    return unsuccesfulOCSPRespMap.get(OcspResponseStatus.unauthorized);
+    try {
+      return OcspRequest.getInstance(req);
+    } catch (EncodingException ex) {
+      return unsuccesfulOCSPRespMap.get(OcspResponseStatus.malformedRequest);
+    }
   } // method checkSignature
 
-  private static boolean canBuildCertpath(X509CertificateHolder[] certsInReq,
+  /**
+   * Builds and validates the certification path of the request's signer certificate.
+   * @return the certification path, or {@code null} if no valid one can be built.
+   */
+  private static X509Certificate[] buildCertpath(X509CertificateHolder[] certsInReq,
       RequestOption requestOption, Date referenceTime) {
     X509Certificate target;
     try {
       target = X509Util.toX509Cert(certsInReq[0].toASN1Structure());
     } catch (CertificateException ex) {
-      return false;
+      return null;
     }
     Set<Certificate> certstore = new HashSet<>();
 
@@ -1117,11 +1325,10 @@ public class OcspServerImpl implements OcspServer {
     X509Certificate[] certpath = X509Util.buildCertPath(target, certstore);
     CertpathValidationModel model = requestOption.getCertpathValidationModel();
 
-    Date now = new Date();
     if (model == null || model == CertpathValidationModel.PKIX) {
       for (X509Certificate m : certpath) {
-        if (m.getNotBefore().after(now) || m.getNotAfter().before(now)) {
-          return false;
+        if (m.getNotBefore().after(referenceTime) || m.getNotAfter().before(referenceTime)) {
+          return null;
         }
       }
     } else if (model == CertpathValidationModel.CHAIN) {
@@ -1134,13 +1341,13 @@ public class OcspServerImpl implements OcspServer {
       X509Certificate targetCert = certpath[i];
       for (CertWithEncoded m : trustAnchors) {
         if (m.equalsCert(targetCert)) {
-          return true;
+          return certpath;
         }
       }
     }
 
-    return false;
-  } // method canBuildCertpath
+    return null;
+  } // method buildCertpath
 
   private static boolean getBoolean(Boolean bo, boolean defaultValue) {
     return (bo == null) ? defaultValue : bo.booleanValue();
@@ -34,6 +34,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.xipki.common.InvalidConfException;
+import org.xipki.common.LruCache;
 import org.xipki.common.TripleState;
 import org.xipki.common.util.IoUtil;
 import org.xipki.common.util.ParamUtil;
@@ -71,6 +72,11 @@ public class RequestOption {
     SUPPORTED_HASH_ALGORITHMS.add(HashAlgo.SHA3_512);
   }
 
+  /**
+   * Maximal number of cached verified request signers.
+   */
+  private static final int MAX_VERIFIED_SIGNERS = 100;
+
   private final boolean supportsHttpGet;
 
   private final boolean signatureRequired;
@@ -97,6 +103,13 @@ public class RequestOption {
 
   private final CertpathValidationModel certpathValidationModel;
 
+  /**
+   * Verified request signers, keyed by the base64 encoded SHA-1 fingerprint of the signer
+   * certificate.
+   */
+  private final LruCache<String, VerifiedSigner> verifiedSigners =
+      new LruCache<>(MAX_VERIFIED_SIGNERS);
+
   RequestOption(RequestOptionType conf) throws InvalidConfException {
     ParamUtil.requireNonNull("conf", conf);
 
@@ -269,6 +282,18 @@ public class RequestOption {
     return certs;
   }
 
+  VerifiedSigner getVerifiedSigner(String certFingerprint) {
+    return verifiedSigners.get(certFingerprint);
+  }
+
+  void addVerifiedSigner(String certFingerprint, VerifiedSigner signer) {
+    verifiedSigners.put(certFingerprint, signer);
+  }
+
+  void removeVerifiedSigner(String certFingerprint) {
+    verifiedSigners.remove(certFingerprint);
+  }
+
   private static Set<X509Certificate> getCerts(CertCollectionType conf)
       throws KeyStoreException, NoSuchAlgorithmException, NoSuchProviderException,
         CertificateException, IOException {
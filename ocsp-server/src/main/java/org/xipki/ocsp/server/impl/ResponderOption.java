@@ -24,6 +24,7 @@ import java.util.List;
 import org.xipki.common.InvalidConfException;
 import org.xipki.common.util.ParamUtil;
 import org.xipki.ocsp.api.OcspMode;
+import org.xipki.ocsp.server.impl.jaxb.PreSignType;
 import org.xipki.ocsp.server.impl.jaxb.ResponderType;
 
 /**
@@ -48,6 +49,10 @@ class ResponderOption {
 
   private final List<String> servletPaths;
 
+  private final PreSignType preSign;
+
+  private final int preSignRefreshInterval;
+
   ResponderOption(ResponderType conf) throws InvalidConfException {
     ParamUtil.requireNonNull("conf", conf);
     String str = conf.getMode();
@@ -79,6 +84,13 @@ class ResponderOption {
     }
     list = new ArrayList<>(paths);
     this.servletPaths = Collections.unmodifiableList(list);
+
+    this.preSign = conf.getPreSign();
+    Integer refreshInterval = (preSign == null) ? null : preSign.getRefreshInterval();
+    this.preSignRefreshInterval = (refreshInterval == null) ? 3600 : refreshInterval;
+    if (preSignRefreshInterval < 60) {
+      throw new InvalidConfException("preSign.refreshInterval must not be less than 60");
+    }
   } // constructor
 
   public OcspMode getMode() {
@@ -109,4 +121,12 @@ class ResponderOption {
     return servletPaths;
   }
 
+  public PreSignType getPreSign() {
+    return preSign;
+  }
+
+  public int getPreSignRefreshInterval() {
+    return preSignRefreshInterval;
+  }
+
 }
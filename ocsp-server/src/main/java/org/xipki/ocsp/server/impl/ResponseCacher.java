@@ -27,6 +27,7 @@ import java.sql.SQLException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -37,6 +38,7 @@ import org.bouncycastle.crypto.Digest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xipki.common.InvalidConfException;
+import org.xipki.common.LruCache;
 import org.xipki.common.concurrent.ConcurrentBag;
 import org.xipki.common.concurrent.ConcurrentBagEntry;
 import org.xipki.common.util.Base64;
@@ -81,6 +83,92 @@ class ResponseCacher {
 
   private final ConcurrentBag<ConcurrentBagEntry<Digest>> idDigesters;
 
+  private static class ResponseKey {
+
+    private final int issuerId;
+
+    private final byte sigAlgCode;
+
+    private final BigInteger serialNumber;
+
+    ResponseKey(int issuerId, BigInteger serialNumber, AlgorithmCode sigAlg) {
+      this.issuerId = issuerId;
+      this.serialNumber = serialNumber;
+      this.sigAlgCode = sigAlg.getCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * issuerId + sigAlgCode) + serialNumber.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (!(obj instanceof ResponseKey)) {
+        return false;
+      }
+
+      ResponseKey other = (ResponseKey) obj;
+      return issuerId == other.issuerId && sigAlgCode == other.sigAlgCode
+          && serialNumber.equals(other.serialNumber);
+    }
+
+  } // class ResponseKey
+
+  private static class CachedResponse {
+
+    private final byte[] response;
+
+    // in milliseconds, as in ResponseCacheInfo
+    private final long thisUpdate;
+
+    // in milliseconds, 0 if not present
+    private final long nextUpdate;
+
+    CachedResponse(byte[] response, long thisUpdate, long nextUpdate) {
+      this.response = response;
+      this.thisUpdate = thisUpdate;
+      this.nextUpdate = nextUpdate;
+    }
+
+    boolean isUsable(long nowMs, long minThisUpdateMs) {
+      if (thisUpdate < minThisUpdateMs) {
+        return false;
+      }
+
+      // nextUpdate must be at least in 600 seconds
+      return nextUpdate == 0 || nextUpdate >= nowMs + 600L * 1000;
+    }
+
+    OcspRespWithCacheInfo toOcspResponse() {
+      ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
+      if (nextUpdate != 0) {
+        cacheInfo.setNextUpdate(nextUpdate);
+      }
+      return new OcspRespWithCacheInfo(response, cacheInfo);
+    }
+
+  } // class CachedResponse
+
+  /**
+   * In-memory cache in front of the OCSP table. The size is measured in bytes of
+   * the encoded responses.
+   */
+  private static class MemoryCache extends LruCache<ResponseKey, CachedResponse> {
+
+    MemoryCache(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(ResponseKey key, CachedResponse value) {
+      return value.response.length;
+    }
+
+  } // class MemoryCache
+
   private class IssuerUpdater implements Runnable {
 
     @Override
@@ -109,6 +197,10 @@ class ResponseCacher {
       try {
         int num = removeExpiredResponses(maxThisUpdate);
         LOG.info("removed {} response with thisUpdate < {}", num, maxThisUpdate);
+        if (memoryCache != null) {
+          num = removeExpiredMemoryResponses();
+          LOG.info("removed {} expired response from the memory cache", num);
+        }
       } catch (Throwable th) {
         LogUtil.error(LOG, th, "could not remove expired responses");
       } finally {
@@ -128,6 +220,8 @@ class ResponseCacher {
 
   private final AtomicBoolean onService;
 
+  private final MemoryCache memoryCache;
+
   private DataSourceWrapper datasource;
 
   private IssuerStore issuerStore;
@@ -138,10 +232,20 @@ class ResponseCacher {
 
   private ScheduledFuture<?> issuerUpdater;
 
-  ResponseCacher(DataSourceWrapper datasource, boolean master, int validity) {
+  /**
+   * Constructor.
+   * @param datasource datasource of the cache database.
+   * @param master whether this responder is master.
+   * @param validity how long in seconds the responses are cached.
+   * @param memoryCacheSize maximal size in bytes of the responses cached in memory in front of
+   *     the database. Non-positive value to disable the memory cache.
+   */
+  ResponseCacher(DataSourceWrapper datasource, boolean master, int validity,
+      int memoryCacheSize) {
     this.datasource = ParamUtil.requireNonNull("datasource", datasource);
     this.master = master;
     this.validity = ParamUtil.requireMin("validity", validity, 1);
+    this.memoryCache = (memoryCacheSize > 0) ? new MemoryCache(memoryCacheSize) : null;
     this.sqlSelectIssuerCert = datasource.buildSelectFirstSql(1, "CERT FROM ISSUER WHERE ID=?");
     this.sqlSelectOcsp = datasource.buildSelectFirstSql(1,
         "IID,IDENT,THIS_UPDATE,NEXT_UPDATE,RESP FROM OCSP WHERE ID=?");
@@ -189,6 +293,10 @@ class ResponseCacher {
       issuerUpdater = null;
     }
 
+    if (memoryCache != null) {
+      memoryCache.evictAll();
+    }
+
     if (scheduledThreadPoolExecutor != null) {
       scheduledThreadPoolExecutor.shutdown();
       while (!scheduledThreadPoolExecutor.isTerminated()) {
@@ -254,6 +362,19 @@ class ResponseCacher {
 
   OcspRespWithCacheInfo getOcspResponse(int issuerId, BigInteger serialNumber,
       AlgorithmCode sigAlg) throws DataAccessException {
+    ResponseKey memKey = null;
+    if (memoryCache != null) {
+      memKey = new ResponseKey(issuerId, serialNumber, sigAlg);
+      CachedResponse cached = memoryCache.get(memKey);
+      if (cached != null) {
+        long nowMs = System.currentTimeMillis();
+        if (cached.isUsable(nowMs, nowMs - validity * 1000L)) {
+          return cached.toOcspResponse();
+        }
+        memoryCache.remove(memKey);
+      }
+    }
+
     final String sql = sqlSelectOcsp;
     byte[] identBytes = buildIdent(serialNumber, sigAlg);
     long id = deriveId(issuerId, identBytes);
@@ -291,6 +412,14 @@ class ResponseCacher {
       long thisUpdate = rs.getLong("THIS_UPDATE");
       String b64Resp = rs.getString("RESP");
       byte[] encoded = Base64.decodeFast(b64Resp);
+      if (memKey != null) {
+        CachedResponse cached = new CachedResponse(encoded, thisUpdate, nextUpdate);
+        long nowMs = System.currentTimeMillis();
+        if (cached.isUsable(nowMs, nowMs - validity * 1000L)) {
+          memoryCache.put(memKey, cached);
+        }
+      }
+
       ResponseCacheInfo cacheInfo = new ResponseCacheInfo(thisUpdate);
       if (nextUpdate != 0) {
         cacheInfo.setNextUpdate(nextUpdate);
@@ -305,6 +434,13 @@ class ResponseCacher {
 
   void storeOcspResponse(int issuerId, BigInteger serialNumber, long thisUpdate, Long nextUpdate,
       AlgorithmCode sigAlgCode, byte[] response) {
+    ResponseKey memKey = null;
+    if (memoryCache != null) {
+      // the entry will be overwritten, invalidate it first
+      memKey = new ResponseKey(issuerId, serialNumber, sigAlgCode);
+      memoryCache.remove(memKey);
+    }
+
     byte[] identBytes = buildIdent(serialNumber, sigAlgCode);
     String ident = Base64.encodeToString(identBytes);
     try {
@@ -343,6 +479,7 @@ class ResponseCacher {
 
         if (dataIntegrityViolationException == null) {
           LOG.debug("added cached OCSP response iid={}, ident={}", issuerId, ident);
+          cacheInMemory(memKey, response, thisUpdate, nextUpdate);
           return;
         }
 
@@ -364,6 +501,7 @@ class ResponseCacher {
         } finally {
           datasource.releaseResources(ps, null, false);
         }
+        cacheInMemory(memKey, response, thisUpdate, nextUpdate);
       } finally {
         datasource.returnConnection(conn);
       }
@@ -375,6 +513,29 @@ class ResponseCacher {
     }
   }
 
+  private void cacheInMemory(ResponseKey memKey, byte[] response, long thisUpdate,
+      Long nextUpdate) {
+    if (memKey == null) {
+      return;
+    }
+
+    long nextUpdate0 = (nextUpdate != null && nextUpdate > 0) ? nextUpdate : 0;
+    memoryCache.put(memKey, new CachedResponse(response, thisUpdate, nextUpdate0));
+  }
+
+  private int removeExpiredMemoryResponses() {
+    long nowMs = System.currentTimeMillis();
+    long minThisUpdateMs = nowMs - validity * 1000L;
+    int num = 0;
+    for (Map.Entry<ResponseKey, CachedResponse> entry : memoryCache.snapshot().entrySet()) {
+      if (!entry.getValue().isUsable(nowMs, minThisUpdateMs)) {
+        memoryCache.remove(entry.getKey());
+        num++;
+      }
+    }
+    return num;
+  }
+
   private int removeExpiredResponses(long maxThisUpdate) throws DataAccessException {
     final String sql = SQL_DELETE_EXPIRED_RESP;
     PreparedStatement ps = null;
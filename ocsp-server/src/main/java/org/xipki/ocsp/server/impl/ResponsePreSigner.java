@@ -0,0 +1,176 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.impl;
+
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.LogUtil;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.ocsp.api.IssuerEntry;
+import org.xipki.ocsp.api.OcspRespWithCacheInfo;
+import org.xipki.ocsp.api.OcspStore;
+import org.xipki.ocsp.api.OcspStoreException;
+import org.xipki.ocsp.api.RequestIssuer;
+import org.xipki.ocsp.server.impl.type.CertID;
+import org.xipki.security.AlgorithmCode;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Pre-computes and signs the OCSP responses for all certificates of the configured issuers,
+ * and refreshes them before they become stale.
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class ResponsePreSigner implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponsePreSigner.class);
+
+  private static final int PAGE_SIZE = 1000;
+
+  private final OcspServerImpl server;
+
+  private final String responderName;
+
+  private final ResponderImpl responder;
+
+  private final ResponseCacher responseCacher;
+
+  private final List<RequestIssuer> issuers;
+
+  private final List<X509Certificate> issuerCerts;
+
+  private final long refreshIntervalMs;
+
+  private final AtomicBoolean inProcess = new AtomicBoolean(false);
+
+  ResponsePreSigner(OcspServerImpl server, String responderName, ResponderImpl responder,
+      ResponseCacher responseCacher, List<X509Certificate> issuerCerts, int refreshInterval)
+      throws CertificateEncodingException {
+    this.server = ParamUtil.requireNonNull("server", server);
+    this.responderName = ParamUtil.requireNonBlank("responderName", responderName);
+    this.responder = ParamUtil.requireNonNull("responder", responder);
+    this.responseCacher = ParamUtil.requireNonNull("responseCacher", responseCacher);
+    this.issuerCerts = ParamUtil.requireNonEmpty("issuerCerts", issuerCerts);
+    this.refreshIntervalMs = 1000L * ParamUtil.requireMin("refreshInterval", refreshInterval, 1);
+
+    this.issuers = new ArrayList<>(issuerCerts.size());
+    for (X509Certificate cert : issuerCerts) {
+      IssuerEntry entry = new IssuerEntry(0, cert);
+      issuers.add(new RequestIssuer(HashAlgo.SHA1, entry.getEncodedHash(HashAlgo.SHA1)));
+    }
+  }
+
+  @Override
+  public void run() {
+    if (!inProcess.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      if (!responseCacher.isOnService()) {
+        LOG.warn("response cacher is out of service, skip pre-signing for responder {}",
+            responderName);
+        return;
+      }
+
+      for (int i = 0; i < issuers.size(); i++) {
+        try {
+          preSign(issuers.get(i), issuerCerts.get(i));
+        } catch (Throwable th) {
+          LogUtil.error(LOG, th, "could not pre-sign responses of issuer "
+              + issuerCerts.get(i).getSubjectX500Principal().getName()
+              + " for responder " + responderName);
+        }
+      }
+    } finally {
+      inProcess.set(false);
+    }
+  } // method run
+
+  private void preSign(RequestIssuer reqIssuer, X509Certificate issuerCert) throws Exception {
+    OcspStore store = null;
+    for (OcspStore m : responder.getStores()) {
+      if (m.knowsIssuer(reqIssuer)) {
+        store = m;
+        break;
+      }
+    }
+
+    String subject = issuerCert.getSubjectX500Principal().getName();
+    if (store == null) {
+      LOG.warn("no store of responder {} knows the issuer {}, skip pre-signing",
+          responderName, subject);
+      return;
+    }
+
+    Integer issuerId = responseCacher.getIssuerId(reqIssuer);
+    if (issuerId == null) {
+      issuerId = responseCacher.storeIssuer(issuerCert);
+    }
+
+    AlgorithmCode sigAlgCode = responder.getSigner().getFirstSigner().getAlgorithmCode();
+    // responses created after this time do not need to be refreshed
+    long minThisUpdate = System.currentTimeMillis() - refreshIntervalMs;
+
+    int numSigned = 0;
+    int numSkipped = 0;
+    BigInteger fromSerial = null;
+    while (true) {
+      List<BigInteger> serials;
+      try {
+        serials = store.getSerialNumbers(reqIssuer, fromSerial, PAGE_SIZE);
+      } catch (OcspStoreException ex) {
+        LogUtil.error(LOG, ex, "could not list serial numbers from store " + store.getName());
+        return;
+      }
+
+      if (serials == null || serials.isEmpty()) {
+        break;
+      }
+
+      for (BigInteger serial : serials) {
+        OcspRespWithCacheInfo cached = responseCacher.getOcspResponse(issuerId, serial,
+            sigAlgCode);
+        if (cached != null && cached.getCacheInfo().getThisUpdate() >= minThisUpdate) {
+          numSkipped++;
+          continue;
+        }
+
+        if (server.preSignResponse(responder, new CertID(reqIssuer, serial), issuerId)) {
+          numSigned++;
+        } else {
+          numSkipped++;
+        }
+      }
+
+      fromSerial = serials.get(serials.size() - 1);
+    }
+
+    LOG.info("responder {}, issuer {}: pre-signed {} responses, skipped {}",
+        responderName, subject, numSigned, numSkipped);
+  } // method preSign
+
+}
@@ -0,0 +1,53 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.server.impl;
+
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Signer of OCSP requests whose certification path has been validated, together with the
+ * time window in which the validation result holds.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class VerifiedSigner {
+
+  private final ContentVerifierProvider verifierProvider;
+
+  private final long validFrom;
+
+  private final long validUntil;
+
+  VerifiedSigner(ContentVerifierProvider verifierProvider, long validFrom, long validUntil) {
+    this.verifierProvider = ParamUtil.requireNonNull("verifierProvider", verifierProvider);
+    this.validFrom = validFrom;
+    this.validUntil = validUntil;
+  }
+
+  ContentVerifierProvider getVerifierProvider() {
+    return verifierProvider;
+  }
+
+  boolean isValid(long time) {
+    return time >= validFrom && time <= validUntil;
+  }
+
+}
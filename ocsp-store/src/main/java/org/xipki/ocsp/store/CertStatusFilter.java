@@ -0,0 +1,481 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.store;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.store.DbCertStatusStore.CertRow;
+import org.xipki.security.HashAlgo;
+
+/**
+ * Compact filter of the serial numbers in the table CERT, used to answer the status of
+ * good and unknown certificates without accessing the database.
+ *
+ * <p>Each serial number is reduced to a 64-bit fingerprint. The known serial numbers are
+ * kept in a sorted long array, together with their validity. Serial numbers of 64 bits or
+ * more are hashed, their encoded form is kept as well to reject serial numbers with the same
+ * fingerprint. Serial numbers which require the database (e.g. the revoked ones) are kept in
+ * a second sorted long array.
+ *
+ * <p>The filter is refreshed periodically. Certificates published or revoked since the
+ * last refresh are not yet reflected. The filter is rebuilt if certificates have been
+ * deleted, detected by counting, or if too many certificates have been changed.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class CertStatusFilter {
+
+  /**
+   * Status of a serial number which cannot be determined by the filter.
+   */
+  static final CertRow UNDECIDED = new CertRow(0, 0, false, 0, 0, 0, null);
+
+  private static class IssuerSerials {
+
+    private final long[] fps;
+
+    private final long[] notBefores;
+
+    private final long[] notAfters;
+
+    /**
+     * Encoded serial numbers of the hashed fingerprints, {@code null} for the others.
+     */
+    private final byte[][] serials;
+
+    private final long[] dbOnlyFps;
+
+    /**
+     * Certificates changed since this object has been built.
+     */
+    private final Map<BigInteger, CertRow> changes = new ConcurrentHashMap<>();
+
+    /**
+     * Number of the known certificates, including the ones added since this object has been
+     * built. Accessed only in the synchronized refresh.
+     */
+    private long numCerts;
+
+    IssuerSerials(long[] fps, long[] notBefores, long[] notAfters, byte[][] serials,
+        long[] dbOnlyFps, long numCerts) {
+      this.fps = fps;
+      this.notBefores = notBefores;
+      this.notAfters = notAfters;
+      this.serials = serials;
+      this.dbOnlyFps = dbOnlyFps;
+      this.numCerts = numCerts;
+    }
+
+    void addChange(BigInteger serialNumber, CertRow row) {
+      long fp = fingerprint(serialNumber);
+      boolean known = changes.containsKey(serialNumber) || indexOf(fp, serialNumber) >= 0
+          || Arrays.binarySearch(dbOnlyFps, fp) >= 0;
+      changes.put(serialNumber, row);
+      if (!known) {
+        numCerts++;
+      }
+    }
+
+    CertRow find(BigInteger serialNumber) {
+      CertRow row = changes.get(serialNumber);
+      if (row != null) {
+        return row.revoked ? UNDECIDED : row;
+      }
+
+      long fp = fingerprint(serialNumber);
+      if (Arrays.binarySearch(dbOnlyFps, fp) >= 0) {
+        return UNDECIDED;
+      }
+
+      int idx = indexOf(fp, serialNumber);
+      return (idx < 0) ? null
+          : new CertRow(notBefores[idx], notAfters[idx], false, 0, 0, 0, null);
+    }
+
+    /**
+     * Returns the index of the serial number, or a negative value if it is not contained.
+     */
+    private int indexOf(long fp, BigInteger serialNumber) {
+      int idx = Arrays.binarySearch(fps, fp);
+      if (idx < 0) {
+        return idx;
+      } else if (serials[idx] == null) {
+        // the fingerprint of a hashed serial number may equal an unhashed one
+        return isHashed(serialNumber) ? -1 : idx;
+      }
+
+      // another serial number with the same fingerprint is not contained
+      return Arrays.equals(serials[idx], serialNumber.toByteArray()) ? idx : -1;
+    }
+
+  } // class IssuerSerials
+
+  private static class IssuerSerialsBuilder {
+
+    private long[] fps = new long[1000];
+
+    private long[] notBefores = new long[1000];
+
+    private long[] notAfters = new long[1000];
+
+    private byte[][] serials = new byte[1000][];
+
+    private long[] dbOnlyFps = new long[100];
+
+    private int size;
+
+    private int dbOnlySize;
+
+    void add(BigInteger serialNumber, long notBefore, long notAfter, boolean revoked) {
+      long fp = fingerprint(serialNumber);
+      if (revoked) {
+        addDbOnly(fp);
+      }
+
+      if (size == fps.length) {
+        fps = Arrays.copyOf(fps, size * 2);
+        notBefores = Arrays.copyOf(notBefores, size * 2);
+        notAfters = Arrays.copyOf(notAfters, size * 2);
+        serials = Arrays.copyOf(serials, size * 2);
+      }
+
+      fps[size] = fp;
+      notBefores[size] = notBefore;
+      notAfters[size] = notAfter;
+      serials[size] = isHashed(serialNumber) ? serialNumber.toByteArray() : null;
+      size++;
+    }
+
+    IssuerSerials build() {
+      final int numCerts = size;
+      sort(fps, notBefores, notAfters, serials, 0, size - 1);
+
+      // serial numbers with the same fingerprint cannot be distinguished
+      int newSize = 0;
+      for (int i = 0; i < size; i++) {
+        boolean duplicated = (i > 0 && fps[i] == fps[i - 1])
+            || (i + 1 < size && fps[i] == fps[i + 1]);
+        if (!duplicated) {
+          fps[newSize] = fps[i];
+          notBefores[newSize] = notBefores[i];
+          notAfters[newSize] = notAfters[i];
+          serials[newSize] = serials[i];
+          newSize++;
+        } else if (i + 1 == size || fps[i] != fps[i + 1]) {
+          // last entry of the duplicated fingerprint
+          addDbOnly(fps[i]);
+        }
+      }
+
+      long[] sortedDbOnlyFps = Arrays.copyOf(dbOnlyFps, dbOnlySize);
+      Arrays.sort(sortedDbOnlyFps);
+
+      return new IssuerSerials(Arrays.copyOf(fps, newSize), Arrays.copyOf(notBefores, newSize),
+          Arrays.copyOf(notAfters, newSize), Arrays.copyOf(serials, newSize), sortedDbOnlyFps,
+          numCerts);
+    }
+
+    private void addDbOnly(long fp) {
+      if (dbOnlySize == dbOnlyFps.length) {
+        dbOnlyFps = Arrays.copyOf(dbOnlyFps, dbOnlySize * 2);
+      }
+      dbOnlyFps[dbOnlySize++] = fp;
+    }
+
+    /**
+     * Sorts the fingerprints ascending, and the other arrays accordingly.
+     */
+    private static void sort(long[] keys, long[] values1, long[] values2, byte[][] values3,
+        int lo, int hi) {
+      while (lo < hi) {
+        long pivot = keys[(lo + hi) >>> 1];
+        int left = lo;
+        int right = hi;
+        while (left <= right) {
+          while (keys[left] < pivot) {
+            left++;
+          }
+          while (keys[right] > pivot) {
+            right--;
+          }
+          if (left <= right) {
+            swap(keys, left, right);
+            swap(values1, left, right);
+            swap(values2, left, right);
+            byte[] tmp = values3[left];
+            values3[left] = values3[right];
+            values3[right] = tmp;
+            left++;
+            right--;
+          }
+        }
+
+        // recurse into the smaller part to limit the stack depth
+        if (right - lo < hi - left) {
+          sort(keys, values1, values2, values3, lo, right);
+          lo = left;
+        } else {
+          sort(keys, values1, values2, values3, left, hi);
+          hi = right;
+        }
+      }
+    }
+
+    private static void swap(long[] arr, int i, int j) {
+      long tmp = arr[i];
+      arr[i] = arr[j];
+      arr[j] = tmp;
+    }
+
+  } // class IssuerSerialsBuilder
+
+  private static final Logger LOG = LoggerFactory.getLogger(CertStatusFilter.class);
+
+  private static final String SQL_COLUMNS = "ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV";
+
+  private static final int LOAD_PAGE_SIZE = 10000;
+
+  /**
+   * Certificates updated up to this number of seconds before the last seen LUPDATE will be
+   * fetched again, to tolerate the clock skew of the publishers.
+   */
+  private static final long SYNC_OVERLAP = 60;
+
+  private static final long FULL_RELOAD_INTERVAL = 24L * 60 * 60 * 1000;
+
+  /**
+   * Interval in milliseconds to count the certificates in the database, which scans the
+   * index of (IID, SN).
+   */
+  private static final long DELETION_CHECK_INTERVAL = 10L * 60 * 1000;
+
+  /**
+   * Maximal number of changes kept besides the sorted arrays. If exceeded, the filter will
+   * be rebuilt.
+   */
+  private static final int MAX_CHANGES = 100000;
+
+  private final DataSourceWrapper datasource;
+
+  private final String storeName;
+
+  private volatile Map<Integer, IssuerSerials> issuers;
+
+  private long lastUpdate;
+
+  private long lastFullLoad;
+
+  private long lastDeletionCheck;
+
+  CertStatusFilter(DataSourceWrapper datasource, String storeName) {
+    this.datasource = datasource;
+    this.storeName = storeName;
+  }
+
+  /**
+   * Looks up the serial number.
+   * @return {@code null} if the certificate is unknown, {@link #UNDECIDED} if the database
+   *     must be queried, and otherwise the entry of the good certificate without hash.
+   */
+  CertRow find(int issuerId, BigInteger serialNumber) {
+    Map<Integer, IssuerSerials> tmpIssuers = issuers;
+    IssuerSerials serials = (tmpIssuers == null) ? null : tmpIssuers.get(issuerId);
+    return (serials == null) ? UNDECIDED : serials.find(serialNumber);
+  }
+
+  /**
+   * Refreshes the filter. It will be rebuilt if the issuers have changed, if certificates
+   * have been deleted, if too many certificates have been changed, and daily.
+   */
+  synchronized void refresh(Set<Integer> issuerIds) throws DataAccessException {
+    Map<Integer, IssuerSerials> tmpIssuers = issuers;
+    long now = System.currentTimeMillis();
+    if (tmpIssuers == null || !tmpIssuers.keySet().equals(issuerIds)
+        || now - lastFullLoad > FULL_RELOAD_INTERVAL) {
+      rebuild(issuerIds);
+      return;
+    }
+
+    update(tmpIssuers);
+
+    int numChanges = 0;
+    for (IssuerSerials serials : tmpIssuers.values()) {
+      numChanges += serials.changes.size();
+    }
+
+    if (numChanges > MAX_CHANGES) {
+      LOG.info("{} certificates changed in store {}, rebuild the status filter", numChanges,
+          storeName);
+      rebuild(issuerIds);
+      return;
+    }
+
+    if (now - lastDeletionCheck > DELETION_CHECK_INTERVAL) {
+      // must be counted after the update, so that the newly added certificates
+      // are not mistaken as deleted ones.
+      lastDeletionCheck = now;
+      Map<Integer, Long> counts = DbCertStatusStore.countCerts(datasource);
+      for (Integer issuerId : tmpIssuers.keySet()) {
+        Long count = counts.get(issuerId);
+        if ((count == null ? 0 : count) < tmpIssuers.get(issuerId).numCerts) {
+          LOG.info("found deleted certificates in store {}, rebuild the status filter",
+              storeName);
+          rebuild(issuerIds);
+          return;
+        }
+      }
+    }
+  }
+
+  private void rebuild(Set<Integer> issuerIds) throws DataAccessException {
+    long start = System.currentTimeMillis();
+
+    Map<Integer, IssuerSerialsBuilder> builders = new HashMap<>();
+    for (Integer issuerId : new HashSet<>(issuerIds)) {
+      builders.put(issuerId, new IssuerSerialsBuilder());
+    }
+
+    final String sql = datasource.buildSelectFirstSql(LOAD_PAGE_SIZE, "ID",
+        SQL_COLUMNS + " FROM CERT WHERE ID>?");
+
+    long maxUpdate = 0;
+    long minId = 0;
+    int num = 0;
+
+    while (true) {
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+      int numInPage = 0;
+      try {
+        ps.setLong(1, minId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          numInPage++;
+          minId = rs.getLong("ID");
+          maxUpdate = Math.max(maxUpdate, rs.getLong("LUPDATE"));
+
+          IssuerSerialsBuilder builder = builders.get(rs.getInt("IID"));
+          if (builder != null) {
+            builder.add(new BigInteger(rs.getString("SN"), 16),
+                rs.getLong("NBEFORE"), rs.getLong("NAFTER"), rs.getBoolean("REV"));
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+
+      num += numInPage;
+      if (numInPage < LOAD_PAGE_SIZE) {
+        break;
+      }
+    }
+
+    Map<Integer, IssuerSerials> newIssuers = new HashMap<>();
+    for (Integer issuerId : builders.keySet()) {
+      newIssuers.put(issuerId, builders.get(issuerId).build());
+    }
+
+    this.issuers = newIssuers;
+    this.lastUpdate = maxUpdate;
+    this.lastFullLoad = start;
+    this.lastDeletionCheck = start;
+
+    LOG.info("built status filter of store {} with {} certificates in {} ms", storeName, num,
+        System.currentTimeMillis() - start);
+  } // method rebuild
+
+  private void update(Map<Integer, IssuerSerials> tmpIssuers) throws DataAccessException {
+    final String sql = datasource.buildSelectFirstSql(LOAD_PAGE_SIZE, "ID",
+        SQL_COLUMNS + " FROM CERT WHERE LUPDATE>=? AND ID>?");
+
+    final long minUpdate = Math.max(0, lastUpdate - SYNC_OVERLAP);
+    long maxUpdate = lastUpdate;
+    long minId = 0;
+
+    while (true) {
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+      int numInPage = 0;
+      try {
+        ps.setLong(1, minUpdate);
+        ps.setLong(2, minId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          numInPage++;
+          minId = rs.getLong("ID");
+          maxUpdate = Math.max(maxUpdate, rs.getLong("LUPDATE"));
+          IssuerSerials serials = tmpIssuers.get(rs.getInt("IID"));
+          if (serials != null) {
+            // the revocation details are not required, REV=true is sufficient
+            serials.addChange(new BigInteger(rs.getString("SN"), 16),
+                new CertRow(rs.getLong("NBEFORE"), rs.getLong("NAFTER"), rs.getBoolean("REV"),
+                    0, 0, 0, null));
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+
+      if (numInPage < LOAD_PAGE_SIZE) {
+        break;
+      }
+    }
+
+    this.lastUpdate = maxUpdate;
+  } // method update
+
+  /**
+   * Serial numbers of up to 63 bits are used as they are, the larger ones are hashed.
+   */
+  static long fingerprint(BigInteger serialNumber) {
+    if (!isHashed(serialNumber)) {
+      return serialNumber.longValue();
+    }
+
+    byte[] hash = HashAlgo.SHA1.hash(serialNumber.toByteArray());
+    long fp = 0;
+    for (int i = 0; i < 8; i++) {
+      fp = (fp << 8) | (hash[i] & 0xFF);
+    }
+    return fp;
+  }
+
+  private static boolean isHashed(BigInteger serialNumber) {
+    return serialNumber.bitLength() >= 64;
+  }
+
+}
@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Date;
@@ -79,6 +78,13 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
 
   private String crlUrl;
 
+  private String deltaCrlFilename;
+
+  /**
+   * Last modification time of the imported delta CRL file.
+   */
+  private long deltaCrlLastModified;
+
   private String certsDirName;
 
   private boolean useUpdateDatesFromCrl;
@@ -95,6 +101,8 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
     CrlStoreConf storeConf = new CrlStoreConf(conf);
     this.crlFilename = IoUtil.expandFilepath(storeConf.getCrFile());
     this.crlUrl = storeConf.getCrlUrl();
+    this.deltaCrlFilename = (storeConf.getDeltaCrlFile() == null) ? null
+        : IoUtil.expandFilepath(storeConf.getDeltaCrlFile());
     this.certsDirName = (storeConf.getCertsDir() == null) ? null
         : IoUtil.expandFilepath(storeConf.getCertsDir());
     this.caCert = parseCert(storeConf.getCaCertFile());
@@ -135,24 +143,32 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
   }
 
   private synchronized void initializeStore(DataSourceWrapper datasource) {
-    if (crlUpdateInProcess.get()) {
+    if (!crlUpdateInProcess.compareAndSet(false, true)) {
       return;
     }
 
-    crlUpdateInProcess.set(true);
+    try {
+      File updateMeFile = new File(crlFilename + ".UPDATEME");
+      if (updateMeFile.exists()) {
+        importFullCrl(datasource, updateMeFile);
+      } else {
+        LOG.info("The CRL will not be updated. Create new file {} to force the update",
+            updateMeFile.getAbsolutePath());
+        crlUpdated = true;
+        crlUpdateFailed = false;
+      }
 
-    Boolean updateCrlSuccessful = null;
-    File updateMeFile = new File(crlFilename + ".UPDATEME");
-    if (!updateMeFile.exists()) {
-      LOG.info("The CRL will not be updated. Create new file {} to force the update",
-          updateMeFile.getAbsolutePath());
-      crlUpdated = true;
-      crlUpdateFailed = false;
-      return;
+      if (deltaCrlFilename != null && !crlUpdateFailed) {
+        importDeltaCrl(datasource);
+      }
+    } finally {
+      crlUpdateInProcess.set(false);
     }
+  } // method initializeStore
 
+  private void importFullCrl(DataSourceWrapper datasource, File updateMeFile) {
+    Boolean updateCrlSuccessful = null;
     try {
-
       File fullCrlFile = new File(crlFilename);
       if (!fullCrlFile.exists()) {
         // file does not exist
@@ -163,38 +179,15 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       LOG.info("UPDATE_CERTSTORE: a newer CRL is available");
       updateCrlSuccessful = false;
 
-      X509CRL crl = X509Util.parseCrl(crlFilename);
-
-      File revFile = new File(crlFilename + ".revocation");
-      CertRevocationInfo caRevInfo = null;
-      if (revFile.exists()) {
-        Properties props = new Properties();
-        FileInputStream is = new FileInputStream(revFile);
-        try {
-          props.load(is);
-        } finally {
-          is.close();
-        }
-
-        String str = props.getProperty(KEY_CA_REVOCATION_TIME);
-        if (StringUtil.isNotBlank(str)) {
-          Date revocationTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
-          Date invalidityTime = null;
-
-          str = props.getProperty(KEY_CA_INVALIDITY_TIME);
-          if (StringUtil.isNotBlank(str)) {
-            invalidityTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
-          }
-          caRevInfo = new CertRevocationInfo(CrlReason.UNSPECIFIED, revocationTime, invalidityTime);
-        }
-      }
-
-      ImportCrl importCrl = new ImportCrl(datasource, useUpdateDatesFromCrl, crl, crlUrl,
+      CertRevocationInfo caRevInfo = readCaRevocationInfo();
+      ImportCrl importCrl = new ImportCrl(datasource, useUpdateDatesFromCrl, fullCrlFile, crlUrl,
           caCert, issuerCert, caRevInfo, certsDirName);
       updateCrlSuccessful = importCrl.importCrlToOcspDb();
       crlUpdated = true;
       if (updateCrlSuccessful) {
         crlUpdateFailed = false;
+        // the delta CRL must be applied again on top of the new full CRL
+        deltaCrlLastModified = 0;
         LOG.info("updated CertStore {} successfully", name);
       } else {
         crlUpdateFailed = true;
@@ -206,7 +199,6 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
       crlUpdated = true;
     } finally {
       updateMeFile.delete();
-      crlUpdateInProcess.set(false);
       if (updateCrlSuccessful != null) {
         if (updateCrlSuccessful.booleanValue()) {
           LOG.info("UPDATE_CRL: successful");
@@ -215,6 +207,68 @@ public class CrlDbCertStatusStore extends DbCertStatusStore {
         }
       }
     }
-  } // method initializeStore
+  } // method importFullCrl
+
+  /**
+   * Applies the delta CRL if it has been changed since the last import. Only the entries
+   * contained in the delta CRL are updated, the other ones remain untouched.
+   */
+  private void importDeltaCrl(DataSourceWrapper datasource) {
+    File deltaCrlFile = new File(deltaCrlFilename);
+    if (!deltaCrlFile.exists()) {
+      return;
+    }
+
+    long lastModified = deltaCrlFile.lastModified();
+    if (lastModified == deltaCrlLastModified) {
+      return;
+    }
+
+    LOG.info("UPDATE_CERTSTORE: a newer delta CRL is available");
+    try {
+      // the certificates are imported only with the full CRL
+      ImportCrl importCrl = new ImportCrl(datasource, useUpdateDatesFromCrl, deltaCrlFile,
+          crlUrl, caCert, issuerCert, readCaRevocationInfo(), null);
+      if (importCrl.importCrlToOcspDb()) {
+        LOG.info("UPDATE_DELTACRL: successful");
+      } else {
+        LOG.warn("UPDATE_DELTACRL: failed");
+      }
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not import delta CRL " + deltaCrlFilename);
+    } finally {
+      // failed delta CRLs will not be retried until the file is changed
+      deltaCrlLastModified = lastModified;
+    }
+  } // method importDeltaCrl
+
+  private CertRevocationInfo readCaRevocationInfo() throws IOException {
+    File revFile = new File(crlFilename + ".revocation");
+    if (!revFile.exists()) {
+      return null;
+    }
+
+    Properties props = new Properties();
+    FileInputStream is = new FileInputStream(revFile);
+    try {
+      props.load(is);
+    } finally {
+      is.close();
+    }
+
+    String str = props.getProperty(KEY_CA_REVOCATION_TIME);
+    if (StringUtil.isBlank(str)) {
+      return null;
+    }
+
+    Date revocationTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+    Date invalidityTime = null;
+
+    str = props.getProperty(KEY_CA_INVALIDITY_TIME);
+    if (StringUtil.isNotBlank(str)) {
+      invalidityTime = DateUtil.parseUtcTimeyyyyMMddhhmmss(str);
+    }
+    return new CertRevocationInfo(CrlReason.UNSPECIFIED, revocationTime, invalidityTime);
+  }
 
 }
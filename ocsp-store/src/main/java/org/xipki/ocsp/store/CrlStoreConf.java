@@ -42,6 +42,14 @@ class CrlStoreConf {
    */
   private static final String KEY_crl_url = "crl.url";
 
+  /*
+   * File of the delta CRL. It is checked periodically for changes, and the changed
+   * entries are applied on top of the imported full CRL.
+   *
+   * optional
+   */
+  private static final String KEY_deltaCrl_file = "deltaCrl.file";
+
   /*
    * Whether thisUpdate and nextUpdate of CRL are used in the corresponding fields
    * of OCSP response. The default value is true.
@@ -73,6 +81,11 @@ class CrlStoreConf {
    */
   private String crlUrl;
 
+  /*
+   * optional, can be null
+   */
+  private String deltaCrlFile;
+
   private boolean useUpdateDatesFromCrl = true;
 
   private String caCertFile;
@@ -97,6 +110,7 @@ class CrlStoreConf {
 
     this.crlFile = getRequiredProperty(props, KEY_crl_file);
     this.crlUrl = getOptionalProperty(props, KEY_crl_url);
+    this.deltaCrlFile = getOptionalProperty(props, KEY_deltaCrl_file);
     this.caCertFile = getRequiredProperty(props, KEY_caCert_file);
     this.issuerCertFile = getOptionalProperty(props, KEY_issuerCert_file);
     this.certsDir = getOptionalProperty(props, KEY_certs_dir);
@@ -126,6 +140,10 @@ class CrlStoreConf {
     return crlUrl;
   }
 
+  String getDeltaCrlFile() {
+    return deltaCrlFile;
+  }
+
   boolean isUseUpdateDatesFromCrl() {
     return useUpdateDatesFromCrl;
   }
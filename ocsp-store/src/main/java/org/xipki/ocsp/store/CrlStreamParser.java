@@ -0,0 +1,592 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.NoSuchElementException;
+
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList.CRLEntry;
+import org.bouncycastle.asn1.x509.Time;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.security.CrlReason;
+import org.xipki.security.util.AlgorithmUtil;
+
+/**
+ * Parses a DER or PEM encoded CRL from file without loading the revoked certificates into
+ * memory. Only the fields outside of the revokedCertificates are read at construction, the
+ * entries are read one by one via {@link #revokedCertificates()}. A PEM file is decoded on the
+ * fly each time it is read.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class CrlStreamParser {
+
+  static class RevokedCert {
+
+    private final BigInteger serialNumber;
+
+    private final Date revocationDate;
+
+    private final CrlReason reason;
+
+    private final Date invalidityDate;
+
+    private final X500Name certificateIssuer;
+
+    private RevokedCert(BigInteger serialNumber, Date revocationDate, CrlReason reason,
+        Date invalidityDate, X500Name certificateIssuer) {
+      this.serialNumber = serialNumber;
+      this.revocationDate = revocationDate;
+      this.reason = reason;
+      this.invalidityDate = invalidityDate;
+      this.certificateIssuer = certificateIssuer;
+    }
+
+    BigInteger getSerialNumber() {
+      return serialNumber;
+    }
+
+    Date getRevocationDate() {
+      return revocationDate;
+    }
+
+    CrlReason getReason() {
+      return reason;
+    }
+
+    Date getInvalidityDate() {
+      return invalidityDate;
+    }
+
+    /**
+     * Returns the certificate issuer of an indirect CRL, or {@code null}.
+     */
+    X500Name getCertificateIssuer() {
+      return certificateIssuer;
+    }
+
+  } // class RevokedCert
+
+  class RevokedCertsIterator implements Closeable {
+
+    private final DerInputStream in;
+
+    private final long end;
+
+    private X500Name certificateIssuer;
+
+    private RevokedCertsIterator() throws IOException {
+      this.in = open(revokedCertsOffset);
+      this.end = revokedCertsOffset + revokedCertsLength;
+    }
+
+    boolean hasNext() {
+      return in.position < end;
+    }
+
+    RevokedCert next() throws IOException {
+      if (!hasNext()) {
+        throw new NoSuchElementException("no more entries");
+      }
+
+      CRLEntry entry = CRLEntry.getInstance(ASN1Primitive.fromByteArray(in.readTlv()));
+      BigInteger serialNumber = entry.getUserCertificate().getPositiveValue();
+      Date revocationDate = entry.getRevocationDate().getDate();
+      CrlReason reason = CrlReason.UNSPECIFIED;
+      Date invalidityDate = null;
+
+      Extensions extns = entry.getExtensions();
+      if (extns != null) {
+        Extension extn = extns.getExtension(Extension.reasonCode);
+        if (extn != null) {
+          int code = ASN1Enumerated.getInstance(extn.getParsedValue()).getValue().intValue();
+          reason = CrlReason.forReasonCode(code);
+        }
+
+        extn = extns.getExtension(Extension.invalidityDate);
+        if (extn != null) {
+          try {
+            invalidityDate = ASN1GeneralizedTime.getInstance(extn.getParsedValue()).getDate();
+          } catch (ParseException ex) {
+            throw new IOException("invalid InvalidityDate: " + ex.getMessage(), ex);
+          }
+        }
+
+        extn = extns.getExtension(Extension.certificateIssuer);
+        if (extn != null) {
+          // applies also to the following entries
+          certificateIssuer = null;
+          for (GeneralName name : GeneralNames.getInstance(extn.getParsedValue()).getNames()) {
+            if (name.getTagNo() == GeneralName.directoryName) {
+              certificateIssuer = X500Name.getInstance(name.getName());
+              break;
+            }
+          }
+        }
+      }
+
+      return new RevokedCert(serialNumber, revocationDate, reason, invalidityDate,
+          certificateIssuer);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class RevokedCertsIterator
+
+  /**
+   * Returns the base64 body of a PEM file, and end-of-stream at the END line.
+   */
+  private static class PemBodyInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private boolean end;
+
+    private PemBodyInputStream(InputStream in) throws IOException {
+      this.in = in;
+      // skip the leading whitespaces and the BEGIN line
+      int bt;
+      while ((bt = in.read()) != '-') {
+        if (bt == -1) {
+          throw new EOFException("unexpected end of PEM file");
+        }
+      }
+      while ((bt = in.read()) != '\n') {
+        if (bt == -1) {
+          throw new EOFException("unexpected end of PEM file");
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (end) {
+        return -1;
+      }
+
+      int bt = in.read();
+      if (bt == -1 || bt == '-') {
+        end = true;
+        return -1;
+      }
+      return bt;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class PemBodyInputStream
+
+  /**
+   * DER input stream which tracks the position.
+   */
+  private static class DerInputStream implements Closeable {
+
+    private final InputStream in;
+
+    private long position;
+
+    private DerInputStream(InputStream in, long position) {
+      this.in = in;
+      this.position = position;
+    }
+
+    int readTag() throws IOException {
+      int tag = read();
+      if ((tag & 0x1F) == 0x1F) {
+        throw new IOException("high tag number is not supported");
+      }
+      return tag;
+    }
+
+    int readLength() throws IOException {
+      int len = read();
+      if (len < 0x80) {
+        return len;
+      }
+
+      int numBytes = len & 0x7F;
+      if (numBytes == 0) {
+        throw new IOException("indefinite length is not allowed in DER");
+      } else if (numBytes > 4) {
+        throw new IOException("length too large");
+      }
+
+      long value = 0;
+      for (int i = 0; i < numBytes; i++) {
+        value = (value << 8) | read();
+      }
+
+      if (value > Integer.MAX_VALUE) {
+        throw new IOException("length too large");
+      }
+      return (int) value;
+    }
+
+    /**
+     * Reads the complete encoding (tag, length and value) of the next object.
+     */
+    byte[] readTlv() throws IOException {
+      int tag = readTag();
+      int len = readLength();
+
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(len + 6);
+      bout.write(tag);
+      if (len < 0x80) {
+        bout.write(len);
+      } else {
+        int numBytes = (len > 0xFFFFFF) ? 4 : (len > 0xFFFF) ? 3 : (len > 0xFF) ? 2 : 1;
+        bout.write(0x80 | numBytes);
+        for (int i = numBytes - 1; i >= 0; i--) {
+          bout.write(len >>> (8 * i));
+        }
+      }
+      bout.write(readValue(len));
+      return bout.toByteArray();
+    }
+
+    byte[] readValue(int len) throws IOException {
+      byte[] value = new byte[len];
+      int off = 0;
+      while (off < len) {
+        int read = in.read(value, off, len - off);
+        if (read == -1) {
+          throw new EOFException("unexpected end of CRL");
+        }
+        off += read;
+      }
+      position += len;
+      return value;
+    }
+
+    void skip(long len) throws IOException {
+      long remaining = len;
+      while (remaining > 0) {
+        long skipped = in.skip(remaining);
+        if (skipped <= 0) {
+          if (in.read() == -1) {
+            throw new EOFException("unexpected end of CRL");
+          }
+          skipped = 1;
+        }
+        remaining -= skipped;
+      }
+      position += len;
+    }
+
+    private int read() throws IOException {
+      int bt = in.read();
+      if (bt == -1) {
+        throw new EOFException("unexpected end of CRL");
+      }
+      position++;
+      return bt;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // class DerInputStream
+
+  private static final int TAG_SEQUENCE = 0x30;
+
+  private static final int TAG_INTEGER = 0x02;
+
+  private static final int TAG_UTCTIME = 0x17;
+
+  private static final int TAG_GENERALIZEDTIME = 0x18;
+
+  private static final int TAG_EXTENSIONS = 0xA0;
+
+  private static final byte[] PEM_BEGIN = "-----BEGIN".getBytes(StandardCharsets.US_ASCII);
+
+  private final File crlFile;
+
+  private final boolean pem;
+
+  private final long tbsOffset;
+
+  private final long tbsLength;
+
+  private final X500Name issuer;
+
+  private final Date thisUpdate;
+
+  private final Date nextUpdate;
+
+  private final long revokedCertsOffset;
+
+  private final long revokedCertsLength;
+
+  private final Extensions extensions;
+
+  private final AlgorithmIdentifier signatureAlgorithm;
+
+  private final byte[] signature;
+
+  CrlStreamParser(File crlFile) throws IOException {
+    this.crlFile = ParamUtil.requireNonNull("crlFile", crlFile);
+    this.pem = isPem(crlFile);
+
+    DerInputStream in = open(0);
+    try {
+      // CertificateList
+      expectTag(in, TAG_SEQUENCE, "CertificateList");
+      in.readLength();
+
+      // TBSCertList
+      tbsOffset = in.position;
+      expectTag(in, TAG_SEQUENCE, "TBSCertList");
+      int len = in.readLength();
+      final long tbsEnd = in.position + len;
+      tbsLength = tbsEnd - tbsOffset;
+
+      int tag = in.readTag();
+      if (tag == TAG_INTEGER) {
+        // version
+        in.skip(in.readLength());
+        tag = in.readTag();
+      }
+
+      // signature
+      checkTag(tag, TAG_SEQUENCE, "TBSCertList.signature");
+      in.skip(in.readLength());
+
+      byte[] encoded = in.readTlv();
+      issuer = X500Name.getInstance(ASN1Primitive.fromByteArray(encoded));
+
+      thisUpdate = Time.getInstance(ASN1Primitive.fromByteArray(in.readTlv())).getDate();
+
+      Date tmpNextUpdate = null;
+      long tmpRevokedCertsOffset = 0;
+      long tmpRevokedCertsLength = 0;
+      Extensions tmpExtensions = null;
+
+      tag = (in.position < tbsEnd) ? in.readTag() : -1;
+      if (tag == TAG_UTCTIME || tag == TAG_GENERALIZEDTIME) {
+        len = in.readLength();
+        byte[] value = in.readValue(len);
+        tmpNextUpdate = Time.getInstance(ASN1Primitive.fromByteArray(concat(tag, len, value)))
+            .getDate();
+        tag = (in.position < tbsEnd) ? in.readTag() : -1;
+      }
+
+      if (tag == TAG_SEQUENCE) {
+        len = in.readLength();
+        tmpRevokedCertsOffset = in.position;
+        tmpRevokedCertsLength = len;
+        in.skip(len);
+        tag = (in.position < tbsEnd) ? in.readTag() : -1;
+      }
+
+      if (tag == TAG_EXTENSIONS) {
+        len = in.readLength();
+        tmpExtensions = Extensions.getInstance(ASN1Primitive.fromByteArray(in.readValue(len)));
+        tag = (in.position < tbsEnd) ? in.readTag() : -1;
+      }
+
+      if (tag != -1) {
+        throw new IOException("unexpected tag " + tag + " in TBSCertList");
+      }
+
+      this.nextUpdate = tmpNextUpdate;
+      this.revokedCertsOffset = tmpRevokedCertsOffset;
+      this.revokedCertsLength = tmpRevokedCertsLength;
+      this.extensions = tmpExtensions;
+
+      // signatureAlgorithm
+      signatureAlgorithm = AlgorithmIdentifier.getInstance(
+          ASN1Primitive.fromByteArray(in.readTlv()));
+
+      // signatureValue
+      signature = DERBitString.getInstance(ASN1Primitive.fromByteArray(in.readTlv()))
+          .getOctets();
+    } catch (IllegalArgumentException ex) {
+      throw new IOException("invalid CRL: " + ex.getMessage(), ex);
+    } finally {
+      in.close();
+    }
+  }
+
+  X500Name getIssuer() {
+    return issuer;
+  }
+
+  Date getThisUpdate() {
+    return thisUpdate;
+  }
+
+  Date getNextUpdate() {
+    return nextUpdate;
+  }
+
+  Extensions getExtensions() {
+    return extensions;
+  }
+
+  /**
+   * Returns the content of the extension value (without the OCTET STRING wrapper).
+   */
+  byte[] getExtensionValue(ASN1ObjectIdentifier type) {
+    if (extensions == null) {
+      return null;
+    }
+
+    Extension extn = extensions.getExtension(type);
+    return (extn == null) ? null : extn.getExtnValue().getOctets();
+  }
+
+  BigInteger getCrlNumber() {
+    byte[] value = getExtensionValue(Extension.cRLNumber);
+    return (value == null) ? null : ASN1Integer.getInstance(value).getPositiveValue();
+  }
+
+  BigInteger getBaseCrlNumber() {
+    byte[] value = getExtensionValue(Extension.deltaCRLIndicator);
+    return (value == null) ? null : ASN1Integer.getInstance(value).getPositiveValue();
+  }
+
+  /**
+   * Verifies the signature. The TBSCertList is streamed from the file.
+   */
+  boolean verifySignature(PublicKey publicKey) throws IOException, GeneralSecurityException {
+    Signature verifier = Signature.getInstance(
+        AlgorithmUtil.getSignatureAlgoName(signatureAlgorithm));
+    verifier.initVerify(publicKey);
+
+    DerInputStream in = open(tbsOffset);
+    try {
+      byte[] buffer = new byte[8192];
+      long remaining = tbsLength;
+      while (remaining > 0) {
+        int read = in.in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read == -1) {
+          throw new EOFException("unexpected end of CRL");
+        }
+        verifier.update(buffer, 0, read);
+        remaining -= read;
+      }
+    } finally {
+      in.close();
+    }
+
+    return verifier.verify(signature);
+  }
+
+  /**
+   * Returns the iterator of the revoked certificates, which must be closed by the caller.
+   */
+  RevokedCertsIterator revokedCertificates() throws IOException {
+    return new RevokedCertsIterator();
+  }
+
+  private DerInputStream open(long offset) throws IOException {
+    InputStream fin = new BufferedInputStream(new FileInputStream(crlFile), 65536);
+    if (pem) {
+      fin = Base64.getMimeDecoder().wrap(new PemBodyInputStream(fin));
+    }
+    DerInputStream in = new DerInputStream(fin, 0);
+    try {
+      in.skip(offset);
+    } catch (IOException ex) {
+      in.close();
+      throw ex;
+    }
+    return in;
+  }
+
+  /**
+   * Whether the file starts, after optional whitespaces, with a PEM BEGIN line.
+   */
+  private static boolean isPem(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      int bt;
+      do {
+        bt = in.read();
+      } while (bt == ' ' || bt == '\t' || bt == '\r' || bt == '\n');
+
+      for (int i = 0; i < PEM_BEGIN.length; i++) {
+        if (bt != PEM_BEGIN[i]) {
+          return false;
+        }
+        bt = in.read();
+      }
+      return true;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void expectTag(DerInputStream in, int expectedTag, String name)
+      throws IOException {
+    checkTag(in.readTag(), expectedTag, name);
+  }
+
+  private static void checkTag(int tag, int expectedTag, String name) throws IOException {
+    if (tag != expectedTag) {
+      throw new IOException("invalid tag " + tag + " of " + name + ", expected " + expectedTag);
+    }
+  }
+
+  private static byte[] concat(int tag, int len, byte[] value) {
+    // only used for short objects (Time)
+    byte[] encoded = new byte[2 + len];
+    encoded[0] = (byte) tag;
+    encoded[1] = (byte) len;
+    System.arraycopy(value, 0, encoded, 2, len);
+    return encoded;
+  }
+
+}
@@ -25,6 +25,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -95,11 +96,75 @@ public class DbCertStatusStore extends OcspStore {
 
   } // class SimpleIssuerEntry
 
+  /**
+   * Status relevant fields of an entry in the table CERT.
+   */
+  static class CertRow {
+
+    final long notBefore;
+
+    final long notAfter;
+
+    final boolean revoked;
+
+    final int reason;
+
+    final long revTime;
+
+    final long invalTime;
+
+    final byte[] certHash;
+
+    CertRow(long notBefore, long notAfter, boolean revoked, int reason, long revTime,
+        long invalTime, byte[] certHash) {
+      this.notBefore = notBefore;
+      this.notAfter = notAfter;
+      this.revoked = revoked;
+      this.reason = revoked ? reason : 0;
+      this.revTime = revoked ? revTime : 0;
+      this.invalTime = revoked ? invalTime : 0;
+      this.certHash = certHash;
+    }
+
+    CertRow(ResultSet rs, boolean includeCertHash, boolean includeRit) throws SQLException {
+      this.notBefore = rs.getLong("NBEFORE");
+      this.notAfter = rs.getLong("NAFTER");
+      String b64CertHash = includeCertHash ? rs.getString("HASH") : null;
+      this.certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
+      this.revoked = rs.getBoolean("REV");
+      if (revoked) {
+        this.reason = rs.getInt("RR");
+        this.revTime = rs.getLong("RT");
+        this.invalTime = includeRit ? rs.getLong("RIT") : 0;
+      } else {
+        this.reason = 0;
+        this.revTime = 0;
+        this.invalTime = 0;
+      }
+    }
+
+    /**
+     * Returns this row without the fields not requested.
+     */
+    CertRow strip(boolean includeCertHash, boolean includeRit) {
+      boolean stripHash = !includeCertHash && certHash != null;
+      boolean stripRit = !includeRit && invalTime != 0;
+      if (!stripHash && !stripRit) {
+        return this;
+      }
+
+      return new CertRow(notBefore, notAfter, revoked, reason, revTime,
+          stripRit ? 0 : invalTime, stripHash ? null : certHash);
+    }
+
+  } // class CertRow
+
   private class StoreUpdateService implements Runnable {
 
     @Override
     public void run() {
       initIssuerStore();
+      refreshStatusFilter();
     }
 
   } // class StoreUpdateService
@@ -108,6 +173,8 @@ public class DbCertStatusStore extends OcspStore {
 
   private static final Logger LOG = LoggerFactory.getLogger(DbCertStatusStore.class);
 
+  private static final int MAX_SERIALS_PER_QUERY = 100;
+
   private final AtomicBoolean storeUpdateInProcess = new AtomicBoolean(false);
 
   private String sqlCsNoRit;
@@ -118,6 +185,8 @@ public class DbCertStatusStore extends OcspStore {
 
   private String sqlCsWithCertHash;
 
+  private String sqlSerials;
+
   private IssuerFilter issuerFilter;
 
   private IssuerStore issuerStore;
@@ -130,6 +199,8 @@ public class DbCertStatusStore extends OcspStore {
 
   private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
 
+  private CertStatusFilter statusFilter;
+
   protected List<Runnable> getScheduledServices() {
     return Collections.emptyList();
   }
@@ -240,13 +311,38 @@ public class DbCertStatusStore extends OcspStore {
         releaseDbResources(ps, rs);
       }
     } catch (Throwable th) {
-      storeUpdateInProcess.set(false);
       LogUtil.error(LOG, th, "could not executing initIssuerStore()");
-      initializationFailed = true;
+      if (issuerStore != null && keepIssuersOnUpdateFailure()) {
+        LOG.warn("keep the previously loaded issuers of store {}", name);
+      } else {
+        initializationFailed = true;
+      }
       initialized = true;
+    } finally {
+      storeUpdateInProcess.set(false);
     }
   } // method initIssuerStore
 
+  /**
+   * Whether the previously loaded issuers shall be used further if they could not be
+   * refreshed from the database.
+   */
+  protected boolean keepIssuersOnUpdateFailure() {
+    return false;
+  }
+
+  private void refreshStatusFilter() {
+    if (statusFilter == null || issuerStore == null) {
+      return;
+    }
+
+    try {
+      statusFilter.refresh(issuerStore.getIds());
+    } catch (Throwable th) {
+      LogUtil.error(LOG, th, "could not refresh the status filter of store " + name);
+    }
+  }
+
   @Override
   public CertStatusInfo getCertStatus(Date time, RequestIssuer reqIssuer, BigInteger serialNumber,
       boolean includeCertHash, boolean includeRit, boolean inheritCaRevocation)
@@ -255,15 +351,7 @@ public class DbCertStatusStore extends OcspStore {
       return CertStatusInfo.getUnknownCertStatusInfo(new Date(), null);
     }
 
-    if (!initialized) {
-      throw new OcspStoreException("initialization of CertStore is still in process");
-    }
-
-    if (initializationFailed) {
-      throw new OcspStoreException("initialization of CertStore failed");
-    }
-
-    String sql;
+    assertInitialized();
 
     try {
       IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
@@ -271,168 +359,317 @@ public class DbCertStatusStore extends OcspStore {
         return null;
       }
 
-      if (includeCertHash) {
-        sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
-      } else {
-        sql = includeRit ? sqlCs : sqlCsNoRit;
-      }
+      CertRow row = getCertRow(issuer, serialNumber, includeCertHash, includeRit);
+      return buildCertStatusInfo(time, issuer, row, inheritCaRevocation);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
 
-      CrlInfo crlInfo = issuer.getCrlInfo();
+  } // method getCertStatus
 
-      Date thisUpdate;
-      Date nextUpdate = null;
+  @Override
+  public List<CertStatusInfo> getCertStatuses(Date time, RequestIssuer reqIssuer,
+      List<BigInteger> serialNumbers, boolean includeCertHash, boolean includeRit,
+      boolean inheritCaRevocation) throws OcspStoreException {
+    assertInitialized();
 
-      if (crlInfo != null && crlInfo.isUseCrlUpdates()) {
-        thisUpdate = crlInfo.getThisUpdate();
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
 
-        // this.nextUpdate is still in the future (10 seconds buffer)
-        if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
-          nextUpdate = crlInfo.getNextUpdate();
+    List<String> hexSerials = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() == 1) {
+        String hexSerial = serialNumber.toString(16);
+        if (!hexSerials.contains(hexSerial)) {
+          hexSerials.add(hexSerial);
         }
+      }
+    }
+
+    Map<String, CertRow> rows;
+    try {
+      rows = getCertRows(issuer, hexSerials, includeCertHash, includeRit);
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException(ex.getMessage(), ex);
+    }
+
+    List<CertStatusInfo> ret = new ArrayList<>(serialNumbers.size());
+    for (BigInteger serialNumber : serialNumbers) {
+      if (serialNumber.signum() != 1) { // non-positive serial number
+        ret.add(CertStatusInfo.getUnknownCertStatusInfo(new Date(), null));
       } else {
-        thisUpdate = new Date();
+        CertRow row = rows.get(serialNumber.toString(16));
+        ret.add(buildCertStatusInfo(time, issuer, row, inheritCaRevocation));
       }
+    }
+    return ret;
+  } // method getCertStatuses
 
-      ResultSet rs = null;
-      CertStatusInfo certStatusInfo = null;
+  /**
+   * Gets the entry of the certificate.
+   * @return the entry, or {@code null} if the certificate is unknown.
+   */
+  CertRow getCertRow(IssuerEntry issuer, BigInteger serialNumber, boolean includeCertHash,
+      boolean includeRit) throws DataAccessException {
+    // the filter does not know the certificate hash
+    if (statusFilter != null && !includeCertHash) {
+      CertRow row = statusFilter.find(issuer.getId(), serialNumber);
+      if (row != CertStatusFilter.UNDECIDED) {
+        return row;
+      }
+    }
 
-      boolean unknown = true;
-      boolean ignore = false;
-      String certprofile = null;
-      String b64CertHash = null;
-      boolean revoked = false;
-      int reason = 0;
-      long revTime = 0;
-      long invalTime = 0;
+    String sql;
+    if (includeCertHash) {
+      sql = includeRit ? sqlCsWithCertHash : sqlCsNoRitWithCertHash;
+    } else {
+      sql = includeRit ? sqlCs : sqlCsNoRit;
+    }
 
-      PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
 
-      try {
-        ps.setInt(1, issuer.getId());
-        ps.setString(2, serialNumber.toString(16));
-        rs = ps.executeQuery();
+    try {
+      ps.setInt(1, issuer.getId());
+      ps.setString(2, serialNumber.toString(16));
+      rs = ps.executeQuery();
+      return rs.next() ? new CertRow(rs, includeCertHash, includeRit) : null;
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      releaseDbResources(ps, rs);
+    }
+  } // method getCertRow
 
-        if (rs.next()) {
-          unknown = false;
+  /**
+   * Gets the entries of the certificates.
+   * @param hexSerials hex encoded serial numbers, as stored in the column CERT.SN.
+   * @return map of the known hex encoded serial numbers to their entries.
+   */
+  Map<String, CertRow> getCertRows(IssuerEntry issuer, List<String> hexSerials,
+      boolean includeCertHash, boolean includeRit) throws DataAccessException {
+    Map<String, CertRow> rows = new HashMap<>();
+
+    if (statusFilter != null && !includeCertHash) {
+      List<String> undecidedHexSerials = new ArrayList<>(hexSerials.size());
+      for (String hexSerial : hexSerials) {
+        CertRow row = statusFilter.find(issuer.getId(), new BigInteger(hexSerial, 16));
+        if (row == CertStatusFilter.UNDECIDED) {
+          undecidedHexSerials.add(hexSerial);
+        } else if (row != null) {
+          rows.put(hexSerial, row);
+        }
+      }
+      hexSerials = undecidedHexSerials;
+    }
 
-          long timeInSec = time.getTime() / 1000;
-          if (!ignore && ignoreNotYetValidCert) {
-            long notBeforeInSec = rs.getLong("NBEFORE");
-            if (notBeforeInSec != 0 && timeInSec < notBeforeInSec) {
-              ignore = true;
-            }
-          }
+    StringBuilder columns = new StringBuilder("SN,NBEFORE,NAFTER,REV,RR,RT");
+    if (includeRit) {
+      columns.append(",RIT");
+    }
+    if (includeCertHash) {
+      columns.append(",HASH");
+    }
 
-          if (!ignore && ignoreExpiredCert) {
-            long notAfterInSec = rs.getLong("NAFTER");
-            if (notAfterInSec != 0 && timeInSec > notAfterInSec) {
-              ignore = true;
-            }
-          }
+    final int n = hexSerials.size();
+    for (int from = 0; from < n; from += MAX_SERIALS_PER_QUERY) {
+      int to = Math.min(n, from + MAX_SERIALS_PER_QUERY);
+      StringBuilder sb = new StringBuilder(100 + 2 * (to - from));
+      sb.append("SELECT ").append(columns).append(" FROM CERT WHERE IID=? AND SN IN (?");
+      for (int i = from + 1; i < to; i++) {
+        sb.append(",?");
+      }
+      sb.append(")");
+      final String sql = sb.toString();
 
-          if (!ignore) {
-            if (includeCertHash) {
-              b64CertHash = rs.getString("HASH");
-            }
+      ResultSet rs = null;
+      PreparedStatement ps = preparedStatement(sql);
+      try {
+        int idx = 1;
+        ps.setInt(idx++, issuer.getId());
+        for (int i = from; i < to; i++) {
+          ps.setString(idx++, hexSerials.get(i));
+        }
 
-            revoked = rs.getBoolean("REV");
-            if (revoked) {
-              reason = rs.getInt("RR");
-              revTime = rs.getLong("RT");
-              if (includeRit) {
-                invalTime = rs.getLong("RIT");
-              }
-            }
-          }
-        } // end if (rs.next())
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          rows.put(rs.getString("SN"), new CertRow(rs, includeCertHash, includeRit));
+        }
       } catch (SQLException ex) {
         throw datasource.translate(sql, ex);
       } finally {
         releaseDbResources(ps, rs);
       }
+    }
 
-      if (unknown) {
-        if (unknownSerialAsGood) {
-          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, null,
-              thisUpdate, nextUpdate, null);
-        } else {
-          certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
-        }
-      } else {
-        if (ignore) {
-          certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
-        } else {
-          byte[] certHash = (b64CertHash == null) ? null : Base64.decodeFast(b64CertHash);
-          if (revoked) {
-            Date invTime = (invalTime == 0 || invalTime == revTime)
-                ? null : new Date(invalTime * 1000);
-            CertRevocationInfo revInfo = new CertRevocationInfo(reason,
-                new Date(revTime * 1000), invTime);
-            certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
-                certHashAlgo, certHash, thisUpdate, nextUpdate, certprofile);
-          } else {
-            certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
-                certHash, thisUpdate, nextUpdate, certprofile);
-          }
-        }
-      }
+    return rows;
+  } // method getCertRows
+
+  private void assertInitialized() throws OcspStoreException {
+    if (!initialized) {
+      throw new OcspStoreException("initialization of CertStore is still in process");
+    }
+
+    if (initializationFailed) {
+      throw new OcspStoreException("initialization of CertStore failed");
+    }
+  }
 
-      if (includeCrlId && crlInfo != null) {
-        certStatusInfo.setCrlId(crlInfo.getCrlId());
+  /**
+   * Builds the certificate status.
+   * @param row the database entry of the certificate, {@code null} if unknown.
+   */
+  private CertStatusInfo buildCertStatusInfo(Date time, IssuerEntry issuer, CertRow row,
+      boolean inheritCaRevocation) {
+    CrlInfo crlInfo = issuer.getCrlInfo();
+
+    Date thisUpdate;
+    Date nextUpdate = null;
+
+    if (crlInfo != null && crlInfo.isUseCrlUpdates()) {
+      thisUpdate = crlInfo.getThisUpdate();
+
+      // this.nextUpdate is still in the future (10 seconds buffer)
+      if (crlInfo.getNextUpdate().getTime() - System.currentTimeMillis() > 10 * 1000) {
+        nextUpdate = crlInfo.getNextUpdate();
       }
+    } else {
+      thisUpdate = new Date();
+    }
 
-      if (includeArchiveCutoff) {
-        if (retentionInterval != 0) {
-          Date date;
-          // expired certificate remains in status store for ever
-          if (retentionInterval < 0) {
-            date = issuer.getNotBefore();
-          } else {
-            long nowInMs = System.currentTimeMillis();
-            long dateInMs = Math.max(issuer.getNotBefore().getTime(),
-                nowInMs - DAY * retentionInterval);
-            date = new Date(dateInMs);
-          }
+    CertStatusInfo certStatusInfo = null;
+    String certprofile = null;
 
-          certStatusInfo.setArchiveCutOff(date);
+    if (row == null) {
+      if (unknownSerialAsGood) {
+        certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo, null,
+            thisUpdate, nextUpdate, null);
+      } else {
+        certStatusInfo = CertStatusInfo.getUnknownCertStatusInfo(thisUpdate, nextUpdate);
+      }
+    } else {
+      boolean ignore = false;
+      long timeInSec = time.getTime() / 1000;
+      if (!ignore && ignoreNotYetValidCert) {
+        if (row.notBefore != 0 && timeInSec < row.notBefore) {
+          ignore = true;
         }
       }
 
-      if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
-        return certStatusInfo;
+      if (!ignore && ignoreExpiredCert) {
+        if (row.notAfter != 0 && timeInSec > row.notAfter) {
+          ignore = true;
+        }
       }
 
-      CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
-      CertStatus certStatus = certStatusInfo.getCertStatus();
-      boolean replaced = false;
-      if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
-        replaced = true;
-      } else if (certStatus == CertStatus.REVOKED) {
-        if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
-              caRevInfo.getRevocationTime())) {
-          replaced = true;
+      if (ignore) {
+        certStatusInfo = CertStatusInfo.getIgnoreCertStatusInfo(thisUpdate, nextUpdate);
+      } else {
+        byte[] certHash = row.certHash;
+        if (row.revoked) {
+          Date invTime = (row.invalTime == 0 || row.invalTime == row.revTime)
+              ? null : new Date(row.invalTime * 1000);
+          CertRevocationInfo revInfo = new CertRevocationInfo(row.reason,
+              new Date(row.revTime * 1000), invTime);
+          certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(revInfo,
+              certHashAlgo, certHash, thisUpdate, nextUpdate, certprofile);
+        } else {
+          certStatusInfo = CertStatusInfo.getGoodCertStatusInfo(certHashAlgo,
+              certHash, thisUpdate, nextUpdate, certprofile);
         }
       }
+    }
+
+    if (includeCrlId && crlInfo != null) {
+      certStatusInfo.setCrlId(crlInfo.getCrlId());
+    }
 
-      if (replaced) {
-        CertRevocationInfo newRevInfo;
-        if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
-          newRevInfo = caRevInfo;
+    if (includeArchiveCutoff) {
+      if (retentionInterval != 0) {
+        Date date;
+        // expired certificate remains in status store for ever
+        if (retentionInterval < 0) {
+          date = issuer.getNotBefore();
         } else {
-          newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
-              caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+          long nowInMs = System.currentTimeMillis();
+          long dateInMs = Math.max(issuer.getNotBefore().getTime(),
+              nowInMs - DAY * retentionInterval);
+          date = new Date(dateInMs);
         }
-        certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
-            certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
-            certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
-            certStatusInfo.getCertprofile());
+
+        certStatusInfo.setArchiveCutOff(date);
       }
+    }
+
+    if ((!inheritCaRevocation) || issuer.getRevocationInfo() == null) {
       return certStatusInfo;
+    }
+
+    CertRevocationInfo caRevInfo = issuer.getRevocationInfo();
+    CertStatus certStatus = certStatusInfo.getCertStatus();
+    boolean replaced = false;
+    if (certStatus == CertStatus.GOOD || certStatus == CertStatus.UNKNOWN) {
+      replaced = true;
+    } else if (certStatus == CertStatus.REVOKED) {
+      if (certStatusInfo.getRevocationInfo().getRevocationTime().after(
+            caRevInfo.getRevocationTime())) {
+        replaced = true;
+      }
+    }
+
+    if (replaced) {
+      CertRevocationInfo newRevInfo;
+      if (caRevInfo.getReason() == CrlReason.CA_COMPROMISE) {
+        newRevInfo = caRevInfo;
+      } else {
+        newRevInfo = new CertRevocationInfo(CrlReason.CA_COMPROMISE,
+            caRevInfo.getRevocationTime(), caRevInfo.getInvalidityTime());
+      }
+      certStatusInfo = CertStatusInfo.getRevokedCertStatusInfo(newRevInfo,
+          certStatusInfo.getCertHashAlgo(), certStatusInfo.getCertHash(),
+          certStatusInfo.getThisUpdate(), certStatusInfo.getNextUpdate(),
+          certStatusInfo.getCertprofile());
+    }
+    return certStatusInfo;
+  } // method buildCertStatusInfo
+
+  @Override
+  public List<BigInteger> getSerialNumbers(RequestIssuer reqIssuer, BigInteger fromSerialNumber,
+      int maxSize) throws OcspStoreException {
+    ParamUtil.requireMin("maxSize", maxSize, 1);
+    assertInitialized();
+
+    IssuerEntry issuer = issuerStore.getIssuerForFp(reqIssuer);
+    if (issuer == null) {
+      return null;
+    }
+
+    // ordered by the hex-encoded serial number
+    final String sql = datasource.buildSelectFirstSql(maxSize, "SN", sqlSerials);
+    ResultSet rs = null;
+    try {
+      PreparedStatement ps = preparedStatement(sql);
+      try {
+        ps.setInt(1, issuer.getId());
+        ps.setString(2, (fromSerialNumber == null) ? "" : fromSerialNumber.toString(16));
+        rs = ps.executeQuery();
+
+        List<BigInteger> ret = new ArrayList<>(maxSize);
+        while (rs.next()) {
+          ret.add(new BigInteger(rs.getString("SN"), 16));
+        }
+        return ret;
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        releaseDbResources(ps, rs);
+      }
     } catch (DataAccessException ex) {
       throw new OcspStoreException(ex.getMessage(), ex);
     }
-
-  } // method getCertStatus
+  } // method getSerialNumbers
 
   /**
    * Borrow Prepared Statement.
@@ -489,6 +726,8 @@ public class DbCertStatusStore extends OcspStore {
     sqlCsNoRitWithCertHash = datasource.buildSelectFirstSql(1,
         "NBEFORE,NAFTER,REV,RR,RT,HASH FROM CERT WHERE IID=? AND SN=?");
 
+    sqlSerials = "SN FROM CERT WHERE IID=? AND SN>?";
+
     try {
       this.certHashAlgo = getCertHashAlgo(datasource);
     } catch (DataAccessException ex) {
@@ -517,6 +756,13 @@ public class DbCertStatusStore extends OcspStore {
 
     initIssuerStore();
 
+    if (storeConf.isStatusFilterEnabled()) {
+      this.statusFilter = new CertStatusFilter(datasource, name);
+      refreshStatusFilter();
+    } else {
+      this.statusFilter = null;
+    }
+
     if (this.scheduledThreadPoolExecutor != null) {
       this.scheduledThreadPoolExecutor.shutdownNow();
     }
@@ -562,6 +808,10 @@ public class DbCertStatusStore extends OcspStore {
     return (issuer == null) ? null : issuer.getCert();
   }
 
+  IssuerStore getIssuerStore() {
+    return issuerStore;
+  }
+
   protected boolean isInitialized() {
     return initialized;
   }
@@ -584,6 +834,30 @@ public class DbCertStatusStore extends OcspStore {
     return certs;
   }
 
+  /**
+   * Counts the certificates per issuer.
+   * @return map of the issuer ids to the number of their certificates.
+   */
+  static Map<Integer, Long> countCerts(DataSourceWrapper datasource)
+      throws DataAccessException {
+    final String sql = "SELECT IID,COUNT(*) FROM CERT GROUP BY IID";
+
+    Map<Integer, Long> counts = new HashMap<>();
+    ResultSet rs = null;
+    PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+    try {
+      rs = ps.executeQuery();
+      while (rs.next()) {
+        counts.put(rs.getInt(1), rs.getLong(2));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    } finally {
+      datasource.releaseResources(ps, rs);
+    }
+    return counts;
+  }
+
   public static HashAlgo getCertHashAlgo(DataSourceWrapper datasource) throws DataAccessException {
     // analyze the database
     String certHashAlgoStr = datasource.getFirstValue(null, "DBSCHEMA", "VALUE2",
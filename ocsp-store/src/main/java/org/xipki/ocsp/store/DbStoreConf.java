@@ -38,10 +38,14 @@ class DbStoreConf {
 
   private static final String KEY_cacerts_excludes = "cacerts.excludes";
 
+  private static final String KEY_statusfilter_enabled = "statusfilter.enabled";
+
   private final Set<String> caCertsIncludes = new HashSet<>();
 
   private final Set<String> caCertsExcludes = new HashSet<>();
 
+  private final boolean statusFilterEnabled;
+
   DbStoreConf(String propsConf) throws OcspStoreException {
     Properties props = new Properties();
     try {
@@ -65,6 +69,9 @@ class DbStoreConf {
         caCertsExcludes.add(st.nextToken());
       }
     }
+
+    statusFilterEnabled = Boolean.parseBoolean(
+        props.getProperty(KEY_statusfilter_enabled, "false"));
   }
 
   Set<String> getCaCertsIncludes() {
@@ -75,4 +82,8 @@ class DbStoreConf {
     return caCertsExcludes;
   }
 
+  boolean isStatusFilterEnabled() {
+    return statusFilterEnabled;
+  }
+
 }
@@ -21,14 +21,8 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.SignatureException;
-import java.security.cert.CRLException;
+import java.security.GeneralSecurityException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -37,24 +31,25 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import javax.security.auth.x500.X500Principal;
-
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.ASN1Set;
 import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.DERIA5String;
-import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
@@ -62,7 +57,6 @@ import org.bouncycastle.asn1.DERUTF8String;
 import org.bouncycastle.asn1.ocsp.CrlID;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.Certificate;
-import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.TBSCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +68,8 @@ import org.xipki.common.util.StringUtil;
 import org.xipki.datasource.DataAccessException;
 import org.xipki.datasource.DataSourceWrapper;
 import org.xipki.ocsp.api.CrlInfo;
+import org.xipki.ocsp.store.CrlStreamParser.RevokedCert;
+import org.xipki.ocsp.store.CrlStreamParser.RevokedCertsIterator;
 import org.xipki.security.CertRevocationInfo;
 import org.xipki.security.CrlReason;
 import org.xipki.security.HashAlgo;
@@ -107,9 +103,16 @@ public class ImportCrl {
 
   private static final String CORE_SQL_SELECT_ID_CERT = "ID FROM CERT WHERE IID=? AND SN=?";
 
+  /**
+   * Number of CRL entries imported in one transaction.
+   */
+  private static final int BATCH_SIZE = 100;
+
+  private static final String SQL_SELECT_IDS_CERT;
+
   private final String sqlSelectIdCert;
 
-  private final X509CRL crl;
+  private final CrlStreamParser crl;
 
   private final X509Certificate caCert;
 
@@ -128,8 +131,6 @@ public class ImportCrl {
 
   private final X500Name caSubject;
 
-  private final X500Principal x500PrincipalCaSubject;
-
   private final byte[] caSpki;
 
   private final String certsDirName;
@@ -142,19 +143,33 @@ public class ImportCrl {
   private PreparedStatement psInsertCert;
   private PreparedStatement psInsertCertRev;
   private PreparedStatement psSelectIdCert;
+  private PreparedStatement psSelectIdsCert;
   private PreparedStatement psUpdateCert;
   private PreparedStatement psUpdateCertRev;
 
-  public ImportCrl(DataSourceWrapper datasource, boolean useCrlUpdates, X509CRL crl, String crlUrl,
-      X509Certificate caCert, X509Certificate issuerCert, CertRevocationInfo caRevInfo,
-      String certsDirName) throws ImportCrlException, DataAccessException {
+  static {
+    StringBuilder sb = new StringBuilder("SELECT ID,SN FROM CERT WHERE IID=? AND SN IN (?");
+    for (int i = 1; i < BATCH_SIZE; i++) {
+      sb.append(",?");
+    }
+    SQL_SELECT_IDS_CERT = sb.append(")").toString();
+  }
+
+  public ImportCrl(DataSourceWrapper datasource, boolean useCrlUpdates, File crlFile,
+      String crlUrl, X509Certificate caCert, X509Certificate issuerCert,
+      CertRevocationInfo caRevInfo, String certsDirName)
+      throws ImportCrlException, DataAccessException {
     this.datasource = ParamUtil.requireNonNull("datasource", datasource);
     this.certhashAlgo = DbCertStatusStore.getCertHashAlgo(datasource);
     this.useCrlUpdates = useCrlUpdates;
-    this.crl = ParamUtil.requireNonNull("crl", crl);
+    ParamUtil.requireNonNull("crlFile", crlFile);
+    try {
+      this.crl = new CrlStreamParser(crlFile);
+    } catch (IOException ex) {
+      throw new ImportCrlException("could not parse CRL " + crlFile.getPath(), ex);
+    }
     this.caCert = ParamUtil.requireNonNull("caCert", caCert);
-    this.x500PrincipalCaSubject = caCert.getSubjectX500Principal();
-    this.caSubject = X500Name.getInstance(x500PrincipalCaSubject.getEncoded());
+    this.caSubject = X500Name.getInstance(caCert.getSubjectX500Principal().getEncoded());
     try {
       this.caSpki = X509Util.extractSki(caCert);
     } catch (CertificateEncodingException ex) {
@@ -164,46 +179,47 @@ public class ImportCrl {
     this.certsDirName = certsDirName;
     this.caRevInfo = caRevInfo;
 
-    X500Principal issuer = crl.getIssuerX500Principal();
+    X500Name issuer = crl.getIssuer();
 
     boolean caAsCrlIssuer = true;
-    if (!x500PrincipalCaSubject.equals(issuer)) {
+    if (!caSubject.equals(issuer)) {
       caAsCrlIssuer = false;
       if (issuerCert == null) {
         throw new IllegalArgumentException("issuerCert must not be null");
       }
 
-      if (!issuerCert.getSubjectX500Principal().equals(issuer)) {
+      X500Name issuerCertSubject =
+          X500Name.getInstance(issuerCert.getSubjectX500Principal().getEncoded());
+      if (!issuerCertSubject.equals(issuer)) {
         throw new IllegalArgumentException("issuerCert and CRL do not match");
       }
     }
 
     // Verify the signature
     X509Certificate crlSignerCert = caAsCrlIssuer ? caCert : issuerCert;
+    boolean signatureValid;
     try {
-      crl.verify(crlSignerCert.getPublicKey());
-    } catch (SignatureException | NoSuchProviderException | InvalidKeyException | CRLException
-        | NoSuchAlgorithmException ex) {
+      signatureValid = crl.verifySignature(crlSignerCert.getPublicKey());
+    } catch (IOException | GeneralSecurityException ex) {
       throw new ImportCrlException("could not verify signature of CRL", ex);
     }
 
-    byte[] octetString = crl.getExtensionValue(Extension.cRLNumber.getId());
-    if (octetString == null) {
+    if (!signatureValid) {
+      throw new ImportCrlException("signature of CRL is invalid");
+    }
+
+    this.crlNumber = crl.getCrlNumber();
+    if (this.crlNumber == null) {
       throw new IllegalArgumentException("CRL without CRLNumber is not supported");
     }
-    ASN1Integer asn1CrlNumber
-        = ASN1Integer.getInstance(DEROctetString.getInstance(octetString).getOctets());
-    this.crlNumber = asn1CrlNumber.getPositiveValue();
+    ASN1Integer asn1CrlNumber = new ASN1Integer(crlNumber);
 
-    octetString = crl.getExtensionValue(Extension.deltaCRLIndicator.getId());
-    this.isDeltaCrl = (octetString != null);
+    this.baseCrlNumber = crl.getBaseCrlNumber();
+    this.isDeltaCrl = (baseCrlNumber != null);
     if (this.isDeltaCrl) {
       LOG.info("The CRL a DeltaCRL");
-      byte[] extnValue = DEROctetString.getInstance(octetString).getOctets();
-      this.baseCrlNumber = ASN1Integer.getInstance(extnValue).getPositiveValue();
     } else {
       LOG.info("The CRL a full CRL");
-      this.baseCrlNumber = null;
     }
 
     // Construct CrlID
@@ -233,19 +249,25 @@ public class ImportCrl {
       psInsertCert = datasource.prepareStatement(conn, SQL_INSERT_CERT);
       psInsertCertRev = datasource.prepareStatement(conn, SQL_INSERT_CERT_REV);
       psSelectIdCert = datasource.prepareStatement(conn, sqlSelectIdCert);
+      psSelectIdsCert = datasource.prepareStatement(conn, SQL_SELECT_IDS_CERT);
       psUpdateCert = datasource.prepareStatement(conn, SQL_UPDATE_CERT);
       psUpdateCertRev = datasource.prepareStatement(conn, SQL_UPDATE_CERT_REV);
 
       importEntries(conn, caId);
-      deleteEntriesNotUpdatedSince(conn, startTime);
+      if (!isDeltaCrl) {
+        // the deltaCRL contains only the changed entries
+        deleteEntriesNotUpdatedSince(conn, caId, startTime);
+      }
 
       return true;
     } catch (Throwable th) {
       LogUtil.error(LOG, th, "could not import CRL to OCSP database");
+    } finally {
       releaseResources(psDeleteCert, null);
       releaseResources(psInsertCert, null);
       releaseResources(psInsertCertRev, null);
       releaseResources(psSelectIdCert, null);
+      releaseResources(psSelectIdsCert, null);
       releaseResources(psUpdateCert, null);
       releaseResources(psUpdateCertRev, null);
 
@@ -315,14 +337,23 @@ public class ImportCrl {
           lastFullCrlNumber = crlInfo.getCrlNumber();
         }
 
-        if (!baseCrlNumber.equals(lastFullCrlNumber)) {
+        // The deltaCRL contains all changes since its base CRL, it can be applied to
+        // every full CRL which is not older than the base CRL (RFC 5280, section 5.2.4).
+        if (baseCrlNumber.compareTo(lastFullCrlNumber) > 0) {
           throw new ImportCrlException("Given CRL is a deltaCRL for the full CRL with number "
-              + crlNumber + ", please import this full CRL first.");
+              + baseCrlNumber + ", please import this full CRL first.");
         }
       }
 
+      if (isDeltaCrl) {
+        // keep the number of the full CRL to which the deltaCRLs are applied
+        if (crlInfo.getBaseCrlNumber() == null) {
+          crlInfo.setBaseCrlNumber(crlInfo.getCrlNumber());
+        }
+      } else {
+        crlInfo.setBaseCrlNumber(null);
+      }
       crlInfo.setCrlNumber(crlNumber);
-      crlInfo.setBaseCrlNumber(isDeltaCrl ? baseCrlNumber : null);
       crlInfo.setThisUpdate(crl.getThisUpdate());
       crlInfo.setNextUpdate(crl.getNextUpdate());
     }
@@ -402,95 +433,49 @@ public class ImportCrl {
     AtomicLong maxId = new AtomicLong(datasource.getMax(conn, "CERT", "ID"));
 
     // import the revoked information
-    Set<? extends X509CRLEntry> revokedCertList = crl.getRevokedCertificates();
-    if (revokedCertList != null) {
-      for (X509CRLEntry c : revokedCertList) {
-        X500Principal issuer = c.getCertificateIssuer();
-        BigInteger serial = c.getSerialNumber();
-
-        if (issuer != null) {
-          if (!x500PrincipalCaSubject.equals(issuer)) {
-            throw new ImportCrlException("invalid CRLEntry for certificate number " + serial);
-          }
+    long num = 0;
+    List<RevokedCert> revokedCerts = new ArrayList<>(BATCH_SIZE);
+    RevokedCertsIterator revokedCertsIt = null;
+    try {
+      revokedCertsIt = crl.revokedCertificates();
+      while (revokedCertsIt.hasNext()) {
+        RevokedCert revokedCert = revokedCertsIt.next();
+        X500Name issuer = revokedCert.getCertificateIssuer();
+        if (issuer != null && !caSubject.equals(issuer)) {
+          throw new ImportCrlException("invalid CRLEntry for certificate number "
+              + revokedCert.getSerialNumber());
         }
 
-        Date rt = c.getRevocationDate();
-        Date rit = null;
-        byte[] extnValue = c.getExtensionValue(Extension.invalidityDate.getId());
-        if (extnValue != null) {
-          extnValue = extractCoreValue(extnValue);
-          ASN1GeneralizedTime genTime = DERGeneralizedTime.getInstance(extnValue);
-          try {
-            rit = genTime.getDate();
-          } catch (ParseException ex) {
-            throw new ImportCrlException(ex.getMessage(), ex);
-          }
-
-          if (rt.equals(rit)) {
-            rit = null;
-          }
+        revokedCerts.add(revokedCert);
+        if (revokedCerts.size() == BATCH_SIZE) {
+          importRevokedCerts(conn, caId, maxId, revokedCerts);
+          num += revokedCerts.size();
+          revokedCerts.clear();
         }
+      }
 
-        CrlReason reason = CrlReason.fromReason(c.getRevocationReason());
-
-        String sql = null;
+      if (!revokedCerts.isEmpty()) {
+        importRevokedCerts(conn, caId, maxId, revokedCerts);
+        num += revokedCerts.size();
+      }
+    } catch (IOException ex) {
+      throw new ImportCrlException("could not read entries of the CRL: " + ex.getMessage(), ex);
+    } finally {
+      if (revokedCertsIt != null) {
         try {
-          if (reason == CrlReason.REMOVE_FROM_CRL) {
-            if (!isDeltaCrl) {
-              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
-            }
-
-            // delete the entry
-            sql = SQL_DELETE_CERT;
-            psDeleteCert.setInt(1, caId);
-            psDeleteCert.setString(2, serial.toString(16));
-            psDeleteCert.executeUpdate();
-            continue;
-          }
-
-          Long id = getId(caId, serial);
-          PreparedStatement ps;
-          int offset = 1;
-
-          if (id == null) {
-            sql = SQL_INSERT_CERT_REV;
-            id = maxId.incrementAndGet();
-            ps = psInsertCertRev;
-            ps.setLong(offset++, id);
-            ps.setInt(offset++, caId);
-            ps.setString(offset++, serial.toString(16));
-          } else {
-            sql = SQL_UPDATE_CERT_REV;
-            ps = psUpdateCertRev;
-          }
-
-          ps.setInt(offset++, 1);
-          ps.setInt(offset++, reason.getCode());
-          ps.setLong(offset++, rt.getTime() / 1000);
-          if (rit != null) {
-            ps.setLong(offset++, rit.getTime() / 1000);
-          } else {
-            ps.setNull(offset++, Types.BIGINT);
-          }
-          ps.setLong(offset++, System.currentTimeMillis() / 1000);
-
-          if (ps == psUpdateCertRev) {
-            ps.setLong(offset++, id);
-          }
-
-          ps.executeUpdate();
-        } catch (SQLException ex) {
-          throw datasource.translate(sql, ex);
+          revokedCertsIt.close();
+        } catch (IOException ex) {
+          LOG.warn("could not close the CRL file: {}", ex.getMessage());
         }
       }
     }
+    LOG.info("imported {} CRL entries", num);
 
     // import the certificates
 
     // extract the certificate
-    byte[] extnValue = crl.getExtensionValue(ObjectIdentifiers.id_xipki_ext_crlCertset.getId());
+    byte[] extnValue = crl.getExtensionValue(ObjectIdentifiers.id_xipki_ext_crlCertset);
     if (extnValue != null) {
-      extnValue = extractCoreValue(extnValue);
       ASN1Set asn1Set = DERSet.getInstance(extnValue);
       final int n = asn1Set.size();
 
@@ -538,7 +523,7 @@ public class ImportCrl {
             + "', serialNumber=" + cert.getSerialNumber() + ")";
         addCertificate(maxId, caId, cert, profileName, certLogId);
       }
-    } else {
+    } else if (certsDirName != null) {
       // cert dirs
       File certsDir = new File(certsDirName);
 
@@ -586,8 +571,160 @@ public class ImportCrl {
 
   }
 
-  private static byte[] extractCoreValue(byte[] encodedExtensionValue) {
-    return ASN1OctetString.getInstance(encodedExtensionValue).getOctets();
+  /**
+   * Imports the revoked certificates within one transaction. The IDs of existing entries are
+   * retrieved with one query, and the rows are deleted, inserted and updated in batches. The
+   * batches are executed whenever an entry refers to a serial number already contained in
+   * them, so that the operations on the same certificate keep their order.
+   */
+  private void importRevokedCerts(Connection conn, int caId, AtomicLong maxId,
+      List<RevokedCert> revokedCerts) throws DataAccessException {
+    Map<String, Long> ids = getIds(caId, revokedCerts);
+    final long now = System.currentTimeMillis() / 1000;
+
+    Set<String> batchedSerials = new HashSet<>();
+    boolean deleteCert = false;
+    boolean insertCertRev = false;
+    boolean updateCertRev = false;
+
+    String sql = null;
+    try {
+      boolean origAutoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        for (RevokedCert revokedCert : revokedCerts) {
+          String hexSerial = revokedCert.getSerialNumber().toString(16);
+          if (!batchedSerials.add(hexSerial)) {
+            // e.g. removed and added again
+            if (deleteCert) {
+              sql = SQL_DELETE_CERT;
+              psDeleteCert.executeBatch();
+            }
+
+            if (insertCertRev) {
+              sql = SQL_INSERT_CERT_REV;
+              psInsertCertRev.executeBatch();
+            }
+
+            if (updateCertRev) {
+              sql = SQL_UPDATE_CERT_REV;
+              psUpdateCertRev.executeBatch();
+            }
+
+            deleteCert = false;
+            insertCertRev = false;
+            updateCertRev = false;
+            batchedSerials.clear();
+            batchedSerials.add(hexSerial);
+          }
+
+          if (revokedCert.getReason() == CrlReason.REMOVE_FROM_CRL) {
+            if (!isDeltaCrl) {
+              LOG.warn("ignore CRL entry with reason removeFromCRL in non-Delta CRL");
+            }
+
+            // delete the entry
+            psDeleteCert.setInt(1, caId);
+            psDeleteCert.setString(2, hexSerial);
+            psDeleteCert.addBatch();
+            ids.remove(hexSerial);
+            deleteCert = true;
+            continue;
+          }
+
+          Long id = ids.get(hexSerial);
+          PreparedStatement ps;
+          int offset = 1;
+
+          if (id == null) {
+            id = maxId.incrementAndGet();
+            ids.put(hexSerial, id);
+            ps = psInsertCertRev;
+            ps.setLong(offset++, id);
+            ps.setInt(offset++, caId);
+            ps.setString(offset++, hexSerial);
+            insertCertRev = true;
+          } else {
+            ps = psUpdateCertRev;
+            updateCertRev = true;
+          }
+
+          Date rt = revokedCert.getRevocationDate();
+          Date rit = revokedCert.getInvalidityDate();
+          if (rt.equals(rit)) {
+            rit = null;
+          }
+
+          ps.setInt(offset++, 1);
+          ps.setInt(offset++, revokedCert.getReason().getCode());
+          ps.setLong(offset++, rt.getTime() / 1000);
+          if (rit != null) {
+            ps.setLong(offset++, rit.getTime() / 1000);
+          } else {
+            ps.setNull(offset++, Types.BIGINT);
+          }
+          ps.setLong(offset++, now);
+
+          if (ps == psUpdateCertRev) {
+            ps.setLong(offset++, id);
+          }
+          ps.addBatch();
+        }
+
+        if (deleteCert) {
+          sql = SQL_DELETE_CERT;
+          psDeleteCert.executeBatch();
+        }
+
+        if (insertCertRev) {
+          sql = SQL_INSERT_CERT_REV;
+          psInsertCertRev.executeBatch();
+        }
+
+        if (updateCertRev) {
+          sql = SQL_UPDATE_CERT_REV;
+          psUpdateCertRev.executeBatch();
+        }
+
+        sql = "(commit import CRL entries)";
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      } finally {
+        conn.setAutoCommit(origAutoCommit);
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(sql, ex);
+    }
+  } // method importRevokedCerts
+
+  /**
+   * Returns the IDs of the given serial numbers which exist in the table CERT.
+   */
+  private Map<String, Long> getIds(int caId, List<RevokedCert> revokedCerts)
+      throws DataAccessException {
+    Map<String, Long> ids = new HashMap<>();
+    ResultSet rs = null;
+    try {
+      psSelectIdsCert.setInt(1, caId);
+      final int n = revokedCerts.size();
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        // fill up the remaining parameters with the last serial number
+        RevokedCert revokedCert = revokedCerts.get(Math.min(i, n - 1));
+        psSelectIdsCert.setString(i + 2, revokedCert.getSerialNumber().toString(16));
+      }
+
+      rs = psSelectIdsCert.executeQuery();
+      while (rs.next()) {
+        ids.put(rs.getString("SN"), rs.getLong("ID"));
+      }
+    } catch (SQLException ex) {
+      throw datasource.translate(SQL_SELECT_IDS_CERT, ex);
+    } finally {
+      releaseResources(null, rs);
+    }
+    return ids;
   }
 
   private Long getId(int caId, BigInteger serialNumber)
@@ -703,10 +840,10 @@ public class ImportCrl {
     LOG.info("Imported  certificate {}", certLogId);
   }
 
-  private void deleteEntriesNotUpdatedSince(Connection conn, Date time)
+  private void deleteEntriesNotUpdatedSince(Connection conn, int caId, Date time)
       throws DataAccessException {
-    // remove the unmodified entries
-    String sql = "DELETE FROM CERT WHERE LUPDATE<" + time.getTime() / 1000;
+    // remove the unmodified entries of the issuer
+    String sql = "DELETE FROM CERT WHERE IID=" + caId + " AND LUPDATE<" + time.getTime() / 1000;
     Statement stmt = datasource.createStatement(conn);
     try {
       stmt.executeUpdate(sql);
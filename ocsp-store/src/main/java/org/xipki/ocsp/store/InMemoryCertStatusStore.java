@@ -0,0 +1,370 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.ocsp.store;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.LogUtil;
+import org.xipki.datasource.DataAccessException;
+import org.xipki.datasource.DataSourceWrapper;
+import org.xipki.ocsp.api.IssuerEntry;
+import org.xipki.ocsp.api.IssuerStore;
+import org.xipki.ocsp.api.OcspStoreException;
+
+/**
+ * OCSP store which holds the status of all certificates in memory. The certificates are
+ * loaded from the table CERT at startup, and the changed ones are polled periodically
+ * via the column LUPDATE. Once loaded, the status is answered without accessing the
+ * database, also while the database is temporarily not available.
+ *
+ * <p>Deleted certificates are detected by comparing the number of certificates per issuer
+ * in the database with the loaded ones, which triggers a full reload. The certificates of
+ * issuers added later are loaded at the next synchronization, till then their status is
+ * read from the database.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class InMemoryCertStatusStore extends DbCertStatusStore {
+
+  private class CertSyncService implements Runnable {
+
+    @Override
+    public void run() {
+      try {
+        syncCerts();
+      } catch (Throwable th) {
+        LogUtil.error(LOG, th, "could not synchronize certificates of store " + name);
+      }
+    }
+
+  } // class CertSyncService
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryCertStatusStore.class);
+
+  private static final String SQL_COLUMNS = "ID,IID,SN,LUPDATE,NBEFORE,NAFTER,REV,RR,RT,RIT,HASH";
+
+  private static final int LOAD_PAGE_SIZE = 10000;
+
+  /**
+   * Certificates updated up to this number of seconds before the last seen LUPDATE will be
+   * fetched again, to tolerate the clock skew of the publishers.
+   */
+  private static final long SYNC_OVERLAP = 60;
+
+  /**
+   * Interval in milliseconds of the full reload to get rid of the deleted certificates which
+   * could not be detected by counting.
+   */
+  private static final long FULL_RELOAD_INTERVAL = DAY;
+
+  /**
+   * Interval in milliseconds to count the certificates in the database, which scans the
+   * index of (IID, SN).
+   */
+  private static final long DELETION_CHECK_INTERVAL = 10L * 60 * 1000;
+
+  private volatile Map<Integer, Map<BigInteger, CertRow>> certs;
+
+  private long lastUpdate;
+
+  private long lastFullLoad;
+
+  private long lastDeletionCheck;
+
+  @Override
+  public void init(String conf, DataSourceWrapper datasource) throws OcspStoreException {
+    super.init(conf, datasource);
+
+    if (isInitializationFailed()) {
+      throw new OcspStoreException("could not load the issuers of store " + name);
+    }
+
+    try {
+      loadCerts();
+    } catch (DataAccessException ex) {
+      throw new OcspStoreException("could not load the certificates of store " + name, ex);
+    }
+  }
+
+  @Override
+  protected List<Runnable> getScheduledServices() {
+    return Arrays.asList((Runnable) new CertSyncService());
+  }
+
+  @Override
+  protected boolean keepIssuersOnUpdateFailure() {
+    return certs != null;
+  }
+
+  @Override
+  CertRow getCertRow(IssuerEntry issuer, BigInteger serialNumber, boolean includeCertHash,
+      boolean includeRit) throws DataAccessException {
+    Map<BigInteger, CertRow> issuerCerts = getIssuerCerts(issuer);
+    if (issuerCerts == null) {
+      return super.getCertRow(issuer, serialNumber, includeCertHash, includeRit);
+    }
+
+    CertRow row = issuerCerts.get(serialNumber);
+    return (row == null) ? null : row.strip(includeCertHash, includeRit);
+  }
+
+  @Override
+  Map<String, CertRow> getCertRows(IssuerEntry issuer, List<String> hexSerials,
+      boolean includeCertHash, boolean includeRit) throws DataAccessException {
+    Map<BigInteger, CertRow> issuerCerts = getIssuerCerts(issuer);
+    if (issuerCerts == null) {
+      return super.getCertRows(issuer, hexSerials, includeCertHash, includeRit);
+    }
+
+    Map<String, CertRow> rows = new HashMap<>();
+    for (String hexSerial : hexSerials) {
+      CertRow row = issuerCerts.get(new BigInteger(hexSerial, 16));
+      if (row != null) {
+        rows.put(hexSerial, row.strip(includeCertHash, includeRit));
+      }
+    }
+    return rows;
+  }
+
+  @Override
+  public boolean isHealthy() {
+    return isInitialized() && !isInitializationFailed() && certs != null;
+  }
+
+  /**
+   * Gets the loaded certificates of the issuer.
+   * @return the certificates, or {@code null} if the issuer is added after the last
+   *     synchronization.
+   */
+  private Map<BigInteger, CertRow> getIssuerCerts(IssuerEntry issuer)
+      throws DataAccessException {
+    Map<Integer, Map<BigInteger, CertRow>> tmpCerts = certs;
+    if (tmpCerts == null) {
+      throw new DataAccessException("certificates of store " + name + " are not loaded");
+    }
+
+    Map<BigInteger, CertRow> issuerCerts = tmpCerts.get(issuer.getId());
+    if (issuerCerts == null) {
+      LOG.debug("certificates of issuer {} are not loaded yet", issuer.getId());
+    }
+    return issuerCerts;
+  }
+
+  private synchronized void syncCerts() throws DataAccessException {
+    IssuerStore issuerStore = getIssuerStore();
+    if (issuerStore == null) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    if (certs == null || now - lastFullLoad > FULL_RELOAD_INTERVAL) {
+      loadCerts();
+      return;
+    }
+
+    syncIssuers(issuerStore.getIds());
+    updateCerts();
+
+    if (now - lastDeletionCheck > DELETION_CHECK_INTERVAL) {
+      // must be counted after the update, so that the newly added certificates
+      // are not mistaken as deleted ones.
+      lastDeletionCheck = now;
+      if (hasDeletedCerts()) {
+        LOG.info("found deleted certificates in store {}, reload all", name);
+        loadCerts();
+      }
+    }
+  }
+
+  /**
+   * Loads all certificates of the issuers from the database, and replaces the
+   * current ones afterwards.
+   */
+  private synchronized void loadCerts() throws DataAccessException {
+    long start = System.currentTimeMillis();
+
+    Map<Integer, Map<BigInteger, CertRow>> newCerts = new ConcurrentHashMap<>();
+    for (Integer issuerId : getIssuerStore().getIds()) {
+      newCerts.put(issuerId, new ConcurrentHashMap<BigInteger, CertRow>());
+    }
+
+    long maxUpdate = loadCerts(newCerts, null);
+
+    this.certs = newCerts;
+    this.lastUpdate = maxUpdate;
+    this.lastFullLoad = start;
+    this.lastDeletionCheck = start;
+
+    int num = 0;
+    for (Map<BigInteger, CertRow> issuerCerts : newCerts.values()) {
+      num += issuerCerts.size();
+    }
+    LOG.info("loaded {} certificates of store {} in {} ms", num, name,
+        System.currentTimeMillis() - start);
+  } // method loadCerts
+
+  /**
+   * Drops the certificates of the removed issuers, and loads the certificates of the
+   * added ones.
+   */
+  private void syncIssuers(Set<Integer> issuerIds) throws DataAccessException {
+    Map<Integer, Map<BigInteger, CertRow>> tmpCerts = certs;
+    tmpCerts.keySet().retainAll(issuerIds);
+
+    for (Integer issuerId : issuerIds) {
+      if (tmpCerts.containsKey(issuerId)) {
+        continue;
+      }
+
+      Map<Integer, Map<BigInteger, CertRow>> newCerts = new HashMap<>();
+      Map<BigInteger, CertRow> issuerCerts = new ConcurrentHashMap<>();
+      newCerts.put(issuerId, issuerCerts);
+      loadCerts(newCerts, issuerId);
+      tmpCerts.put(issuerId, issuerCerts);
+      LOG.info("loaded {} certificates of the new issuer {} in store {}", issuerCerts.size(),
+          issuerId, name);
+    }
+  }
+
+  /**
+   * Loads the certificates from the database page by page.
+   * @param newCerts map to put the certificates in. Certificates of issuers not contained
+   *     in this map are ignored.
+   * @param issuerId if not {@code null}, only the certificates of this issuer are loaded.
+   * @return the maximal LUPDATE of the loaded certificates.
+   */
+  private long loadCerts(Map<Integer, Map<BigInteger, CertRow>> newCerts, Integer issuerId)
+      throws DataAccessException {
+    final String sql = datasource.buildSelectFirstSql(LOAD_PAGE_SIZE, "ID",
+        SQL_COLUMNS + " FROM CERT WHERE ID>?" + ((issuerId == null) ? "" : " AND IID=?"));
+
+    long maxUpdate = 0;
+    long minId = 0;
+
+    while (true) {
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+      int numInPage = 0;
+      try {
+        ps.setLong(1, minId);
+        if (issuerId != null) {
+          ps.setInt(2, issuerId);
+        }
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          numInPage++;
+          minId = rs.getLong("ID");
+          maxUpdate = Math.max(maxUpdate, rs.getLong("LUPDATE"));
+
+          Map<BigInteger, CertRow> issuerCerts = newCerts.get(rs.getInt("IID"));
+          if (issuerCerts != null) {
+            issuerCerts.put(new BigInteger(rs.getString("SN"), 16),
+                new CertRow(rs, true, true));
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+
+      if (numInPage < LOAD_PAGE_SIZE) {
+        break;
+      }
+    }
+
+    return maxUpdate;
+  } // method loadCerts
+
+  /**
+   * Fetches the certificates changed since the last synchronization page by page.
+   */
+  private synchronized void updateCerts() throws DataAccessException {
+    Map<Integer, Map<BigInteger, CertRow>> tmpCerts = certs;
+    final String sql = datasource.buildSelectFirstSql(LOAD_PAGE_SIZE, "ID",
+        SQL_COLUMNS + " FROM CERT WHERE LUPDATE>=? AND ID>?");
+
+    final long minUpdate = Math.max(0, lastUpdate - SYNC_OVERLAP);
+    long maxUpdate = lastUpdate;
+    long minId = 0;
+    int num = 0;
+
+    while (true) {
+      ResultSet rs = null;
+      PreparedStatement ps = datasource.prepareStatement(datasource.getConnection(), sql);
+      int numInPage = 0;
+      try {
+        ps.setLong(1, minUpdate);
+        ps.setLong(2, minId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+          numInPage++;
+          minId = rs.getLong("ID");
+          maxUpdate = Math.max(maxUpdate, rs.getLong("LUPDATE"));
+          Map<BigInteger, CertRow> issuerCerts = tmpCerts.get(rs.getInt("IID"));
+          if (issuerCerts != null) {
+            issuerCerts.put(new BigInteger(rs.getString("SN"), 16),
+                new CertRow(rs, true, true));
+            num++;
+          }
+        }
+      } catch (SQLException ex) {
+        throw datasource.translate(sql, ex);
+      } finally {
+        datasource.releaseResources(ps, rs);
+      }
+
+      if (numInPage < LOAD_PAGE_SIZE) {
+        break;
+      }
+    }
+
+    this.lastUpdate = maxUpdate;
+    LOG.debug("synchronized {} certificates of store {}", num, name);
+  } // method updateCerts
+
+  /**
+   * Whether the database contains less certificates of an issuer than the loaded ones.
+   */
+  private boolean hasDeletedCerts() throws DataAccessException {
+    Map<Integer, Map<BigInteger, CertRow>> tmpCerts = certs;
+    Map<Integer, Long> counts = countCerts(datasource);
+
+    for (Integer issuerId : tmpCerts.keySet()) {
+      Long count = counts.get(issuerId);
+      if ((count == null ? 0 : count) < tmpCerts.get(issuerId).size()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -32,9 +32,12 @@ public class OcspStoreFactoryImpl implements OcspStoreFactory {
 
   private static final String TYPE_CRL = "crl";
 
+  private static final String TYPE_XIPKI_DB_MEMORY = "xipki-db-memory";
+
   @Override
   public boolean canCreateOcspStore(String type) {
-    return TYPE_XIPKI_DB.equalsIgnoreCase(type) || TYPE_CRL.equalsIgnoreCase(type);
+    return TYPE_XIPKI_DB.equalsIgnoreCase(type) || TYPE_CRL.equalsIgnoreCase(type)
+        || TYPE_XIPKI_DB_MEMORY.equalsIgnoreCase(type);
   }
 
   @Override
@@ -43,6 +46,8 @@ public class OcspStoreFactoryImpl implements OcspStoreFactory {
       return new DbCertStatusStore();
     } else if (TYPE_CRL.equalsIgnoreCase(type)) {
       return new CrlDbCertStatusStore();
+    } else if (TYPE_XIPKI_DB_MEMORY.equalsIgnoreCase(type)) {
+      return new InMemoryCertStatusStore();
     } else {
       throw new ObjectCreationException("unknown type OCSP store type " + type);
     }
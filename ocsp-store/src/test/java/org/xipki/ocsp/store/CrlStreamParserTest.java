@@ -0,0 +1,254 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.xipki.ocsp.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xipki.ocsp.store.CrlStreamParser.RevokedCert;
+import org.xipki.ocsp.store.CrlStreamParser.RevokedCertsIterator;
+
+/**
+ * Parses CRLs generated by BouncyCastle's {@link X509v2CRLBuilder} with
+ * {@link CrlStreamParser} and compares the result with the JCA parser. Not in the package
+ * {@code org.xipki.ocsp.store.test}, since the parser is package-private.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class CrlStreamParserTest {
+
+  private static final X500Name ISSUER = new X500Name("CN=CRL Test CA,O=xipki,C=DE");
+
+  private static final X500Name CERT_ISSUER = new X500Name("CN=Other CA,O=xipki,C=DE");
+
+  private static KeyPair keypair;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+    kpGen.initialize(2048);
+    keypair = kpGen.generateKeyPair();
+  }
+
+  @Test
+  public void parseEmptyDer() throws Exception {
+    byte[] encoded = generateCrl(0, false);
+    verify(encoded, writeFile(encoded));
+  }
+
+  @Test
+  public void parseDer() throws Exception {
+    byte[] encoded = generateCrl(100, false);
+    verify(encoded, writeFile(encoded));
+  }
+
+  @Test
+  public void parseIndirectDer() throws Exception {
+    byte[] encoded = generateCrl(100, true);
+    verify(encoded, writeFile(encoded));
+  }
+
+  @Test
+  public void parseLongLengthDer() throws Exception {
+    // the revokedCertificates are longer than 65535 bytes, the length takes 3 bytes
+    byte[] encoded = generateCrl(5000, false);
+    Assert.assertTrue("CRL too short", encoded.length > 0x10000);
+    verify(encoded, writeFile(encoded));
+  }
+
+  @Test
+  public void parsePem() throws Exception {
+    byte[] encoded = generateCrl(100, true);
+    String pem = "-----BEGIN X509 CRL-----\r\n"
+        + Base64.getMimeEncoder().encodeToString(encoded)
+        + "\r\n-----END X509 CRL-----\r\n";
+    verify(encoded, writeFile(pem.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void parsePemWithLeadingWhitespaces() throws Exception {
+    byte[] encoded = generateCrl(5000, false);
+    String pem = "\n  \n-----BEGIN X509 CRL-----\n"
+        + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(encoded)
+        + "\n-----END X509 CRL-----\n";
+    verify(encoded, writeFile(pem.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  public void rejectIndefiniteLength() throws Exception {
+    byte[] encoded = generateCrl(10, false);
+    // the outer SEQUENCE of a CRL longer than 255 bytes starts with 30 82 xx xx
+    Assert.assertEquals(0x82, encoded[1] & 0xFF);
+
+    // BER encoding with indefinite length: 30 80 <content> 00 00
+    int contentLen = encoded.length - 4;
+    byte[] ber = new byte[2 + contentLen + 2];
+    ber[0] = 0x30;
+    ber[1] = (byte) 0x80;
+    System.arraycopy(encoded, 4, ber, 2, contentLen);
+
+    try {
+      new CrlStreamParser(writeFile(ber));
+      Assert.fail("IOException expected");
+    } catch (IOException ex) {
+      Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("indefinite length"));
+    }
+  }
+
+  @Test
+  public void rejectTruncated() throws Exception {
+    byte[] encoded = generateCrl(10, false);
+    byte[] truncated = new byte[encoded.length / 2];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+    try {
+      new CrlStreamParser(writeFile(truncated));
+      Assert.fail("IOException expected");
+    } catch (IOException ex) {
+      // expected
+    }
+  }
+
+  private static void verify(byte[] encoded, File crlFile) throws Exception {
+    X509CRL expected = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(
+        new ByteArrayInputStream(encoded));
+
+    CrlStreamParser parser = new CrlStreamParser(crlFile);
+    Assert.assertEquals("issuer", ISSUER, parser.getIssuer());
+    Assert.assertEquals("thisUpdate", expected.getThisUpdate(), parser.getThisUpdate());
+    Assert.assertEquals("nextUpdate", expected.getNextUpdate(), parser.getNextUpdate());
+    Assert.assertEquals("crlNumber", BigInteger.valueOf(42), parser.getCrlNumber());
+    Assert.assertNull("baseCrlNumber", parser.getBaseCrlNumber());
+    Assert.assertTrue("signature", parser.verifySignature(keypair.getPublic()));
+
+    Set<? extends X509CRLEntry> expectedEntries = expected.getRevokedCertificates();
+    Iterator<? extends X509CRLEntry> expectedIt = (expectedEntries == null) ? null
+        : expectedEntries.iterator();
+
+    int num = 0;
+    RevokedCertsIterator it = parser.revokedCertificates();
+    try {
+      while (it.hasNext()) {
+        RevokedCert entry = it.next();
+        num++;
+        Assert.assertNotNull("too many entries", expectedIt);
+        Assert.assertTrue("too many entries", expectedIt.hasNext());
+        X509CRLEntry expectedEntry = expectedIt.next();
+
+        Assert.assertEquals("serialNumber", expectedEntry.getSerialNumber(),
+            entry.getSerialNumber());
+        Assert.assertEquals("revocationDate", expectedEntry.getRevocationDate(),
+            entry.getRevocationDate());
+
+        java.security.cert.CRLReason expectedReason = expectedEntry.getRevocationReason();
+        int expectedCode = (expectedReason == null) ? 0 : expectedReason.ordinal();
+        Assert.assertEquals("reason", expectedCode, entry.getReason().getCode());
+
+        if (expectedEntry.getCertificateIssuer() != null) {
+          Assert.assertEquals("certificateIssuer",
+              X500Name.getInstance(expectedEntry.getCertificateIssuer().getEncoded()),
+              entry.getCertificateIssuer());
+        }
+      }
+    } finally {
+      it.close();
+    }
+
+    Assert.assertEquals("number of entries",
+        (expectedEntries == null) ? 0 : expectedEntries.size(), num);
+  }
+
+  private static byte[] generateCrl(int numEntries, boolean indirect) throws Exception {
+    Date thisUpdate = new Date((System.currentTimeMillis() / 1000) * 1000);
+    Date nextUpdate = new Date(thisUpdate.getTime() + 24L * 3600 * 1000);
+
+    X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+    builder.setNextUpdate(nextUpdate);
+
+    int[] reasons = {CRLReason.unspecified, CRLReason.keyCompromise, CRLReason.superseded,
+      CRLReason.cessationOfOperation, CRLReason.certificateHold};
+
+    for (int i = 0; i < numEntries; i++) {
+      BigInteger serial = BigInteger.valueOf(0x1000000L + i * 7L);
+      Date revocationDate = new Date(thisUpdate.getTime() - (i + 1) * 1000L);
+
+      ExtensionsGenerator extnGen = new ExtensionsGenerator();
+      int reason = reasons[i % reasons.length];
+      if (reason != CRLReason.unspecified) {
+        extnGen.addExtension(Extension.reasonCode, false, CRLReason.lookup(reason));
+      }
+
+      if (indirect && i == numEntries / 2) {
+        extnGen.addExtension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(CERT_ISSUER)));
+      }
+
+      if (extnGen.isEmpty()) {
+        builder.addCRLEntry(serial, revocationDate, CRLReason.unspecified);
+      } else {
+        builder.addCRLEntry(serial, revocationDate, extnGen.generate());
+      }
+    }
+
+    builder.addExtension(Extension.cRLNumber, false, new ASN1Integer(42));
+    return builder.build(
+        new JcaContentSignerBuilder("SHA256withRSA").build(keypair.getPrivate())).getEncoded();
+  }
+
+  private static File writeFile(byte[] content) throws IOException {
+    File file = File.createTempFile("crl-", ".crl");
+    file.deleteOnExit();
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+}
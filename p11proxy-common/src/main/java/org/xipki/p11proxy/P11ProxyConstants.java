@@ -73,6 +73,8 @@ public class P11ProxyConstants {
 
   public static final short ACTION_SIGN              = 0x0120;
 
+  public static final short ACTION_SIGN_BATCH        = 0x0121;
+
   public static final short ACTION_GEN_KEYPAIR_RSA   = 0x0130;
 
   public static final short ACTION_GEN_KEYPAIR_DSA   = 0x0131;
@@ -126,6 +128,7 @@ public class P11ProxyConstants {
     actionMap.put(ACTION_GET_CERT_IDS,      "ACTION_GET_CERT_IDS");
     actionMap.put(ACTION_GET_MECHANISMS,    "ACTION_GET_MECHANISMS");
     actionMap.put(ACTION_SIGN,              "ACTION_SIGN");
+    actionMap.put(ACTION_SIGN_BATCH,        "ACTION_SIGN_BATCH");
     actionMap.put(ACTION_GEN_KEYPAIR_RSA,   "ACTION_GEN_KEYPAIR_RSA");
     actionMap.put(ACTION_GEN_KEYPAIR_DSA,   "ACTION_GEN_KEYPAIR_DSA");
     actionMap.put(ACTION_GEN_KEYPAIR_EC,    "ACTION_GEN_KEYPAIR_EC");
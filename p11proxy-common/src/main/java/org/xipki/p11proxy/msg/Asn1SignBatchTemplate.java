@@ -0,0 +1,123 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.p11proxy.msg;
+
+import java.io.IOException;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.xipki.common.util.ParamUtil;
+import org.xipki.security.exception.BadAsn1ObjectException;
+
+/**
+ * TODO.
+ * <pre>
+ * SignBatchTemplate ::= SEQUENCE {
+ *     entityId       EntityIdentifier,
+ *     mechanism      Mechanism,
+ *     messages       SEQUENCE OF OCTET STRING }
+ * </pre>
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class Asn1SignBatchTemplate extends ASN1Object {
+
+  private final Asn1P11EntityIdentifier identityId;
+
+  private final Asn1Mechanism mechanism;
+
+  private final byte[][] messages;
+
+  private Asn1SignBatchTemplate(ASN1Sequence seq) throws BadAsn1ObjectException {
+    Asn1Util.requireRange(seq, 3, 3);
+    int idx = 0;
+    this.identityId = Asn1P11EntityIdentifier.getInstance(seq.getObjectAt(idx++));
+    this.mechanism = Asn1Mechanism.getInstance(seq.getObjectAt(idx++));
+    ASN1Sequence messagesSeq = Asn1Util.getSequence(seq.getObjectAt(idx++));
+    final int n = messagesSeq.size();
+    if (n == 0) {
+      throw new BadAsn1ObjectException("messages must not be empty");
+    }
+
+    this.messages = new byte[n][];
+    for (int i = 0; i < n; i++) {
+      this.messages[i] = Asn1Util.getOctetStringBytes(messagesSeq.getObjectAt(i));
+    }
+  }
+
+  public Asn1SignBatchTemplate(Asn1P11EntityIdentifier identityId, long mechanism,
+      Asn1P11Params parameter, byte[][] messages) {
+    this.identityId = ParamUtil.requireNonNull("identityId", identityId);
+    this.messages = ParamUtil.requireNonNull("messages", messages);
+    if (messages.length == 0) {
+      throw new IllegalArgumentException("messages must not be empty");
+    }
+    this.mechanism = new Asn1Mechanism(mechanism, parameter);
+  }
+
+  public static Asn1SignBatchTemplate getInstance(Object obj) throws BadAsn1ObjectException {
+    if (obj == null || obj instanceof Asn1SignBatchTemplate) {
+      return (Asn1SignBatchTemplate) obj;
+    }
+
+    try {
+      if (obj instanceof ASN1Sequence) {
+        return new Asn1SignBatchTemplate((ASN1Sequence) obj);
+      } else if (obj instanceof byte[]) {
+        return getInstance(ASN1Primitive.fromByteArray((byte[]) obj));
+      } else {
+        throw new BadAsn1ObjectException("unknown object: " + obj.getClass().getName());
+      }
+    } catch (IOException | IllegalArgumentException ex) {
+      throw new BadAsn1ObjectException("unable to parse encoded object: " + ex.getMessage(),
+          ex);
+    }
+  }
+
+  @Override
+  public ASN1Primitive toASN1Primitive() {
+    ASN1EncodableVector messagesVector = new ASN1EncodableVector();
+    for (byte[] message : messages) {
+      messagesVector.add(new DEROctetString(message));
+    }
+
+    ASN1EncodableVector vector = new ASN1EncodableVector();
+    vector.add(identityId);
+    vector.add(mechanism);
+    vector.add(new DERSequence(messagesVector));
+    return new DERSequence(vector);
+  }
+
+  public byte[][] getMessages() {
+    return messages;
+  }
+
+  public Asn1P11EntityIdentifier getIdentityId() {
+    return identityId;
+  }
+
+  public Asn1Mechanism getMechanism() {
+    return mechanism;
+  }
+}
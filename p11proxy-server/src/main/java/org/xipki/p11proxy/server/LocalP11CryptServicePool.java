@@ -18,9 +18,17 @@
 package org.xipki.p11proxy.server;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -29,6 +37,8 @@ import org.xipki.security.HashAlgo;
 import org.xipki.security.exception.XiSecurityException;
 import org.xipki.security.pkcs11.P11CryptService;
 import org.xipki.security.pkcs11.P11CryptServiceFactory;
+import org.xipki.security.pkcs11.P11Identity;
+import org.xipki.security.pkcs11.P11Params;
 import org.xipki.security.pkcs11.exception.P11TokenException;
 
 /**
@@ -47,6 +57,15 @@ public class LocalP11CryptServicePool {
 
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
+  /**
+   * Minimal number of contents signed by one task of a batch.
+   */
+  private static final int MIN_BATCH_PART_SIZE = 4;
+
+  private int batchSignParallelism = 8;
+
+  private ExecutorService batchSignExecutor;
+
   public LocalP11CryptServicePool() {
   }
 
@@ -54,6 +73,10 @@ public class LocalP11CryptServicePool {
     this.p11CryptServiceFactory = p11CryptServiceFactory;
   }
 
+  public void setBatchSignParallelism(int batchSignParallelism) {
+    this.batchSignParallelism = batchSignParallelism;
+  }
+
   public boolean isInitialized() {
     return initialized.get();
   }
@@ -86,10 +109,72 @@ public class LocalP11CryptServicePool {
       }
     }
 
+    if (batchSignParallelism > 1) {
+      batchSignExecutor = Executors.newFixedThreadPool(batchSignParallelism);
+    }
+
     initialized.set(true);
     LOG.info("initialized");
   }
 
+  public void shutdown() {
+    if (batchSignExecutor != null) {
+      batchSignExecutor.shutdown();
+      batchSignExecutor = null;
+    }
+  }
+
+  /**
+   * Signs the contents. Large batches are split into parts which are signed in parallel,
+   * each part within one session of the token.
+   */
+  byte[][] sign(final P11Identity identity, final long mechanism, final P11Params params,
+      byte[][] contents) throws P11TokenException, XiSecurityException {
+    final int n = contents.length;
+    ExecutorService executor = batchSignExecutor;
+    int numParts = Math.min(batchSignParallelism, n / MIN_BATCH_PART_SIZE);
+    if (executor == null || numParts < 2) {
+      return identity.sign(mechanism, params, contents);
+    }
+
+    final int partSize = (n + numParts - 1) / numParts;
+    List<Future<byte[][]>> futures = new ArrayList<>(numParts);
+    for (int from = 0; from < n; from += partSize) {
+      final byte[][] part = Arrays.copyOfRange(contents, from, Math.min(n, from + partSize));
+      futures.add(executor.submit(new Callable<byte[][]>() {
+        @Override
+        public byte[][] call() throws Exception {
+          return identity.sign(mechanism, params, part);
+        }
+      }));
+    }
+
+    byte[][] signatures = new byte[n][];
+    int offset = 0;
+    for (Future<byte[][]> future : futures) {
+      byte[][] partSignatures;
+      try {
+        partSignatures = future.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new XiSecurityException("interrupted", ex);
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof P11TokenException) {
+          throw (P11TokenException) cause;
+        } else if (cause instanceof XiSecurityException) {
+          throw (XiSecurityException) cause;
+        } else {
+          throw new XiSecurityException(cause.getMessage(), cause);
+        }
+      }
+
+      System.arraycopy(partSignatures, 0, signatures, offset, partSignatures.length);
+      offset += partSignatures.length;
+    }
+    return signatures;
+  }
+
   public P11CryptService getP11CryptService(short moduleId) {
     return p11CryptServices.get(moduleId);
   }
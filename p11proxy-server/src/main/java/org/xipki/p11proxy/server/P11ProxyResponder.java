@@ -22,6 +22,7 @@ import java.security.InvalidKeyException;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -54,6 +55,7 @@ import org.xipki.p11proxy.msg.Asn1P11SlotIdentifier;
 import org.xipki.p11proxy.msg.Asn1RSAPkcsPssParams;
 import org.xipki.p11proxy.msg.Asn1RemoveObjectsParams;
 import org.xipki.p11proxy.msg.Asn1ServerCaps;
+import org.xipki.p11proxy.msg.Asn1SignBatchTemplate;
 import org.xipki.p11proxy.msg.Asn1SignTemplate;
 import org.xipki.security.exception.BadAsn1ObjectException;
 import org.xipki.security.exception.XiSecurityException;
@@ -111,6 +113,7 @@ class P11ProxyResponder {
     actions.add(P11ProxyConstants.ACTION_REMOVE_IDENTITY);
     actions.add(P11ProxyConstants.ACTION_REMOVE_OBJECTS);
     actions.add(P11ProxyConstants.ACTION_SIGN);
+    actions.add(P11ProxyConstants.ACTION_SIGN_BATCH);
     actions.add(P11ProxyConstants.ACTION_UPDATE_CERT);
     actions.add(P11ProxyConstants.ACTION_DIGEST_SECRETKEY);
     actions.add(P11ProxyConstants.ACTION_IMPORT_SECRET_KEY);
@@ -181,13 +184,13 @@ class P11ProxyResponder {
     if (contentLen == 0) {
       if (actionsRequireNonNullRequest.contains(action)) {
         LOG.error("content is not present but is required");
-        return getResp(version, transactionId, P11ProxyConstants.RC_BAD_REQUEST, action);
+        return getResp(version, transactionId, action, P11ProxyConstants.RC_BAD_REQUEST);
       }
       content = null;
     } else {
       if (actionsRequireNullRequest.contains(action)) {
         LOG.error("content is present but is not permitted");
-        return getResp(version, transactionId, P11ProxyConstants.RC_BAD_REQUEST, action);
+        return getResp(version, transactionId, action, P11ProxyConstants.RC_BAD_REQUEST);
       }
 
       content = new byte[contentLen];
@@ -197,7 +200,7 @@ class P11ProxyResponder {
     P11CryptService p11CryptService = pool.getP11CryptService(moduleId);
     if (p11CryptService == null) {
       LOG.error("no module {} available", moduleId);
-      return getResp(version, transactionId, P11ProxyConstants.RC_UNKNOWN_MODULE, action);
+      return getResp(version, transactionId, action, P11ProxyConstants.RC_UNKNOWN_MODULE);
     }
 
     try {
@@ -345,27 +348,7 @@ class P11ProxyResponder {
         case P11ProxyConstants.ACTION_SIGN: {
           Asn1SignTemplate signTemplate = Asn1SignTemplate.getInstance(content);
           long mechanism = signTemplate.getMechanism().getMechanism();
-          Asn1P11Params asn1Params = signTemplate.getMechanism().getParams();
-
-          P11Params params = null;
-
-          if (asn1Params != null) {
-            switch (asn1Params.getTagNo()) {
-              case Asn1P11Params.TAG_RSA_PKCS_PSS:
-                params = Asn1RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
-                break;
-              case Asn1P11Params.TAG_OPAQUE:
-                params = new P11ByteArrayParams(
-                    ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              case Asn1P11Params.TAG_IV:
-                params = new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
-                break;
-              default:
-                throw new BadAsn1ObjectException(
-                    "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
-            }
-          }
+          P11Params params = getP11Params(signTemplate.getMechanism().getParams());
 
           byte[] message = signTemplate.getMessage();
           P11Identity identity =
@@ -374,6 +357,22 @@ class P11ProxyResponder {
           ASN1Object obj = new DEROctetString(signature);
           return getSuccessResp(version, transactionId, action, obj);
         }
+        case P11ProxyConstants.ACTION_SIGN_BATCH: {
+          Asn1SignBatchTemplate signTemplate = Asn1SignBatchTemplate.getInstance(content);
+          long mechanism = signTemplate.getMechanism().getMechanism();
+          P11Params params = getP11Params(signTemplate.getMechanism().getParams());
+
+          P11Identity identity =
+              p11CryptService.getIdentity(signTemplate.getIdentityId().getEntityId());
+          byte[][] signatures = pool.sign(identity, mechanism, params,
+              signTemplate.getMessages());
+
+          ASN1EncodableVector vec = new ASN1EncodableVector();
+          for (byte[] signature : signatures) {
+            vec.add(new DEROctetString(signature));
+          }
+          return getSuccessResp(version, transactionId, action, new DERSequence(vec));
+        }
         case P11ProxyConstants.ACTION_UPDATE_CERT: {
           Asn1EntityIdAndCert asn1 = Asn1EntityIdAndCert.getInstance(content);
           P11Slot slot = getSlot(p11CryptService, asn1.getEntityId());
@@ -413,6 +412,25 @@ class P11ProxyResponder {
     }
   } // method processPkiMessage
 
+  private static P11Params getP11Params(Asn1P11Params asn1Params)
+      throws BadAsn1ObjectException {
+    if (asn1Params == null) {
+      return null;
+    }
+
+    switch (asn1Params.getTagNo()) {
+      case Asn1P11Params.TAG_RSA_PKCS_PSS:
+        return Asn1RSAPkcsPssParams.getInstance(asn1Params).getPkcsPssParams();
+      case Asn1P11Params.TAG_OPAQUE:
+        return new P11ByteArrayParams(ASN1OctetString.getInstance(asn1Params).getOctets());
+      case Asn1P11Params.TAG_IV:
+        return new P11IVParams(ASN1OctetString.getInstance(asn1Params).getOctets());
+      default:
+        throw new BadAsn1ObjectException(
+            "unknown SignTemplate.params: unknown tag " + asn1Params.getTagNo());
+    }
+  }
+
   private static String buildErrorMsg(short action, byte[] transactionId) {
     return "could not process action " + P11ProxyConstants.getActionName(action)
         + " (tid=" + Hex.encode(transactionId) + ")";
@@ -428,7 +446,20 @@ class P11ProxyResponder {
     return p11Service.getModule().getSlot(slotId);
   }
 
-  private static byte[] getResp(short version, byte[] transactionId, short rc, short action) {
+  /**
+   * Builds the error response for a request which is not processed because the server is busy.
+   * @param request the framed request, at least 10 bytes.
+   * @return the error response.
+   */
+  static byte[] getBusyResp(byte[] request) {
+    short version = IoUtil.parseShort(request, 0);
+    byte[] transactionId = Arrays.copyOfRange(request, 2, 6);
+    short action = (request.length > 11) ? IoUtil.parseShort(request, 10)
+        : P11ProxyConstants.ACTION_NOPE;
+    return getResp(version, transactionId, action, P11ProxyConstants.RC_INTERNAL_ERROR);
+  }
+
+  private static byte[] getResp(short version, byte[] transactionId, short action, short rc) {
     byte[] resp = new byte[14];
     IoUtil.writeShort(version, resp, 0); // version
     System.arraycopy(transactionId, 0, resp, 2, 4); // transaction Id
@@ -0,0 +1,415 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.p11proxy.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.LogUtil;
+import org.xipki.common.util.StringUtil;
+import org.xipki.password.PasswordResolver;
+import org.xipki.password.PasswordResolverException;
+
+/**
+ * Serves the PKCS#11 proxy requests over persistent TCP connections, as alternative to
+ * {@link HttpProxyServlet}.
+ *
+ * <p>Each message is framed by its own header (version, transaction ID and length). The
+ * requests received via one connection are processed concurrently, and the responses are
+ * written in the order of their completion. The client assigns them via the transaction ID.
+ *
+ * <p>If a keystore is configured, the connections are protected by TLS and the clients must
+ * authenticate with a certificate trusted by the truststore. Without TLS only loopback
+ * addresses may be listened on.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+public class SocketProxyServer {
+
+  private class ConnectionHandler implements Runnable {
+
+    private final Socket socket;
+
+    private final OutputStream out;
+
+    ConnectionHandler(Socket socket) throws IOException {
+      this.socket = socket;
+      this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (socket instanceof SSLSocket) {
+          // throws SSLPeerUnverifiedException if the client is not authenticated
+          Certificate[] clientCerts = ((SSLSocket) socket).getSession().getPeerCertificates();
+          LOG.info("client {} authenticated as '{}'", socket.getRemoteSocketAddress(),
+              ((X509Certificate) clientCerts[0]).getSubjectX500Principal().getName());
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            socket.getInputStream()));
+        while (true) {
+          final byte[] request = readMessage(in);
+          try {
+            workers.execute(new Runnable() {
+              @Override
+              public void run() {
+                writeResponse(responder.processRequest(localP11CryptServicePool, request));
+              }
+            });
+          } catch (RejectedExecutionException ex) {
+            if (!running) {
+              throw ex;
+            }
+            LOG.warn("too many pending requests, rejected request from {}",
+                socket.getRemoteSocketAddress());
+            writeResponse(P11ProxyResponder.getBusyResp(request));
+          }
+        }
+      } catch (EOFException ex) {
+        LOG.debug("connection closed by {}", socket.getRemoteSocketAddress());
+      } catch (IOException | RejectedExecutionException ex) {
+        if (running) {
+          LogUtil.warn(LOG, ex, "error while reading from " + socket.getRemoteSocketAddress());
+        }
+      } finally {
+        closeSocket(socket);
+        sockets.remove(socket);
+      }
+    }
+
+    private void writeResponse(byte[] response) {
+      try {
+        synchronized (out) {
+          out.write(response);
+          out.flush();
+        }
+      } catch (IOException ex) {
+        LOG.warn("could not write response to {}: {}",
+            socket.getRemoteSocketAddress(), ex.getMessage());
+        closeSocket(socket);
+      }
+    }
+
+  } // class ConnectionHandler
+
+  private static final Logger LOG = LoggerFactory.getLogger(SocketProxyServer.class);
+
+  /**
+   * Maximal length of the message body.
+   */
+  private static final int MAX_BODY_LENGTH = 16 * 1024 * 1024;
+
+  private final P11ProxyResponder responder = new P11ProxyResponder();
+
+  private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+  private LocalP11CryptServicePool localP11CryptServicePool;
+
+  private String host;
+
+  private int port = -1;
+
+  private int workerThreads = 32;
+
+  private int maxPendingRequests = 1000;
+
+  private String keystoreType = "PKCS12";
+
+  private String keystoreFile;
+
+  private String keystorePassword;
+
+  private String truststoreType = "PKCS12";
+
+  private String truststoreFile;
+
+  private String truststorePassword;
+
+  private PasswordResolver passwordResolver;
+
+  private ServerSocket serverSocket;
+
+  private ExecutorService connectionThreads;
+
+  private ExecutorService workers;
+
+  private volatile boolean running;
+
+  public void setLocalP11CryptServicePool(LocalP11CryptServicePool localP11CryptServicePool) {
+    this.localP11CryptServicePool = localP11CryptServicePool;
+  }
+
+  public void setHost(String host) {
+    this.host = host;
+  }
+
+  /**
+   * Sets the port. Non-positive value disables this server.
+   * @param port the port
+   */
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public void setWorkerThreads(int workerThreads) {
+    this.workerThreads = workerThreads;
+  }
+
+  /**
+   * Sets the maximal number of requests waiting for a worker thread. Further requests are
+   * answered with an error.
+   * @param maxPendingRequests the maximal number of waiting requests
+   */
+  public void setMaxPendingRequests(int maxPendingRequests) {
+    this.maxPendingRequests = maxPendingRequests;
+  }
+
+  public void setKeystoreType(String keystoreType) {
+    this.keystoreType = keystoreType;
+  }
+
+  /**
+   * Sets the keystore containing the TLS server key. Empty value disables TLS.
+   * @param keystoreFile the keystore file
+   */
+  public void setKeystoreFile(String keystoreFile) {
+    this.keystoreFile = keystoreFile;
+  }
+
+  public void setKeystorePassword(String keystorePassword) {
+    this.keystorePassword = keystorePassword;
+  }
+
+  public void setTruststoreType(String truststoreType) {
+    this.truststoreType = truststoreType;
+  }
+
+  /**
+   * Sets the truststore containing the certificates to verify the TLS clients.
+   * @param truststoreFile the truststore file
+   */
+  public void setTruststoreFile(String truststoreFile) {
+    this.truststoreFile = truststoreFile;
+  }
+
+  public void setTruststorePassword(String truststorePassword) {
+    this.truststorePassword = truststorePassword;
+  }
+
+  public void setPasswordResolver(PasswordResolver passwordResolver) {
+    this.passwordResolver = passwordResolver;
+  }
+
+  public void init() throws IOException {
+    if (port <= 0) {
+      LOG.info("socket server of PKCS#11 proxy is disabled");
+      return;
+    }
+
+    if (localP11CryptServicePool == null) {
+      throw new IllegalStateException("localP11CryptServicePool is not configured");
+    }
+
+    InetAddress bindAddr = StringUtil.isBlank(host) ? null : InetAddress.getByName(host);
+    if (StringUtil.isBlank(keystoreFile)) {
+      if (bindAddr == null || !bindAddr.isLoopbackAddress()) {
+        throw new IllegalStateException("TLS is not configured, the socket server of PKCS#11 "
+            + "proxy must listen on a loopback address, but not on '" + host + "'");
+      }
+      serverSocket = new ServerSocket(port, 50, bindAddr);
+    } else {
+      SSLServerSocket sslServerSocket = (SSLServerSocket) buildSslContext()
+          .getServerSocketFactory().createServerSocket(port, 50, bindAddr);
+      sslServerSocket.setNeedClientAuth(true);
+      serverSocket = sslServerSocket;
+    }
+
+    int threads = Math.max(1, workerThreads);
+    workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(Math.max(1, maxPendingRequests)));
+    connectionThreads = Executors.newCachedThreadPool();
+    running = true;
+
+    Thread acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        acceptConnections();
+      }
+    }, "p11proxy-socket-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    LOG.info("socket server of PKCS#11 proxy listens on {}, access path: "
+        + "'proxy:url={}://<host>:{},module=<module id>'", serverSocket.getLocalSocketAddress(),
+        (serverSocket instanceof SSLServerSocket) ? "tcps" : "tcp", port);
+  }
+
+  public void shutdown() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    closeSocket(serverSocket);
+    for (Socket socket : sockets) {
+      closeSocket(socket);
+    }
+
+    connectionThreads.shutdown();
+    workers.shutdown();
+    try {
+      workers.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    LOG.info("stopped socket server of PKCS#11 proxy");
+  }
+
+  private void acceptConnections() {
+    while (running) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException ex) {
+        if (running) {
+          LogUtil.error(LOG, ex, "could not accept connection");
+        }
+        continue;
+      }
+
+      try {
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        ConnectionHandler handler = new ConnectionHandler(socket);
+        sockets.add(socket);
+        connectionThreads.execute(handler);
+        LOG.info("accepted connection from {}", socket.getRemoteSocketAddress());
+      } catch (IOException | RejectedExecutionException ex) {
+        LogUtil.warn(LOG, ex, "could not handle connection");
+        sockets.remove(socket);
+        closeSocket(socket);
+      }
+    }
+  }
+
+  private SSLContext buildSslContext() throws IOException {
+    if (StringUtil.isBlank(truststoreFile)) {
+      throw new IllegalStateException("TLS is configured, but no truststore to verify the "
+          + "client certificates");
+    }
+
+    try {
+      char[] keystorePwd = resolvePassword(keystorePassword);
+      KeyManagerFactory kmf = KeyManagerFactory.getInstance(
+          KeyManagerFactory.getDefaultAlgorithm());
+      kmf.init(loadKeyStore(keystoreType, keystoreFile, keystorePwd), keystorePwd);
+
+      TrustManagerFactory tmf = TrustManagerFactory.getInstance(
+          TrustManagerFactory.getDefaultAlgorithm());
+      tmf.init(loadKeyStore(truststoreType, truststoreFile,
+          resolvePassword(truststorePassword)));
+
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+      return sslContext;
+    } catch (GeneralSecurityException | PasswordResolverException ex) {
+      throw new IOException("could not initialize TLS: " + ex.getMessage(), ex);
+    }
+  }
+
+  private char[] resolvePassword(String password) throws PasswordResolverException {
+    if (password == null) {
+      return null;
+    }
+    return (passwordResolver == null) ? password.toCharArray()
+        : passwordResolver.resolvePassword(password);
+  }
+
+  private static KeyStore loadKeyStore(String type, String file, char[] password)
+      throws IOException, GeneralSecurityException {
+    KeyStore keystore = KeyStore.getInstance(type);
+    InputStream in = new FileInputStream(IoUtil.expandFilepath(file));
+    try {
+      keystore.load(in, password);
+    } finally {
+      in.close();
+    }
+    return keystore;
+  }
+
+  /**
+   * Reads one message: 10 bytes header (version, transaction ID, length) and the body.
+   */
+  private static byte[] readMessage(DataInputStream in) throws IOException {
+    byte[] header = new byte[10];
+    in.readFully(header);
+    int bodyLen = IoUtil.parseInt(header, 6);
+    if (bodyLen < 0 || bodyLen > MAX_BODY_LENGTH) {
+      throw new IOException("invalid message length " + bodyLen);
+    }
+
+    byte[] message = new byte[10 + bodyLen];
+    System.arraycopy(header, 0, message, 0, 10);
+    in.readFully(message, 10, bodyLen);
+    return message;
+  }
+
+  private static void closeSocket(Closeable socket) {
+    try {
+      socket.close();
+    } catch (IOException ex) {
+      LOG.debug("could not close socket: {}", ex.getMessage());
+    }
+  }
+
+}
@@ -365,44 +365,76 @@ class IaikP11Slot extends AbstractP11Slot {
       throws P11TokenException {
     ParamUtil.requireNonNull("content", content);
     assertMechanismSupported(mechanism);
+    int expectedSignatureLen = getExpectedSignatureLen(mechanism, identity);
 
-    int len = content.length;
-    int expectedSignatureLen;
+    ConcurrentBagEntry<Session> session0 = borrowSession();
+    try {
+      return sign(session0.value(), mechanism, parameters, content, identity,
+          expectedSignatureLen);
+    } finally {
+      sessions.requite(session0);
+    }
+  }
+
+  /**
+   * Signs the contents within one session.
+   */
+  byte[][] sign(long mechanism, P11Params parameters, byte[][] contents,
+      IaikP11Identity identity) throws P11TokenException {
+    ParamUtil.requireNonNull("contents", contents);
+    assertMechanismSupported(mechanism);
+    int expectedSignatureLen = getExpectedSignatureLen(mechanism, identity);
+
+    byte[][] signatures = new byte[contents.length][];
+    ConcurrentBagEntry<Session> session0 = borrowSession();
+    try {
+      for (int i = 0; i < contents.length; i++) {
+        signatures[i] = sign(session0.value(), mechanism, parameters, contents[i], identity,
+            expectedSignatureLen);
+      }
+    } finally {
+      sessions.requite(session0);
+    }
+    return signatures;
+  }
+
+  private static int getExpectedSignatureLen(long mechanism, IaikP11Identity identity) {
     if (mechanism == PKCS11Constants.CKM_SHA_1_HMAC) {
-      expectedSignatureLen = 20;
+      return 20;
     } else if (mechanism == PKCS11Constants.CKM_SHA224_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_224) {
-      expectedSignatureLen = 28;
+      return 28;
     } else if (mechanism == PKCS11Constants.CKM_SHA256_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_256) {
-      expectedSignatureLen = 32;
+      return 32;
     } else if (mechanism == PKCS11Constants.CKM_SHA384_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_384) {
-      expectedSignatureLen = 48;
+      return 48;
     } else if (mechanism == PKCS11Constants.CKM_SHA512_HMAC
         || mechanism == PKCS11Constants.CKM_SHA3_512) {
-      expectedSignatureLen = 64;
+      return 64;
     } else if (mechanism == PKCS11Constants.CKM_VENDOR_SM2
         || mechanism == PKCS11Constants.CKM_VENDOR_SM2_SM3) {
-      expectedSignatureLen = 32;
+      return 32;
     } else {
-      expectedSignatureLen = identity.getExpectedSignatureLen();
+      return identity.getExpectedSignatureLen();
     }
+  }
 
-    ConcurrentBagEntry<Session> session0 = borrowSession();
-
-    try {
-      Session session = session0.value();
-      if (len <= maxMessageSize) {
-        return singleSign(session, mechanism, parameters, content, identity);
-      }
+  private byte[] sign(Session session, long mechanism, P11Params parameters, byte[] content,
+      IaikP11Identity identity, int expectedSignatureLen) throws P11TokenException {
+    int len = content.length;
+    if (len <= maxMessageSize) {
+      return singleSign(session, mechanism, parameters, content, identity);
+    }
 
-      Key signingKey = identity.getSigningKey();
-      Mechanism mechanismObj = getMechanism(mechanism, parameters);
-      if (LOG.isTraceEnabled()) {
-        LOG.debug("sign (init, update, then finish) with private key:\n{}", signingKey);
-      }
+    Key signingKey = identity.getSigningKey();
+    Mechanism mechanismObj = getMechanism(mechanism, parameters);
+    if (LOG.isTraceEnabled()) {
+      LOG.debug("sign (init, update, then finish) with private key:\n{}", signingKey);
+    }
 
+    try {
       session.signInit(mechanismObj, signingKey);
       for (int i = 0; i < len; i += maxMessageSize) {
         int blockLen = Math.min(maxMessageSize, len - i);
@@ -414,8 +446,6 @@ class IaikP11Slot extends AbstractP11Slot {
       return session.signFinal(expectedSignatureLen);
     } catch (TokenException ex) {
       throw new P11TokenException(ex);
-    } finally {
-      sessions.requite(session0);
     }
   }
 
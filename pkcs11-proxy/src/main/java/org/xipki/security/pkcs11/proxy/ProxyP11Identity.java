@@ -21,12 +21,16 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 
 import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.DEROctetString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xipki.p11proxy.P11ProxyConstants;
 import org.xipki.p11proxy.msg.Asn1DigestSecretKeyTemplate;
 import org.xipki.p11proxy.msg.Asn1P11EntityIdentifier;
 import org.xipki.p11proxy.msg.Asn1P11Params;
 import org.xipki.p11proxy.msg.Asn1RSAPkcsPssParams;
+import org.xipki.p11proxy.msg.Asn1SignBatchTemplate;
 import org.xipki.p11proxy.msg.Asn1SignTemplate;
 import org.xipki.security.pkcs11.P11ByteArrayParams;
 import org.xipki.security.pkcs11.P11EntityIdentifier;
@@ -45,6 +49,8 @@ import org.xipki.security.pkcs11.exception.P11TokenException;
 
 class ProxyP11Identity extends P11Identity {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Identity.class);
+
   ProxyP11Identity(P11Slot slot, P11EntityIdentifier entityId) {
     super(slot, entityId, 0);
   }
@@ -58,24 +64,8 @@ class ProxyP11Identity extends P11Identity {
   protected byte[] sign0(long mechanism, P11Params parameters, byte[] content)
       throws P11TokenException {
     Asn1P11EntityIdentifier asn1EntityId = new Asn1P11EntityIdentifier(identityId);
-    Asn1P11Params p11Param = null;
-    if (parameters != null) {
-      if (parameters instanceof P11RSAPkcsPssParams) {
-        p11Param = new Asn1P11Params(Asn1P11Params.TAG_RSA_PKCS_PSS,
-            new Asn1RSAPkcsPssParams((P11RSAPkcsPssParams) parameters));
-      } else if (parameters instanceof P11ByteArrayParams) {
-        byte[] bytes = ((P11ByteArrayParams) parameters).getBytes();
-        p11Param = new Asn1P11Params(Asn1P11Params.TAG_OPAQUE, new DEROctetString(bytes));
-      } else if (parameters instanceof P11IVParams) {
-        p11Param = new Asn1P11Params(Asn1P11Params.TAG_IV,
-            new DEROctetString(((P11IVParams) parameters).getIV()));
-      } else {
-        throw new IllegalArgumentException("unkown parameter 'parameters'");
-      }
-    }
-
-    Asn1SignTemplate signTemplate = new Asn1SignTemplate(asn1EntityId, mechanism, p11Param,
-        content);
+    Asn1SignTemplate signTemplate = new Asn1SignTemplate(asn1EntityId, mechanism,
+        getAsn1Params(parameters), content);
     byte[] result = ((ProxyP11Slot) slot).getModule().send(P11ProxyConstants.ACTION_SIGN,
         signTemplate);
 
@@ -89,6 +79,75 @@ class ProxyP11Identity extends P11Identity {
     return (octetString == null) ? null : octetString.getOctets();
   }
 
+  /**
+   * Signs all contents in one request. If the server does not support this, the contents
+   * are signed one by one.
+   */
+  @Override
+  protected byte[][] sign0(long mechanism, P11Params parameters, byte[][] contents)
+      throws P11TokenException {
+    ProxyP11Module module = ((ProxyP11Slot) slot).getModule();
+    if (module.isSignBatchSupported()) {
+      try {
+        return signBatch(module, mechanism, parameters, contents);
+      } catch (ProxyP11Module.UnsupportedActionException ex) {
+        LOG.info("server does not support ACTION_SIGN_BATCH, sign the contents one by one");
+        module.setSignBatchSupported(false);
+      }
+    }
+
+    return super.sign0(mechanism, parameters, contents);
+  }
+
+  private byte[][] signBatch(ProxyP11Module module, long mechanism, P11Params parameters,
+      byte[][] contents) throws P11TokenException {
+    Asn1P11EntityIdentifier asn1EntityId = new Asn1P11EntityIdentifier(identityId);
+    Asn1SignBatchTemplate signTemplate = new Asn1SignBatchTemplate(asn1EntityId, mechanism,
+        getAsn1Params(parameters), contents);
+    byte[] result = module.send(P11ProxyConstants.ACTION_SIGN_BATCH, signTemplate);
+
+    ASN1Sequence seq;
+    try {
+      seq = ASN1Sequence.getInstance(result);
+    } catch (IllegalArgumentException ex) {
+      throw new P11TokenException("the returned result is not SEQUENCE");
+    }
+
+    if (seq == null || seq.size() != contents.length) {
+      throw new P11TokenException("the number of returned signatures is not "
+          + contents.length);
+    }
+
+    byte[][] signatures = new byte[contents.length][];
+    for (int i = 0; i < contents.length; i++) {
+      try {
+        signatures[i] = DEROctetString.getInstance(seq.getObjectAt(i)).getOctets();
+      } catch (IllegalArgumentException ex) {
+        throw new P11TokenException("the returned signature is not OCTET STRING");
+      }
+    }
+    return signatures;
+  }
+
+  private static Asn1P11Params getAsn1Params(P11Params parameters) {
+    if (parameters == null) {
+      return null;
+    }
+
+    if (parameters instanceof P11RSAPkcsPssParams) {
+      return new Asn1P11Params(Asn1P11Params.TAG_RSA_PKCS_PSS,
+          new Asn1RSAPkcsPssParams((P11RSAPkcsPssParams) parameters));
+    } else if (parameters instanceof P11ByteArrayParams) {
+      byte[] bytes = ((P11ByteArrayParams) parameters).getBytes();
+      return new Asn1P11Params(Asn1P11Params.TAG_OPAQUE, new DEROctetString(bytes));
+    } else if (parameters instanceof P11IVParams) {
+      return new Asn1P11Params(Asn1P11Params.TAG_IV,
+          new DEROctetString(((P11IVParams) parameters).getIV()));
+    } else {
+      throw new IllegalArgumentException("unkown parameter 'parameters'");
+    }
+  }
+
   @Override
   protected byte[] digestSecretKey0(long mechanism) throws P11TokenException {
     Asn1P11EntityIdentifier asn1EntityId = new Asn1P11EntityIdentifier(identityId);
@@ -23,10 +23,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1Object;
@@ -57,6 +60,19 @@ import org.xipki.security.pkcs11.exception.P11TokenException;
 
 public class ProxyP11Module extends AbstractP11Module {
 
+  /**
+   * The server does not support the requested action.
+   */
+  static class UnsupportedActionException extends P11TokenException {
+
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedActionException(short action) {
+      super("server does not support the action " + action);
+    }
+
+  } // class UnsupportedActionException
+
   public static final String TYPE = "proxy";
 
   private static final Logger LOG = LoggerFactory.getLogger(ProxyP11Module.class);
@@ -65,7 +81,11 @@ public class ProxyP11Module extends AbstractP11Module {
 
   private static final String RESPONSE_MIMETYPE = "application/x-xipki-pkcs11";
 
-  private final Random random = new Random();
+  private static final String SOCKET_SCHEME = "tcp";
+
+  private static final String TLS_SOCKET_SCHEME = "tcps";
+
+  private final AtomicInteger nextTransactionId = new AtomicInteger(new Random().nextInt());
 
   private final short version = P11ProxyConstants.VERSION_V1_0;
 
@@ -73,10 +93,18 @@ public class ProxyP11Module extends AbstractP11Module {
 
   private URL serverUrl;
 
+  private ProxyP11SocketTransport socketTransport;
+
   private short moduleId;
 
   private boolean readOnly;
 
+  /**
+   * Whether the server supports ACTION_SIGN_BATCH. Older servers do not, this is detected
+   * on the first batch request.
+   */
+  private volatile boolean signBatchSupported = true;
+
   private ProxyP11Module(P11ModuleConf moduleConf) throws P11TokenException {
     super(moduleConf);
 
@@ -86,10 +114,32 @@ public class ProxyP11Module extends AbstractP11Module {
 
     ConfPairs confPairs = new ConfPairs(modulePath);
     String urlStr = confPairs.value("url");
-    try {
-      serverUrl = new URL(urlStr);
-    } catch (MalformedURLException ex) {
-      throw new IllegalArgumentException("invalid url: " + urlStr);
+    String lowerUrlStr = (urlStr == null) ? null : urlStr.toLowerCase();
+    boolean tls = lowerUrlStr != null && lowerUrlStr.startsWith(TLS_SOCKET_SCHEME + "://");
+    if (tls || (lowerUrlStr != null && lowerUrlStr.startsWith(SOCKET_SCHEME + "://"))) {
+      // persistent connections, e.g. url=tcp://localhost:9444,connections=2,timeout=60000
+      // tcps uses TLS with the default keystore and truststore of the JVM
+      URI uri;
+      try {
+        uri = new URI(urlStr);
+      } catch (URISyntaxException ex) {
+        throw new IllegalArgumentException("invalid url: " + urlStr);
+      }
+
+      if (uri.getHost() == null || uri.getPort() == -1) {
+        throw new IllegalArgumentException("host and port are not specified in url: " + urlStr);
+      }
+
+      int numConnections = getInt(confPairs, "connections", 2);
+      int timeout = getInt(confPairs, "timeout", 60000);
+      socketTransport = new ProxyP11SocketTransport(uri.getHost(), uri.getPort(), tls,
+          numConnections, timeout, timeout);
+    } else {
+      try {
+        serverUrl = new URL(urlStr);
+      } catch (MalformedURLException ex) {
+        throw new IllegalArgumentException("invalid url: " + urlStr);
+      }
     }
 
     String moduleStr = confPairs.value("module");
@@ -121,6 +171,14 @@ public class ProxyP11Module extends AbstractP11Module {
     return readOnly || super.isReadOnly();
   }
 
+  boolean isSignBatchSupported() {
+    return signBatchSupported;
+  }
+
+  void setSignBatchSupported(boolean signBatchSupported) {
+    this.signBatchSupported = signBatchSupported;
+  }
+
   public void refresh() throws P11TokenException {
     byte[] resp = send(P11ProxyConstants.ACTION_GET_SERVER_CAPS, null);
 
@@ -135,6 +193,8 @@ public class ProxyP11Module extends AbstractP11Module {
       throw new P11TokenException("Server does not support any version supported by the client");
     }
     this.readOnly = caps.isReadOnly();
+    // the server may have been updated
+    this.signBatchSupported = true;
 
     resp = send(P11ProxyConstants.ACTION_GET_SLOT_IDS, null);
 
@@ -188,10 +248,18 @@ public class ProxyP11Module extends AbstractP11Module {
         LogUtil.error(LOG, th, "could not close PKCS#11 slot " + slotId);
       }
     }
+
+    if (socketTransport != null) {
+      socketTransport.close();
+    }
   }
 
   protected byte[] send(byte[] request) throws IOException {
     ParamUtil.requireNonNull("request", request);
+    if (socketTransport != null) {
+      return socketTransport.send(request);
+    }
+
     HttpURLConnection httpUrlConnection = IoUtil.openHttpConn(serverUrl);
     httpUrlConnection.setDoOutput(true);
     httpUrlConnection.setUseCaches(false);
@@ -303,7 +371,7 @@ public class ProxyP11Module extends AbstractP11Module {
     IoUtil.writeShort(version, request, 0);
 
     // transaction id
-    byte[] transactionId = randomTransactionId();
+    byte[] transactionId = newTransactionId();
     System.arraycopy(transactionId, 0, request, 2, 4);
 
     // length
@@ -342,7 +410,13 @@ public class ProxyP11Module extends AbstractP11Module {
 
     // RC
     short rc = IoUtil.parseShort(response, 10);
-    if (rc != 0) {
+    if (rc == P11ProxyConstants.RC_UNSUPPORTED_ACTION) {
+      throw new UnsupportedActionException(action);
+    } else if (rc == action && respLen >= 14
+        && IoUtil.parseShort(response, 12) == P11ProxyConstants.RC_UNSUPPORTED_ACTION) {
+      // older servers swapped the RC and action in this response
+      throw new UnsupportedActionException(action);
+    } else if (rc != 0) {
       throw new P11TokenException("server returned RC " + P11ProxyConstants.getReturnCodeName(rc));
     }
 
@@ -376,12 +450,29 @@ public class ProxyP11Module extends AbstractP11Module {
     return respContent;
   } // method send
 
-  private byte[] randomTransactionId() {
+  /**
+   * Transaction IDs are unique among the requests in flight, which is required to assign
+   * the responses received via the persistent connections.
+   */
+  private byte[] newTransactionId() {
     byte[] tid = new byte[4];
-    random.nextBytes(tid);
+    IoUtil.writeInt(nextTransactionId.getAndIncrement(), tid, 0);
     return tid;
   }
 
+  private static int getInt(ConfPairs confPairs, String name, int defaultValue) {
+    String str = confPairs.value(name);
+    if (str == null) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(str.trim());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("invalid " + name + ": " + str);
+    }
+  }
+
   private static boolean equals(byte[] bytes, byte[] bytesB, int offsetB) {
     if (bytesB.length - offsetB < bytes.length) {
       return false;
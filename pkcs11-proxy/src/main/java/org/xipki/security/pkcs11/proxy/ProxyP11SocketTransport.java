@@ -0,0 +1,260 @@
+/*
+ *
+ * Copyright (c) 2013 - 2018 Lijun Liao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xipki.security.pkcs11.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xipki.common.util.IoUtil;
+import org.xipki.common.util.ParamUtil;
+
+/**
+ * Sends the requests over persistent TCP connections to the PKCS#11 proxy server.
+ *
+ * <p>The messages are framed by their own header (version, transaction ID and length), so
+ * they are written to the connection as they are. Many requests can be in flight on one
+ * connection, the responses are assigned to the requests via the transaction ID.
+ *
+ * <p>With TLS the default keystore and truststore of the JVM (javax.net.ssl.*) are used, and
+ * the host name of the server is verified.
+ *
+ * @author Lijun Liao
+ * @since 3.1.0
+ */
+
+class ProxyP11SocketTransport {
+
+  private class Connection implements Runnable {
+
+    private final Socket socket;
+
+    private final OutputStream out;
+
+    private final DataInputStream in;
+
+    private final Map<Integer, CompletableFuture<byte[]>> pendingResponses =
+        new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    Connection() throws IOException {
+      this.socket = tls ? SSLSocketFactory.getDefault().createSocket() : new Socket();
+      try {
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.connect(new InetSocketAddress(host, port), connectTimeout);
+        if (tls) {
+          SSLSocket sslSocket = (SSLSocket) socket;
+          SSLParameters params = sslSocket.getSSLParameters();
+          params.setEndpointIdentificationAlgorithm("HTTPS");
+          sslSocket.setSSLParameters(params);
+          sslSocket.startHandshake();
+        }
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      } catch (IOException ex) {
+        socket.close();
+        throw ex;
+      }
+
+      Thread reader = new Thread(this, "p11proxy-" + host + ":" + port);
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    void send(int transactionId, byte[] request, CompletableFuture<byte[]> response)
+        throws IOException {
+      if (pendingResponses.putIfAbsent(transactionId, response) != null) {
+        throw new IOException("transaction ID " + transactionId + " is already in use");
+      }
+
+      try {
+        synchronized (out) {
+          out.write(request);
+          out.flush();
+        }
+      } catch (IOException ex) {
+        close(ex);
+        throw ex;
+      }
+
+      if (closed) {
+        // the reader may have been closed before the response has been registered
+        response.completeExceptionally(new EOFException("connection closed"));
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!closed) {
+          byte[] response = readMessage(in);
+          int transactionId = IoUtil.parseInt(response, 2);
+          CompletableFuture<byte[]> future = pendingResponses.remove(transactionId);
+          if (future == null) {
+            LOG.warn("ignored response with unknown transaction ID {}", transactionId);
+          } else {
+            future.complete(response);
+          }
+        }
+      } catch (IOException ex) {
+        if (!closed) {
+          LOG.info("connection to {}:{} closed: {}", host, port, ex.getMessage());
+        }
+        close(ex);
+      }
+    }
+
+    void close(IOException cause) {
+      closed = true;
+      try {
+        socket.close();
+      } catch (IOException ex) {
+        LOG.debug("could not close socket: {}", ex.getMessage());
+      }
+
+      for (Integer transactionId : pendingResponses.keySet()) {
+        CompletableFuture<byte[]> future = pendingResponses.remove(transactionId);
+        if (future != null) {
+          future.completeExceptionally(cause);
+        }
+      }
+    }
+
+  } // class Connection
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProxyP11SocketTransport.class);
+
+  /**
+   * Maximal length of the message body.
+   */
+  static final int MAX_BODY_LENGTH = 16 * 1024 * 1024;
+
+  private final String host;
+
+  private final int port;
+
+  private final boolean tls;
+
+  private final int connectTimeout;
+
+  private final long readTimeout;
+
+  private final Connection[] connections;
+
+  private final AtomicInteger nextConnection = new AtomicInteger();
+
+  ProxyP11SocketTransport(String host, int port, boolean tls, int numConnections,
+      int connectTimeout, long readTimeout) {
+    this.host = ParamUtil.requireNonBlank("host", host);
+    this.port = port;
+    this.tls = tls;
+    this.connections = new Connection[ParamUtil.requireMin("numConnections", numConnections, 1)];
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * Sends the request and waits for its response.
+   * @param request the request, its transaction ID must not be used by other requests in
+   *     flight.
+   * @return the response.
+   * @throws IOException if the request could not be sent or no response has been received.
+   */
+  byte[] send(byte[] request) throws IOException {
+    int transactionId = IoUtil.parseInt(request, 2);
+    CompletableFuture<byte[]> response = new CompletableFuture<>();
+    Connection conn = getConnection();
+    conn.send(transactionId, request, response);
+
+    try {
+      return response.get(readTimeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      conn.pendingResponses.remove(transactionId);
+      throw new IOException("no response received within " + readTimeout + " ms");
+    } catch (InterruptedException ex) {
+      conn.pendingResponses.remove(transactionId);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the response");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+    }
+  }
+
+  void close() {
+    synchronized (connections) {
+      for (int i = 0; i < connections.length; i++) {
+        if (connections[i] != null) {
+          connections[i].close(new EOFException("transport closed"));
+          connections[i] = null;
+        }
+      }
+    }
+  }
+
+  private Connection getConnection() throws IOException {
+    int idx = (nextConnection.getAndIncrement() & 0x7FFFFFFF) % connections.length;
+    synchronized (connections) {
+      Connection conn = connections[idx];
+      if (conn == null || conn.closed) {
+        conn = new Connection();
+        connections[idx] = conn;
+      }
+      return conn;
+    }
+  }
+
+  /**
+   * Reads one message: 10 bytes header (version, transaction ID, length) and the body.
+   */
+  static byte[] readMessage(DataInputStream in) throws IOException {
+    byte[] header = new byte[10];
+    in.readFully(header);
+    int bodyLen = IoUtil.parseInt(header, 6);
+    if (bodyLen < 0 || bodyLen > MAX_BODY_LENGTH) {
+      throw new IOException("invalid message length " + bodyLen);
+    }
+
+    byte[] message = new byte[10 + bodyLen];
+    System.arraycopy(header, 0, message, 0, 10);
+    in.readFully(message, 10, bodyLen);
+    return message;
+  }
+
+}
@@ -179,6 +179,11 @@ public class OcspCertPublisher extends CertPublisher {
     auditServiceRegister.getAuditService().logEvent(event);
   } // method logAndAudit
 
+  @Override
+  public boolean publishesCrl() {
+    return false;
+  }
+
   @Override
   public boolean crlAdded(X509Cert caCert, X509CRL crl) {
     return true;
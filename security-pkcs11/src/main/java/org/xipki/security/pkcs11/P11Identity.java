@@ -119,6 +119,64 @@ public abstract class P11Identity implements Comparable<P11Identity> {
   protected abstract byte[] sign0(long mechanism, P11Params parameters, byte[] content)
       throws P11TokenException;
 
+  /**
+   * Signs the contents with the same mechanism and parameters.
+   *
+   * @param mechanism
+   *          mechanism to sign the contents.
+   * @param parameters
+   *          Parameters. Could be {@code null}.
+   * @param contents
+   *          Contents to be signed. Must not be {@code null} or empty.
+   * @return signatures, in the same order as the contents.
+   * @throws P11TokenException
+   *         if PKCS#11 token error occurs.
+   * @throws XiSecurityException
+   *         if security error occurs.
+   */
+  public byte[][] sign(long mechanism, P11Params parameters, byte[][] contents)
+      throws P11TokenException, XiSecurityException {
+    ParamUtil.requireNonNull("contents", contents);
+    if (contents.length == 0) {
+      throw new IllegalArgumentException("contents must not be empty");
+    }
+    for (byte[] content : contents) {
+      ParamUtil.requireNonNull("content", content);
+    }
+
+    slot.assertMechanismSupported(mechanism);
+    if (!supportsMechanism(mechanism, parameters)) {
+      throw new P11UnsupportedMechanismException(mechanism, identityId);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("sign {} contents with mechanism {}", contents.length,
+          Pkcs11Functions.getMechanismDesc(mechanism));
+    }
+    return sign0(mechanism, parameters, contents);
+  }
+
+  /**
+   * Signs the contents. The default implementation signs them one by one.
+   *
+   * @param mechanism
+   *          mechanism to sign the contents.
+   * @param parameters
+   *          Parameters. Could be {@code null}.
+   * @param contents
+   *          Contents to be signed. Neither the array nor its elements are {@code null}.
+   * @return signatures, in the same order as the contents.
+   * @throws P11TokenException
+   *         if PKCS#11 token error occurs.
+   */
+  protected byte[][] sign0(long mechanism, P11Params parameters, byte[][] contents)
+      throws P11TokenException {
+    byte[][] signatures = new byte[contents.length][];
+    for (int i = 0; i < contents.length; i++) {
+      signatures[i] = sign0(mechanism, parameters, contents[i]);
+    }
+    return signatures;
+  }
+
   public byte[] digestSecretKey(long mechanism) throws P11TokenException, XiSecurityException {
     slot.assertMechanismSupported(mechanism);
     if (LOG.isDebugEnabled()) {
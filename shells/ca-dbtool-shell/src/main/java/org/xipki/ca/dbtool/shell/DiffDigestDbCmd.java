@@ -68,6 +68,11 @@ public class DiffDigestDbCmd extends DbPortAction {
       description = "number of threads to query the target database")
   private Integer numTargetThreads = 40;
 
+  @Option(name = "--merge",
+      description = "compare the certificates sorted by serial number in parallel ranges,\n"
+          + "also reports the certificates only in the target database")
+  private Boolean merge = Boolean.FALSE;
+
   @Option(name = "--ca-cert", multiValued = true,
       description = "Certificate of CAs to be considered\n(multi-valued)")
   @Completion(FilePathCompleter.class)
@@ -83,7 +88,7 @@ public class DiffDigestDbCmd extends DbPortAction {
     }
 
     return new DigestDiffWorker(datasourceFactory, passwordResolver, revokedOnly,
-        refDbConf, dbconfFile, reportDir, numCertsPerSelect, numTargetThreads, caCerts);
+        refDbConf, dbconfFile, reportDir, numCertsPerSelect, numTargetThreads, caCerts, merge);
   }
 
 }
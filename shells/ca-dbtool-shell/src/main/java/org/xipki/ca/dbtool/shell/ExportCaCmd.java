@@ -57,6 +57,15 @@ public class ExportCaCmd extends DbPortAction {
       description = "number of certificates per SELECT")
   private Integer numCertsPerCommit = 100;
 
+  @Option(name = "--threads",
+      description = "number of threads, limited by the size of the database connection pool")
+  private Integer numThreads = 4;
+
+  @Option(name = "--binary",
+      description = "export the certificates, CRLs and requests in the binary format\n"
+          + "instead of XML in ZIP files, detected automatically by the import")
+  private Boolean binaryFormat = Boolean.FALSE;
+
   @Option(name = "--resume")
   private Boolean resume = Boolean.FALSE;
 
@@ -67,7 +76,7 @@ public class ExportCaCmd extends DbPortAction {
   @Override
   protected DbPortWorker getDbPortWorker() throws Exception {
     return new CaDbExportWorker(datasourceFactory, passwordResolver, dbconfFile, outdir, resume,
-        numCertsInBundle, numCertsPerCommit, onlyTest);
+        numCertsInBundle, numCertsPerCommit, numThreads, binaryFormat, onlyTest);
   }
 
 }
@@ -53,6 +53,10 @@ public class ImportCaCmd extends DbPortAction {
       description = "number of certificates per commit")
   private Integer numCertsPerCommit = 100;
 
+  @Option(name = "--threads",
+      description = "number of threads, limited by the size of the database connection pool")
+  private Integer numThreads = 4;
+
   @Option(name = "--resume")
   private Boolean resume = Boolean.FALSE;
 
@@ -63,7 +67,7 @@ public class ImportCaCmd extends DbPortAction {
   @Override
   protected DbPortWorker getDbPortWorker() throws Exception {
     return new CaDbImportWorker(datasourceFactory, passwordResolver, dbconfFile, resume, indir,
-        numCertsPerCommit.intValue(), testOnly);
+        numCertsPerCommit.intValue(), numThreads.intValue(), testOnly);
   }
 
 }